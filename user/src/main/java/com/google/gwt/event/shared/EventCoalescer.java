@@ -0,0 +1,22 @@
+package com.google.gwt.event.shared;
+
+/**
+ * Merges events that are queued by a deferred {@link SimplerEventBus}.
+ *
+ * See {@link SimplerEventBus#addCoalescer(EventCoalescer, GwtEvent.Type...)}.
+ */
+public interface EventCoalescer {
+
+  /**
+   * @return the event to deliver instead of both {@code queued} and {@code next}, or
+   * {@code null} to deliver them separately. {@code queued} may be a previous result.
+   */
+  GwtEvent<?> coalesce(GwtEvent<?> queued, GwtEvent<?> next);
+
+  /**
+   * @return what {@code event} is merged by when it's fired without a source, e.g. its
+   * property, or {@code null} to try merging it with any other source-less event
+   */
+  Object getKey(GwtEvent<?> event);
+
+}
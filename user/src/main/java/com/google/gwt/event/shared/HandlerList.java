@@ -0,0 +1,221 @@
+package com.google.gwt.event.shared;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.gwt.event.shared.GwtEvent.Type;
+
+/**
+ * A compact store of handlers for objects like properties, rules, and commands.
+ *
+ * Unlike a {@link SimplerEventBus}, which is a map of maps of lists, the
+ * handlers are kept as type/handler pairs in one array, which is only allocated
+ * on the first add. These objects only have handlers for a few event types, and
+ * only a few handlers per type, so scanning the array is cheaper than hashing.
+ *
+ * Like {@link SimplerEventBus}, adds/removes immediately take effect, except that
+ * handlers added while an event is firing are not called for that event.
+ *
+ * This is an {@link EventBus}, so it can stand in for the buses these objects used to have,
+ * but doesn't support per-source handlers. It lives in {@code com.google.gwt.event.shared}
+ * so it can call {@link GwtEvent#dispatch(EventHandler)} and set the event's source.
+ *
+ * Fires can be observed, e.g. for stats, by a {@link Monitor} set with {@link #setMonitor(Monitor)}.
+ */
+public class HandlerList extends EventBus {
+
+  /** Observes every {@link HandlerList}'s fires, e.g. to record stats. */
+  public interface Monitor {
+    /** Called when a fire starts. */
+    void begin();
+
+    /** Called after each handler, with how long it took (including any nested fires). */
+    void handled(double millis);
+
+    /** Called when the fire of {@code event} of {@code type} is done, with whether any handlers threw. */
+    void end(Object type, Object event, boolean failed);
+
+    /** @return the current time in millis, for timing handlers */
+    double now();
+  }
+
+  private static Monitor monitor;
+
+  /** @return the current monitor, or {@code null}, e.g. for event buses to report their fires to as well */
+  public static Monitor getMonitor() {
+    return monitor;
+  }
+
+  /** Sets the monitor for all {@link HandlerList}s, or {@code null} to stop monitoring. */
+  public static void setMonitor(final Monitor monitor) {
+    HandlerList.monitor = monitor;
+  }
+
+  // pairs of type, handler, with removed handlers nulled out while firing
+  private Object[] entries;
+  private int size;
+  private int firingDepth;
+  private boolean needsCleaning;
+
+  public <H extends EventHandler> HandlerRegistration add(final Type<H> type, final H handler) {
+    checkNotNull(type, "Cannot add a handler with a null type");
+    checkNotNull(handler, "Cannot add a null handler");
+    if (entries == null) {
+      entries = new Object[4];
+    } else if (size == entries.length) {
+      final Object[] grown = new Object[size * 2];
+      System.arraycopy(entries, 0, grown, 0, size);
+      entries = grown;
+    }
+    entries[size++] = type;
+    entries[size++] = handler;
+    return new HandlerRegistration() {
+      private boolean removed;
+
+      public void removeHandler() {
+        // don't remove another registration of the same handler
+        if (!removed) {
+          removed = true;
+          remove(type, handler);
+        }
+      }
+    };
+  }
+
+  @Override
+  public <H extends EventHandler> HandlerRegistration addHandler(final Type<H> type, final H handler) {
+    return add(type, handler);
+  }
+
+  /** @throws UnsupportedOperationException as we don't keep handlers per source */
+  @Override
+  public <H extends EventHandler> HandlerRegistration addHandlerToSource(final Type<H> type, final Object source, final H handler) {
+    throw new UnsupportedOperationException("HandlerList does not support per-source handlers");
+  }
+
+  @Override
+  public void fireEvent(final GwtEvent<?> event) {
+    checkNotNull(event, "Cannot fire null event");
+    doFire(event);
+  }
+
+  /** Fires {@code event} with {@code source} as its source, to all of our handlers of its type. */
+  @Override
+  public void fireEventFromSource(final GwtEvent<?> event, final Object source) {
+    checkNotNull(event, "Cannot fire null event");
+    if (source != null) {
+      event.overrideSource(source);
+    }
+    doFire(event);
+  }
+
+  /** @return the number of handlers for {@code type} */
+  public int getHandlerCount(final Type<?> type) {
+    int count = 0;
+    for (int i = 0; i < size; i += 2) {
+      if (entries[i] == type && entries[i + 1] != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** @return the number of handlers, of any type */
+  public int getHandlerCount() {
+    int count = 0;
+    for (int i = 1; i < size; i += 2) {
+      if (entries[i] != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private <H extends EventHandler> void doFire(final GwtEvent<H> event) {
+    final Type<H> type = event.getAssociatedType();
+    // read once, so a monitor set mid-fire doesn't see an unbalanced end
+    final Monitor m = monitor;
+    Set<Throwable> causes = null;
+    try {
+      firingDepth++;
+      if (m != null) {
+        m.begin();
+      }
+      // entries may be grown by adds during dispatch, but never shifted while firing
+      final int end = size;
+      for (int i = 0; i < end; i += 2) {
+        if (entries[i] != type) {
+          continue;
+        }
+        @SuppressWarnings("unchecked")
+        final H handler = (H) entries[i + 1];
+        // was the handler unregistered during our iteration?
+        if (handler == null) {
+          continue;
+        }
+        final double start = m == null ? 0 : m.now();
+        try {
+          event.dispatch(handler);
+        } catch (Throwable e) {
+          if (causes == null) {
+            causes = new HashSet<Throwable>();
+          }
+          causes.add(e);
+        }
+        if (m != null) {
+          m.handled(m.now() - start);
+        }
+      }
+      if (causes != null) {
+        throw new UmbrellaException(causes);
+      }
+    } finally {
+      firingDepth--;
+      if (m != null) {
+        m.end(type, event, causes != null);
+      }
+      if (firingDepth == 0 && needsCleaning) {
+        clean();
+      }
+    }
+  }
+
+  private void remove(final Type<?> type, final Object handler) {
+    for (int i = 0; i < size; i += 2) {
+      if (entries[i] == type && entries[i + 1] == handler) {
+        if (firingDepth > 0) {
+          // mark the handler as removed, and shift it out once we're done firing
+          entries[i + 1] = null;
+          needsCleaning = true;
+        } else {
+          System.arraycopy(entries, i + 2, entries, i, size - i - 2);
+          entries[--size] = null;
+          entries[--size] = null;
+        }
+        return;
+      }
+    }
+  }
+
+  private void clean() {
+    needsCleaning = false;
+    int j = 0;
+    for (int i = 0; i < size; i += 2) {
+      if (entries[i + 1] != null) {
+        entries[j++] = entries[i];
+        entries[j++] = entries[i + 1];
+      }
+    }
+    for (int i = j; i < size; i++) {
+      entries[i] = null;
+    }
+    size = j;
+  }
+
+  private void checkNotNull(Object arg, String message) {
+    if (arg == null) {
+      throw new NullPointerException(message);
+    }
+  }
+
+}
@@ -24,6 +24,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
 import com.google.gwt.event.shared.GwtEvent.Type;
 
 /** Simpler implementation of {@link EventBus}.
@@ -38,6 +41,10 @@ import com.google.gwt.event.shared.GwtEvent.Type;
  * changed firing (so firingDepth is already > 0) leads to something wanting
  * to listen to events right away, and not wait until the place change is
  * finished.
+ *
+ * Optionally, events can be {@link #setDeferred(boolean) deferred} to the end of
+ * the event loop, and merged with {@link EventCoalescer}s, e.g. to only deliver
+ * the latest change per source after a bulk update.
  */
 public class SimplerEventBus extends EventBus {
 
@@ -49,6 +56,9 @@ public class SimplerEventBus extends EventBus {
   /** Map of event type to map of event source to list of their handlers. */
   private final Map<GwtEvent.Type<?>, Map<Object, List<?>>> map = new HashMap<GwtEvent.Type<?>, Map<Object, List<?>>>();
 
+  /** Events waiting for the end of the event loop, only allocated if we're ever deferred. */
+  private Deferred deferred;
+
   @Override
   public <H extends EventHandler> HandlerRegistration addHandler(Type<H> type, H handler) {
     checkNotNull(type, "Cannot add a handler with a null type");
@@ -67,14 +77,87 @@ public class SimplerEventBus extends EventBus {
   @Override
   public void fireEvent(GwtEvent<?> event) {
     checkNotNull(event, "Cannot fire null event");
-    doFire(event, null);
+    if (isDeferred()) {
+      deferred.add(event, null);
+    } else {
+      doFire(event, null);
+    }
   }
 
   @Override
   public void fireEventFromSource(GwtEvent<?> event, Object source) {
     checkNotNull(event, "Cannot fire null event");
     checkNotNull(source, "Cannot fire from a null source");
-    doFire(event, source);
+    if (isDeferred()) {
+      deferred.add(event, source);
+    } else {
+      doFire(event, source);
+    }
+  }
+
+  /**
+   * Turns deferred mode on/off, where fired events are queued and delivered at the end of
+   * the current event loop, via {@link Scheduler#scheduleFinally(ScheduledCommand)}.
+   *
+   * Turning deferred mode off delivers any queued events immediately.
+   */
+  public void setDeferred(final boolean deferred) {
+    if (deferred && this.deferred == null) {
+      this.deferred = new Deferred();
+    }
+    if (this.deferred != null) {
+      this.deferred.enabled = deferred;
+      if (!deferred) {
+        flush();
+      }
+    }
+  }
+
+  public boolean isDeferred() {
+    return deferred != null && deferred.enabled;
+  }
+
+  /**
+   * Merges queued events of any of {@code types} from the same source with {@code coalescer}.
+   *
+   * Events fired without a source are merged by {@link EventCoalescer#getKey(GwtEvent)}.
+   *
+   * The merged event is delivered in place of the first queued event. This only applies
+   * in deferred mode, e.g. to keep only the latest change per property.
+   */
+  public void addCoalescer(final EventCoalescer coalescer, final GwtEvent.Type<?>... types) {
+    checkNotNull(coalescer, "Cannot add a null coalescer");
+    if (deferred == null) {
+      deferred = new Deferred();
+    }
+    for (final GwtEvent.Type<?> type : types) {
+      deferred.coalescers.put(type, coalescer);
+    }
+  }
+
+  /** Delivers any deferred events now, instead of waiting for the end of the event loop. */
+  public void flush() {
+    if (deferred == null || deferred.events.isEmpty()) {
+      return;
+    }
+    final ArrayList<GwtEvent<?>> events = deferred.events;
+    final ArrayList<Object> sources = deferred.sources;
+    // handlers may fire more events, which go into a new queue
+    deferred.reset();
+    Set<Throwable> causes = null;
+    for (int i = 0; i < events.size(); i++) {
+      try {
+        doFire(events.get(i), sources.get(i));
+      } catch (UmbrellaException ue) {
+        if (causes == null) {
+          causes = new HashSet<Throwable>();
+        }
+        causes.addAll(ue.getCauses());
+      }
+    }
+    if (causes != null) {
+      throw new UmbrellaException(causes);
+    }
   }
 
   /** Creates new map entries for {@code type}/{@code source} and adds {@code handler}. */
@@ -92,44 +175,64 @@ public class SimplerEventBus extends EventBus {
   }
 
   private <H extends EventHandler> void doFire(GwtEvent<H> event, Object source) {
+    final HandlerList.Monitor monitor = HandlerList.getMonitor();
+    Set<Throwable> causes = null;
     try {
       firingDepth++;
+      if (monitor != null) {
+        monitor.begin();
+      }
 
       if (source != null) {
         // not visible in 2.3
         // event.setSource(source);
       }
 
-      Set<Throwable> causes = null;
-
-      List<H> handlers = getDispatchList(event.getAssociatedType(), source);
-      for (int i = 0; i < handlers.size(); i++) {
-        H handler = handlers.get(i);
-        // was the handler unregistered during our iteration? 
-        if (handler == null) {
-          continue;
-        }
-        try {
-          event.dispatch(handler);
-        } catch (Throwable e) {
-          if (causes == null) {
-            causes = new HashSet<Throwable>();
-          }
-          causes.add(e);
-        }
+      // iterate the live lists instead of a merged copy, so firing doesn't allocate,
+      // and adds/removes (null markers) take effect even for source events
+      if (source != null) {
+        causes = dispatch(event, getHandlerList(event.getAssociatedType(), source), causes, monitor);
       }
+      causes = dispatch(event, getHandlerList(event.getAssociatedType(), null), causes, monitor);
 
       if (causes != null) {
         throw new UmbrellaException(causes);
       }
     } finally {
       firingDepth--;
+      if (monitor != null) {
+        monitor.end(event.getAssociatedType(), event, causes != null);
+      }
       if (firingDepth == 0) {
         executeCleaning();
       }
     }
   }
 
+  /** Dispatches {@code event} to {@code handlers}, skipping removed ones, and collects any exceptions into {@code causes}. */
+  private <H extends EventHandler> Set<Throwable> dispatch(GwtEvent<H> event, List<H> handlers, Set<Throwable> causes, HandlerList.Monitor monitor) {
+    for (int i = 0; i < handlers.size(); i++) {
+      H handler = handlers.get(i);
+      // was the handler unregistered during our iteration? 
+      if (handler == null) {
+        continue;
+      }
+      final double start = monitor == null ? 0 : monitor.now();
+      try {
+        event.dispatch(handler);
+      } catch (Throwable e) {
+        if (causes == null) {
+          causes = new HashSet<Throwable>();
+        }
+        causes.add(e);
+      }
+      if (monitor != null) {
+        monitor.handled(monitor.now() - start);
+      }
+    }
+    return causes;
+  }
+
   private <H> void doRemoveNow(final GwtEvent.Type<H> type, final Object source, final H handler) {
     List<H> l = getHandlerList(type, source);
     if (l.remove(handler) && l.isEmpty()) {
@@ -154,17 +257,6 @@ public class SimplerEventBus extends EventBus {
     }
   }
 
-  private <H> List<H> getDispatchList(GwtEvent.Type<H> type, Object source) {
-    if (source == null) {
-      return getHandlerList(type, null);
-    } else {
-      List<H> all = new ArrayList<H>();
-      all.addAll(getHandlerList(type, source));
-      all.addAll(getHandlerList(type, null));
-      return all;
-    }
-  }
-
   /** @return handlers for {@code type}/{@code source}, has no side-effects if none are registered yet. */
   private <H> List<H> getHandlerList(GwtEvent.Type<H> type, Object source) {
     Map<Object, List<?>> sourceMap = map.get(type);
@@ -226,6 +318,77 @@ public class SimplerEventBus extends EventBus {
     }
   }
 
+  /** The queue of deferred events and their sources, with the positions of events that can be coalesced. */
+  private class Deferred implements ScheduledCommand {
+    private boolean enabled;
+    private boolean scheduled;
+    private final Map<GwtEvent.Type<?>, EventCoalescer> coalescers = new HashMap<GwtEvent.Type<?>, EventCoalescer>();
+    private ArrayList<GwtEvent<?>> events = new ArrayList<GwtEvent<?>>();
+    private ArrayList<Object> sources = new ArrayList<Object>();
+    private final Map<CoalesceKey, Integer> positions = new HashMap<CoalesceKey, Integer>();
+
+    private void add(final GwtEvent<?> event, final Object source) {
+      final EventCoalescer coalescer = coalescers.get(event.getAssociatedType());
+      if (coalescer != null) {
+        final CoalesceKey key = new CoalesceKey(coalescer, source != null ? source : coalescer.getKey(event));
+        final Integer position = positions.get(key);
+        if (position != null) {
+          final GwtEvent<?> merged = coalescer.coalesce(events.get(position), event);
+          if (merged != null) {
+            events.set(position, merged);
+            return;
+          }
+        } else {
+          // later events for this key are merged into the first one queued
+          positions.put(key, events.size());
+        }
+      }
+      events.add(event);
+      sources.add(source);
+      if (!scheduled) {
+        scheduled = true;
+        Scheduler.get().scheduleFinally(this);
+      }
+    }
+
+    @Override
+    public void execute() {
+      flush();
+    }
+
+    private void reset() {
+      scheduled = false;
+      events = new ArrayList<GwtEvent<?>>();
+      sources = new ArrayList<Object>();
+      positions.clear();
+    }
+  }
+
+  /** The coalescer and source (or coalescer's key, for source-less events) that queued events are merged by. */
+  private static class CoalesceKey {
+    private final EventCoalescer coalescer;
+    private final Object source;
+
+    private CoalesceKey(final EventCoalescer coalescer, final Object source) {
+      this.coalescer = coalescer;
+      this.source = source;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof CoalesceKey)) {
+        return false;
+      }
+      final CoalesceKey o = (CoalesceKey) other;
+      return coalescer == o.coalescer && (source == null ? o.source == null : source.equals(o.source));
+    }
+
+    @Override
+    public int hashCode() {
+      return coalescer.hashCode() * 31 + (source == null ? 0 : source.hashCode());
+    }
+  }
+
   private static class ToClean<H> {
     private final GwtEvent.Type<H> type;
     private final Object source;
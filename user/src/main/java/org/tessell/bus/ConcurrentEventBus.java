@@ -0,0 +1,244 @@
+package org.tessell.bus;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.web.bindery.event.shared.Event;
+import com.google.web.bindery.event.shared.Event.Type;
+import com.google.web.bindery.event.shared.EventBus;
+import com.google.web.bindery.event.shared.HandlerRegistration;
+import com.google.web.bindery.event.shared.UmbrellaException;
+
+/**
+ * A thread-safe {@link EventBus}, e.g. for sharing model code across server request threads.
+ *
+ * Like {@link SimplerEventBus}, adds/removes immediately take effect, even if an
+ * event is already firing, and source handlers are called before global handlers.
+ *
+ * Each type/source's handlers are a copy-on-write array, so firing is lock-free
+ * and doesn't allocate. Adds/removes lock only that type/source's handlers. A
+ * removed handler is flagged, so in-progress fires (on any thread) skip it, and
+ * handlers added during a fire are picked up when the fire re-checks the array.
+ *
+ * This is server-side only, and is excluded from the GWT module.
+ */
+public class ConcurrentEventBus extends EventBus {
+
+  /** Map of event type to its global and per-source handlers. */
+  private final ConcurrentMap<Type<?>, TypeHandlers> map = new ConcurrentHashMap<Type<?>, TypeHandlers>();
+
+  @Override
+  public <H> HandlerRegistration addHandler(final Type<H> type, final H handler) {
+    checkNotNull(type, "Cannot add a handler with a null type");
+    checkNotNull(handler, "Cannot add a null handler");
+    return doAdd(type, null, handler);
+  }
+
+  @Override
+  public <H> HandlerRegistration addHandlerToSource(final Type<H> type, final Object source, final H handler) {
+    checkNotNull(type, "Cannot add a handler with a null type");
+    checkNotNull(source, "Cannot add a handler with a null source");
+    checkNotNull(handler, "Cannot add a null handler");
+    return doAdd(type, source, handler);
+  }
+
+  @Override
+  public void fireEvent(final Event<?> event) {
+    checkNotNull(event, "Cannot fire null event");
+    doFire(event, null);
+  }
+
+  @Override
+  public void fireEventFromSource(final Event<?> event, final Object source) {
+    checkNotNull(event, "Cannot fire null event");
+    checkNotNull(source, "Cannot fire from a null source");
+    doFire(event, source);
+  }
+
+  /** @return the number of handlers for {@code type}, across all sources */
+  public int getHandlerCount(final Type<?> type) {
+    final TypeHandlers typeHandlers = map.get(type);
+    if (typeHandlers == null) {
+      return 0;
+    }
+    int count = typeHandlers.global.registrations.length;
+    for (final Handlers handlers : typeHandlers.bySource.values()) {
+      count += handlers.registrations.length;
+    }
+    return count;
+  }
+
+  private <H> HandlerRegistration doAdd(final Type<H> type, final Object source, final H handler) {
+    final Registration registration = new Registration(handler);
+    while (true) {
+      final Handlers handlers = ensureHandlers(type, source);
+      // if the handlers were pruned after we got them, try again with the new ones
+      if (handlers.add(registration)) {
+        return new HandlerRegistration() {
+          public void removeHandler() {
+            if (!registration.removed) {
+              registration.removed = true;
+              if (handlers.remove(registration)) {
+                getTypeHandlers(type).bySource.remove(source, handlers);
+              }
+            }
+          }
+        };
+      }
+    }
+  }
+
+  private <H> void doFire(final Event<H> event, final Object source) {
+    if (source != null) {
+      setSourceOfEvent(event, source);
+    }
+    final TypeHandlers typeHandlers = map.get(event.getAssociatedType());
+    if (typeHandlers == null) {
+      return;
+    }
+    Set<Throwable> causes = null;
+    if (source != null) {
+      final Handlers handlers = typeHandlers.bySource.get(source);
+      if (handlers != null) {
+        causes = dispatch(event, handlers, causes);
+      }
+    }
+    causes = dispatch(event, typeHandlers.global, causes);
+    if (causes != null) {
+      throw new UmbrellaException(causes);
+    }
+  }
+
+  /** Dispatches {@code event} to {@code handlers}, including any added while dispatching, skipping removed ones. */
+  private <H> Set<Throwable> dispatch(final Event<H> event, final Handlers handlers, Set<Throwable> causes) {
+    long dispatched = -1;
+    Registration[] registrations = handlers.registrations;
+    while (true) {
+      // registrations are kept in order they were added, so skip what we've already seen
+      for (final Registration registration : registrations) {
+        if (registration.sequence <= dispatched) {
+          continue;
+        }
+        dispatched = registration.sequence;
+        if (registration.removed) {
+          continue;
+        }
+        try {
+          @SuppressWarnings("unchecked")
+          final H handler = (H) registration.handler;
+          dispatchEvent(event, handler);
+        } catch (Throwable e) {
+          if (causes == null) {
+            causes = new HashSet<Throwable>();
+          }
+          causes.add(e);
+        }
+      }
+      final Registration[] current = handlers.registrations;
+      if (current == registrations) {
+        return causes;
+      }
+      registrations = current;
+    }
+  }
+
+  private Handlers ensureHandlers(final Type<?> type, final Object source) {
+    final TypeHandlers typeHandlers = getTypeHandlers(type);
+    if (source == null) {
+      return typeHandlers.global;
+    }
+    Handlers handlers = typeHandlers.bySource.get(source);
+    if (handlers == null) {
+      final Handlers created = new Handlers(true);
+      handlers = typeHandlers.bySource.putIfAbsent(source, created);
+      if (handlers == null) {
+        handlers = created;
+      }
+    }
+    return handlers;
+  }
+
+  private TypeHandlers getTypeHandlers(final Type<?> type) {
+    TypeHandlers typeHandlers = map.get(type);
+    if (typeHandlers == null) {
+      final TypeHandlers created = new TypeHandlers();
+      typeHandlers = map.putIfAbsent(type, created);
+      if (typeHandlers == null) {
+        typeHandlers = created;
+      }
+    }
+    return typeHandlers;
+  }
+
+  private static void checkNotNull(final Object arg, final String message) {
+    if (arg == null) {
+      throw new NullPointerException(message);
+    }
+  }
+
+  /** A type's handlers, the global ones are never pruned, but per-source ones are once empty. */
+  private static class TypeHandlers {
+    private final Handlers global = new Handlers(false);
+    private final ConcurrentMap<Object, Handlers> bySource = new ConcurrentHashMap<Object, Handlers>();
+  }
+
+  /** A copy-on-write array of registrations, in the order they were added. */
+  private static class Handlers {
+    private static final Registration[] none = new Registration[0];
+    private final boolean prunable;
+    private volatile Registration[] registrations = none;
+    private long nextSequence;
+    private boolean pruned;
+
+    private Handlers(final boolean prunable) {
+      this.prunable = prunable;
+    }
+
+    /** @return false if we've been pruned, and the caller should add to the type/source's new handlers */
+    private synchronized boolean add(final Registration registration) {
+      if (pruned) {
+        return false;
+      }
+      registration.sequence = nextSequence++;
+      final Registration[] grown = new Registration[registrations.length + 1];
+      System.arraycopy(registrations, 0, grown, 0, registrations.length);
+      grown[registrations.length] = registration;
+      registrations = grown;
+      return true;
+    }
+
+    /** @return true if we're now empty and should be pruned */
+    private synchronized boolean remove(final Registration registration) {
+      final Registration[] current = registrations;
+      for (int i = 0; i < current.length; i++) {
+        if (current[i] == registration) {
+          final Registration[] shrunk = new Registration[current.length - 1];
+          System.arraycopy(current, 0, shrunk, 0, i);
+          System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+          registrations = shrunk;
+          break;
+        }
+      }
+      if (prunable && registrations.length == 0) {
+        pruned = true;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /** A handler, with a flag so in-progress fires can skip it once it's removed. */
+  private static class Registration {
+    private final Object handler;
+    // assigned when added, while holding the Handlers lock, so read after the volatile array
+    private long sequence;
+    private volatile boolean removed;
+
+    private Registration(final Object handler) {
+      this.handler = handler;
+    }
+  }
+
+}
@@ -0,0 +1,276 @@
+package org.tessell.bus;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gwt.event.shared.HandlerList;
+
+/**
+ * Records per-event type stats for the {@code SimplerEventBus}es and {@code HandlerList}s.
+ *
+ * Stats are off by default. Once {@link #start()}ed, every fire records, against its
+ * event type, the number of handlers called, how long the handlers took, how deeply
+ * it was nested in other fires, and whether any handlers threw.
+ *
+ * E.g. in a test:
+ *
+ * <pre>
+ * EventBusStats stats = StubWidgetsProvider.installWithStats();
+ * model.name.set("foo");
+ * assertThat(stats.snapshot().get("PropertyChangedEvent").getFires(), is(1));
+ * </pre>
+ *
+ * Times are in millis from {@link #now()}, which subclasses can override for a finer clock.
+ *
+ * Stats are not thread-safe: they assume, like GWT, that events are fired from one thread,
+ * so they're meant for client code and tests. {@link ConcurrentEventBus} doesn't record
+ * stats, and they shouldn't be started while properties are used across server threads.
+ */
+public class EventBusStats implements HandlerList.Monitor {
+
+  // volatile only so start/stop are seen promptly; the counters themselves are single-threaded
+  private static volatile EventBusStats current;
+
+  /** Starts recording stats into a new {@link EventBusStats}, and returns it. */
+  public static EventBusStats start() {
+    return start(new EventBusStats());
+  }
+
+  /** Starts recording stats into {@code stats}, and returns it. */
+  public static EventBusStats start(final EventBusStats stats) {
+    current = stats;
+    HandlerList.setMonitor(stats);
+    return stats;
+  }
+
+  /** Stops recording stats. */
+  public static void stop() {
+    current = null;
+    HandlerList.setMonitor(null);
+  }
+
+  /** @return the stats currently being recorded to, or {@code null} if they're off */
+  public static EventBusStats current() {
+    return current;
+  }
+
+  private final Map<Object, Recorded> byType = new HashMap<Object, Recorded>();
+  // the in-progress fires, innermost last
+  private int depth;
+  private int[] handlers = new int[4];
+  private double[] handlerMillis = new double[4];
+  private double[] maxHandlerMillis = new double[4];
+
+  /** Called by the bus when it starts firing an event. */
+  @Override
+  public void begin() {
+    if (depth == handlers.length) {
+      handlers = grow(handlers);
+      handlerMillis = grow(handlerMillis);
+      maxHandlerMillis = grow(maxHandlerMillis);
+    }
+    handlers[depth] = 0;
+    handlerMillis[depth] = 0;
+    maxHandlerMillis[depth] = 0;
+    depth++;
+  }
+
+  /** Called by the bus after each handler is called, with how long it took (including any nested fires). */
+  @Override
+  public void handled(final double millis) {
+    final int i = depth - 1;
+    handlers[i]++;
+    handlerMillis[i] += millis;
+    if (millis > maxHandlerMillis[i]) {
+      maxHandlerMillis[i] = millis;
+    }
+  }
+
+  /** Called by the bus when it's done firing {@code event} of {@code type}, with whether any handlers threw. */
+  @Override
+  public void end(final Object type, final Object event, final boolean failed) {
+    final int i = --depth;
+    Recorded recorded = byType.get(type);
+    if (recorded == null) {
+      recorded = new Recorded(nameOf(event));
+      byType.put(type, recorded);
+    }
+    recorded.fires++;
+    recorded.handlers += handlers[i];
+    recorded.maxHandlers = Math.max(recorded.maxHandlers, handlers[i]);
+    recorded.handlerMillis += handlerMillis[i];
+    recorded.maxHandlerMillis = Math.max(recorded.maxHandlerMillis, maxHandlerMillis[i]);
+    // depth is 1 for a top-level fire
+    recorded.maxDepth = Math.max(recorded.maxDepth, i + 1);
+    if (failed) {
+      recorded.failures++;
+    }
+  }
+
+  /** @return the current time in millis, for timing handlers */
+  @Override
+  public double now() {
+    return System.currentTimeMillis();
+  }
+
+  /** @return a copy of the stats so far, by event class name (types with the same name are combined) */
+  public Map<String, TypeStats> snapshot() {
+    final Map<String, TypeStats> snapshot = new TreeMap<String, TypeStats>();
+    for (final Recorded recorded : byType.values()) {
+      final TypeStats existing = snapshot.get(recorded.name);
+      snapshot.put(recorded.name, existing == null ? recorded.toStats() : existing.plus(recorded.toStats()));
+    }
+    return snapshot;
+  }
+
+  /** @return the number of times events named {@code name} have fired, or 0 if none have */
+  public int getFires(final String name) {
+    final TypeStats stats = snapshot().get(name);
+    return stats == null ? 0 : stats.getFires();
+  }
+
+  /** @return the total number of fires of all types */
+  public int getTotalFires() {
+    int fires = 0;
+    for (final Recorded recorded : byType.values()) {
+      fires += recorded.fires;
+    }
+    return fires;
+  }
+
+  /** Clears the stats so far, e.g. after a test's setup. */
+  public void reset() {
+    byType.clear();
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    for (final Map.Entry<String, TypeStats> e : snapshot().entrySet()) {
+      sb.append(e.getKey()).append(" ").append(e.getValue()).append("\n");
+    }
+    return sb.toString();
+  }
+
+  private static String nameOf(final Object event) {
+    final String name = event.getClass().getName();
+    return name.substring(name.lastIndexOf('.') + 1);
+  }
+
+  private static int[] grow(final int[] a) {
+    final int[] grown = new int[a.length * 2];
+    System.arraycopy(a, 0, grown, 0, a.length);
+    return grown;
+  }
+
+  private static double[] grow(final double[] a) {
+    final double[] grown = new double[a.length * 2];
+    System.arraycopy(a, 0, grown, 0, a.length);
+    return grown;
+  }
+
+  /** The stats for one event type. */
+  public static class TypeStats {
+    private final int fires;
+    private final int handlers;
+    private final int maxHandlers;
+    private final double handlerMillis;
+    private final double maxHandlerMillis;
+    private final int maxDepth;
+    private final int failures;
+
+    private TypeStats(int fires, int handlers, int maxHandlers, double handlerMillis, double maxHandlerMillis, int maxDepth, int failures) {
+      this.fires = fires;
+      this.handlers = handlers;
+      this.maxHandlers = maxHandlers;
+      this.handlerMillis = handlerMillis;
+      this.maxHandlerMillis = maxHandlerMillis;
+      this.maxDepth = maxDepth;
+      this.failures = failures;
+    }
+
+    /** @return the number of times this type was fired */
+    public int getFires() {
+      return fires;
+    }
+
+    /** @return the total number of handlers called, across all fires */
+    public int getHandlers() {
+      return handlers;
+    }
+
+    /** @return the most handlers called by one fire */
+    public int getMaxHandlers() {
+      return maxHandlers;
+    }
+
+    /** @return the total time spent in handlers, including any nested fires */
+    public double getHandlerMillis() {
+      return handlerMillis;
+    }
+
+    /** @return the longest time spent in one handler */
+    public double getMaxHandlerMillis() {
+      return maxHandlerMillis;
+    }
+
+    /** @return the deepest this type was fired within other fires, 1 being top-level */
+    public int getMaxDepth() {
+      return maxDepth;
+    }
+
+    /** @return the number of fires where handlers threw, i.e. that threw an {@code UmbrellaException} */
+    public int getFailures() {
+      return failures;
+    }
+
+    /** @return the fraction of fires that failed */
+    public double getFailureRate() {
+      return fires == 0 ? 0 : failures / (double) fires;
+    }
+
+    private TypeStats plus(final TypeStats o) {
+      return new TypeStats(
+        fires + o.fires,
+        handlers + o.handlers,
+        Math.max(maxHandlers, o.maxHandlers),
+        handlerMillis + o.handlerMillis,
+        Math.max(maxHandlerMillis, o.maxHandlerMillis),
+        Math.max(maxDepth, o.maxDepth),
+        failures + o.failures);
+    }
+
+    @Override
+    public String toString() {
+      return "fires=" + fires
+        + " handlers=" + handlers
+        + " maxHandlers=" + maxHandlers
+        + " handlerMillis=" + handlerMillis
+        + " maxHandlerMillis=" + maxHandlerMillis
+        + " maxDepth=" + maxDepth
+        + " failures=" + failures;
+    }
+  }
+
+  /** The mutable stats we record into. */
+  private static class Recorded {
+    private final String name;
+    private int fires;
+    private int handlers;
+    private int maxHandlers;
+    private double handlerMillis;
+    private double maxHandlerMillis;
+    private int maxDepth;
+    private int failures;
+
+    private Recorded(final String name) {
+      this.name = name;
+    }
+
+    private TypeStats toStats() {
+      return new TypeStats(fires, handlers, maxHandlers, handlerMillis, maxHandlerMillis, maxDepth, failures);
+    }
+  }
+
+}
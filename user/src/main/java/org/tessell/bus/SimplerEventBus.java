@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.gwt.event.shared.HandlerList;
 import com.google.web.bindery.event.shared.Event;
 import com.google.web.bindery.event.shared.Event.Type;
 import com.google.web.bindery.event.shared.EventBus;
@@ -96,45 +97,63 @@ public class SimplerEventBus extends EventBus {
   }
 
   private <H> void doFire(Event<H> event, Object source) {
+    final HandlerList.Monitor monitor = HandlerList.getMonitor();
+    Set<Throwable> causes = null;
     try {
       firingDepth++;
+      if (monitor != null) {
+        monitor.begin();
+      }
 
       if (source != null) {
-        // TODO Put back in GWT 2.4
-        // setSourceOfEvent(event, source);
+        setSourceOfEvent(event, source);
       }
 
-      Set<Throwable> causes = null;
-
-      List<H> handlers = getDispatchList(event.getAssociatedType(), source);
-      for (int i = 0; i < handlers.size(); i++) {
-        H handler = handlers.get(i);
-        // was the handler unregistered during our iteration? 
-        if (handler == null) {
-          continue;
-        }
-        try {
-          // TODO Put back in GWT 2.4
-          // dispatchEvent(event, handler);
-        } catch (Throwable e) {
-          if (causes == null) {
-            causes = new HashSet<Throwable>();
-          }
-          causes.add(e);
-        }
+      // iterate the live lists instead of a merged copy, so firing doesn't allocate,
+      // and adds/removes (null markers) take effect even for source events
+      if (source != null) {
+        causes = dispatch(event, getHandlerList(event.getAssociatedType(), source), causes, monitor);
       }
+      causes = dispatch(event, getHandlerList(event.getAssociatedType(), null), causes, monitor);
 
       if (causes != null) {
         throw new UmbrellaException(causes);
       }
     } finally {
       firingDepth--;
+      if (monitor != null) {
+        monitor.end(event.getAssociatedType(), event, causes != null);
+      }
       if (firingDepth == 0) {
         executeCleaning();
       }
     }
   }
 
+  /** Dispatches {@code event} to {@code handlers}, skipping removed ones, and collects any exceptions into {@code causes}. */
+  private <H> Set<Throwable> dispatch(Event<H> event, List<H> handlers, Set<Throwable> causes, HandlerList.Monitor monitor) {
+    for (int i = 0; i < handlers.size(); i++) {
+      H handler = handlers.get(i);
+      // was the handler unregistered during our iteration? 
+      if (handler == null) {
+        continue;
+      }
+      final double start = monitor == null ? 0 : monitor.now();
+      try {
+        dispatchEvent(event, handler);
+      } catch (Throwable e) {
+        if (causes == null) {
+          causes = new HashSet<Throwable>();
+        }
+        causes.add(e);
+      }
+      if (monitor != null) {
+        monitor.handled(monitor.now() - start);
+      }
+    }
+    return causes;
+  }
+
   private <H> void doRemoveNow(final Event.Type<H> type, final Object source, final H handler) {
     List<H> l = getHandlerList(type, source);
     if (l.remove(handler) && l.isEmpty()) {
@@ -159,17 +178,6 @@ public class SimplerEventBus extends EventBus {
     }
   }
 
-  private <H> List<H> getDispatchList(Event.Type<H> type, Object source) {
-    if (source == null) {
-      return getHandlerList(type, null);
-    } else {
-      List<H> all = new ArrayList<H>();
-      all.addAll(getHandlerList(type, source));
-      all.addAll(getHandlerList(type, null));
-      return all;
-    }
-  }
-
   /** @return handlers for {@code type}/{@code source}, has no side-effects if none are registered yet. */
   private <H> List<H> getHandlerList(Event.Type<H> type, Object source) {
     Map<Object, List<?>> sourceMap = map.get(type);
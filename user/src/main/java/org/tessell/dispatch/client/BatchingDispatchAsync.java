@@ -0,0 +1,137 @@
+package org.tessell.dispatch.client;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.tessell.dispatch.client.util.OutstandingDispatchAsync;
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.ActionException;
+import org.tessell.dispatch.shared.BatchAction;
+import org.tessell.dispatch.shared.BatchResult;
+import org.tessell.dispatch.shared.Result;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.event.shared.UmbrellaException;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * Collects the actions executed within the same event loop and sends them as one {@link BatchAction}.
+ *
+ * E.g. when several presenters each load their data on bind, this makes one round
+ * trip instead of one per presenter. Each action's result or failure is passed back
+ * to its own callback. A lone action is sent as-is.
+ *
+ * To keep per-action events, wrap this in an {@link OutstandingDispatchAsync}, e.g.
+ * {@code new OutstandingDispatchAsync(eventBus, new BatchingDispatchAsync(new DefaultDispatchAsync(...)))}.
+ */
+public class BatchingDispatchAsync implements DispatchAsync {
+
+  private final DispatchAsync realDispatch;
+  private final Scheduler scheduler;
+  private final List<Queued<?, ?>> queued = new ArrayList<Queued<?, ?>>();
+
+  /** Batches actions sent to {@code realDispatch}, sending them at the end of the event loop. */
+  public BatchingDispatchAsync(final DispatchAsync realDispatch) {
+    this(realDispatch, Scheduler.get());
+  }
+
+  /** Batches actions sent to {@code realDispatch}, sending them on {@code scheduler}'s {@code scheduleFinally}. */
+  public BatchingDispatchAsync(final DispatchAsync realDispatch, final Scheduler scheduler) {
+    this.realDispatch = realDispatch;
+    this.scheduler = scheduler;
+  }
+
+  @Override
+  public <A extends Action<R>, R extends Result> void execute(final A action, final AsyncCallback<R> callback) {
+    queued.add(new Queued<A, R>(action, callback));
+    if (queued.size() == 1) {
+      scheduler.scheduleFinally(new ScheduledCommand() {
+        public void execute() {
+          flush();
+        }
+      });
+    }
+  }
+
+  /** Sends any queued actions now, instead of waiting for the end of the event loop. */
+  public void flush() {
+    if (queued.isEmpty()) {
+      return;
+    }
+    final List<Queued<?, ?>> batch = new ArrayList<Queued<?, ?>>(queued);
+    queued.clear();
+    if (batch.size() == 1) {
+      batch.get(0).send();
+      return;
+    }
+    final List<Action<?>> actions = new ArrayList<Action<?>>();
+    for (final Queued<?, ?> q : batch) {
+      actions.add(q.action);
+    }
+    realDispatch.execute(new BatchAction(actions), new AsyncCallback<BatchResult>() {
+      public void onSuccess(final BatchResult result) {
+        Set<Throwable> causes = null;
+        for (int i = 0; i < batch.size(); i++) {
+          try {
+            final ActionException failure = result.getFailures().get(i);
+            if (failure != null) {
+              batch.get(i).callback.onFailure(failure);
+            } else {
+              batch.get(i).succeed(result.getResults().get(i));
+            }
+          } catch (Throwable t) {
+            // don't let one callback keep the others from being called
+            if (causes == null) {
+              causes = new HashSet<Throwable>();
+            }
+            causes.add(t);
+          }
+        }
+        if (causes != null) {
+          throw new UmbrellaException(causes);
+        }
+      }
+
+      public void onFailure(final Throwable caught) {
+        Set<Throwable> causes = null;
+        for (final Queued<?, ?> q : batch) {
+          try {
+            q.callback.onFailure(caught);
+          } catch (Throwable t) {
+            if (causes == null) {
+              causes = new HashSet<Throwable>();
+            }
+            causes.add(t);
+          }
+        }
+        if (causes != null) {
+          throw new UmbrellaException(causes);
+        }
+      }
+    });
+  }
+
+  /** An action waiting to be sent, and its callback. */
+  private class Queued<A extends Action<R>, R extends Result> {
+    private final A action;
+    private final AsyncCallback<R> callback;
+
+    private Queued(final A action, final AsyncCallback<R> callback) {
+      this.action = action;
+      this.callback = callback;
+    }
+
+    private void send() {
+      realDispatch.execute(action, callback);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void succeed(final Result result) {
+      callback.onSuccess((R) result);
+    }
+  }
+
+}
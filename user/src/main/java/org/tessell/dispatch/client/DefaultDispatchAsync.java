@@ -9,6 +9,7 @@ import org.tessell.dispatch.shared.DispatchServiceAsync;
 import org.tessell.dispatch.shared.Result;
 
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.http.client.Request;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.user.client.rpc.ServiceDefTarget;
 
@@ -34,7 +35,7 @@ public class DefaultDispatchAsync implements DispatchAsync {
     // Append action class name as extra path info
     // http://turbomanage.wordpress.com/2010/03/19/adding-info-to-dispatch-url-for-logs/
     ((ServiceDefTarget) realService).setServiceEntryPoint(baseUrl + substringAfterLast(action.getClass().getName(), "."));
-    realService.execute(sessionId, action, new AsyncCallback<Result>() {
+    final Request request = realService.execute(sessionId, action, new AsyncCallback<Result>() {
       @SuppressWarnings("unchecked")
       public void onSuccess(final Result result) {
         DefaultDispatchAsync.this.onSuccess(action, (R) result, callback);
@@ -44,6 +45,13 @@ public class DefaultDispatchAsync implements DispatchAsync {
         DefaultDispatchAsync.this.onFailure(action, caught, callback);
       }
     });
+    if (callback instanceof DispatchCallback && request != null) {
+      ((DispatchCallback<R>) callback).onRequest(new DispatchRequest() {
+        public void cancel() {
+          request.cancel();
+        }
+      });
+    }
   }
 
   protected <A extends Action<R>, R extends Result> void onFailure(final A action, final Throwable caught, final AsyncCallback<R> callback) {
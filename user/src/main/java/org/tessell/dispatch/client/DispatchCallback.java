@@ -0,0 +1,28 @@
+package org.tessell.dispatch.client;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * A callback that can be told when a {@link PriorityDispatchAsync} queues and sends its action.
+ *
+ * Plain {@link AsyncCallback}s work too, this just lets wrappers like
+ * {@code OutstandingDispatchAsync} pass along a priority, and cancel queued or sent actions.
+ */
+public interface DispatchCallback<R> extends AsyncCallback<R> {
+
+  /** @return the priority to send the action with, or {@code null} for the action type's default */
+  DispatchPriority getPriority();
+
+  /** @return whether the action is no longer wanted, so should not be sent if it's still queued */
+  boolean isCancelled();
+
+  /** Called when the action has to wait for other actions to finish. */
+  void onQueued();
+
+  /** Called when an action that was queued is sent. */
+  void onSent();
+
+  /** Called with a handle to cancel the action once it's been queued or sent, if the dispatch supports it. */
+  void onRequest(DispatchRequest request);
+
+}
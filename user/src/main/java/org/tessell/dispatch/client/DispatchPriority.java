@@ -0,0 +1,15 @@
+package org.tessell.dispatch.client;
+
+/** How soon a {@link PriorityDispatchAsync} should send an action, from most to least urgent. */
+public enum DispatchPriority {
+
+  /** Actions the user is waiting on, e.g. from a button click. */
+  INTERACTIVE,
+
+  /** Actions that load data for what's on the screen, e.g. from a presenter's bind. */
+  LOAD,
+
+  /** Actions for data that may be needed later. */
+  PREFETCH;
+
+}
@@ -0,0 +1,11 @@
+package org.tessell.dispatch.client;
+
+import com.google.gwt.http.client.Request;
+
+/** An action that has been queued or sent, which can be cancelled, e.g. by aborting its GWT-RPC {@link Request}. */
+public interface DispatchRequest {
+
+  /** Cancels the call, after which its callback is never called. */
+  void cancel();
+
+}
@@ -0,0 +1,244 @@
+package org.tessell.dispatch.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.tessell.dispatch.client.util.OutstandingDispatchAsync;
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.Result;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * Limits how many actions are in flight at once, and sends queued actions by {@link DispatchPriority}.
+ *
+ * Browsers only make a few connections per host, so if a page fires a dozen background
+ * loads, a user's click would otherwise wait behind all of them. Here, once
+ * {@code maxInFlight} actions are outstanding (or others are already waiting), new actions
+ * wait, and as each call returns the most urgent queued action is sent next, first-in
+ * first-out within a priority.
+ *
+ * An action's priority comes from its {@link DispatchCallback}, otherwise from
+ * {@link #setPriority(Class, DispatchPriority)}, otherwise {@link DispatchPriority#LOAD}.
+ * Queued actions are given a {@link DispatchRequest} that takes them out of the queue when
+ * cancelled, and sent actions whose {@link DispatchRequest} is cancelled free up their slot
+ * right away. Queued actions whose {@link DispatchCallback} says it's cancelled are also
+ * dropped without being sent.
+ *
+ * Use with {@link OutstandingDispatchAsync#scope(DispatchPriority)} to set priorities and
+ * fire queued/sent events, e.g.
+ * {@code new OutstandingDispatchAsync(eventBus, new PriorityDispatchAsync(new DefaultDispatchAsync(...), 4))}.
+ */
+public class PriorityDispatchAsync implements DispatchAsync {
+
+  private final DispatchAsync realDispatch;
+  private final int maxInFlight;
+  private final Map<Class<?>, DispatchPriority> priorities = new HashMap<Class<?>, DispatchPriority>();
+  // one queue per priority, by ordinal
+  private final List<LinkedList<Queued<?, ?>>> queues = new ArrayList<LinkedList<Queued<?, ?>>>();
+  private DispatchPriority defaultPriority = DispatchPriority.LOAD;
+  private int inFlight;
+
+  /** Sends at most {@code maxInFlight} actions to {@code realDispatch} at once. */
+  public PriorityDispatchAsync(final DispatchAsync realDispatch, final int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be at least 1: " + maxInFlight);
+    }
+    this.realDispatch = realDispatch;
+    this.maxInFlight = maxInFlight;
+    for (int i = 0; i < DispatchPriority.values().length; i++) {
+      queues.add(new LinkedList<Queued<?, ?>>());
+    }
+  }
+
+  @Override
+  public <A extends Action<R>, R extends Result> void execute(final A action, final AsyncCallback<R> callback) {
+    final Queued<A, R> queued = new Queued<A, R>(action, callback);
+    if (inFlight < maxInFlight && !hasQueued()) {
+      queued.send();
+      return;
+    }
+    queued.queueIn(queues.get(priorityOf(action, callback).ordinal()));
+    // e.g. from a callback, which has freed its slot, so compete with what's already queued
+    sendNext();
+  }
+
+  /** Sets the priority for {@code actionType} when its callback doesn't have one. */
+  public void setPriority(final Class<?> actionType, final DispatchPriority priority) {
+    priorities.put(actionType, priority);
+  }
+
+  /** Sets the priority for action types without their own, defaults to {@link DispatchPriority#LOAD}. */
+  public void setDefaultPriority(final DispatchPriority defaultPriority) {
+    this.defaultPriority = defaultPriority;
+  }
+
+  /** @return the number of actions that have been sent but not returned */
+  public int getInFlightCount() {
+    return inFlight;
+  }
+
+  /** @return the number of actions waiting to be sent, not counting cancelled ones */
+  public int getQueuedCount() {
+    int count = 0;
+    for (final LinkedList<Queued<?, ?>> queue : queues) {
+      for (final Queued<?, ?> queued : queue) {
+        if (!queued.isCancelled()) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  private DispatchPriority priorityOf(final Action<?> action, final AsyncCallback<?> callback) {
+    if (callback instanceof DispatchCallback && ((DispatchCallback<?>) callback).getPriority() != null) {
+      return ((DispatchCallback<?>) callback).getPriority();
+    }
+    final DispatchPriority priority = priorities.get(action.getClass());
+    return priority == null ? defaultPriority : priority;
+  }
+
+  private void sendNext() {
+    while (inFlight < maxInFlight) {
+      final Queued<?, ?> next = poll();
+      if (next == null) {
+        return;
+      }
+      next.sendQueued();
+    }
+  }
+
+  /** @return whether any queued action is still wanted, dropping cancelled ones we come across */
+  private boolean hasQueued() {
+    for (final LinkedList<Queued<?, ?>> queue : queues) {
+      while (!queue.isEmpty()) {
+        if (!queue.getFirst().isCancelled()) {
+          return true;
+        }
+        queue.removeFirst();
+      }
+    }
+    return false;
+  }
+
+  /** @return the most urgent queued action that's still wanted, or {@code null} */
+  private Queued<?, ?> poll() {
+    for (final LinkedList<Queued<?, ?>> queue : queues) {
+      while (!queue.isEmpty()) {
+        final Queued<?, ?> next = queue.removeFirst();
+        if (!next.isCancelled()) {
+          return next;
+        }
+      }
+    }
+    return null;
+  }
+
+  /** An action and its callback, which frees up its slot when the call returns or is cancelled. */
+  private class Queued<A extends Action<R>, R extends Result> implements DispatchCallback<R> {
+    private final A action;
+    private final AsyncCallback<R> callback;
+    private boolean done;
+
+    private Queued(final A action, final AsyncCallback<R> callback) {
+      this.action = action;
+      this.callback = callback;
+    }
+
+    private void send() {
+      inFlight++;
+      realDispatch.execute(action, this);
+    }
+
+    /** Adds us to {@code queue}, and gives the caller a request that takes us back out if it's cancelled. */
+    private void queueIn(final LinkedList<Queued<?, ?>> queue) {
+      queue.add(this);
+      onQueued();
+      if (callback instanceof DispatchCallback) {
+        ((DispatchCallback<R>) callback).onRequest(new DispatchRequest() {
+          public void cancel() {
+            queue.remove(Queued.this);
+          }
+        });
+      }
+    }
+
+    private void sendQueued() {
+      onSent();
+      send();
+    }
+
+    public void onSuccess(final R result) {
+      if (!finish()) {
+        return;
+      }
+      try {
+        callback.onSuccess(result);
+      } finally {
+        // after the callback, so any actions it makes compete by priority
+        sendNext();
+      }
+    }
+
+    public void onFailure(final Throwable caught) {
+      if (!finish()) {
+        return;
+      }
+      try {
+        callback.onFailure(caught);
+      } finally {
+        sendNext();
+      }
+    }
+
+    public DispatchPriority getPriority() {
+      return callback instanceof DispatchCallback ? ((DispatchCallback<R>) callback).getPriority() : null;
+    }
+
+    public boolean isCancelled() {
+      return callback instanceof DispatchCallback && ((DispatchCallback<R>) callback).isCancelled();
+    }
+
+    public void onQueued() {
+      if (callback instanceof DispatchCallback) {
+        ((DispatchCallback<R>) callback).onQueued();
+      }
+    }
+
+    public void onSent() {
+      if (callback instanceof DispatchCallback) {
+        ((DispatchCallback<R>) callback).onSent();
+      }
+    }
+
+    /** Passes along the request, freeing our slot if it's cancelled. */
+    public void onRequest(final DispatchRequest request) {
+      if (!(callback instanceof DispatchCallback)) {
+        return;
+      }
+      ((DispatchCallback<R>) callback).onRequest(new DispatchRequest() {
+        public void cancel() {
+          request.cancel();
+          if (finish()) {
+            sendNext();
+          }
+        }
+      });
+    }
+
+    /** @return whether this is the first time the call finished, and so its slot was freed */
+    private boolean finish() {
+      if (done) {
+        return false;
+      }
+      done = true;
+      inFlight--;
+      return true;
+    }
+  }
+
+}
@@ -0,0 +1,87 @@
+package org.tessell.dispatch.client;
+
+import org.tessell.dispatch.shared.ActionOverloadedException;
+
+import com.google.gwt.user.client.rpc.InvocationException;
+
+/**
+ * How {@link RetryingDispatchAsync} retries an action: how many times, and with what backoff.
+ *
+ * The delay starts at {@code initialDelay}, is multiplied by {@code multiplier} for each
+ * retry up to {@code maxDelay}, and then reduced by a random amount of up to {@code jitter}
+ * (as a fraction), so clients that failed together don't all retry together.
+ *
+ * E.g. {@code new RetryPolicy().maxAttempts(5).initialDelay(250).maxDelay(5000)}.
+ */
+public class RetryPolicy {
+
+  private int maxAttempts = 3;
+  private int initialDelayMillis = 500;
+  private int maxDelayMillis = 10000;
+  private double multiplier = 2;
+  private double jitter = 0.5;
+
+  /** Sets the total number of attempts, including the first, defaults to 3. */
+  public RetryPolicy maxAttempts(final int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+    return this;
+  }
+
+  /** Sets the delay before the first retry, defaults to 500ms. */
+  public RetryPolicy initialDelay(final int initialDelayMillis) {
+    this.initialDelayMillis = initialDelayMillis;
+    return this;
+  }
+
+  /** Sets the longest delay between retries, defaults to 10 seconds. */
+  public RetryPolicy maxDelay(final int maxDelayMillis) {
+    this.maxDelayMillis = maxDelayMillis;
+    return this;
+  }
+
+  /** Sets how much the delay grows with each retry, defaults to 2. */
+  public RetryPolicy multiplier(final double multiplier) {
+    this.multiplier = multiplier;
+    return this;
+  }
+
+  /** Sets the fraction of the delay to randomly take off, defaults to 0.5. */
+  public RetryPolicy jitter(final double jitter) {
+    this.jitter = jitter;
+    return this;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * @return whether {@code caught} is transient, by default network/HTTP failures and server overload
+   *
+   * Other {@code ActionException}s mean the server ran the action and it failed, so aren't retried.
+   */
+  public boolean isRetryable(final Throwable caught) {
+    return caught instanceof InvocationException || caught instanceof ActionOverloadedException;
+  }
+
+  /**
+   * @param attempt
+   *          the attempt that just failed, starting at 1
+   * @param random
+   *          a random number between 0 and 1
+   * @return the delay before the next attempt
+   */
+  public int getDelayMillis(final int attempt, final double random, final Throwable caught) {
+    double delay = initialDelayMillis;
+    for (int i = 1; i < attempt && delay < maxDelayMillis; i++) {
+      delay *= multiplier;
+    }
+    delay = Math.min(delay, maxDelayMillis) * (1 - jitter * random);
+    if (caught instanceof ActionOverloadedException) {
+      // wait at least as long as the server asked
+      delay = Math.max(delay, ((ActionOverloadedException) caught).getRetryAfterMillis());
+    }
+    return (int) delay;
+  }
+
+}
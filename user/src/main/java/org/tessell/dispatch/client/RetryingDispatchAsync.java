@@ -0,0 +1,160 @@
+package org.tessell.dispatch.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.tessell.dispatch.client.util.OutstandingDispatchAsync;
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.IdempotencyKeyedAction;
+import org.tessell.dispatch.shared.IdempotentAction;
+import org.tessell.dispatch.shared.Result;
+import org.tessell.gwt.user.client.IsTimer;
+import org.tessell.widgets.Widgets;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * Retries actions that failed for transient reasons, e.g. a dropped connection, with exponential backoff.
+ *
+ * Only {@link IdempotentAction}s and {@link IdempotencyKeyedAction}s are retried; the latter
+ * are given a key before their first send, so the server can tell a retry from a new write.
+ * Retries are scheduled with {@link IsTimer}s, so tests can drive them with {@code StubTimer}s.
+ *
+ * The callback only sees the last attempt's failure. To keep one set of events per call,
+ * wrap this in an {@link OutstandingDispatchAsync}, e.g.
+ * {@code new OutstandingDispatchAsync(eventBus, new RetryingDispatchAsync(new DefaultDispatchAsync(...)))}.
+ */
+public class RetryingDispatchAsync implements DispatchAsync {
+
+  private final DispatchAsync realDispatch;
+  private final Map<Class<?>, RetryPolicy> policies = new HashMap<Class<?>, RetryPolicy>();
+  private RetryPolicy defaultPolicy = new RetryPolicy();
+  private int keys;
+
+  public RetryingDispatchAsync(final DispatchAsync realDispatch) {
+    this.realDispatch = realDispatch;
+  }
+
+  @Override
+  public <A extends Action<R>, R extends Result> void execute(final A action, final AsyncCallback<R> callback) {
+    if (action instanceof IdempotencyKeyedAction && ((IdempotencyKeyedAction) action).getIdempotencyKey() == null) {
+      ((IdempotencyKeyedAction) action).setIdempotencyKey(newIdempotencyKey());
+    }
+    final RetryPolicy policy = policyFor(action);
+    if (policy == null) {
+      realDispatch.execute(action, callback);
+    } else {
+      new Attempt<A, R>(action, callback, policy).send();
+    }
+  }
+
+  /** Sets the policy for {@code actionType}, or {@code null} to never retry it. */
+  public void setRetryPolicy(final Class<?> actionType, final RetryPolicy policy) {
+    policies.put(actionType, policy);
+  }
+
+  /** Sets the policy for action types without their own, or {@code null} to only retry those with one. */
+  public void setDefaultRetryPolicy(final RetryPolicy defaultPolicy) {
+    this.defaultPolicy = defaultPolicy;
+  }
+
+  /** @return a new timer, for tests to override */
+  protected IsTimer newTimer(final Runnable runnable) {
+    return Widgets.newTimer(runnable);
+  }
+
+  /** @return a random number between 0 and 1 for jitter, for tests to override */
+  protected double random() {
+    return Math.random();
+  }
+
+  /** @return a key that's unique enough across clients, the server also scopes keys by session */
+  protected String newIdempotencyKey() {
+    return Long.toString((long) (random() * Long.MAX_VALUE), 36) + "-" + Long.toString(System.currentTimeMillis(), 36) + "-" + ++keys;
+  }
+
+  private RetryPolicy policyFor(final Action<?> action) {
+    if (!(action instanceof IdempotentAction || action instanceof IdempotencyKeyedAction)) {
+      return null;
+    }
+    if (policies.containsKey(action.getClass())) {
+      return policies.get(action.getClass());
+    }
+    return defaultPolicy;
+  }
+
+  /** Sends an action, and, if it fails, schedules the next attempt, unless the caller cancels. */
+  private class Attempt<A extends Action<R>, R extends Result> implements DispatchCallback<R>, Runnable {
+    private final A action;
+    private final AsyncCallback<R> callback;
+    private final RetryPolicy policy;
+    private int attempt = 1;
+    private boolean cancelled;
+
+    private Attempt(final A action, final AsyncCallback<R> callback, final RetryPolicy policy) {
+      this.action = action;
+      this.callback = callback;
+      this.policy = policy;
+    }
+
+    private void send() {
+      realDispatch.execute(action, this);
+    }
+
+    public void onSuccess(final R result) {
+      callback.onSuccess(result);
+    }
+
+    public void onFailure(final Throwable caught) {
+      if (attempt >= policy.getMaxAttempts() || !policy.isRetryable(caught)) {
+        callback.onFailure(caught);
+        return;
+      }
+      final int delay = policy.getDelayMillis(attempt, random(), caught);
+      attempt++;
+      newTimer(this).schedule(delay);
+    }
+
+    /** Called by the timer to retry. */
+    public void run() {
+      if (!cancelled && !isCancelled()) {
+        send();
+      }
+    }
+
+    public DispatchPriority getPriority() {
+      return callback instanceof DispatchCallback ? ((DispatchCallback<R>) callback).getPriority() : null;
+    }
+
+    public boolean isCancelled() {
+      return callback instanceof DispatchCallback && ((DispatchCallback<R>) callback).isCancelled();
+    }
+
+    /** Only passed along for the first attempt, so the caller sees one queued/sent per call. */
+    public void onQueued() {
+      if (attempt == 1 && callback instanceof DispatchCallback) {
+        ((DispatchCallback<R>) callback).onQueued();
+      }
+    }
+
+    public void onSent() {
+      if (attempt == 1 && callback instanceof DispatchCallback) {
+        ((DispatchCallback<R>) callback).onSent();
+      }
+    }
+
+    /** Passes along each attempt's request, and stops retrying once it's cancelled. */
+    public void onRequest(final DispatchRequest request) {
+      if (!(callback instanceof DispatchCallback)) {
+        return;
+      }
+      ((DispatchCallback<R>) callback).onRequest(new DispatchRequest() {
+        public void cancel() {
+          cancelled = true;
+          request.cancel();
+        }
+      });
+    }
+  }
+
+}
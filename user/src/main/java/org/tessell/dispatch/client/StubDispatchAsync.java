@@ -15,7 +15,16 @@ public class StubDispatchAsync implements DispatchAsync {
 
   @Override
   public <A extends Action<R>, R extends Result> void execute(final A action, final AsyncCallback<R> callback) {
-    calls.add(new StubAsyncCallback<A, R>(action, callback));
+    final StubAsyncCallback<A, R> call = new StubAsyncCallback<A, R>(action, callback);
+    calls.add(call);
+    if (callback instanceof DispatchCallback) {
+      ((DispatchCallback<R>) callback).onRequest(new DispatchRequest() {
+        public void cancel() {
+          call.outstanding = false;
+          call.cancelled = true;
+        }
+      });
+    }
   }
 
   /** @return all calls for assertions */
@@ -85,6 +94,7 @@ public class StubDispatchAsync implements DispatchAsync {
   public class StubAsyncCallback<A extends Action<R>, R extends Result> implements AsyncCallback<R> {
 
     public boolean outstanding = true;
+    public boolean cancelled = false;
     public final A action;
     private final AsyncCallback<R> callback;
 
@@ -1,19 +1,34 @@
 package org.tessell.dispatch.client.util;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.tessell.dispatch.client.DefaultDispatchAsync;
 import org.tessell.dispatch.client.DispatchAsync;
+import org.tessell.dispatch.client.DispatchCallback;
+import org.tessell.dispatch.client.DispatchPriority;
+import org.tessell.dispatch.client.DispatchRequest;
+import org.tessell.dispatch.client.PriorityDispatchAsync;
 import org.tessell.dispatch.client.SuccessCallback;
 import org.tessell.dispatch.client.events.DispatchActionEvent;
+import org.tessell.dispatch.client.events.DispatchCancelledEvent;
 import org.tessell.dispatch.client.events.DispatchFailureEvent;
+import org.tessell.dispatch.client.events.DispatchQueuedEvent;
 import org.tessell.dispatch.client.events.DispatchResultEvent;
+import org.tessell.dispatch.client.events.DispatchSentEvent;
 import org.tessell.dispatch.client.events.DispatchUnhandledFailureEvent;
 import org.tessell.dispatch.shared.Action;
 import org.tessell.dispatch.shared.Result;
 
+import com.google.gwt.event.shared.UmbrellaException;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.web.bindery.event.shared.EventBus;
+import com.google.web.bindery.event.shared.HandlerRegistration;
 
 /**
  * Fires events outstanding dispatch calls so tests can know when to continue.
@@ -22,12 +37,28 @@ import com.google.web.bindery.event.shared.EventBus;
  * {@link DispatchResultEvent} is fired on success.
  * {@link DispatchFailureEvent} is fired on every failure.
  * {@link DispatchUnhandledFailureEvent} is fired on failures when a SuccessCallback was used.
+ *
+ * When the real dispatch is a {@link PriorityDispatchAsync}, {@link DispatchQueuedEvent} is fired
+ * when a call has to wait, and then either {@link DispatchSentEvent} when it's sent, or
+ * {@link DispatchCancelledEvent} if its {@link Scope} cancels it first. A {@link Scope} can also
+ * cancel calls that were sent, which fires {@link DispatchCancelledEvent} instead of a result.
+ *
+ * If {@link #setCoalescing(boolean)} is on, executing an action that is equal to an
+ * outstanding one doesn't make another call; the caller's callback is attached to the
+ * outstanding call and gets the same result or failure. Each caller still gets its own events.
  */
 public class OutstandingDispatchAsync implements DispatchAsync {
 
   protected final EventBus eventBus;
   protected final DispatchAsync realDispatch;
-  protected final ArrayList<Action<?>> outstanding = new ArrayList<Action<?>>();
+  // the number of outstanding calls, by action type
+  private final Map<Class<?>, Integer> outstanding = new HashMap<Class<?>, Integer>();
+  // the calls that have not returned, in the order they were made
+  private final Set<Tracking<?>> outstandingCalls = new LinkedHashSet<Tracking<?>>();
+  private int queuedCount;
+  // calls that identical actions can join, only used while coalescing
+  private final Map<Action<?>, Joined<?>> joinable = new HashMap<Action<?>, Joined<?>>();
+  private boolean coalescing;
 
   /** Fires events on {@code eventBus} with a {@link DefaultDispatchAsync}. */
   public OutstandingDispatchAsync(EventBus eventBus) {
@@ -68,15 +99,7 @@ public class OutstandingDispatchAsync implements DispatchAsync {
    *          the in-progress message to include in the {@link DispatchActionEvent}/{@link DispatchResultEvent} events
    */
   public <A extends Action<R>, R extends Result> void execute(final A action, final SuccessCallback<R> success, final String message) {
-    execute(action, new AsyncCallback<R>() {
-      public void onSuccess(final R result) {
-        success.onSuccess(result);
-      }
-
-      public void onFailure(final Throwable caught) {
-        eventBus.fireEvent(new DispatchUnhandledFailureEvent(action, caught, message));
-      }
-    }, message);
+    execute(action, unhandled(action, success, message), message);
   }
 
   /**
@@ -90,21 +113,46 @@ public class OutstandingDispatchAsync implements DispatchAsync {
    *          the in-progress message to include in the {@link DispatchActionEvent}/{@link DispatchResultEvent} events
    */
   public <A extends Action<R>, R extends Result> void execute(final A action, final AsyncCallback<R> callback, final String message) {
-    outstanding.add(action);
+    execute(action, callback, message, null);
+  }
+
+  /**
+   * @return a {@link Scope} that executes actions at {@code priority}, and can cancel its queued actions
+   *
+   * E.g. a presenter can load its data with {@code registerHandler(loads = async.scope(DispatchPriority.LOAD))},
+   * so its actions that are still queued when it's unbound are never sent.
+   */
+  public Scope scope(final DispatchPriority priority) {
+    return new Scope(priority);
+  }
+
+  private <A extends Action<R>, R extends Result> void execute(final A action, final AsyncCallback<R> callback, final String message, final Scope scope) {
+    final Tracking<R> tracking = new Tracking<R>(action, callback, message, scope);
+    added(tracking);
     eventBus.fireEvent(new DispatchActionEvent(action, message));
-    realDispatch.execute(action, new AsyncCallback<R>() {
-      public void onSuccess(final R result) {
-        outstanding.remove(action);
-        eventBus.fireEvent(new DispatchResultEvent(action, result, message));
-        callback.onSuccess(result);
-      }
+    if (!coalescing) {
+      realDispatch.execute(action, tracking);
+      return;
+    }
+    @SuppressWarnings("unchecked")
+    final Joined<R> existing = (Joined<R>) joinable.get(action);
+    if (existing != null) {
+      existing.join(tracking);
+      return;
+    }
+    final Joined<R> joined = new Joined<R>(action);
+    joined.join(tracking);
+    joinable.put(action, joined);
+    realDispatch.execute(action, joined);
+  }
 
-      public void onFailure(final Throwable caught) {
-        outstanding.remove(action);
-        eventBus.fireEvent(new DispatchFailureEvent(action, caught, message));
-        callback.onFailure(caught);
-      }
-    });
+  /** Sets whether identical actions join an outstanding call instead of making their own, defaults to false. */
+  public void setCoalescing(final boolean coalescing) {
+    this.coalescing = coalescing;
+  }
+
+  public boolean isCoalescing() {
+    return coalescing;
   }
 
   public void unhandledFailure(Throwable caught) {
@@ -113,12 +161,329 @@ public class OutstandingDispatchAsync implements DispatchAsync {
 
   /** @return whether there are action calls that have not returned from the server for {@code actionType} */
   public <A extends Action<R>, R extends Result> boolean hasOutstanding(final Class<A> actionType) {
-    for (final Action<?> action : outstanding) {
-      if (action.getClass().equals(actionType)) {
-        return true;
+    return outstanding.containsKey(actionType);
+  }
+
+  /** @return the number of action calls that have not returned from the server, counting joined calls separately */
+  public int getOutstandingCount() {
+    return outstandingCalls.size();
+  }
+
+  /** @return the actions of calls that have not returned from the server, counting joined calls separately */
+  protected ArrayList<Action<?>> getOutstanding() {
+    final ArrayList<Action<?>> actions = new ArrayList<Action<?>>();
+    for (final Tracking<?> tracking : outstandingCalls) {
+      actions.add(tracking.action);
+    }
+    return actions;
+  }
+
+  /** @return the number of outstanding calls that a {@link PriorityDispatchAsync} has queued and not sent yet */
+  public int getQueuedCount() {
+    return queuedCount;
+  }
+
+  private <A extends Action<R>, R extends Result> AsyncCallback<R> unhandled(final A action, final SuccessCallback<R> success, final String message) {
+    return new AsyncCallback<R>() {
+      public void onSuccess(final R result) {
+        success.onSuccess(result);
+      }
+
+      public void onFailure(final Throwable caught) {
+        eventBus.fireEvent(new DispatchUnhandledFailureEvent(action, caught, message));
+      }
+    };
+  }
+
+  private void added(final Tracking<?> tracking) {
+    final Class<?> type = tracking.action.getClass();
+    final Integer count = outstanding.get(type);
+    outstanding.put(type, count == null ? 1 : count + 1);
+    outstandingCalls.add(tracking);
+  }
+
+  private void removed(final Tracking<?> tracking) {
+    if (!outstandingCalls.remove(tracking)) {
+      return; // a callback was called twice
+    }
+    final Class<?> type = tracking.action.getClass();
+    final Integer count = outstanding.get(type);
+    if (count == 1) {
+      outstanding.remove(type);
+    } else {
+      outstanding.put(type, count - 1);
+    }
+  }
+
+  /** Fires the events for one call, and passes its result to the caller's callback unless it was cancelled. */
+  private class Tracking<R extends Result> implements DispatchCallback<R> {
+    private final Action<?> action;
+    private final AsyncCallback<R> callback;
+    private final String message;
+    private final Scope scope;
+    private DispatchRequest request;
+    private boolean queued;
+    private boolean done;
+
+    private Tracking(final Action<?> action, final AsyncCallback<R> callback, final String message, final Scope scope) {
+      this.action = action;
+      this.callback = callback;
+      this.message = message;
+      this.scope = scope;
+      if (scope != null) {
+        scope.pending.add(this);
+      }
+    }
+
+    public void onSuccess(final R result) {
+      if (!finish()) {
+        return; // cancelled
+      }
+      eventBus.fireEvent(new DispatchResultEvent(action, result, message));
+      callback.onSuccess(result);
+    }
+
+    public void onFailure(final Throwable caught) {
+      if (!finish()) {
+        return;
+      }
+      eventBus.fireEvent(new DispatchFailureEvent(action, caught, message));
+      callback.onFailure(caught);
+    }
+
+    public DispatchPriority getPriority() {
+      return scope == null ? null : scope.priority;
+    }
+
+    public boolean isCancelled() {
+      return done;
+    }
+
+    public void onQueued() {
+      if (queued || done) {
+        return;
+      }
+      queued = true;
+      queuedCount++;
+      eventBus.fireEvent(new DispatchQueuedEvent(action, message));
+    }
+
+    public void onSent() {
+      if (dequeued()) {
+        eventBus.fireEvent(new DispatchSentEvent(action, message));
+      }
+    }
+
+    public void onRequest(final DispatchRequest request) {
+      this.request = request;
+    }
+
+    /** Cancels the call if it hasn't returned, so the callback is never called, and unqueues or aborts its request. */
+    private void cancel() {
+      if (!finish()) {
+        return;
+      }
+      eventBus.fireEvent(new DispatchCancelledEvent(action, message));
+      if (request != null) {
+        request.cancel();
+      }
+    }
+
+    /** @return whether this is the first time the call finished, so it's no longer outstanding */
+    private boolean finish() {
+      if (done) {
+        return false;
+      }
+      dequeued();
+      done = true;
+      removed(this);
+      if (scope != null) {
+        scope.pending.remove(this);
+      }
+      return true;
+    }
+
+    /** @return whether we were queued, and so now aren't */
+    private boolean dequeued() {
+      if (!queued) {
+        return false;
+      }
+      queued = false;
+      queuedCount--;
+      return true;
+    }
+  }
+
+  /** A call made for one action that identical actions have joined, so fans out its result to each of their callbacks. */
+  private class Joined<R extends Result> implements DispatchCallback<R> {
+    private final Action<?> action;
+    private final List<Tracking<R>> callbacks = new ArrayList<Tracking<R>>();
+    private DispatchRequest request;
+    private boolean queued;
+
+    private Joined(final Action<?> action) {
+      this.action = action;
+    }
+
+    private void join(final Tracking<R> tracking) {
+      callbacks.add(tracking);
+      if (queued) {
+        tracking.onQueued();
+      }
+      if (request != null) {
+        tracking.onRequest(shared());
+      }
+    }
+
+    public void onSuccess(final R result) {
+      Set<Throwable> causes = null;
+      for (final AsyncCallback<R> callback : done()) {
+        try {
+          callback.onSuccess(result);
+        } catch (Throwable t) {
+          // don't let one callback keep the others from being called
+          if (causes == null) {
+            causes = new HashSet<Throwable>();
+          }
+          causes.add(t);
+        }
+      }
+      if (causes != null) {
+        throw new UmbrellaException(causes);
+      }
+    }
+
+    public void onFailure(final Throwable caught) {
+      Set<Throwable> causes = null;
+      for (final AsyncCallback<R> callback : done()) {
+        try {
+          callback.onFailure(caught);
+        } catch (Throwable t) {
+          if (causes == null) {
+            causes = new HashSet<Throwable>();
+          }
+          causes.add(t);
+        }
       }
+      if (causes != null) {
+        throw new UmbrellaException(causes);
+      }
+    }
+
+    /** @return the most urgent priority of the joined callers */
+    public DispatchPriority getPriority() {
+      DispatchPriority priority = null;
+      for (final Tracking<R> callback : callbacks) {
+        final DispatchPriority p = callback.getPriority();
+        if (p != null && (priority == null || p.ordinal() < priority.ordinal())) {
+          priority = p;
+        }
+      }
+      return priority;
+    }
+
+    /** @return whether every joined caller has cancelled, in which case later identical actions make a new call */
+    public boolean isCancelled() {
+      for (final Tracking<R> callback : callbacks) {
+        if (!callback.isCancelled()) {
+          return false;
+        }
+      }
+      done();
+      return true;
+    }
+
+    public void onQueued() {
+      queued = true;
+      for (final Tracking<R> callback : callbacks) {
+        callback.onQueued();
+      }
+    }
+
+    public void onSent() {
+      queued = false;
+      for (final Tracking<R> callback : callbacks) {
+        callback.onSent();
+      }
+    }
+
+    public void onRequest(final DispatchRequest request) {
+      this.request = request;
+      for (final Tracking<R> callback : callbacks) {
+        callback.onRequest(shared());
+      }
+    }
+
+    /** @return a request for one caller, which only cancels the call once every caller has */
+    private DispatchRequest shared() {
+      return new DispatchRequest() {
+        public void cancel() {
+          if (isCancelled()) {
+            request.cancel();
+          }
+        }
+      };
+    }
+
+    /** @return the callbacks to call, after making sure later identical actions make a new call */
+    private List<Tracking<R>> done() {
+      if (joinable.get(action) == this) {
+        joinable.remove(action);
+      }
+      return callbacks;
+    }
+  }
+
+  /**
+   * Executes actions at a {@link DispatchPriority}, and can cancel them before they return.
+   *
+   * This is a {@link HandlerRegistration}, so presenters can {@code registerHandler} it to
+   * cancel their queued actions on unbind. Actions that have already been sent are unaffected,
+   * unless {@link #cancel()} is called, e.g. when a newer search supersedes them.
+   */
+  public class Scope implements DispatchAsync, HandlerRegistration {
+    private final DispatchPriority priority;
+    private final List<Tracking<?>> pending = new ArrayList<Tracking<?>>();
+
+    private Scope(final DispatchPriority priority) {
+      this.priority = priority;
+    }
+
+    @Override
+    public <A extends Action<R>, R extends Result> void execute(final A action, final AsyncCallback<R> callback) {
+      OutstandingDispatchAsync.this.execute(action, callback, null, this);
+    }
+
+    /** Executes {@code action}, firing a {@link DispatchUnhandledFailureEvent} on failure. */
+    public <A extends Action<R>, R extends Result> void execute(final A action, final SuccessCallback<R> success) {
+      OutstandingDispatchAsync.this.execute(action, unhandled(action, success, null), null, this);
+    }
+
+    public DispatchPriority getPriority() {
+      return priority;
+    }
+
+    /** Cancels the actions that are still queued, so they are never sent and their callbacks never called. */
+    public void cancelQueued() {
+      for (final Tracking<?> tracking : new ArrayList<Tracking<?>>(pending)) {
+        if (tracking.queued) {
+          tracking.cancel();
+        }
+      }
+    }
+
+    /** Cancels every action that hasn't returned, aborting the requests that were sent, so their callbacks are never called. */
+    public void cancel() {
+      for (final Tracking<?> tracking : new ArrayList<Tracking<?>>(pending)) {
+        tracking.cancel();
+      }
+    }
+
+    /** Cancels our queued actions, e.g. when a presenter is unbound. */
+    @Override
+    public void removeHandler() {
+      cancelQueued();
     }
-    return false;
   }
 
 }
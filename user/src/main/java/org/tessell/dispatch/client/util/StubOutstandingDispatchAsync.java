@@ -29,8 +29,9 @@ public class StubOutstandingDispatchAsync extends OutstandingDispatchAsync {
     this.realStub = realStub;
   }
 
+  @Override
   public ArrayList<Action<?>> getOutstanding() {
-    return outstanding;
+    return super.getOutstanding();
   }
 
   /** @return all calls for assertions */
@@ -1,19 +1,67 @@
 package org.tessell.dispatch.server;
 
+import static org.tessell.util.ObjectUtils.eq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import org.tessell.dispatch.server.handlers.ActionHandler;
 import org.tessell.dispatch.server.handlers.ActionHandlerRegistry;
+import org.tessell.dispatch.server.handlers.CacheableActionHandler;
+import org.tessell.dispatch.server.handlers.CacheableActionHandler.Scope;
+import org.tessell.dispatch.server.metrics.ActionMetrics;
 import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.ActionException;
+import org.tessell.dispatch.shared.BatchAction;
+import org.tessell.dispatch.shared.BatchResult;
+import org.tessell.dispatch.shared.IdempotencyKeyedAction;
 import org.tessell.dispatch.shared.Result;
 
-/** Stock server-side implementation of {@link ActionDispatch}. */
+/**
+ * Stock server-side implementation of {@link ActionDispatch}.
+ *
+ * Results of {@link CacheableActionHandler}s are kept in a {@link ResultCache}, duplicate
+ * sends of {@link IdempotencyKeyedAction}s return the first result, and, if
+ * {@link #setMetrics(ActionMetrics)} is called, every action's latency is recorded.
+ */
 public class DefaultActionDispatch implements ActionDispatch {
 
+  private static final Logger log = Logger.getLogger(DefaultActionDispatch.class.getName());
   protected final ActionHandlerRegistry handlers = new ActionHandlerRegistry();
+  protected final ResultCache resultCache = new ResultCache(1000);
+  // results of IdempotencyKeyedActions, so retries return the first result
+  protected final ResultCache idempotentResults = new ResultCache(10000);
+  private volatile long idempotencyTtlMillis = 10 * 60 * 1000;
+  private volatile ActionMetrics metrics;
 
-  /** Executes {@code action}. */
+  /** Executes {@code action}, or, for a {@link BatchAction}, each of its actions. */
   @Override
   public <A extends Action<R>, R extends Result> R execute(final A action, final ExecutionContext context) {
-    return findHandler(action).execute(action, context);
+    final ActionMetrics metrics = this.metrics;
+    if (metrics == null) {
+      return executeUnmetered(action, context);
+    }
+    final long start = metrics.begin(action.getClass());
+    boolean failed = true;
+    try {
+      final R result = executeUnmetered(action, context);
+      failed = false;
+      return result;
+    } finally {
+      metrics.end(action.getClass(), start, failed);
+    }
+  }
+
+  /** Records the count, errors, and latency of each executed action (including batched ones) to {@code metrics}. */
+  public void setMetrics(final ActionMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public ActionMetrics getMetrics() {
+    return metrics;
   }
 
   /** Adds {@code handler}. */
@@ -21,6 +69,116 @@ public class DefaultActionDispatch implements ActionDispatch {
     handlers.addHandler(handler);
   }
 
+  /** @return the cache for {@link CacheableActionHandler}s, e.g. to change its size or see its stats */
+  public ResultCache getResultCache() {
+    return resultCache;
+  }
+
+  /** Removes the cached results for {@code actionType}, e.g. after the reference data it reads has changed. */
+  public void invalidateCached(final Class<?> actionType) {
+    resultCache.invalidate(new ResultCache.KeyMatcher() {
+      public boolean matches(final Object key) {
+        return ((CacheKey) key).actionType == actionType;
+      }
+    });
+  }
+
+  /** Removes the cached results for {@code actionType} and {@code cacheKey}, across all sessions. */
+  public void invalidateCached(final Class<?> actionType, final Object cacheKey) {
+    resultCache.invalidate(new ResultCache.KeyMatcher() {
+      public boolean matches(final Object key) {
+        return ((CacheKey) key).actionType == actionType && ((CacheKey) key).key.equals(cacheKey);
+      }
+    });
+  }
+
+  /** Executes {@code action} with {@code handler} only if its result isn't already cached. */
+  @SuppressWarnings("unchecked")
+  protected <A extends Action<R>, R extends Result> R executeCached(
+    final CacheableActionHandler<A, R> handler,
+    final A action,
+    final ExecutionContext context) {
+    final Object key = handler.getCacheKey(action);
+    Object session = null;
+    if (handler.getCacheScope() == Scope.SESSION) {
+      session = getSessionKey(context);
+    }
+    if (key == null || (handler.getCacheScope() == Scope.SESSION && session == null)) {
+      return handler.execute(action, context);
+    }
+    final CacheKey cacheKey = new CacheKey(action.getClass(), session, key);
+    return (R) resultCache.get(cacheKey, handler.getCacheTtlMillis(), new Callable<Result>() {
+      public Result call() {
+        return handler.execute(action, context);
+      }
+    });
+  }
+
+  /**
+   * Executes {@code action} only once per idempotency key and session, e.g. if the client retries it.
+   *
+   * Duplicates that arrive while the first is still executing wait for its result. Failures
+   * aren't remembered, so a retry after a failure executes again.
+   * Without a session key, {@code action} is always executed.
+   */
+  @SuppressWarnings("unchecked")
+  protected <A extends Action<R>, R extends Result> R executeOnce(
+    final ActionHandler<A, R> handler,
+    final A action,
+    final ExecutionContext context) {
+    final Object session = getSessionKey(context);
+    if (session == null) {
+      // without a session, one client's key could return another client's result
+      return handler.execute(action, context);
+    }
+    final String key = ((IdempotencyKeyedAction) action).getIdempotencyKey();
+    final CacheKey cacheKey = new CacheKey(action.getClass(), session, key);
+    return (R) idempotentResults.get(cacheKey, idempotencyTtlMillis, new Callable<Result>() {
+      public Result call() {
+        return handler.execute(action, context);
+      }
+    });
+  }
+
+  /** Sets how long results are kept for duplicates of {@link IdempotencyKeyedAction}s, defaults to 10 minutes. */
+  public void setIdempotencyTtlMillis(final long idempotencyTtlMillis) {
+    this.idempotencyTtlMillis = idempotencyTtlMillis;
+  }
+
+  /** @return the key for {@link Scope#SESSION} and idempotent results, by default the session id, or {@code null} if none */
+  protected Object getSessionKey(final ExecutionContext context) {
+    return context.getSessionKey();
+  }
+
+  /** Executes each of {@code batch}'s actions in order, keeping each one's result or failure. */
+  protected BatchResult executeBatch(final BatchAction batch, final ExecutionContext context) {
+    final List<Result> results = new ArrayList<Result>();
+    final List<ActionException> failures = new ArrayList<ActionException>();
+    for (final Action<?> action : batch.getActions()) {
+      try {
+        results.add(executeBatched(action, context));
+        failures.add(null);
+      } catch (final ActionException ae) {
+        results.add(null);
+        failures.add(ae);
+      } catch (final RuntimeException re) {
+        results.add(null);
+        failures.add(wrapBatchFailure(action, re));
+      }
+    }
+    return new BatchResult(results, failures);
+  }
+
+  /**
+   * Converts a batched action's non-{@link ActionException} failure into one that can be sent to the client.
+   *
+   * Batched failures don't reach the servlet, so by default we log them here.
+   */
+  protected ActionException wrapBatchFailure(final Action<?> action, final RuntimeException e) {
+    log.log(Level.SEVERE, "Batched " + action + " failed", e);
+    return new ActionException("A server error occured."); // don't leak the raw exception message
+  }
+
   /** @return the handler for {@code action} or throws {@code IllegalStateException} */
   protected <A extends Action<R>, R extends Result> ActionHandler<A, R> findHandler(final A action) {
     final ActionHandler<A, R> handler = getHandlerRegistry().findHandler(action);
@@ -34,4 +192,51 @@ public class DefaultActionDispatch implements ActionDispatch {
     return handlers;
   }
 
+  @SuppressWarnings("unchecked")
+  private <A extends Action<R>, R extends Result> R executeUnmetered(final A action, final ExecutionContext context) {
+    if (action instanceof BatchAction) {
+      return (R) executeBatch((BatchAction) action, context);
+    }
+    final ActionHandler<A, R> handler = findHandler(action);
+    if (action instanceof IdempotencyKeyedAction && ((IdempotencyKeyedAction) action).getIdempotencyKey() != null) {
+      return executeOnce(handler, action, context);
+    }
+    if (handler instanceof CacheableActionHandler) {
+      return executeCached((CacheableActionHandler<A, R>) handler, action, context);
+    }
+    return handler.execute(action, context);
+  }
+
+  /** Executes one of a batch's actions, which are typed as {@code Action<?>}. */
+  protected <R extends Result> R executeBatched(final Action<R> action, final ExecutionContext context) {
+    return execute(action, context);
+  }
+
+  /** The action type, session (if per-session), and handler's key for a cached result. */
+  private static class CacheKey {
+    private final Class<?> actionType;
+    private final Object session;
+    private final Object key;
+
+    private CacheKey(final Class<?> actionType, final Object session, final Object key) {
+      this.actionType = actionType;
+      this.session = session;
+      this.key = key;
+    }
+
+    @Override
+    public int hashCode() {
+      return (actionType.hashCode() * 31 + (session == null ? 0 : session.hashCode())) * 31 + key.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof CacheKey)) {
+        return false;
+      }
+      final CacheKey other = (CacheKey) o;
+      return actionType == other.actionType && eq(session, other.session) && key.equals(other.key);
+    }
+  }
+
 }
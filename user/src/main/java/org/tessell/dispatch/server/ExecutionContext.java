@@ -1,15 +1,30 @@
 package org.tessell.dispatch.server;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
 import org.tessell.dispatch.server.handlers.ActionHandler;
 
-/** ExecutionContext instances are passed to {@link ActionHandler}s. */
+/**
+ * ExecutionContext instances are passed to {@link ActionHandler}s.
+ *
+ * One context is shared by all of a request's actions, so handlers can {@link #memo}
+ * things like the current user or permissions and load them once per request, even
+ * when several actions are batched together (and run in parallel).
+ */
 public class ExecutionContext {
 
+  private static final Key<String> sessionIdKey = new Key<String>("sessionId");
   private final HttpServletRequest request;
   private final HttpServletResponse response;
+  private final ConcurrentMap<Key<?>, FutureTask<?>> memos = new ConcurrentHashMap<Key<?>, FutureTask<?>>();
 
   public ExecutionContext(final HttpServletRequest request, final HttpServletResponse response) {
     this.request = request;
@@ -24,4 +39,96 @@ public class ExecutionContext {
     return response;
   }
 
+  /**
+   * @return the value for {@code key}, calling {@code loader} if this is the first time {@code key} is used in this request
+   *
+   * If several threads ask for the same key at once, {@code loader} is only called once. If it
+   * fails, the failure is thrown to them, and the next call will try again.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T memo(final Key<T> key, final Loader<T> loader) {
+    FutureTask<T> task = (FutureTask<T>) memos.get(key);
+    if (task == null) {
+      final FutureTask<T> created = new FutureTask<T>(new Callable<T>() {
+        public T call() {
+          return loader.load(ExecutionContext.this);
+        }
+      });
+      task = (FutureTask<T>) memos.putIfAbsent(key, created);
+      if (task == null) {
+        task = created;
+        task.run();
+      }
+    }
+    try {
+      return task.get();
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for " + key, ie);
+    } catch (final ExecutionException ee) {
+      memos.remove(key, task);
+      final Throwable cause = ee.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /** @return the session id from {@code validator}, only calling it once per request */
+  public String getSessionId(final SessionIdValidator validator) {
+    return memo(sessionIdKey, new Loader<String>() {
+      public String load(final ExecutionContext context) {
+        return validator.get(context);
+      }
+    });
+  }
+
+  /** @return the session id if {@link #getSessionId(SessionIdValidator)} was already called, otherwise {@code null} */
+  public String getValidatedSessionId() {
+    final FutureTask<?> task = memos.get(sessionIdKey);
+    if (task == null || !task.isDone()) {
+      return null;
+    }
+    try {
+      return (String) task.get();
+    } catch (final Exception e) {
+      return null; // the validator failed
+    }
+  }
+
+  /** @return the validated session id, else the {@code HttpSession} id, else {@code null}, e.g. to key per-session state by */
+  public String getSessionKey() {
+    final String validated = getValidatedSessionId();
+    if (validated != null) {
+      return validated;
+    }
+    if (request == null) {
+      return null;
+    }
+    final HttpSession session = request.getSession(false);
+    return session == null ? null : session.getId();
+  }
+
+  /** A typed key for {@link ExecutionContext#memo}, compared by identity, so usually a constant. */
+  public static class Key<T> {
+    private final String name;
+
+    public Key(final String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /** Loads a value for {@link ExecutionContext#memo}. */
+  public interface Loader<T> {
+    T load(ExecutionContext context);
+  }
+
 }
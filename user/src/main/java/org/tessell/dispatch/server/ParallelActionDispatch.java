@@ -0,0 +1,212 @@
+package org.tessell.dispatch.server;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.ActionException;
+import org.tessell.dispatch.shared.ActionTimeoutException;
+import org.tessell.dispatch.shared.BatchAction;
+import org.tessell.dispatch.shared.BatchResult;
+import org.tessell.dispatch.shared.Result;
+import org.tessell.dispatch.shared.SequentialAction;
+
+/**
+ * A {@link DefaultActionDispatch} that executes a {@link BatchAction}'s actions concurrently.
+ *
+ * At most {@code maxConcurrency} batched actions run at once, across all requests, and
+ * each has {@code timeoutMillis}, from when it starts running (not while it's queued), to
+ * finish before it's returned as an {@link ActionTimeoutException} (and interrupted). Any
+ * {@link SequentialAction}s run one at a time, in the order they were batched, alongside the
+ * other actions. Each action's result or failure is kept separately, so one failing handler
+ * doesn't lose the others' results. A {@link BatchAction} nested in a batch runs its actions
+ * in order on the nested batch's thread, as they'd otherwise wait for threads or permits held
+ * by their parents.
+ *
+ * Handlers run on executor threads, so should use their {@link ExecutionContext} and not
+ * any thread-locals of the servlet's request thread.
+ */
+public class ParallelActionDispatch extends DefaultActionDispatch {
+
+  private final ExecutorService executor;
+  // only needed to bound an unbounded executor, e.g. virtual threads, otherwise null
+  private final Semaphore permits;
+  private final long timeoutMillis;
+  // set while a thread is running a batched action, so nested batches run inline
+  private final ThreadLocal<Boolean> batching = new ThreadLocal<Boolean>();
+
+  /** @return a fixed pool of {@code threads} daemon threads */
+  public static ExecutorService newExecutor(final int threads) {
+    return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      public Thread newThread(final Runnable r) {
+        final Thread t = new Thread(r, "ParallelActionDispatch-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /** @return an executor that uses a virtual thread per task, or {@code null} if the JDK doesn't have them */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      final Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) m.invoke(null);
+    } catch (final Exception e) {
+      return null;
+    }
+  }
+
+  /** Uses virtual threads bounded by {@code maxConcurrency} permits if the JDK has them, otherwise a fixed pool. */
+  public ParallelActionDispatch(final int maxConcurrency, final long timeoutMillis) {
+    final ExecutorService virtual = newVirtualThreadExecutor();
+    if (virtual != null) {
+      executor = virtual;
+      permits = new Semaphore(maxConcurrency);
+    } else {
+      executor = newExecutor(maxConcurrency);
+      permits = null;
+    }
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /** Uses {@code executor}, which bounds concurrency itself, e.g. a fixed pool shared by several dispatchers. */
+  public ParallelActionDispatch(final ExecutorService executor, final long timeoutMillis) {
+    this(executor, null, timeoutMillis);
+  }
+
+  /** Uses {@code executor}, bounded by {@code permits}, which may be shared by several dispatchers. */
+  public ParallelActionDispatch(final ExecutorService executor, final Semaphore permits, final long timeoutMillis) {
+    this.executor = executor;
+    this.permits = permits;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /** Stops the executor, e.g. from the servlet's {@code destroy}. */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Override
+  protected BatchResult executeBatch(final BatchAction batch, final ExecutionContext context) {
+    if (batching.get() != null) {
+      return super.executeBatch(batch, context);
+    }
+    final List<Action<?>> actions = batch.getActions();
+    final List<Result> results = new ArrayList<Result>();
+    final List<ActionException> failures = new ArrayList<ActionException>();
+    final List<Batched> tasks = new ArrayList<Batched>();
+    final List<Future<Result>> futures = new ArrayList<Future<Result>>();
+    final List<Integer> sequential = new ArrayList<Integer>();
+    for (int i = 0; i < actions.size(); i++) {
+      results.add(null);
+      failures.add(null);
+      tasks.add(new Batched(actions.get(i), context));
+      if (actions.get(i) instanceof SequentialAction) {
+        sequential.add(i);
+        futures.add(null);
+      } else {
+        futures.add(executor.submit(tasks.get(i)));
+      }
+    }
+    // run the sequential ones one at a time while the others are running
+    for (final Integer i : sequential) {
+      futures.set(i, executor.submit(tasks.get(i)));
+      await(tasks.get(i), futures.get(i), i, results, failures);
+    }
+    for (int i = 0; i < actions.size(); i++) {
+      if (!(actions.get(i) instanceof SequentialAction)) {
+        await(tasks.get(i), futures.get(i), i, results, failures);
+      }
+    }
+    return new BatchResult(results, failures);
+  }
+
+  /** Waits for {@code task}'s {@code future} until its timeout, and records its result or failure at {@code i}. */
+  private void await(
+    final Batched task,
+    final Future<Result> future,
+    final int i,
+    final List<Result> results,
+    final List<ActionException> failures) {
+    final Action<?> action = task.action;
+    try {
+      results.set(i, get(task, future));
+    } catch (final TimeoutException te) {
+      future.cancel(true);
+      failures.set(i, new ActionTimeoutException(action + " timed out after " + timeoutMillis + "ms"));
+    } catch (final InterruptedException ie) {
+      // the request thread was interrupted, so fail what's left instead of waiting on it
+      Thread.currentThread().interrupt();
+      future.cancel(true);
+      failures.set(i, new ActionException("The server was interrupted."));
+    } catch (final ExecutionException ee) {
+      final Throwable cause = ee.getCause();
+      if (cause instanceof ActionException) {
+        failures.set(i, (ActionException) cause);
+      } else if (cause instanceof RuntimeException) {
+        failures.set(i, wrapBatchFailure(action, (RuntimeException) cause));
+      } else {
+        failures.set(i, wrapBatchFailure(action, new RuntimeException(cause)));
+      }
+    }
+  }
+
+  /** @return {@code task}'s result, timing out {@code timeoutMillis} after it started running */
+  private Result get(final Batched task, final Future<Result> future) throws InterruptedException, ExecutionException, TimeoutException {
+    while (true) {
+      final long started = task.started;
+      // until it starts (e.g. it's waiting for a permit or thread), check back every timeoutMillis
+      final long wait = started == 0 ? timeoutMillis : Math.max(0, started + timeoutMillis - System.currentTimeMillis());
+      try {
+        return future.get(wait, TimeUnit.MILLISECONDS);
+      } catch (final TimeoutException te) {
+        if (task.started != 0 && System.currentTimeMillis() >= task.started + timeoutMillis) {
+          throw te;
+        }
+      }
+    }
+  }
+
+  /** Executes one batched action once it has a permit, noting when it started for its timeout. */
+  private class Batched implements Callable<Result> {
+    private final Action<?> action;
+    private final ExecutionContext context;
+    // when the action started running, 0 until then
+    private volatile long started;
+
+    private Batched(final Action<?> action, final ExecutionContext context) {
+      this.action = action;
+      this.context = context;
+    }
+
+    public Result call() throws Exception {
+      if (permits != null) {
+        permits.acquire();
+      }
+      try {
+        started = System.currentTimeMillis();
+        batching.set(Boolean.TRUE);
+        return executeBatched(action, context);
+      } finally {
+        batching.remove();
+        if (permits != null) {
+          permits.release();
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,169 @@
+package org.tessell.dispatch.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.tessell.dispatch.server.handlers.CacheableActionHandler;
+import org.tessell.dispatch.shared.Result;
+
+/**
+ * A thread-safe, bounded cache of results for {@link CacheableActionHandler}s.
+ *
+ * Loads are single-flight: if several requests miss on the same key at once, the
+ * first one executes the handler and the others wait for its result. Failures are
+ * passed to everyone waiting but not cached.
+ *
+ * Once over {@code maxSize}, the least recently used entries are evicted. The map
+ * is only locked to look up/add entries, never while a handler is running.
+ */
+public class ResultCache {
+
+  // in access order, so the eldest is the least recently used
+  private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+  private volatile int maxSize;
+  private int hits;
+  private int misses;
+  private int evictions;
+
+  public ResultCache(final int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /** @return the result for {@code key}, calling {@code loader} if it's missing or expired */
+  public Result get(final Object key, final long ttlMillis, final Callable<Result> loader) {
+    final Entry entry;
+    final boolean load;
+    synchronized (entries) {
+      final Entry existing = entries.get(key);
+      if (existing != null && !existing.isExpired(now())) {
+        hits++;
+        entry = existing;
+        load = false;
+      } else {
+        misses++;
+        entry = new Entry(loader);
+        entries.put(key, entry);
+        evictIfNeeded();
+        load = true;
+      }
+    }
+    if (load) {
+      entry.task.run();
+      entry.expiresAt = now() + ttlMillis;
+    }
+    try {
+      return entry.task.get();
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for " + key, ie);
+    } catch (final ExecutionException ee) {
+      if (load) {
+        remove(key, entry);
+      }
+      final Throwable cause = ee.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /** Removes any entries whose key {@code matches}. */
+  public void invalidate(final KeyMatcher matches) {
+    synchronized (entries) {
+      for (final Iterator<Object> i = entries.keySet().iterator(); i.hasNext();) {
+        if (matches.matches(i.next())) {
+          i.remove();
+        }
+      }
+    }
+  }
+
+  /** Removes all entries. */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  public void setMaxSize(final int maxSize) {
+    this.maxSize = maxSize;
+    synchronized (entries) {
+      evictIfNeeded();
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /** @return the number of gets served from the cache, or by waiting on another request's load */
+  public int getHits() {
+    synchronized (entries) {
+      return hits;
+    }
+  }
+
+  /** @return the number of gets that called their loader */
+  public int getMisses() {
+    synchronized (entries) {
+      return misses;
+    }
+  }
+
+  /** @return the number of entries evicted for being over {@code maxSize} */
+  public int getEvictions() {
+    synchronized (entries) {
+      return evictions;
+    }
+  }
+
+  /** @return the current time in millis, for expiring entries */
+  protected long now() {
+    return System.currentTimeMillis();
+  }
+
+  private void remove(final Object key, final Entry entry) {
+    synchronized (entries) {
+      if (entries.get(key) == entry) {
+        entries.remove(key);
+      }
+    }
+  }
+
+  private void evictIfNeeded() {
+    for (final Iterator<Entry> i = entries.values().iterator(); i.hasNext() && entries.size() > maxSize;) {
+      i.next();
+      i.remove();
+      evictions++;
+    }
+  }
+
+  /** Matches keys to invalidate. */
+  public interface KeyMatcher {
+    boolean matches(Object key);
+  }
+
+  /** A loaded or loading result. */
+  private static class Entry {
+    private final FutureTask<Result> task;
+    // not expired while loading
+    private volatile long expiresAt = Long.MAX_VALUE;
+
+    private Entry(final Callable<Result> loader) {
+      task = new FutureTask<Result>(loader);
+    }
+
+    private boolean isExpired(final long now) {
+      return now >= expiresAt;
+    }
+  }
+
+}
@@ -0,0 +1,29 @@
+package org.tessell.dispatch.server.handlers;
+
+import org.tessell.dispatch.server.DefaultActionDispatch;
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.Result;
+
+/**
+ * An {@link ActionHandler} whose results can be cached by {@link DefaultActionDispatch}, e.g. for reference data.
+ *
+ * Cached results are shared across requests (and, for {@link Scope#GLOBAL}, users), so
+ * must not be mutated after they're returned.
+ */
+public interface CacheableActionHandler<A extends Action<R>, R extends Result> extends ActionHandler<A, R> {
+
+  /** Whether results are shared by all users, or per session. */
+  enum Scope {
+    GLOBAL, SESSION
+  }
+
+  /** @return the key to cache {@code action}'s result under, e.g. the action itself, or {@code null} to not cache it */
+  Object getCacheKey(A action);
+
+  /** @return how long results are cached for */
+  long getCacheTtlMillis();
+
+  /** @return whether results are shared by all users, or per session */
+  Scope getCacheScope();
+
+}
@@ -0,0 +1,220 @@
+package org.tessell.dispatch.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.tessell.dispatch.server.DefaultActionDispatch;
+import org.tessell.dispatch.server.servlet.AbstractDispatchServiceServlet;
+
+/**
+ * Records per-action type counts, errors, latencies, in-flight calls, and payload sizes.
+ *
+ * {@link DefaultActionDispatch#setMetrics(ActionMetrics)} records every action it executes,
+ * including each action in a batch, and {@link AbstractDispatchServiceServlet#getMetrics()}
+ * adds the request/response payload sizes. Recording is lock-free.
+ *
+ * The stats can be read with {@link #snapshot()}, as text or JSON (e.g. by the
+ * {@link ActionMetricsServlet}), or over JMX after {@link #register(String)}.
+ */
+public class ActionMetrics implements ActionMetricsMBean {
+
+  private final ConcurrentMap<Class<?>, Recorder> byType = new ConcurrentHashMap<Class<?>, Recorder>();
+  private ObjectName registered;
+
+  /** Called when an action starts, @return the start time to pass to {@link #end} */
+  public long begin(final Class<?> actionType) {
+    recorderFor(actionType).inFlight.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /** Called when an action started at {@code start} has returned or thrown. */
+  public void end(final Class<?> actionType, final long start, final boolean failed) {
+    final Recorder recorder = recorderFor(actionType);
+    recorder.inFlight.decrementAndGet();
+    recorder.latency.record((System.nanoTime() - start) / 1000);
+    if (failed) {
+      recorder.errors.incrementAndGet();
+    }
+  }
+
+  /** Records the size of an action's serialized request, e.g. from the servlet. */
+  public void recordRequestSize(final Class<?> actionType, final long bytes) {
+    final Recorder recorder = recorderFor(actionType);
+    recorder.requests.incrementAndGet();
+    recorder.requestBytes.addAndGet(bytes);
+  }
+
+  /** Records the size of an action's serialized response, e.g. from the servlet. */
+  public void recordResponseSize(final Class<?> actionType, final long bytes) {
+    final Recorder recorder = recorderFor(actionType);
+    recorder.responses.incrementAndGet();
+    recorder.responseBytes.addAndGet(bytes);
+  }
+
+  /** @return a copy of the stats so far, by action class name */
+  public Map<String, ActionStats> snapshot() {
+    final Map<String, ActionStats> snapshot = new TreeMap<String, ActionStats>();
+    for (final Map.Entry<Class<?>, Recorder> e : byType.entrySet()) {
+      // fully qualified, as two packages may have actions with the same simple name
+      final String name = e.getKey().getName();
+      snapshot.put(name, e.getValue().toStats(name));
+    }
+    return snapshot;
+  }
+
+  /** @return the stats for {@code actionType}, or {@code null} if it hasn't been executed */
+  public ActionStats getStats(final Class<?> actionType) {
+    final Recorder recorder = byType.get(actionType);
+    return recorder == null ? null : recorder.toStats(actionType.getName());
+  }
+
+  @Override
+  public long getTotalCount() {
+    long count = 0;
+    for (final Recorder recorder : byType.values()) {
+      count += recorder.latency.getCount();
+    }
+    return count;
+  }
+
+  @Override
+  public long getTotalErrors() {
+    long errors = 0;
+    for (final Recorder recorder : byType.values()) {
+      errors += recorder.errors.get();
+    }
+    return errors;
+  }
+
+  @Override
+  public int getInFlight() {
+    int inFlight = 0;
+    for (final Recorder recorder : byType.values()) {
+      inFlight += recorder.inFlight.get();
+    }
+    return inFlight;
+  }
+
+  /** Clears the counts, errors, latencies, and sizes so far, but keeps counting in-flight calls. */
+  @Override
+  public void reset() {
+    // keep the recorders, so calls that began before the reset still end against their in-flight counter
+    for (final Recorder recorder : byType.values()) {
+      recorder.reset();
+    }
+  }
+
+  /** @return one line per action type */
+  @Override
+  public String getText() {
+    final StringBuilder sb = new StringBuilder();
+    for (final ActionStats stats : snapshot().values()) {
+      sb.append(stats).append("\n");
+    }
+    return sb.toString();
+  }
+
+  /** @return a JSON object of action type to its stats */
+  @Override
+  public String getJson() {
+    final StringBuilder sb = new StringBuilder("{");
+    boolean first = true;
+    for (final ActionStats stats : snapshot().values()) {
+      if (!first) {
+        sb.append(",");
+      }
+      first = false;
+      sb.append("\"").append(stats.getName()).append("\":");
+      stats.appendJson(sb);
+    }
+    return sb.append("}").toString();
+  }
+
+  /** Registers us with the platform MBean server as {@code name}, e.g. {@code com.foo:type=ActionMetrics}. */
+  public void register(final String name) {
+    try {
+      final ObjectName objectName = new ObjectName(name);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+      registered = objectName;
+    } catch (final JMException e) {
+      throw new IllegalStateException("Could not register " + name, e);
+    }
+  }
+
+  /** Unregisters us from the platform MBean server, e.g. from the servlet's {@code destroy}. */
+  public void unregister() {
+    if (registered == null) {
+      return;
+    }
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (server.isRegistered(registered)) {
+        server.unregisterMBean(registered);
+      }
+      registered = null;
+    } catch (final JMException e) {
+      throw new IllegalStateException("Could not unregister " + registered, e);
+    }
+  }
+
+  private Recorder recorderFor(final Class<?> actionType) {
+    Recorder recorder = byType.get(actionType);
+    if (recorder == null) {
+      final Recorder created = new Recorder();
+      recorder = byType.putIfAbsent(actionType, created);
+      if (recorder == null) {
+        recorder = created;
+      }
+    }
+    return recorder;
+  }
+
+  /** The stats recorded for one action type. */
+  private static class Recorder {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+
+    private void reset() {
+      latency.reset();
+      errors.set(0);
+      requests.set(0);
+      requestBytes.set(0);
+      responses.set(0);
+      responseBytes.set(0);
+    }
+
+    private ActionStats toStats(final String name) {
+      return new ActionStats(
+        name,
+        latency.getCount(),
+        errors.get(),
+        inFlight.get(),
+        latency.getMeanMicros() / 1000.0,
+        latency.getPercentileMicros(50) / 1000.0,
+        latency.getPercentileMicros(90) / 1000.0,
+        latency.getPercentileMicros(99) / 1000.0,
+        latency.getMaxMicros() / 1000.0,
+        average(requestBytes.get(), requests.get()),
+        average(responseBytes.get(), responses.get()));
+    }
+
+    private static long average(final long total, final long count) {
+      return count == 0 ? 0 : total / count;
+    }
+  }
+
+}
@@ -0,0 +1,24 @@
+package org.tessell.dispatch.server.metrics;
+
+/** The JMX view of {@link ActionMetrics}. */
+public interface ActionMetricsMBean {
+
+  /** @return the number of actions executed, across all types */
+  long getTotalCount();
+
+  /** @return the number of actions that failed, across all types */
+  long getTotalErrors();
+
+  /** @return the number of actions currently executing */
+  int getInFlight();
+
+  /** @return the per-action type stats as text */
+  String getText();
+
+  /** @return the per-action type stats as JSON */
+  String getJson();
+
+  /** Clears the stats so far, except for in-flight calls. */
+  void reset();
+
+}
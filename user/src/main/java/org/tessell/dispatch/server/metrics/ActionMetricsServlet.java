@@ -0,0 +1,33 @@
+package org.tessell.dispatch.server.metrics;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves a snapshot of {@link ActionMetrics} as text, or as JSON with {@code ?format=json}.
+ *
+ * Subclasses provide the metrics, usually the same instance given to the dispatch servlet.
+ */
+public abstract class ActionMetricsServlet extends HttpServlet {
+
+  private static final long serialVersionUID = 1L;
+
+  @Override
+  protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+    final ActionMetrics metrics = getMetrics();
+    if ("json".equals(req.getParameter("format"))) {
+      resp.setContentType("application/json");
+      resp.getWriter().write(metrics.getJson());
+    } else {
+      resp.setContentType("text/plain");
+      resp.getWriter().write(metrics.getText());
+    }
+  }
+
+  protected abstract ActionMetrics getMetrics();
+
+}
@@ -0,0 +1,126 @@
+package org.tessell.dispatch.server.metrics;
+
+/** A snapshot of the {@link ActionMetrics} for one action type, with times in millis. */
+public class ActionStats {
+
+  private final String name;
+  private final long count;
+  private final long errors;
+  private final int inFlight;
+  private final double meanMillis;
+  private final double p50Millis;
+  private final double p90Millis;
+  private final double p99Millis;
+  private final double maxMillis;
+  private final long meanRequestBytes;
+  private final long meanResponseBytes;
+
+  ActionStats(
+    final String name,
+    final long count,
+    final long errors,
+    final int inFlight,
+    final double meanMillis,
+    final double p50Millis,
+    final double p90Millis,
+    final double p99Millis,
+    final double maxMillis,
+    final long meanRequestBytes,
+    final long meanResponseBytes) {
+    this.name = name;
+    this.count = count;
+    this.errors = errors;
+    this.inFlight = inFlight;
+    this.meanMillis = meanMillis;
+    this.p50Millis = p50Millis;
+    this.p90Millis = p90Millis;
+    this.p99Millis = p99Millis;
+    this.maxMillis = maxMillis;
+    this.meanRequestBytes = meanRequestBytes;
+    this.meanResponseBytes = meanResponseBytes;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** @return the number of times this type was executed (and returned or failed) */
+  public long getCount() {
+    return count;
+  }
+
+  public long getErrors() {
+    return errors;
+  }
+
+  /** @return the fraction of executions that failed */
+  public double getErrorRate() {
+    return count == 0 ? 0 : errors / (double) count;
+  }
+
+  /** @return the number of executions currently in progress */
+  public int getInFlight() {
+    return inFlight;
+  }
+
+  public double getMeanMillis() {
+    return meanMillis;
+  }
+
+  /** @return the median latency, within the histogram's 12.5% precision */
+  public double getP50Millis() {
+    return p50Millis;
+  }
+
+  public double getP90Millis() {
+    return p90Millis;
+  }
+
+  public double getP99Millis() {
+    return p99Millis;
+  }
+
+  public double getMaxMillis() {
+    return maxMillis;
+  }
+
+  /** @return the mean size of the serialized request, if recorded by the servlet */
+  public long getMeanRequestBytes() {
+    return meanRequestBytes;
+  }
+
+  /** @return the mean size of the serialized response, if recorded by the servlet */
+  public long getMeanResponseBytes() {
+    return meanResponseBytes;
+  }
+
+  void appendJson(final StringBuilder sb) {
+    sb.append("{\"count\":").append(count);
+    sb.append(",\"errors\":").append(errors);
+    sb.append(",\"inFlight\":").append(inFlight);
+    sb.append(",\"meanMillis\":").append(meanMillis);
+    sb.append(",\"p50Millis\":").append(p50Millis);
+    sb.append(",\"p90Millis\":").append(p90Millis);
+    sb.append(",\"p99Millis\":").append(p99Millis);
+    sb.append(",\"maxMillis\":").append(maxMillis);
+    sb.append(",\"meanRequestBytes\":").append(meanRequestBytes);
+    sb.append(",\"meanResponseBytes\":").append(meanResponseBytes);
+    sb.append("}");
+  }
+
+  @Override
+  public String toString() {
+    return name
+      + " count=" + count
+      + " errors=" + errors
+      + " inFlight=" + inFlight
+      + " mean=" + meanMillis
+      + " p50=" + p50Millis
+      + " p90=" + p90Millis
+      + " p99=" + p99Millis
+      + " max=" + maxMillis
+      + " requestBytes=" + meanRequestBytes
+      + " responseBytes=" + meanResponseBytes;
+  }
+
+}
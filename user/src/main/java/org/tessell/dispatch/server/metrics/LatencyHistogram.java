@@ -0,0 +1,101 @@
+package org.tessell.dispatch.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in microseconds, with log-linear buckets like an HDR histogram.
+ *
+ * Values under 16 get their own bucket, and each power of 2 above that is split into 8
+ * buckets, so percentiles are within 12.5% of the recorded values, using ~2.5kb per
+ * histogram. Recording is a few atomic increments, so can be called from any thread.
+ */
+public class LatencyHistogram {
+
+  private static final int linear = 16;
+  private static final int subBuckets = 8;
+  private static final int subBucketBits = 3;
+  // 2^40 micros is ~12 days, anything longer goes in the last bucket
+  private static final int maxExponent = 40;
+  private static final int size = linear + (maxExponent - 3) * subBuckets;
+
+  private final AtomicLongArray counts = new AtomicLongArray(size);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /** Records a latency of {@code micros}. */
+  public void record(final long micros) {
+    final long value = Math.max(0, micros);
+    counts.incrementAndGet(indexOf(value));
+    count.incrementAndGet();
+    total.addAndGet(value);
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMaxMicros() {
+    return max.get();
+  }
+
+  public double getMeanMicros() {
+    final long n = count.get();
+    return n == 0 ? 0 : total.get() / (double) n;
+  }
+
+  /** @return the upper bound of the bucket holding the {@code percentile}th (0-100) value, or 0 if empty */
+  public long getPercentileMicros(final double percentile) {
+    final long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+    final long target = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < size; i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(upperBoundOf(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /** Clears the recorded values; concurrent records may be partially kept. */
+  public void reset() {
+    for (int i = 0; i < size; i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    total.set(0);
+    max.set(0);
+  }
+
+  static int indexOf(final long value) {
+    if (value < linear) {
+      return (int) value;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent >= maxExponent) {
+      return size - 1;
+    }
+    final int sub = (int) (value >> (exponent - subBucketBits)) & (subBuckets - 1);
+    return linear + (exponent - 4) * subBuckets + sub;
+  }
+
+  static long upperBoundOf(final int index) {
+    if (index < linear) {
+      return index;
+    }
+    final int exponent = (index - linear) / subBuckets + 4;
+    final int sub = (index - linear) % subBuckets;
+    final long width = 1L << (exponent - subBucketBits);
+    return ((long) (subBuckets + sub) << (exponent - subBucketBits)) + width - 1;
+  }
+
+}
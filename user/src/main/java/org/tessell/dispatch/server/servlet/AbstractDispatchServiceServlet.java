@@ -2,13 +2,20 @@ package org.tessell.dispatch.server.servlet;
 
 import static org.tessell.util.ObjectUtils.eq;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import javax.servlet.GenericServlet;
 
 import org.tessell.dispatch.server.ActionDispatch;
+import org.tessell.dispatch.server.DefaultActionDispatch;
 import org.tessell.dispatch.server.ExecutionContext;
 import org.tessell.dispatch.server.SessionIdValidator;
+import org.tessell.dispatch.server.metrics.ActionMetrics;
 import org.tessell.dispatch.shared.Action;
 import org.tessell.dispatch.shared.ActionException;
+import org.tessell.dispatch.shared.BatchAction;
 import org.tessell.dispatch.shared.DispatchService;
 import org.tessell.dispatch.shared.Result;
 
@@ -22,18 +29,39 @@ public abstract class AbstractDispatchServiceServlet extends RemoteServiceServle
 
   private static final long serialVersionUID = 1L;
 
+  // the action being executed, so we can record its response size once serialized; static
+  // so it's still there after the servlet is deserialized
+  private static final ThreadLocal<Class<?>> currentActionType = new ThreadLocal<Class<?>>();
+
   @Override
   public Result execute(final String sessionId, final Action<?> action) throws ActionException {
+    final ActionMetrics metrics = getMetrics();
+    if (metrics != null && action != null) {
+      currentActionType.set(action.getClass());
+      if (getThreadLocalRequest() != null && getThreadLocalRequest().getContentLength() >= 0) {
+        metrics.recordRequestSize(action.getClass(), getThreadLocalRequest().getContentLength());
+      }
+    }
     try {
       final ExecutionContext context = new ExecutionContext(getThreadLocalRequest(), getThreadLocalResponse());
-      if (getSessionValidator() != null && !eq(sessionId, getSessionValidator().get(context))) {
+      if (getSessionValidator() != null && !eq(sessionId, context.getSessionId(getSessionValidator()))) {
         throw invalidSession(context);
       }
       ActionDispatch d = getActionDispatch();
       if (d == null) {
         throw new IllegalStateException("Null ActionDispatch, ensure the server started correctly");
       }
-      return d.execute(action, context);
+      final AdmissionControl admission = getAdmissionControl();
+      if (admission == null) {
+        return d.execute(action, context);
+      }
+      // key on the validated/HttpSession id, not the one the client sent
+      final AdmissionControl.Permit permit = admission.admit(context.getSessionKey(), getActionTypes(action));
+      try {
+        return d.execute(action, context);
+      } finally {
+        permit.release();
+      }
     } catch (final ActionException ae) {
       // assume the user has already logged the ActionException appropriately
       throw ae;
@@ -43,6 +71,41 @@ public abstract class AbstractDispatchServiceServlet extends RemoteServiceServle
     }
   }
 
+  @Override
+  protected void onAfterResponseSerialized(final String serializedResponse) {
+    final Class<?> actionType = currentActionType.get();
+    if (actionType != null) {
+      currentActionType.remove();
+      getMetrics().recordResponseSize(actionType, serializedResponse.length());
+    }
+  }
+
+  /**
+   * Allows subclasses to record request/response sizes, by default {@code null} for none.
+   *
+   * Pass the same instance to {@link DefaultActionDispatch#setMetrics(ActionMetrics)} to also record latencies.
+   */
+  protected ActionMetrics getMetrics() {
+    return null;
+  }
+
+  /** Allows subclasses to limit concurrent executions, by default {@code null} for no limits. */
+  protected AdmissionControl getAdmissionControl() {
+    return null;
+  }
+
+  /** @return the types {@code action} is admitted as, i.e. each of a {@link BatchAction}'s actions */
+  private static List<Class<?>> getActionTypes(final Action<?> action) {
+    if (!(action instanceof BatchAction)) {
+      return Collections.<Class<?>> singletonList(action.getClass());
+    }
+    final List<Class<?>> types = new ArrayList<Class<?>>();
+    for (final Action<?> batched : ((BatchAction) action).getActions()) {
+      types.add(batched.getClass());
+    }
+    return types;
+  }
+
   /** Allows subclasses to override exception logging. By default uses {@link GenericServlet#log}. */
   protected void logActionFailure(Exception e) {
     log(e.getMessage(), e);
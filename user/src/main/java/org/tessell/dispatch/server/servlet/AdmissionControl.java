@@ -0,0 +1,210 @@
+package org.tessell.dispatch.server.servlet;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.tessell.dispatch.shared.ActionOverloadedException;
+
+/**
+ * Limits how many actions {@link AbstractDispatchServiceServlet} executes at once.
+ *
+ * There is a global cap, and optionally per-session and per-action type caps. Once the
+ * global cap is reached, up to {@code maxQueued} requests wait up to {@code maxWaitMillis}
+ * for a slot; anything else is rejected immediately with an {@link ActionOverloadedException},
+ * so a misbehaving client can't tie up every servlet thread, and can back off and retry.
+ *
+ * A batch of actions is admitted as one request, against the global and per-session caps,
+ * but each of its actions counts towards its own type's cap, so batching can't bypass it.
+ *
+ * E.g. {@code new AdmissionControl(50).maxPerSession(4).maxPerActionType(20).maxQueued(100, 2000)}.
+ */
+public class AdmissionControl {
+
+  private final Semaphore global;
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicLong rejected = new AtomicLong();
+  // in-flight counts, removed once zero so sessions don't leak
+  private final Map<Object, Integer> bySession = new HashMap<Object, Integer>();
+  private final Map<Class<?>, Integer> byType = new HashMap<Class<?>, Integer>();
+  private int maxPerSession;
+  private int maxPerActionType;
+  private int maxQueued;
+  private long maxWaitMillis;
+  private int retryAfterMillis = 1000;
+
+  /** Allows at most {@code maxConcurrent} actions at once, across all sessions. */
+  public AdmissionControl(final int maxConcurrent) {
+    global = new Semaphore(maxConcurrent, true);
+  }
+
+  /** Allows at most {@code maxPerSession} actions at once for one session, defaults to 0 for no limit. */
+  public AdmissionControl maxPerSession(final int maxPerSession) {
+    this.maxPerSession = maxPerSession;
+    return this;
+  }
+
+  /** Allows at most {@code maxPerActionType} actions of the same type at once, defaults to 0 for no limit. */
+  public AdmissionControl maxPerActionType(final int maxPerActionType) {
+    this.maxPerActionType = maxPerActionType;
+    return this;
+  }
+
+  /** Once at the global cap, lets {@code maxQueued} requests wait up to {@code maxWaitMillis}, defaults to 0 for none. */
+  public AdmissionControl maxQueued(final int maxQueued, final long maxWaitMillis) {
+    this.maxQueued = maxQueued;
+    this.maxWaitMillis = maxWaitMillis;
+    return this;
+  }
+
+  /** Sets the back off suggested to rejected clients, defaults to 1 second. */
+  public AdmissionControl retryAfter(final int retryAfterMillis) {
+    this.retryAfterMillis = retryAfterMillis;
+    return this;
+  }
+
+  /**
+   * @return a permit to execute an action of {@code actionType} for {@code session}, which must be released
+   * @throws ActionOverloadedException if a limit has been reached
+   */
+  public Permit admit(final Object session, final Class<?> actionType) {
+    return admit(session, Collections.<Class<?>> singletonList(actionType));
+  }
+
+  /**
+   * @return a permit to execute actions of {@code actionTypes} (e.g. a batch's) as one request for {@code session}, which must be released
+   * @throws ActionOverloadedException if a limit has been reached
+   */
+  public Permit admit(final Object session, final List<Class<?>> actionTypes) {
+    synchronized (this) {
+      if (maxPerSession > 0 && session != null && count(bySession, session) >= maxPerSession) {
+        throw reject("Too many requests for this session");
+      }
+      if (maxPerActionType > 0) {
+        final Map<Class<?>, Integer> adding = new HashMap<Class<?>, Integer>();
+        for (final Class<?> actionType : actionTypes) {
+          increment(adding, actionType);
+        }
+        for (final Map.Entry<Class<?>, Integer> e : adding.entrySet()) {
+          if (count(byType, e.getKey()) + e.getValue() > maxPerActionType) {
+            throw reject("Too many requests for " + e.getKey().getSimpleName());
+          }
+        }
+      }
+      if (session != null) {
+        increment(bySession, session);
+      }
+      for (final Class<?> actionType : actionTypes) {
+        increment(byType, actionType);
+      }
+    }
+    final Permit permit = new Permit(session, actionTypes);
+    if (!acquireGlobal()) {
+      permit.releaseCounts();
+      throw reject("The server is too busy");
+    }
+    return permit;
+  }
+
+  /** @return the number of actions rejected so far */
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  /** @return the number of requests waiting for a global slot */
+  public int getQueued() {
+    return queued.get();
+  }
+
+  /** @return the number of actions currently admitted */
+  public synchronized int getInFlight() {
+    int inFlight = 0;
+    for (final Integer count : byType.values()) {
+      inFlight += count;
+    }
+    return inFlight;
+  }
+
+  private boolean acquireGlobal() {
+    if (global.tryAcquire()) {
+      return true;
+    }
+    if (maxQueued <= 0 || queued.incrementAndGet() > maxQueued) {
+      if (maxQueued > 0) {
+        queued.decrementAndGet();
+      }
+      return false;
+    }
+    try {
+      return global.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      queued.decrementAndGet();
+    }
+  }
+
+  private ActionOverloadedException reject(final String message) {
+    rejected.incrementAndGet();
+    return new ActionOverloadedException(message, retryAfterMillis);
+  }
+
+  private static <K> int count(final Map<K, Integer> counts, final K key) {
+    final Integer count = counts.get(key);
+    return count == null ? 0 : count;
+  }
+
+  private static <K> void increment(final Map<K, Integer> counts, final K key) {
+    counts.put(key, count(counts, key) + 1);
+  }
+
+  private static <K> void decrement(final Map<K, Integer> counts, final K key) {
+    final int count = count(counts, key);
+    if (count <= 1) {
+      counts.remove(key);
+    } else {
+      counts.put(key, count - 1);
+    }
+  }
+
+  /** An admitted action, which must be released when it's done. */
+  public class Permit {
+    private final Object session;
+    private final List<Class<?>> actionTypes;
+    private boolean released;
+
+    private Permit(final Object session, final List<Class<?>> actionTypes) {
+      this.session = session;
+      this.actionTypes = actionTypes;
+    }
+
+    public void release() {
+      synchronized (AdmissionControl.this) {
+        if (released) {
+          return;
+        }
+        released = true;
+      }
+      releaseCounts();
+      global.release();
+    }
+
+    private void releaseCounts() {
+      synchronized (AdmissionControl.this) {
+        if (session != null) {
+          decrement(bySession, session);
+        }
+        for (final Class<?> actionType : actionTypes) {
+          decrement(byType, actionType);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,26 @@
+package org.tessell.dispatch.shared;
+
+/**
+ * Returned when the server is too busy to execute an action, so the client should back off and retry.
+ *
+ * Thrown before the action's handler runs, so it's always safe to retry.
+ */
+public class ActionOverloadedException extends ActionException {
+
+  private static final long serialVersionUID = 1L;
+  private int retryAfterMillis;
+
+  protected ActionOverloadedException() {
+  }
+
+  public ActionOverloadedException(final String message, final int retryAfterMillis) {
+    super(message);
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  /** @return how long the server suggests waiting before retrying */
+  public int getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+
+}
@@ -0,0 +1,15 @@
+package org.tessell.dispatch.shared;
+
+/** Returned for a batched action that did not finish within the server's timeout. */
+public class ActionTimeoutException extends ActionException {
+
+  private static final long serialVersionUID = 1L;
+
+  protected ActionTimeoutException() {
+  }
+
+  public ActionTimeoutException(final String message) {
+    super(message);
+  }
+
+}
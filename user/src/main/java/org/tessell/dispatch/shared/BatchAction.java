@@ -0,0 +1,32 @@
+package org.tessell.dispatch.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Several actions sent to the server in one request, see {@link org.tessell.dispatch.client.BatchingDispatchAsync}.
+ *
+ * The server executes each action, and returns a {@link BatchResult} with each action's
+ * result or failure, in the same order.
+ */
+public class BatchAction implements Action<BatchResult> {
+
+  private ArrayList<Action<?>> actions;
+
+  protected BatchAction() {
+  }
+
+  public BatchAction(final List<Action<?>> actions) {
+    this.actions = new ArrayList<Action<?>>(actions);
+  }
+
+  public List<Action<?>> getActions() {
+    return actions;
+  }
+
+  @Override
+  public String toString() {
+    return "BatchAction" + actions;
+  }
+
+}
@@ -0,0 +1,30 @@
+package org.tessell.dispatch.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** The results of a {@link BatchAction}, with either a result or a failure for each action, in order. */
+public class BatchResult implements Result {
+
+  private ArrayList<Result> results;
+  private ArrayList<ActionException> failures;
+
+  protected BatchResult() {
+  }
+
+  public BatchResult(final List<Result> results, final List<ActionException> failures) {
+    this.results = new ArrayList<Result>(results);
+    this.failures = new ArrayList<ActionException>(failures);
+  }
+
+  /** @return the result for each action, or {@code null} if it failed */
+  public List<Result> getResults() {
+    return results;
+  }
+
+  /** @return the failure for each action, or {@code null} if it succeeded */
+  public List<ActionException> getFailures() {
+    return failures;
+  }
+
+}
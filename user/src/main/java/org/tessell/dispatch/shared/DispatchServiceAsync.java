@@ -1,10 +1,12 @@
 package org.tessell.dispatch.shared;
 
+import com.google.gwt.http.client.Request;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 
 /** The client-side interface for {@link DispatchService}. */
 public interface DispatchServiceAsync {
 
-  void execute(String sessionId, Action<?> action, AsyncCallback<Result> callback);
+  /** @return the HTTP request, so the call can be cancelled */
+  Request execute(String sessionId, Action<?> action, AsyncCallback<Result> callback);
 
 }
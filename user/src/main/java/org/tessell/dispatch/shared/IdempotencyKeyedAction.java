@@ -0,0 +1,17 @@
+package org.tessell.dispatch.shared;
+
+/**
+ * A write action that carries a key, so the server only executes it once, however many times it's sent.
+ *
+ * {@code RetryingDispatchAsync} assigns the key before the first send, and keeps it for
+ * retries; the server's {@code DefaultActionDispatch} returns the first execution's result
+ * for any later (or concurrent) request with the same key.
+ */
+public interface IdempotencyKeyedAction {
+
+  /** @return the key, or {@code null} if it hasn't been sent yet */
+  String getIdempotencyKey();
+
+  void setIdempotencyKey(String key);
+
+}
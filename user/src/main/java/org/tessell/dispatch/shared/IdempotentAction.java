@@ -0,0 +1,10 @@
+package org.tessell.dispatch.shared;
+
+/**
+ * Marks actions that are safe to send again, e.g. reads, so {@code RetryingDispatchAsync} can retry them.
+ *
+ * Writes should instead implement {@link IdempotencyKeyedAction}, so a retried write that
+ * had already succeeded on the server isn't executed twice.
+ */
+public interface IdempotentAction {
+}
@@ -0,0 +1,10 @@
+package org.tessell.dispatch.shared;
+
+/**
+ * Marks actions that, when batched, must run one at a time in the order they were sent.
+ *
+ * E.g. a save followed by a load of the saved data. Other batched actions may run in
+ * parallel on the server, see {@code ParallelActionDispatch}.
+ */
+public interface SequentialAction {
+}
@@ -2,6 +2,8 @@ package org.tessell.model;
 
 import java.util.ArrayList;
 
+import org.tessell.model.properties.Properties;
+
 /** Utility methods for models. */
 public class Models {
 
@@ -13,4 +15,14 @@ public class Models {
     return models;
   }
 
+  /** Merges {@code dto} into {@code model} within a {@link Properties#batch}, so each property reassesses once. */
+  public static <D> void merge(final Model<D> model, final D dto) {
+    Properties.begin();
+    try {
+      model.merge(dto);
+    } finally {
+      Properties.commit();
+    }
+  }
+
 }
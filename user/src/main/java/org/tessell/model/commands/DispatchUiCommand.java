@@ -2,6 +2,11 @@ package org.tessell.model.commands;
 
 import static org.tessell.model.properties.NewProperty.booleanProperty;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tessell.dispatch.client.DispatchPriority;
+import org.tessell.dispatch.client.PriorityDispatchAsync;
 import org.tessell.dispatch.client.events.DispatchUnhandledFailureEvent;
 import org.tessell.dispatch.client.util.OutstandingDispatchAsync;
 import org.tessell.dispatch.shared.Action;
@@ -18,49 +23,93 @@ import com.google.gwt.user.client.rpc.AsyncCallback;
  * waiting for a result.
  *
  * This allows conditional action on the command's activeness, e.g. disabling buttons.
+ *
+ * Actions are executed as {@link DispatchPriority#INTERACTIVE}, so a {@link PriorityDispatchAsync}
+ * sends them ahead of any queued background loads.
+ *
+ * By default, executing again while an action is outstanding sends another action; see
+ * {@link #setExecutionPolicy(ExecutionPolicy)} to cancel, drop, or queue them instead.
  */
 public abstract class DispatchUiCommand<A extends Action<R>, R extends Result> extends UiCommand {
 
   private final OutstandingDispatchAsync async;
+  private final OutstandingDispatchAsync.Scope interactive;
   private final BooleanProperty active = booleanProperty("active", false);
+  private final List<A> queued = new ArrayList<A>();
+  private ExecutionPolicy policy = ExecutionPolicy.CONCURRENT;
   private A lastAction;
   private A currentAction;
   protected R result;
 
   public DispatchUiCommand(OutstandingDispatchAsync async) {
     this.async = async;
+    interactive = async.scope(DispatchPriority.INTERACTIVE);
   }
 
   @Override
   protected final void doExecute() {
+    if (policy == ExecutionPolicy.DROP_WHILE_ACTIVE && active.isTrue()) {
+      return;
+    }
     final A action = createAction();
     lastAction = action;
-    if (action != null) {
-      active.set(true);
-      // It would be nice to use a SuccessCallback, but we need to know
-      // when the failure happened to toggle active back to false
-      async.execute(action, new AsyncCallback<R>() {
-        public void onSuccess(R r) {
-          currentAction = action;
-          result = r;
-          onResult();
-          if (currentAction == lastAction) {
-            active.set(false);
-          }
-        }
-
-        public void onFailure(Throwable caught) {
-          currentAction = action;
-          result = null;
-          DispatchUiCommand.this.onFailure(caught);
-          if (currentAction == lastAction) {
-            active.set(false);
-          }
-        }
-      });
+    if (policy == ExecutionPolicy.LATEST_WINS) {
+      queued.clear();
+      interactive.cancel();
+      if (action == null) {
+        active.set(false);
+      }
+    }
+    if (action == null) {
+      return;
+    }
+    if (policy == ExecutionPolicy.QUEUE && active.isTrue()) {
+      queued.add(action);
+      return;
+    }
+    send(action);
+  }
+
+  private void send(final A action) {
+    active.set(true);
+    // It would be nice to use a SuccessCallback, but we need to know
+    // when the failure happened to toggle active back to false
+    interactive.execute(action, new AsyncCallback<R>() {
+      public void onSuccess(R r) {
+        currentAction = action;
+        result = r;
+        onResult();
+        done();
+      }
+
+      public void onFailure(Throwable caught) {
+        currentAction = action;
+        result = null;
+        DispatchUiCommand.this.onFailure(caught);
+        done();
+      }
+    });
+  }
+
+  /** Sends the next queued action, if any, or else marks us as no longer active. */
+  private void done() {
+    if (!queued.isEmpty()) {
+      send(queued.remove(0));
+    } else if (currentAction == lastAction || policy != ExecutionPolicy.CONCURRENT) {
+      // only CONCURRENT can have other actions outstanding
+      active.set(false);
     }
   }
 
+  /** Sets how executing while an action is outstanding is handled, defaults to {@link ExecutionPolicy#CONCURRENT}. */
+  public void setExecutionPolicy(final ExecutionPolicy policy) {
+    this.policy = policy;
+  }
+
+  public ExecutionPolicy getExecutionPolicy() {
+    return policy;
+  }
+
   /** @return whether the command is currently active */
   public BooleanProperty active() {
     return active;
@@ -82,4 +131,16 @@ public abstract class DispatchUiCommand<A extends Action<R>, R extends Result> e
     return lastAction != currentAction;
   }
 
+  /** How to handle the command being executed while its last action is still outstanding. */
+  public enum ExecutionPolicy {
+    /** Sends every action, and calls {@code onResult} for each, which can check {@link DispatchUiCommand#isStale()}. */
+    CONCURRENT,
+    /** Cancels the outstanding action, aborting its request, so only the latest result reaches {@code onResult}, e.g. for type-ahead searches. */
+    LATEST_WINS,
+    /** Ignores executions until the outstanding action returns, e.g. for saves. */
+    DROP_WHILE_ACTIVE,
+    /** Sends each action once the previous one has returned. */
+    QUEUE;
+  }
+
 }
@@ -7,6 +7,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.tessell.model.events.PropertyChangedEvent;
+import org.tessell.model.events.PropertyChangedHandler;
+import org.tessell.model.properties.AbstractProperty;
 import org.tessell.model.properties.BooleanProperty;
 import org.tessell.model.properties.HasRuleTriggers;
 import org.tessell.model.properties.Property;
@@ -16,10 +19,9 @@ import org.tessell.model.validation.events.RuleTriggeredHandler;
 import org.tessell.model.validation.events.RuleUntriggeredEvent;
 import org.tessell.model.validation.events.RuleUntriggeredHandler;
 
-import com.google.gwt.event.shared.EventBus;
+import com.google.gwt.event.shared.HandlerList;
 import com.google.gwt.event.shared.HandlerRegistration;
 import com.google.gwt.event.shared.HasHandlers;
-import com.google.gwt.event.shared.SimplerEventBus;
 
 /**
  * Codifies a UI action that has an enabled state and optional validation rules
@@ -27,14 +29,17 @@ import com.google.gwt.event.shared.SimplerEventBus;
  *
  * When {@link #execute()} is called, any dependent properties will be touched
  * to potentially trigger validation rules. If any of them fail validation or
- * return false, the execute is skipped.
+ * return false, the execute is skipped. If any of them are still waiting
+ * on async rules, the execute waits for them, and then re-checks them.
  */
 public abstract class UiCommand implements HasRuleTriggers {
 
   private final BooleanProperty enabled = booleanProperty("enabled", true);
-  private final EventBus handlers = new SimplerEventBus();
+  private final HandlerList handlers = new HandlerList();
   private final Map<String, HasHandlers> errors = new HashMap<String, HasHandlers>();
   private final ArrayList<Property<Boolean>> onlyIf = new ArrayList<Property<Boolean>>();
+  // if we're waiting for an onlyIf's async rules to finish before executing
+  private HandlerRegistration waiting;
 
   /**
    * Executes the UI command, first triggering any "only if" validation,
@@ -48,10 +53,20 @@ public abstract class UiCommand implements HasRuleTriggers {
     }
     clearErrors();
     if (canExecute()) {
-      doExecute();
+      final AbstractProperty<?, ?> pending = findPending();
+      if (pending == null) {
+        doExecute();
+      } else {
+        executeOnceDone(pending);
+      }
     }
   }
 
+  /** @return whether we're waiting for async rules to finish before executing */
+  public boolean isWaiting() {
+    return waiting != null;
+  }
+
   /**
    * Adds a property that conditionalizes whether this command can be executed.
    *
@@ -99,12 +114,12 @@ public abstract class UiCommand implements HasRuleTriggers {
 
   @Override
   public HandlerRegistration addRuleTriggeredHandler(RuleTriggeredHandler handler) {
-    return handlers.addHandler(RuleTriggeredEvent.getType(), handler);
+    return handlers.add(RuleTriggeredEvent.getType(), handler);
   }
 
   @Override
   public HandlerRegistration addRuleUntriggeredHandler(RuleUntriggeredHandler handler) {
-    return handlers.addHandler(RuleUntriggeredEvent.getType(), handler);
+    return handlers.add(RuleUntriggeredEvent.getType(), handler);
   }
 
   /**
@@ -112,6 +127,34 @@ public abstract class UiCommand implements HasRuleTriggers {
    */
   protected abstract void doExecute();
 
+  /** Waits for {@code pending}'s async rules to finish, and then tries executing again. */
+  private void executeOnceDone(final AbstractProperty<?, ?> pending) {
+    if (waiting != null) {
+      return; // already going to execute
+    }
+    waiting = pending.pending().addPropertyChangedHandler(new PropertyChangedHandler<Boolean>() {
+      public void onPropertyChanged(final PropertyChangedEvent<Boolean> event) {
+        if (!pending.isPending()) {
+          waiting.removeHandler();
+          waiting = null;
+          if (enabled.isTrue()) {
+            execute();
+          }
+        }
+      }
+    });
+  }
+
+  /** @return the first onlyIf property with async rules that are still waiting on the server */
+  private AbstractProperty<?, ?> findPending() {
+    for (Property<Boolean> p : onlyIf) {
+      if (p instanceof AbstractProperty && ((AbstractProperty<?, ?>) p).isPending()) {
+        return (AbstractProperty<?, ?>) p;
+      }
+    }
+    return null;
+  }
+
   /** @return {@code true} if each onlyIf property, after touching, is valid. */
   private boolean canExecute() {
     for (Property<Boolean> p : onlyIf) {
@@ -7,9 +7,11 @@ import org.tessell.Param;
 import org.tessell.model.properties.Property;
 
 @GenEvent(gwtEvent = true)
-public class ValueAddedEventSpec<P> {
+public class ListChangedEventSpec<P> {
   @Param(1)
   Property<List<P>> property;
   @Param(2)
-  P value;
+  List<P> added;
+  @Param(3)
+  List<P> removed;
 }
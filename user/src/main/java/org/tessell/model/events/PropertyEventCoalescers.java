@@ -0,0 +1,100 @@
+package org.tessell.model.events;
+
+import java.util.ArrayList;
+
+import org.tessell.model.properties.Property;
+
+import com.google.gwt.event.shared.EventCoalescer;
+import com.google.gwt.event.shared.GwtEvent;
+import com.google.gwt.event.shared.SimplerEventBus;
+
+/**
+ * {@link EventCoalescer}s for property events fired on a deferred {@link SimplerEventBus}.
+ *
+ * Properties fire to their own handlers, not a bus, so to coalesce a list's own events, see
+ * {@link org.tessell.model.properties.ListProperty#coalesced()}.
+ */
+public class PropertyEventCoalescers {
+
+  /** Adds both {@link #latestChange()} and {@link #listChanges()} to {@code bus}. */
+  public static void install(final SimplerEventBus bus) {
+    bus.addCoalescer(latestChange(), PropertyChangedEvent.getType());
+    bus.addCoalescer(listChanges(), ValueAddedEvent.getType(), ValueRemovedEvent.getType());
+  }
+
+  /** Merges {@link PropertyChangedEvent}s for the same property into one, from the first old value to the last new value. */
+  public static EventCoalescer latestChange() {
+    return new EventCoalescer() {
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      public GwtEvent<?> coalesce(final GwtEvent<?> queued, final GwtEvent<?> next) {
+        final PropertyChangedEvent first = (PropertyChangedEvent) queued;
+        final PropertyChangedEvent last = (PropertyChangedEvent) next;
+        if (first.getProperty() != last.getProperty()) {
+          return null;
+        }
+        return new PropertyChangedEvent(first.getProperty(), first.getOldValue(), last.getNewValue());
+      }
+
+      public Object getKey(final GwtEvent<?> event) {
+        return ((PropertyChangedEvent<?>) event).getProperty();
+      }
+    };
+  }
+
+  /**
+   * Merges {@link ValueAddedEvent}s and {@link ValueRemovedEvent}s for the same property into one {@link ListChangedEvent}.
+   *
+   * Values that are added and then removed (or vice versa) cancel out. A lone add/remove is
+   * still delivered as-is, so handlers should listen for all three.
+   */
+  public static EventCoalescer listChanges() {
+    return new EventCoalescer() {
+      public GwtEvent<?> coalesce(final GwtEvent<?> queued, final GwtEvent<?> next) {
+        final ListChangedEvent<Object> merged = queued instanceof ListChangedEvent ? cast(queued) : toListChanged(queued);
+        if (merged.getProperty() != getProperty(next)) {
+          return null;
+        }
+        apply(merged, next);
+        return merged;
+      }
+
+      public Object getKey(final GwtEvent<?> event) {
+        return getProperty(event);
+      }
+    };
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static ListChangedEvent<Object> toListChanged(final GwtEvent<?> event) {
+    final ListChangedEvent<Object> changed = new ListChangedEvent(getProperty(event), new ArrayList<Object>(), new ArrayList<Object>());
+    apply(changed, event);
+    return changed;
+  }
+
+  private static void apply(final ListChangedEvent<Object> changed, final GwtEvent<?> event) {
+    if (event instanceof ValueAddedEvent) {
+      final Object value = ((ValueAddedEvent<?>) event).getValue();
+      if (!changed.getRemoved().remove(value)) {
+        changed.getAdded().add(value);
+      }
+    } else {
+      final Object value = ((ValueRemovedEvent<?>) event).getValue();
+      if (!changed.getAdded().remove(value)) {
+        changed.getRemoved().add(value);
+      }
+    }
+  }
+
+  private static Property<?> getProperty(final GwtEvent<?> event) {
+    if (event instanceof ValueAddedEvent) {
+      return ((ValueAddedEvent<?>) event).getProperty();
+    }
+    return ((ValueRemovedEvent<?>) event).getProperty();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ListChangedEvent<Object> cast(final GwtEvent<?> event) {
+    return (ListChangedEvent<Object>) event;
+  }
+
+}
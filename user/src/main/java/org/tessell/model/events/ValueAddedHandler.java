@@ -0,0 +1,9 @@
+package org.tessell.model.events;
+
+import com.google.gwt.event.shared.EventHandler;
+
+public interface ValueAddedHandler<P> extends EventHandler {
+
+  void onValueAdded(ValueAddedEvent<P> event);
+
+}
@@ -0,0 +1,97 @@
+package org.tessell.model.events;
+
+import static org.tessell.util.ObjectUtils.eq;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.tessell.model.properties.Property;
+
+import com.google.gwt.event.shared.EventBus;
+import com.google.gwt.event.shared.GwtEvent;
+import com.google.gwt.event.shared.HandlerManager;
+
+/**
+ * Fired when {@code value} is removed from a list property.
+ *
+ * Written by hand instead of generated from an event spec, so that the two-arg
+ * constructor, from before events had an index, still works.
+ */
+public class ValueRemovedEvent<P> extends GwtEvent<ValueRemovedHandler<P>> {
+
+  // raw, like generated events, so handlers of any P can use it
+  @SuppressWarnings("rawtypes")
+  public static final Type<ValueRemovedHandler> TYPE = new Type<ValueRemovedHandler>();
+
+  @SuppressWarnings("rawtypes")
+  public static Type<ValueRemovedHandler> getType() {
+    return TYPE;
+  }
+
+  public static <P> void fire(final HandlerManager eventBus, final Property<List<P>> property, final P value) {
+    eventBus.fireEvent(new ValueRemovedEvent<P>(property, value));
+  }
+
+  public static <P> void fire(final EventBus eventBus, final Property<List<P>> property, final P value) {
+    eventBus.fireEvent(new ValueRemovedEvent<P>(property, value));
+  }
+
+  private final Property<List<P>> property;
+  private final P value;
+  private final int index;
+
+  /** Creates an event for {@code value} without an index, so {@link #getIndex()} is -1. */
+  public ValueRemovedEvent(final Property<List<P>> property, final P value) {
+    this(property, value, -1);
+  }
+
+  public ValueRemovedEvent(final Property<List<P>> property, final P value, final int index) {
+    this.property = property;
+    this.value = value;
+    this.index = index;
+  }
+
+  @Override
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public Type<ValueRemovedHandler<P>> getAssociatedType() {
+    return (Type) TYPE;
+  }
+
+  @Override
+  protected void dispatch(final ValueRemovedHandler<P> handler) {
+    handler.onValueRemoved(this);
+  }
+
+  public Property<List<P>> getProperty() {
+    return property;
+  }
+
+  public P getValue() {
+    return value;
+  }
+
+  /** @return the index the value was removed from, or -1 if unknown */
+  public int getIndex() {
+    return index;
+  }
+
+  @Override
+  public boolean equals(final Object other) {
+    if (other == null || other.getClass() != getClass()) {
+      return false;
+    }
+    final ValueRemovedEvent<?> o = (ValueRemovedEvent<?>) other;
+    return eq(property, o.property) && eq(value, o.value) && index == o.index;
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(new Object[] { property, value, index });
+  }
+
+  @Override
+  public String toString() {
+    return "ValueRemovedEvent[" + property + ", " + value + ", " + index + "]";
+  }
+
+}
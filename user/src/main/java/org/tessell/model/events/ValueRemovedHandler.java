@@ -0,0 +1,9 @@
+package org.tessell.model.events;
+
+import com.google.gwt.event.shared.EventHandler;
+
+public interface ValueRemovedHandler<P> extends EventHandler {
+
+  void onValueRemoved(ValueRemovedEvent<P> event);
+
+}
@@ -1,10 +1,10 @@
 package org.tessell.model.properties;
 
+import static org.tessell.model.properties.NewProperty.booleanProperty;
 import static org.tessell.util.ObjectUtils.eq;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -15,12 +15,12 @@ import org.tessell.model.validation.events.RuleTriggeredEvent;
 import org.tessell.model.validation.events.RuleTriggeredHandler;
 import org.tessell.model.validation.events.RuleUntriggeredEvent;
 import org.tessell.model.validation.events.RuleUntriggeredHandler;
+import org.tessell.model.validation.rules.AsyncRule;
 import org.tessell.model.validation.rules.Required;
 import org.tessell.model.validation.rules.Rule;
 import org.tessell.model.values.DerivedValue;
 import org.tessell.model.values.Value;
 import org.tessell.util.Inflector;
-import org.tessell.util.ListDiff;
 
 import com.google.gwt.event.shared.*;
 import com.google.gwt.event.shared.GwtEvent.Type;
@@ -29,15 +29,14 @@ import com.google.gwt.event.shared.GwtEvent.Type;
 public abstract class AbstractProperty<P, T extends AbstractProperty<P, T>> implements Property<P> {
 
   private static final Logger log = Logger.getLogger("org.tessell.model");
-  private static List<Property<?>> implicitUpstream = null;
   // handlers
-  private final EventBus handlers = new SimplerEventBus();
+  private final HandlerList handlers = new HandlerList();
   // other properties that are validated off of our value
   protected final ArrayList<Property<?>> downstream = new ArrayList<Property<?>>();
   // rules that validate against our value and fire against our handlers
   private final ArrayList<Rule> rules = new ArrayList<Rule>();
-  // outstanding errors
-  private final Map<Object, String> errors = new LinkedHashMap<Object, String>();
+  // outstanding errors, allocated on the first error (or getErrors call)
+  private Map<Object, String> errors;
   // our wrapped value
   private final Value<P> value;
   // snapshot of the value for diff purposes (e.g. derived values)
@@ -46,25 +45,31 @@ public abstract class AbstractProperty<P, T extends AbstractProperty<P, T>> impl
   private boolean touched;
   // the result of the last validate()
   private Valid valid;
+  // whether any async rules are waiting on the server, only created if asked for
+  private BooleanProperty pending;
   // whether we're currently reassessing
   private boolean reassessing = false;
-  // only used if this is a derived value
-  private List<Property<?>> lastUpstream;
+  // whether we only recompute when observed, and if so, whether we skipped a recompute
+  private boolean lazy;
+  private boolean stale;
+  // only used if this is a derived value, the properties it read last time
+  AbstractProperty<?, ?>[] upstream;
+  int upstreamSize;
+  // the last UpstreamTracker frame that recorded us
+  int trackedEpoch;
+  // the propagation we're part of, if one is in progress, and our position in it
+  Propagation propagation;
+  int propagationIndex;
 
   public AbstractProperty(final Value<P> value) {
     this.value = value;
     lastValue = copyLastValue(getWithUpstreamTracking());
-    RuleHandler ruleHandler = new RuleHandler();
-    addRuleTriggeredHandler(ruleHandler);
-    addRuleUntriggeredHandler(ruleHandler);
   }
 
   @Override
   public P get() {
-    if (implicitUpstream != null && !implicitUpstream.contains(this)) {
-      // Some other derived property is having it's get() called, so it depends on us now
-      implicitUpstream.add(this);
-    }
+    // if some other derived property is having it's get() called, it depends on us now
+    UpstreamTracker.read(this);
     return getWithUpstreamTracking();
   }
 
@@ -86,12 +91,36 @@ public abstract class AbstractProperty<P, T extends AbstractProperty<P, T>> impl
 
   @Override
   public void reassess() {
+    if (Properties.deferReassess(this)) {
+      return;
+    }
+    Propagation.run(this);
+  }
+
+  /**
+   * Recomputes our value and validity, but does not touch our downstream properties.
+   *
+   * If our value changed, the change event is fired immediately, or, if we're part of
+   * a larger {@code propagation}, recorded for it to fire once our downstream properties
+   * are also up to date.
+   *
+   * @return whether our value or validity changed
+   */
+  boolean recompute(final Propagation propagation, final int index) {
+    if (lazy && !isObserved()) {
+      // nothing can see our change, so wait until someone does
+      stale = true;
+      return false;
+    }
+    stale = false;
+    Propagation.recomputed();
     try {
       reassessing = true;
+      beforeRecompute();
 
       final P newValue = get();
       final P oldValue = lastValue;
-      final boolean valueChanged = !eq(lastValue, newValue);
+      final boolean valueChanged = hasChanged(oldValue, newValue);
       if (valueChanged) {
         lastValue = copyLastValue(newValue);
       }
@@ -101,37 +130,78 @@ public abstract class AbstractProperty<P, T extends AbstractProperty<P, T>> impl
       validate();
       final boolean validChanged = oldValid != valid;
 
-      // only reassess downstream if needed. this is somewhat odd, but we reassess
-      // our downstream properties before firing our own change event. this is so
-      // that if someone listening to us is also going to check a downstream
-      // property's state, it would be good for them to be up to date
-      if (valueChanged || validChanged) {
-        for (final Property<?> other : new ArrayList<Property<?>>(downstream)) {
-          other.reassess();
+      if (valueChanged) {
+        if (propagation == null) {
+          fireChanged(oldValue, newValue);
+        } else {
+          propagation.changed(index, oldValue, newValue);
         }
       }
+      return valueChanged || validChanged;
+    } finally {
+      reassessing = false;
+    }
+  }
 
-      if (valueChanged) {
-        fireChanged(oldValue, newValue);
-      }
+  /**
+   * Called before we recompute, whether we're the property being reassessed or downstream
+   * of it, so subclasses that keep their value in sync with other state can update it.
+   */
+  protected void beforeRecompute() {
+  }
+
+  /** Fires the change {@link #recompute} recorded on a {@link Propagation}. */
+  @SuppressWarnings("unchecked")
+  void fireRecomputed(final Object oldValue, final Object newValue) {
+    try {
+      reassessing = true;
+      fireChanged((P) oldValue, (P) newValue);
     } finally {
       reassessing = false;
     }
   }
 
+  /** @return whether we're waiting to be recomputed by an in-progress {@link Propagation} */
+  boolean isPendingInPropagation() {
+    return propagation != null && propagation.isPending(propagationIndex);
+  }
+
   /** Allow subclasses to deep copy values if needed. */
   protected P copyLastValue(P newValue) {
     return newValue;
   }
 
+  /** Allow subclasses to detect changes without comparing values, e.g. if they track their own changes. */
+  protected boolean hasChanged(P oldValue, P newValue) {
+    return !eq(oldValue, newValue);
+  }
+
+  /** Re-snapshots our current value, e.g. if a subclass changed how {@link #copyLastValue} works. */
+  void resetLastValue() {
+    lastValue = copyLastValue(get());
+  }
+
   @Override
   public HandlerRegistration addPropertyChangedHandler(final PropertyChangedHandler<P> handler) {
     return addHandler(PropertyChangedEvent.getType(), handler);
   }
 
+  /**
+   * Makes us only recompute while we're observed, i.e. have handlers (of any event), rules, or downstream properties.
+   *
+   * Otherwise upstream changes just mark us stale, and {@link #get()} computes our
+   * value on demand. Once observed, we catch up and go back to recomputing on change.
+   * This is meant for derived properties that are often not shown, e.g. on hidden tabs.
+   */
+  public T lazy() {
+    lazy = true;
+    return getThis();
+  }
+
   /** Track {@code other} as derived on us, so we'll forward changed/changing events to it. */
   public <P1 extends Property<?>> P1 addDerived(final P1 other) {
     if (!downstream.contains(other)) {
+      catchUpIfStale();
       downstream.add(other);
       if (touched) {
         other.setTouched(touched);
@@ -168,16 +238,59 @@ public abstract class AbstractProperty<P, T extends AbstractProperty<P, T>> impl
     if (rules.contains(rule)) {
       return;
     }
+    catchUpIfStale();
     if (rule.isImportant()) {
       rules.add(0, rule);
     } else {
       rules.add(rule);
     }
+    if (rule instanceof AsyncRule) {
+      pendingSourcesChanged();
+    }
+  }
+
+  /** @return whether any of our {@link AsyncRule}s are waiting on the server */
+  public boolean isPending() {
+    for (final Rule rule : rules) {
+      if (rule instanceof AsyncRule && ((AsyncRule<?, ?, ?>) rule).pending().isTrue()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return a property of {@link #isPending()}, e.g. to show a spinner or wait to submit */
+  public BooleanProperty pending() {
+    if (pending == null) {
+      pending = booleanProperty(new DerivedValue<Boolean>("pending") {
+        public Boolean get() {
+          return isPending();
+        }
+      });
+    }
+    return pending;
+  }
+
+  /** Recomputes {@link #pending()}, if needed, when what {@link #isPending()} reads has changed. */
+  void pendingSourcesChanged() {
+    if (pending != null) {
+      pending.reassess();
+    }
   }
 
   @Override
   public void fireEvent(final GwtEvent<?> event) {
     log.finest(this + " firing " + event);
+    // remember rules fired against us before our handlers see them
+    if (event instanceof RuleTriggeredEvent) {
+      final RuleTriggeredEvent triggered = (RuleTriggeredEvent) event;
+      if (errors == null) {
+        errors = new LinkedHashMap<Object, String>();
+      }
+      errors.put(triggered.getKey(), triggered.getMessage());
+    } else if (event instanceof RuleUntriggeredEvent && errors != null) {
+      errors.remove(((RuleUntriggeredEvent) event).getKey());
+    }
     handlers.fireEventFromSource(event, this);
   }
 
@@ -248,6 +361,9 @@ public abstract class AbstractProperty<P, T extends AbstractProperty<P, T>> impl
 
   @Override
   public Map<Object, String> getErrors() {
+    if (errors == null) {
+      errors = new LinkedHashMap<Object, String>();
+    }
     return errors;
   }
 
@@ -264,13 +380,34 @@ public abstract class AbstractProperty<P, T extends AbstractProperty<P, T>> impl
   protected abstract T getThis();
 
   protected <H extends EventHandler> HandlerRegistration addHandler(Type<H> type, H handler) {
-    return handlers.addHandlerToSource(type, this, handler);
+    catchUpIfStale();
+    return handlers.add(type, handler);
   }
 
   protected void fireChanged(P oldValue, P newValue) {
     fireEvent(new PropertyChangedEvent<P>(this, oldValue, newValue));
   }
 
+  /** @return whether anything could see us change */
+  private boolean isObserved() {
+    return handlers.getHandlerCount() > 0 || !downstream.isEmpty() || !rules.isEmpty();
+  }
+
+  /** If we skipped recomputing while lazy, catches up before someone starts observing us. */
+  private void catchUpIfStale() {
+    if (stale) {
+      stale = false;
+      // still unobserved, so this won't fire, but updates our last value/validity
+      final boolean wasLazy = lazy;
+      lazy = false;
+      try {
+        recompute(null, 0);
+      } finally {
+        lazy = wasLazy;
+      }
+    }
+  }
+
   /** Runs validation against our rules. */
   private void validate() {
     valid = Valid.YES; // start out valid
@@ -297,41 +434,21 @@ public abstract class AbstractProperty<P, T extends AbstractProperty<P, T>> impl
     // this logic should probably go in DerivedValue somehow, except that
     // it's only a value and does not know about it's parent property
     if (value instanceof DerivedValue) {
-      // Turn on implicitUpstream, which watches for properties called during value.get.
-      // Also, keep track if anyone was already tracking derived values so we can put it back.
-      List<Property<?>> tempUpstream = implicitUpstream;
-      implicitUpstream = new ArrayList<Property<?>>();
-      P tempValue = value.get();
-      List<Property<?>> newUpstream = new ArrayList<Property<?>>(implicitUpstream);
-      // Put back the previous upstream before we do anything else
-      implicitUpstream = tempUpstream;
-      // Only update our upstream properties if they've changed
-      if (lastUpstream == null || !lastUpstream.equals(newUpstream)) {
-        ListDiff<Property<?>> diff = ListDiff.of(lastUpstream, newUpstream);
-        for (Property<?> removed : diff.removed) {
-          removed.removeDerived(this);
-        }
-        for (Property<?> added : diff.added) {
-          added.addDerived(this);
-        }
-        // Remember for change tracking next time
-        lastUpstream = newUpstream;
+      // watch for properties called during value.get, and only update
+      // our upstream properties if they've changed
+      UpstreamTracker.begin();
+      final P newValue;
+      try {
+        newValue = value.get();
+      } catch (RuntimeException re) {
+        UpstreamTracker.abort();
+        throw re;
       }
-      return tempValue;
+      UpstreamTracker.end(this);
+      return newValue;
     } else {
       return value.get();
     }
   }
 
-  /** Remembers rules fired against us. */
-  private class RuleHandler implements RuleTriggeredHandler, RuleUntriggeredHandler {
-    public void onUntrigger(RuleUntriggeredEvent event) {
-      errors.remove(event.getKey());
-    }
-
-    public void onTrigger(RuleTriggeredEvent event) {
-      errors.put(event.getKey(), event.getMessage());
-    }
-  }
-
 }
@@ -68,16 +68,18 @@ public class DtoListProperty<E extends Model<F>, F extends Dto<E>> extends Abstr
     if (touch) {
       setTouched(true);
     }
-    fireEvent(new ValueAddedEvent<E>(this, item));
+    fireEvent(new ValueAddedEvent<E>(this, item, get().size() - 1));
     reassess();
   }
 
   /** Removes {@code item}, firing a {@link ValueRemovedEvent}. */
   public void remove(final E item) {
-    if (get().remove(item)) { // model
+    final int index = get().indexOf(item);
+    if (index != -1) {
+      get().remove(index); // model
       dtoList().remove(item.getDto()); // dto
       setTouched(true);
-      fireEvent(new ValueRemovedEvent<E>(this, item));
+      fireEvent(new ValueRemovedEvent<E>(this, item, index));
       reassess();
     }
   }
@@ -88,7 +90,7 @@ public class DtoListProperty<E extends Model<F>, F extends Dto<E>> extends Abstr
     for (int i = size - 1; i >= 0; i--) {
       final E value = get().remove(i); // model
       dtoList().remove(value.getDto()); // dto
-      fireEvent(new ValueRemovedEvent<E>(this, value));
+      fireEvent(new ValueRemovedEvent<E>(this, value, i));
     }
     reassess();
   }
@@ -112,14 +114,14 @@ public class DtoListProperty<E extends Model<F>, F extends Dto<E>> extends Abstr
     return this;
   }
 
-  /** @return a derived property that reflects this list's size. */
+  /** @return a derived property that reflects this list's size, which is {@link #lazy} until observed. */
   public IntegerProperty size() {
     return addDerived(integerProperty(new DerivedValue<Integer>() {
       public Integer get() {
         final List<E> current = DtoListProperty.this.get();
         return (current == null) ? null : current.size();
       }
-    }));
+    }).lazy());
   }
 
   /** Registers {@code handler} to be called when new values are added. */
@@ -6,8 +6,13 @@ import static org.tessell.model.properties.NewProperty.listProperty;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.tessell.model.events.ListChangedEvent;
+import org.tessell.model.events.ListChangedHandler;
+import org.tessell.model.events.PropertyChangedEvent;
 import org.tessell.model.events.ValueAddedEvent;
 import org.tessell.model.events.ValueAddedHandler;
 import org.tessell.model.events.ValueRemovedEvent;
@@ -24,6 +29,12 @@ public class ListProperty<E> extends AbstractProperty<List<E>, ListProperty<E>>
   private IntegerProperty size;
   private List<E> readOnly;
   private List<E> readOnlySource;
+  // changes made since we last fired, only used if journaled
+  private List<Change<E>> journal;
+  // the changes being fired, so handlers can rebuild the old value
+  private List<Change<E>> firing;
+  // whether to fire one ListChangedEvent instead of each add/remove
+  private boolean coalesced;
 
   /** Used to convert a list from one type of element to another. */
   public interface ElementConverter<E, F> {
@@ -50,6 +61,50 @@ public class ListProperty<E> extends AbstractProperty<List<E>, ListProperty<E>>
     return readOnly;
   }
 
+  /**
+   * Tracks changes as {@code add}/{@code remove}/etc. make them, instead of snapshotting and diffing our list.
+   *
+   * This makes each change O(1) instead of O(n) for large lists, but means the
+   * {@link PropertyChangedEvent}'s old value is the same list as its new value
+   * ({@link PropertyGroup} rebuilds the old value from the journal for its history),
+   * that changes made directly to the underlying list are not noticed, and that
+   * within a {@link Properties#batch} every change is fired (e.g. a {@code clear}
+   * then {@code addAll} fires each remove and add).
+   * Calling {@code set} with a new list is still diffed (and the new list is copied).
+   */
+  public ListProperty<E> journaled() {
+    if (journal == null) {
+      journal = new ArrayList<Change<E>>();
+      resetLastValue();
+    }
+    return this;
+  }
+
+  /**
+   * Fires one {@link ListChangedEvent} with the net adds/removes of each change (e.g. a
+   * {@code clear}, {@code addAll}, {@code set}, or {@link Properties#batch}), instead of
+   * a {@link ValueAddedEvent}/{@link ValueRemovedEvent} for each element.
+   *
+   * Like {@link org.tessell.model.events.PropertyEventCoalescers}, a lone add/remove is
+   * still fired as-is, so handlers should listen for all three. This implies {@link #journaled()}.
+   */
+  public ListProperty<E> coalesced() {
+    coalesced = true;
+    return journaled();
+  }
+
+  @Override
+  public void set(final List<E> value) {
+    if (journal != null) {
+      // copy so that later changes to value don't bypass the journal
+      final List<E> copy = value == null ? null : new ArrayList<E>(value);
+      journal(ListDiff.of(getDirect(), copy));
+      super.set(copy);
+    } else {
+      super.set(value);
+    }
+  }
+
   /** @return a copy of our list as an {@link ArrayList}, e.g. for GWT-RPC calls. */
   public ArrayList<E> getArrayList() {
     return new ArrayList<E>(getDirect());
@@ -58,6 +113,9 @@ public class ListProperty<E> extends AbstractProperty<List<E>, ListProperty<E>>
   /** Adds {@code item}, firing a {@link ValueAddedEvent}. */
   public void add(final E item) {
     getDirect().add(item);
+    if (journal != null) {
+      journal.add(new Change<E>(true, item, getDirect().size() - 1));
+    }
     setTouched(true);
     // will fire add+change if needed
     reassess();
@@ -68,29 +126,60 @@ public class ListProperty<E> extends AbstractProperty<List<E>, ListProperty<E>>
     if (items.size() == 0) {
       return; // this makes sense, right?
     }
-    setTouched(true);
-    getDirect().addAll(items);
-    // will fire adds+change if needed
-    reassess();
+    // batch so that touching + adding only reassesses once
+    Properties.begin();
+    try {
+      setTouched(true);
+      final int start = getDirect().size();
+      getDirect().addAll(items);
+      if (journal != null) {
+        int i = start;
+        for (final E item : items) {
+          journal.add(new Change<E>(true, item, i++));
+        }
+      }
+      // will fire adds+change if needed
+      reassess();
+    } finally {
+      Properties.commit();
+    }
   }
 
   /** Removes {@code item}, firing a {@link ValueRemovedEvent}. */
   public void remove(final E item) {
     // should be considered touched?
-    if (getDirect().remove(item)) {
+    if (journal != null) {
+      final int i = getDirect().indexOf(item);
+      if (i != -1) {
+        getDirect().remove(i);
+        journal.add(new Change<E>(false, item, i));
+        reassess();
+      }
+    } else if (getDirect().remove(item)) {
       // will fire remove+change if needed
       reassess();
     }
   }
 
-  /** Removes all entries, firing a {@link ValueRemovedEvent} for each. */
+  /**
+   * Removes all entries, firing a {@link ValueRemovedEvent} for each.
+   *
+   * Within a {@link Properties#batch}, a {@code clear} followed by {@code addAll}
+   * only fires events for the elements that actually changed, unless we're
+   * {@link #journaled()}, in which case every remove and add is fired.
+   */
   public void clear() {
+    if (journal != null) {
+      for (int i = getDirect().size() - 1; i >= 0; i--) {
+        journal.add(new Change<E>(false, getDirect().get(i), i));
+      }
+    }
     getDirect().clear();
     // will fire removes+change if needed
     reassess();
   }
 
-  /** @return a derived property that reflects this list's size. */
+  /** @return a derived property that reflects this list's size, which is {@link #lazy} until observed. */
   public IntegerProperty size() {
     if (size == null) {
       size = addDerived(integerProperty(new DerivedValue<Integer>() {
@@ -98,7 +187,7 @@ public class ListProperty<E> extends AbstractProperty<List<E>, ListProperty<E>>
           final List<E> current = ListProperty.this.get();
           return (current == null) ? null : current.size();
         }
-      }));
+      }).lazy());
     }
     return size;
   }
@@ -113,6 +202,11 @@ public class ListProperty<E> extends AbstractProperty<List<E>, ListProperty<E>>
     return addHandler(ValueRemovedEvent.getType(), handler);
   }
 
+  /** Registers {@code handler} to be called when values are added and removed, if we're {@link #coalesced()}. */
+  public HandlerRegistration addListChangedHandler(final ListChangedHandler<E> handler) {
+    return addHandler(ListChangedEvent.getType(), handler);
+  }
+
   /**
    * Creates a new {@link ListProperty>} of type {@code F}.
    *
@@ -198,26 +292,152 @@ public class ListProperty<E> extends AbstractProperty<List<E>, ListProperty<E>>
 
   @Override
   protected List<E> copyLastValue(List<E> newValue) {
-    if (newValue == null) {
-      return null;
+    if (newValue == null || journal != null) {
+      return newValue;
     }
     return new ArrayList<E>(newValue);
   }
 
+  @Override
+  protected boolean hasChanged(List<E> oldValue, List<E> newValue) {
+    if (journal != null) {
+      return !journal.isEmpty() || (oldValue == null) != (newValue == null);
+    }
+    return super.hasChanged(oldValue, newValue);
+  }
+
   @Override
   protected void fireChanged(List<E> oldValue, List<E> newValue) {
-    ListDiff<E> diff = ListDiff.of(oldValue, newValue);
-    for (E added : diff.added) {
-      fireEvent(new ValueAddedEvent<E>(this, added));
+    if (journal != null) {
+      // handlers may change us again, so start a new journal
+      final List<Change<E>> changes = journal;
+      journal = new ArrayList<Change<E>>();
+      final List<Change<E>> outer = firing;
+      firing = changes;
+      try {
+        if (coalesced && changes.size() > 1) {
+          fireCoalesced(changes);
+        } else {
+          for (final Change<E> change : changes) {
+            fire(change);
+          }
+        }
+        super.fireChanged(oldValue, newValue);
+      } finally {
+        firing = outer;
+      }
+    } else {
+      // adds then removes, as before events had an index
+      final ListDiff<E> diff = ListDiff.of(oldValue, newValue);
+      int i = 0;
+      for (final E added : diff.added) {
+        fireEvent(new ValueAddedEvent<E>(this, added, diff.addedIndexes[i++]));
+      }
+      i = 0;
+      for (final E removed : diff.removed) {
+        fireEvent(new ValueRemovedEvent<E>(this, removed, diff.removedIndexes[i++]));
+      }
+      super.fireChanged(oldValue, newValue);
+    }
+  }
+
+  /**
+   * @return a copy of our list from before the change currently being fired
+   *
+   * When journaled, the {@link PropertyChangedEvent}'s old value is our live list, so
+   * this undoes the journal to rebuild it, e.g. for {@link PropertyGroup}'s history.
+   */
+  List<E> copyOldValue(final List<E> oldValue) {
+    if (journal == null || firing == null) {
+      return oldValue == null ? null : new ArrayList<E>(oldValue);
     }
-    for (E removed : diff.removed) {
-      fireEvent(new ValueRemovedEvent<E>(this, removed));
+    if (getDirect() == null) {
+      return null;
     }
-    super.fireChanged(oldValue, newValue);
+    final List<E> copy = new ArrayList<E>(getDirect());
+    undo(copy, journal);
+    undo(copy, firing);
+    return copy;
+  }
+
+  private void fire(final Change<E> change) {
+    if (change.added) {
+      fireEvent(new ValueAddedEvent<E>(this, change.value, change.index));
+    } else {
+      fireEvent(new ValueRemovedEvent<E>(this, change.value, change.index));
+    }
+  }
+
+  /** Fires the net adds/removes of {@code changes}, where values that were added and removed cancel out. */
+  private void fireCoalesced(final List<Change<E>> changes) {
+    // net adds (positive) or removes (negative) per value, so cancelling is O(1) per change
+    final Map<E, Integer> net = new HashMap<E, Integer>();
+    for (final Change<E> change : changes) {
+      final Integer count = net.get(change.value);
+      net.put(change.value, (count == null ? 0 : count) + (change.added ? 1 : -1));
+    }
+    final List<E> added = new ArrayList<E>();
+    final List<E> removed = new ArrayList<E>();
+    for (final Change<E> change : changes) {
+      final int count = net.get(change.value);
+      if (change.added && count > 0) {
+        added.add(change.value);
+        net.put(change.value, count - 1);
+      } else if (!change.added && count < 0) {
+        removed.add(change.value);
+        net.put(change.value, count + 1);
+      }
+    }
+    if (!added.isEmpty() || !removed.isEmpty()) {
+      fireEvent(new ListChangedEvent<E>(this, added, removed));
+    }
+  }
+
+  private static <E> void undo(final List<E> list, final List<Change<E>> changes) {
+    for (int i = changes.size() - 1; i >= 0; i--) {
+      final Change<E> change = changes.get(i);
+      if (change.added) {
+        list.remove(change.index);
+      } else {
+        list.add(change.index, change.value);
+      }
+    }
+  }
+
+  /** Records {@code diff} in our journal. */
+  private void journal(final ListDiff<E> diff) {
+    journal.addAll(changes(diff));
+  }
+
+  /** @return {@code diff} as removes (last first, so indexes stay valid) then adds. */
+  private static <E> List<Change<E>> changes(final ListDiff<E> diff) {
+    final List<Change<E>> changes = new ArrayList<Change<E>>(diff.removed.size() + diff.added.size());
+    final List<E> removed = new ArrayList<E>(diff.removed);
+    for (int i = removed.size() - 1; i >= 0; i--) {
+      changes.add(new Change<E>(false, removed.get(i), diff.removedIndexes[i]));
+    }
+    int i = 0;
+    for (final E added : diff.added) {
+      changes.add(new Change<E>(true, added, diff.addedIndexes[i++]));
+    }
+    return changes;
   }
 
   private List<E> getDirect() {
     return super.get();
   }
 
+  /** An add or remove recorded in our journal. */
+  private static class Change<E> {
+    private final boolean added;
+    private final E value;
+    private final int index;
+
+    private Change(final boolean added, final E value, final int index) {
+      this.added = added;
+      this.value = value;
+      this.index = index;
+    }
+  }
+
 }
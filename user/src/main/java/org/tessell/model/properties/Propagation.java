@@ -0,0 +1,231 @@
+package org.tessell.model.properties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.gwt.event.shared.UmbrellaException;
+
+/**
+ * Propagates changes through a graph of {@link Property}s.
+ *
+ * Instead of each property recursively reassessing its downstream properties
+ * (which, for diamond-shaped graphs, recomputes shared descendants once per path),
+ * a propagation collects the downstream subgraph, orders it topologically, and
+ * recomputes each property at most once, and only if an upstream property changed.
+ *
+ * Change events are fired only after the whole subgraph is up to date, so handlers
+ * never see a half-propagated graph. Like before, downstream properties fire before
+ * upstream ones, so handlers of a property see its derived properties already changed.
+ *
+ * If a property fails to recompute, or a handler fails, the rest of the subgraph is
+ * still recomputed and fired, and the failures are rethrown in an {@link UmbrellaException}.
+ */
+public class Propagation {
+
+  private static int propagationCount;
+  private static int recomputeCount;
+
+  /** @return the number of propagations run since the last {@link #resetCounts()}, for tests */
+  public static int getPropagationCount() {
+    return propagationCount;
+  }
+
+  /** @return the number of properties recomputed since the last {@link #resetCounts()}, for tests */
+  public static int getRecomputeCount() {
+    return recomputeCount;
+  }
+
+  /** Called by {@link AbstractProperty#recompute} for our counters. */
+  static void recomputed() {
+    recomputeCount++;
+  }
+
+  public static void resetCounts() {
+    propagationCount = 0;
+    recomputeCount = 0;
+  }
+
+  /** Reassesses {@code root} and propagates any change to its downstream properties. */
+  static void run(final AbstractProperty<?, ?> root) {
+    if (root.isPendingInPropagation()) {
+      // an outer propagation will get to root in order
+      root.propagation.dirty[root.propagationIndex] = true;
+      return;
+    }
+    propagationCount++;
+    if (root.downstream.isEmpty()) {
+      // nothing to order, so skip allocating a propagation
+      root.recompute(null, 0);
+      return;
+    }
+    new Propagation().propagate(Collections.singletonList(root));
+  }
+
+  /** Reassesses each of {@code roots} and propagates any changes to their downstream properties. */
+  static void run(final Collection<? extends Property<?>> roots) {
+    propagationCount++;
+    new Propagation().propagate(roots);
+  }
+
+  // the subgraph, in topological order once collected
+  private final ArrayList<Property<?>> nodes = new ArrayList<Property<?>>();
+  // non-AbstractProperty nodes, which we can't mark as visited
+  private HashSet<Property<?>> foreign;
+  // whether a node needs recomputed, i.e. it's a root or an upstream changed
+  private boolean[] dirty;
+  // whether a node's value changed, and to what, so we can fire its change later
+  private boolean[] changed;
+  private Object[] oldValues;
+  private Object[] newValues;
+  // the next node to recompute, nodes >= next are still pending
+  private int next;
+
+  private Propagation() {
+  }
+
+  /** Called by nodes when their value changed during {@link AbstractProperty#recompute}. */
+  void changed(final int index, final Object oldValue, final Object newValue) {
+    changed[index] = true;
+    oldValues[index] = oldValue;
+    newValues[index] = newValue;
+  }
+
+  /** @return whether the node at {@code index} has not been recomputed yet */
+  boolean isPending(final int index) {
+    return dirty != null && index >= next && index < nodes.size();
+  }
+
+  private void propagate(final Collection<? extends Property<?>> roots) {
+    // visit leaves nodes in post-order, so reversing gives a topological order;
+    // visiting the roots backwards keeps independent roots in their original order
+    final ArrayList<Property<?>> rootsBackwards = new ArrayList<Property<?>>(roots);
+    for (int i = rootsBackwards.size() - 1; i >= 0; i--) {
+      visit(rootsBackwards.get(i));
+    }
+    Collections.reverse(nodes);
+    final int size = nodes.size();
+    dirty = new boolean[size];
+    changed = new boolean[size];
+    oldValues = new Object[size];
+    newValues = new Object[size];
+    for (int i = 0; i < size; i++) {
+      if (nodes.get(i) instanceof AbstractProperty) {
+        ((AbstractProperty<?, ?>) nodes.get(i)).propagationIndex = i;
+      }
+    }
+    for (final Property<?> root : roots) {
+      markDirty(root);
+    }
+    Set<Throwable> causes = null;
+    try {
+      for (next = 0; next < size; next++) {
+        if (!dirty[next]) {
+          continue;
+        }
+        try {
+          recompute(nodes.get(next));
+        } catch (final Throwable t) {
+          // keep going, so later nodes aren't left dirty
+          causes = add(causes, t);
+        }
+      }
+    } finally {
+      for (final Property<?> node : nodes) {
+        if (node instanceof AbstractProperty && ((AbstractProperty<?, ?>) node).propagation == this) {
+          ((AbstractProperty<?, ?>) node).propagation = null;
+        }
+      }
+    }
+    // now that everything is up to date, fire downstream changes first
+    for (int i = size - 1; i >= 0; i--) {
+      if (changed[i]) {
+        final Object oldValue = oldValues[i];
+        final Object newValue = newValues[i];
+        oldValues[i] = null;
+        newValues[i] = null;
+        try {
+          ((AbstractProperty<?, ?>) nodes.get(i)).fireRecomputed(oldValue, newValue);
+        } catch (final Throwable t) {
+          causes = add(causes, t);
+        }
+      }
+    }
+    if (causes != null) {
+      throw new UmbrellaException(causes);
+    }
+  }
+
+  private void recompute(final Property<?> node) {
+    if (node instanceof AbstractProperty) {
+      final AbstractProperty<?, ?> p = (AbstractProperty<?, ?>) node;
+      if (p.recompute(this, next)) {
+        for (int i = 0; i < p.downstream.size(); i++) {
+          markDirty(p.downstream.get(i));
+        }
+      }
+    } else {
+      // we can't see foreign downstreams, so let it propagate on its own
+      node.reassess();
+    }
+  }
+
+  /** @return {@code causes} with {@code t} added, unwrapping nested {@link UmbrellaException}s */
+  static Set<Throwable> add(Set<Throwable> causes, final Throwable t) {
+    if (causes == null) {
+      causes = new HashSet<Throwable>();
+    }
+    if (t instanceof UmbrellaException) {
+      causes.addAll(((UmbrellaException) t).getCauses());
+    } else {
+      causes.add(t);
+    }
+    return causes;
+  }
+
+  /** Adds {@code node} and its downstream nodes to our subgraph in post-order. */
+  private void visit(final Property<?> node) {
+    if (node instanceof AbstractProperty) {
+      final AbstractProperty<?, ?> p = (AbstractProperty<?, ?>) node;
+      if (p.propagation == this || p.isPendingInPropagation()) {
+        // already visited, or an outer propagation will get to it
+        return;
+      }
+      p.propagation = this;
+      for (int i = 0; i < p.downstream.size(); i++) {
+        visit(p.downstream.get(i));
+      }
+    } else {
+      if (foreign == null) {
+        foreign = new HashSet<Property<?>>();
+      }
+      if (!foreign.add(node)) {
+        return;
+      }
+    }
+    nodes.add(node);
+  }
+
+  private void markDirty(final Property<?> node) {
+    if (node instanceof AbstractProperty && ((AbstractProperty<?, ?>) node).propagation == this) {
+      final int index = ((AbstractProperty<?, ?>) node).propagationIndex;
+      // index < next would be a cycle, which we ignore
+      if (index >= next) {
+        dirty[index] = true;
+      }
+    } else if (foreign != null && foreign.contains(node)) {
+      final int index = nodes.indexOf(node);
+      if (index >= next) {
+        dirty[index] = true;
+      }
+    } else {
+      // node was not in our subgraph (e.g. it was just added as a
+      // downstream, or is owned by an outer propagation), so reassess
+      // it the normal way
+      node.reassess();
+    }
+  }
+
+}
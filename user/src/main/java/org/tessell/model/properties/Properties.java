@@ -0,0 +1,101 @@
+package org.tessell.model.properties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.google.gwt.event.shared.UmbrellaException;
+
+/**
+ * Batches changes to a graph of {@link Property}s.
+ *
+ * While a batch is open, {@link Property#reassess()} calls are only recorded,
+ * so setting 50 fields that feed the same derived properties/{@link PropertyGroup}s
+ * doesn't reassess them 50 times. On commit, each dirty property is reassessed
+ * once, and fires at most one change event, with the value from before the batch
+ * as its old value.
+ *
+ * Note that while a batch is open, {@link Property#get()} returns the latest
+ * value, but validation state (e.g. {@link Property#wasValid()}) is stale.
+ */
+public class Properties {
+
+  // how many begin calls are outstanding
+  private static int depth = 0;
+  // properties that have been asked to reassess while batching
+  private static final LinkedHashSet<Property<?>> dirty = new LinkedHashSet<Property<?>>();
+  // callbacks to run once the outermost commit is done
+  private static final ArrayList<Runnable> afterCommit = new ArrayList<Runnable>();
+
+  /** Runs {@code runnable} within a batch, committing even if it fails. */
+  public static void batch(final Runnable runnable) {
+    begin();
+    try {
+      runnable.run();
+    } finally {
+      commit();
+    }
+  }
+
+  /** Starts a batch; batches can be nested, and only the outermost commit reassesses. */
+  public static void begin() {
+    depth++;
+  }
+
+  /** Ends a batch, and if it was the outermost one, reassesses each dirty property. */
+  public static void commit() {
+    if (depth == 0) {
+      throw new IllegalStateException("commit called without begin");
+    }
+    if (--depth > 0) {
+      return;
+    }
+    Set<Throwable> causes = null;
+    try {
+      // reassessing may fire handlers that open their own batch, which
+      // can leave more dirty properties, so keep going until we're empty
+      while (!dirty.isEmpty()) {
+        final ArrayList<Property<?>> toReassess = new ArrayList<Property<?>>(dirty);
+        dirty.clear();
+        // propagate from all dirty properties at once, so shared downstream
+        // properties are only recomputed once
+        try {
+          Propagation.run(toReassess);
+        } catch (final Throwable t) {
+          causes = Propagation.add(causes, t);
+        }
+      }
+    } finally {
+      while (!afterCommit.isEmpty()) {
+        afterCommit.remove(0).run();
+      }
+    }
+    if (causes != null) {
+      throw new UmbrellaException(causes);
+    }
+  }
+
+  /** @return whether a batch is currently open */
+  public static boolean isBatching() {
+    return depth > 0;
+  }
+
+  /** Runs {@code runnable} once the outermost commit has fired all changes, or now if no batch is open. */
+  static void afterCommit(final Runnable runnable) {
+    if (depth == 0) {
+      runnable.run();
+    } else {
+      afterCommit.add(runnable);
+    }
+  }
+
+  /** @return {@code true} if {@code property} should skip reassessing because it will be reassessed on commit */
+  static boolean deferReassess(final Property<?> property) {
+    if (depth == 0) {
+      return false;
+    }
+    dirty.add(property);
+    return true;
+  }
+
+}
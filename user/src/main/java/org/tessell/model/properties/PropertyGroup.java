@@ -1,10 +1,15 @@
 package org.tessell.model.properties;
 
+import static org.tessell.util.ObjectUtils.eq;
+
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.tessell.model.events.PropertyChangedEvent;
+import org.tessell.model.events.PropertyChangedHandler;
 import org.tessell.model.validation.events.RuleTriggeredEvent;
 import org.tessell.model.validation.events.RuleTriggeredHandler;
 import org.tessell.model.validation.events.RuleUntriggeredEvent;
@@ -17,11 +22,18 @@ import com.google.gwt.event.shared.HandlerRegistration;
 /** Groups a set of {@link Property}s together. */
 public class PropertyGroup extends AbstractProperty<Boolean, PropertyGroup> {
 
-  // All of the properties in this group
-  private final ArrayList<PropertyWithHandlers> properties = new ArrayList<PropertyWithHandlers>();
-  // Any outstanding errors from properties in this group
-  private final ArrayList<PropertyError> invalid = new ArrayList<PropertyError>();
-  private Snapshot snapshot;
+  // All of the properties in this group, in the order they were added
+  private final Map<Property<?>, PropertyWithHandlers> properties = new LinkedHashMap<Property<?>, PropertyWithHandlers>();
+  // The number of outstanding errors from properties in this group (the keys are tracked per property)
+  private int errorCount;
+  // the values from before each change since the last capture, only tracked after the first capture
+  private LinkedHashMap<Property<?>, Object> uncaptured;
+  // captured steps, oldest first, and undone steps, most recently undone last
+  private ArrayList<Step> undos;
+  private ArrayList<Step> redos;
+  private int historyDepth = 10;
+  // whether we're restoring/undoing/redoing, so we shouldn't track changes
+  private boolean applying;
 
   public PropertyGroup(final String name, final String message) {
     super(new SetValue<Boolean>(name, true));
@@ -35,50 +47,66 @@ public class PropertyGroup extends AbstractProperty<Boolean, PropertyGroup> {
   }
 
   @Override
-  public void reassess() {
-    ((SetValue<Boolean>) getValueObject()).set(invalid.size() == 0);
-    super.reassess();
+  protected void beforeRecompute() {
+    ((SetValue<Boolean>) getValueObject()).set(errorCount == 0);
   }
 
   /** Adds properties to the group to validate as a group. */
   public void add(final Property<?>... properties) {
+    final int before = errorCount;
     for (final Property<?> property : properties) {
-      this.properties.add(new PropertyWithHandlers(property));
+      if (this.properties.containsKey(property)) {
+        continue;
+      }
+      final PropertyWithHandlers pwh = new PropertyWithHandlers(property);
+      this.properties.put(property, pwh);
+      if (uncaptured != null) {
+        pwh.trackChanges();
+      }
       for (Map.Entry<Object, String> e : property.getErrors().entrySet()) {
-        invalid.add(new PropertyError(property, e.getKey()));
+        pwh.addError(e.getKey());
       }
     }
-    reassess();
+    pendingSourcesChanged();
+    reassessIfFlipped(before);
   }
 
   /** Removes {@code property} from the group. */
   public void remove(Property<?> property) {
-    for (Iterator<PropertyWithHandlers> i = properties.iterator(); i.hasNext();) {
-      PropertyWithHandlers pwd = i.next();
-      if (pwd.property == property) {
-        pwd.removeHandlers();
-        i.remove();
+    final PropertyWithHandlers pwh = properties.remove(property);
+    if (pwh != null) {
+      final int before = errorCount;
+      pwh.removeHandlers();
+      pwh.removeErrors();
+      if (uncaptured != null) {
+        uncaptured.remove(property);
       }
+      pendingSourcesChanged();
+      reassessIfFlipped(before);
     }
-    for (Iterator<PropertyError> i = invalid.iterator(); i.hasNext();) {
-      if (i.next().property == property) {
-        i.remove();
+  }
+
+  /** @return whether our own, or any of our properties', async rules are waiting on the server */
+  @Override
+  public boolean isPending() {
+    if (super.isPending()) {
+      return true;
+    }
+    for (final Property<?> property : properties.keySet()) {
+      if (property instanceof AbstractProperty && ((AbstractProperty<?, ?>) property).pending().isTrue()) {
+        return true;
       }
     }
-    reassess();
+    return false;
   }
 
   public ArrayList<Property<?>> getProperties() {
-    ArrayList<Property<?>> properties = new ArrayList<Property<?>>();
-    for (PropertyWithHandlers pwh : this.properties) {
-      properties.add(pwh.property);
-    }
-    return properties;
+    return new ArrayList<Property<?>>(properties.keySet());
   }
 
   @Override
   public void setTouched(final boolean touched) {
-    for (final PropertyWithHandlers other : properties) {
+    for (final PropertyWithHandlers other : properties.values()) {
       other.property.setTouched(touched);
     }
     // Per comment in the constructor, we don't actually want
@@ -92,18 +120,103 @@ public class PropertyGroup extends AbstractProperty<Boolean, PropertyGroup> {
     reassess();
   }
 
+  /**
+   * Captures the current values, e.g. when an editor opens or saves, so they can be restored or undone later.
+   *
+   * The first capture starts tracking changes to our (settable) properties. Each
+   * later capture records an undo step with only the properties that changed since
+   * the previous capture, so capturing, restoring, and undoing only cost as much as
+   * the number of changed properties, regardless of how big the group is.
+   */
   public void capture() {
-    Snapshot s = new Snapshot();
-    for (Property<?> p : getProperties()) {
-      s.save(p);
+    if (uncaptured == null) {
+      uncaptured = new LinkedHashMap<Property<?>, Object>();
+      undos = new ArrayList<Step>();
+      redos = new ArrayList<Step>();
+      for (PropertyWithHandlers pwh : properties.values()) {
+        pwh.trackChanges();
+      }
+      return;
+    }
+    if (uncaptured.isEmpty()) {
+      return;
+    }
+    final Step step = new Step(uncaptured);
+    uncaptured.clear();
+    if (!step.isEmpty()) {
+      undos.add(step);
+      redos.clear();
+      while (undos.size() > historyDepth) {
+        undos.remove(0);
+      }
     }
-    snapshot = s;
   }
 
+  /** Restores the values from the last {@link #capture()}, reassessing each property only once. */
   public void restore() {
-    for (Property<?> p : getProperties()) {
-      snapshot.restore(p);
+    if (uncaptured == null || uncaptured.isEmpty()) {
+      return;
+    }
+    final Step step = new Step(uncaptured);
+    uncaptured.clear();
+    apply(step.properties, step.before);
+  }
+
+  /**
+   * Undoes the changes from the last captured step, as one batched update.
+   *
+   * Changes since the last {@link #capture()} are first captured as their own step.
+   *
+   * @return whether there was a step to undo
+   */
+  public boolean undo() {
+    capture();
+    if (undos.isEmpty()) {
+      return false;
+    }
+    final Step step = undos.remove(undos.size() - 1);
+    apply(step.properties, step.before);
+    redos.add(step);
+    return true;
+  }
+
+  /**
+   * Redoes the last step undone by {@link #undo()}, as one batched update.
+   *
+   * Any changes since the undo are first captured, which clears the steps to redo.
+   *
+   * @return whether there was a step to redo
+   */
+  public boolean redo() {
+    capture();
+    if (redos.isEmpty()) {
+      return false;
+    }
+    final Step step = redos.remove(redos.size() - 1);
+    apply(step.properties, step.after);
+    undos.add(step);
+    return true;
+  }
+
+  /** @return whether {@link #undo()} would undo anything */
+  public boolean canUndo() {
+    return undos != null && (!undos.isEmpty() || !uncaptured.isEmpty());
+  }
+
+  /** @return whether {@link #redo()} would redo anything */
+  public boolean canRedo() {
+    return redos != null && !redos.isEmpty() && uncaptured.isEmpty();
+  }
+
+  /** Sets how many captured steps to keep for {@link #undo()}, defaults to 10. */
+  public PropertyGroup historyDepth(final int historyDepth) {
+    this.historyDepth = historyDepth;
+    if (undos != null) {
+      while (undos.size() > historyDepth) {
+        undos.remove(0);
+      }
     }
+    return this;
   }
 
   public void reassessAll() {
@@ -123,42 +236,149 @@ public class PropertyGroup extends AbstractProperty<Boolean, PropertyGroup> {
     return this;
   }
 
-  /** Remembers the state of all of the properties in our group so that we can roll back when needed (e.g. on cancel). */
-  private static class Snapshot {
-    private final Map<Property<?>, Object> state = new LinkedHashMap<Property<?>, Object>();
+  /** Sets each of {@code properties} to its value in {@code values}, reassessing each property only once. */
+  private void apply(final Property<?>[] properties, final Object[] values) {
+    applying = true;
+    Properties.begin();
+    try {
+      for (int i = 0; i < properties.length; i++) {
+        set(properties[i], values[i]);
+      }
+    } finally {
+      // if we're nested in an outer batch, our changes fire on its commit, so keep ignoring them until then
+      Properties.afterCommit(new Runnable() {
+        public void run() {
+          applying = false;
+        }
+      });
+      Properties.commit();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <P> void set(final Property<P> property, final Object value) {
+    property.set((P) copy(value));
+  }
+
+  /** @return a copy of {@code value} if it's a list, which may be changed later, e.g. by {@link ListProperty} */
+  private static Object copy(final Object value) {
+    if (value instanceof List) {
+      return new ArrayList<Object>((List<?>) value);
+    }
+    return value;
+  }
+
+  /** @return a copy of {@code oldValue}, rebuilt from the journal if {@code property} is a journaled {@link ListProperty} */
+  @SuppressWarnings("unchecked")
+  private static Object copyOldValue(final Property<?> property, final Object oldValue) {
+    if (property instanceof ListProperty) {
+      return ((ListProperty<Object>) property).copyOldValue((List<Object>) oldValue);
+    }
+    return copy(oldValue);
+  }
+
+  /**
+   * Reassesses us if we went between having no errors and some errors.
+   *
+   * Our value only depends on whether we have errors, so while many rules
+   * flip during a bulk change, we only reassess when our validity flips.
+   */
+  private void reassessIfFlipped(final int before) {
+    if ((before == 0) != (errorCount == 0)) {
+      reassess();
+    }
+  }
+
+  /** The properties that changed between two captures, with their values before and after. */
+  private static class Step {
+    private final Property<?>[] properties;
+    private final Object[] before;
+    private final Object[] after;
 
-    private <P> void save(Property<P> p) {
-      state.put(p, p.get());
+    private Step(final Map<Property<?>, Object> uncaptured) {
+      final ArrayList<Property<?>> changed = new ArrayList<Property<?>>(uncaptured.size());
+      final ArrayList<Object> befores = new ArrayList<Object>(uncaptured.size());
+      final ArrayList<Object> afters = new ArrayList<Object>(uncaptured.size());
+      for (Map.Entry<Property<?>, Object> e : uncaptured.entrySet()) {
+        final Object after = copy(e.getKey().get());
+        // skip properties that changed back to what they were
+        if (!eq(e.getValue(), after)) {
+          changed.add(e.getKey());
+          befores.add(e.getValue());
+          afters.add(after);
+        }
+      }
+      properties = changed.toArray(new Property<?>[changed.size()]);
+      before = befores.toArray();
+      after = afters.toArray();
     }
 
-    @SuppressWarnings("unchecked")
-    private <P> void restore(Property<P> p) {
-      p.set((P) state.get(p));
+    private boolean isEmpty() {
+      return properties.length == 0;
     }
   }
 
-  /** Holds a property + its handler registrations (in case we have to remove it). */
+  /** Holds a property + its handler registrations (in case we have to remove it) + its outstanding errors. */
   private class PropertyWithHandlers {
     private final Property<?> property;
     private final HandlerRegistration triggered;
     private final HandlerRegistration untriggered;
+    // only set once we're tracking changes for capture/undo
+    private HandlerRegistration changed;
+    // the keys of the property's outstanding errors, allocated on the first error
+    private HashSet<Object> errorKeys;
 
     private PropertyWithHandlers(final Property<?> property) {
       this.property = property;
       triggered = property.addRuleTriggeredHandler(new RuleTriggeredHandler() {
         public void onTrigger(final RuleTriggeredEvent event) {
-          invalid.add(new PropertyError(property, event.getKey()));
-          reassess();
+          final int before = errorCount;
+          addError(event.getKey());
+          reassessIfFlipped(before);
         }
       });
       untriggered = property.addRuleUntriggeredHandler(new RuleUntriggeredHandler() {
         public void onUntrigger(final RuleUntriggeredEvent event) {
-          for (Iterator<PropertyError> i = invalid.iterator(); i.hasNext();) {
-            if (i.next().key.equals(event.getKey())) {
-              i.remove();
-            }
+          final int before = errorCount;
+          if (errorKeys != null && errorKeys.remove(event.getKey())) {
+            errorCount--;
+          }
+          reassessIfFlipped(before);
+        }
+      });
+    }
+
+    private void addError(final Object key) {
+      if (errorKeys == null) {
+        errorKeys = new HashSet<Object>();
+      }
+      if (errorKeys.add(key)) {
+        errorCount++;
+      }
+    }
+
+    private void removeErrors() {
+      if (errorKeys != null) {
+        errorCount -= errorKeys.size();
+        errorKeys = null;
+      }
+    }
+
+    /** Remembers the value from before the property's first change since the last capture. */
+    private void trackChanges() {
+      // read-only properties can't be restored, and nested groups' values are derived from their errors
+      if (property.isReadOnly() || property instanceof PropertyGroup) {
+        return;
+      }
+      changed = addChangedHandler(property);
+    }
+
+    private <P> HandlerRegistration addChangedHandler(final Property<P> property) {
+      return property.addPropertyChangedHandler(new PropertyChangedHandler<P>() {
+        public void onPropertyChanged(final PropertyChangedEvent<P> event) {
+          if (!applying && !uncaptured.containsKey(property)) {
+            uncaptured.put(property, copyOldValue(property, event.getOldValue()));
           }
-          reassess();
         }
       });
     }
@@ -166,6 +386,9 @@ public class PropertyGroup extends AbstractProperty<Boolean, PropertyGroup> {
     private void removeHandlers() {
       triggered.removeHandler();
       untriggered.removeHandler();
+      if (changed != null) {
+        changed.removeHandler();
+      }
     }
 
     @Override
@@ -174,15 +397,4 @@ public class PropertyGroup extends AbstractProperty<Boolean, PropertyGroup> {
     }
   }
 
-  /** Holds a rule triggered key + the property that caused it (in case we have to remove it). */
-  private class PropertyError {
-    private final Property<?> property;
-    private final Object key;
-
-    private PropertyError(Property<?> property, Object key) {
-      this.property = property;
-      this.key = key;
-    }
-  }
-
 }
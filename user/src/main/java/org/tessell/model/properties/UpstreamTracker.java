@@ -0,0 +1,138 @@
+package org.tessell.model.properties;
+
+import org.tessell.model.values.DerivedValue;
+
+/**
+ * Tracks which properties a {@link DerivedValue} reads while computing its value.
+ *
+ * Reads are recorded into one shared buffer, with a frame per derived value that
+ * is currently computing (derived values can read other derived values). Each
+ * frame has a unique epoch, and properties are stamped with the epoch of the
+ * frame that last recorded them, so recording a property twice is an O(1) no-op.
+ *
+ * When a frame ends, its reads are compared against the owner's previous upstream
+ * properties, and {@code addDerived}/{@code removeDerived} are only called for the
+ * differences. If nothing changed, which is the common case, nothing is allocated.
+ */
+class UpstreamTracker {
+
+  // the reads of all active frames, with the innermost frame last
+  private static AbstractProperty<?, ?>[] reads = new AbstractProperty<?, ?>[32];
+  private static int size = 0;
+  // where the innermost frame starts in reads, or -1 if nothing is being tracked
+  private static int frameStart = -1;
+  // the epoch of the innermost frame
+  private static int frameEpoch = 0;
+  // the last epoch handed out
+  private static int epoch = 0;
+  // the start/epoch of the outer frames, so we can restore them
+  private static int[] outerStarts = new int[8];
+  private static int[] outerEpochs = new int[8];
+  private static int depth = 0;
+
+  /** Records that {@code property} was read, if a derived value is computing. */
+  static void read(final AbstractProperty<?, ?> property) {
+    if (frameStart == -1 || property.trackedEpoch == frameEpoch) {
+      return;
+    }
+    property.trackedEpoch = frameEpoch;
+    if (size == reads.length) {
+      reads = grow(reads, size * 2);
+    }
+    reads[size++] = property;
+  }
+
+  /** Starts a frame for a derived value that is about to compute. */
+  static void begin() {
+    if (depth == outerStarts.length) {
+      outerStarts = grow(outerStarts, depth * 2);
+      outerEpochs = grow(outerEpochs, depth * 2);
+    }
+    outerStarts[depth] = frameStart;
+    outerEpochs[depth] = frameEpoch;
+    depth++;
+    frameStart = size;
+    frameEpoch = ++epoch;
+  }
+
+  /** Ends the current frame, updating {@code owner}'s upstream properties to what it read. */
+  static void end(final AbstractProperty<?, ?> owner) {
+    final AbstractProperty<?, ?>[] last = owner.upstream;
+    final int lastSize = owner.upstreamSize;
+    final int start = frameStart;
+    final int count = size - start;
+    // the common case is reading the same properties in the same order
+    boolean same = count == lastSize;
+    for (int i = 0; same && i < count; i++) {
+      same = reads[start + i] == last[i];
+    }
+    if (!same) {
+      final AbstractProperty<?, ?>[] now = new AbstractProperty<?, ?>[count];
+      System.arraycopy(reads, start, now, 0, count);
+      // everything read this frame has our epoch, so last's other entries were
+      // removed; null out the ones that are still here, and stamp them as seen
+      final int seen = ++epoch;
+      for (int i = 0; i < lastSize; i++) {
+        if (last[i].trackedEpoch == frameEpoch) {
+          last[i].trackedEpoch = seen;
+          last[i] = null;
+        }
+      }
+      // anything read this frame that wasn't seen is new, so null out the rest
+      for (int i = start; i < size; i++) {
+        if (reads[i].trackedEpoch == seen) {
+          reads[i] = null;
+        }
+      }
+      owner.upstream = now;
+      owner.upstreamSize = count;
+      // calling out can reassess and so begin/end nested frames, which only use
+      // reads after our frame, so the nulled out diffs stay intact until we pop
+      for (int i = 0; i < lastSize; i++) {
+        if (last[i] != null) {
+          last[i].removeDerived(owner);
+        }
+      }
+      for (int i = start; i < start + count; i++) {
+        if (reads[i] != null) {
+          reads[i].addDerived(owner);
+        }
+      }
+    }
+    pop();
+  }
+
+  /** Ends the current frame without changing the owner's upstream properties, e.g. if it failed. */
+  static void abort() {
+    pop();
+  }
+
+  private static void pop() {
+    for (int i = frameStart; i < size; i++) {
+      reads[i] = null;
+    }
+    size = frameStart;
+    depth--;
+    frameStart = outerStarts[depth];
+    frameEpoch = outerEpochs[depth];
+    // nested frames overwrote the stamps of properties the outer frame had already read
+    for (int i = frameStart == -1 ? size : frameStart; i < size; i++) {
+      if (reads[i] != null) {
+        reads[i].trackedEpoch = frameEpoch;
+      }
+    }
+  }
+
+  private static AbstractProperty<?, ?>[] grow(final AbstractProperty<?, ?>[] array, final int length) {
+    final AbstractProperty<?, ?>[] grown = new AbstractProperty<?, ?>[length];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  private static int[] grow(final int[] array, final int length) {
+    final int[] grown = new int[length];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+}
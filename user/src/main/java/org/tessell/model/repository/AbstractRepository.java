@@ -4,6 +4,7 @@ import java.util.HashMap;
 
 import org.tessell.dispatch.client.DispatchAsync;
 import org.tessell.model.Model;
+import org.tessell.model.Models;
 
 public abstract class AbstractRepository<K, D, M extends Model<D>> {
 
@@ -22,7 +23,7 @@ public abstract class AbstractRepository<K, D, M extends Model<D>> {
 
   public M merge(final K id, final D dto) {
     final M model = get(id, dto);
-    model.merge(dto);
+    Models.merge(model, dto);
     return model;
   }
 
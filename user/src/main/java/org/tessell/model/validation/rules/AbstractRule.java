@@ -14,8 +14,8 @@ import org.tessell.model.values.Value;
 
 import com.google.gwt.event.shared.EventBus;
 import com.google.gwt.event.shared.GwtEvent;
+import com.google.gwt.event.shared.HandlerList;
 import com.google.gwt.event.shared.HandlerRegistration;
-import com.google.gwt.event.shared.SimplerEventBus;
 
 /**
  * A base class with most of the common {@link Rule} functionality implemented
@@ -30,7 +30,7 @@ public abstract class AbstractRule<T, U extends AbstractRule<T, U>> implements R
   private static final Logger log = Logger.getLogger("org.tessell.model");
   protected final Property<T> property;
   // handlers
-  protected final EventBus handlers = new SimplerEventBus();
+  protected final EventBus handlers = new HandlerList();
   // List of properties that must be true for this rule to run.
   private final ArrayList<Value<Boolean>> onlyIf = new ArrayList<Value<Boolean>>();
   // The error message to show the user
@@ -53,11 +53,16 @@ public abstract class AbstractRule<T, U extends AbstractRule<T, U>> implements R
   @Override
   public final Valid validate() {
     if (onlyIfSaysToSkip()) {
+      skipped();
       return Valid.YES;
     }
     return this.isValid();
   }
 
+  /** Called instead of {@link #isValid()} when an {@link #onlyIf(Value)} condition is false, e.g. to drop pending work. */
+  protected void skipped() {
+  }
+
   @Override
   public HandlerRegistration addRuleTriggeredHandler(final RuleTriggeredHandler handler) {
     return handlers.addHandler(RuleTriggeredEvent.getType(), handler);
@@ -100,7 +105,7 @@ public abstract class AbstractRule<T, U extends AbstractRule<T, U>> implements R
 
   private void fireEvent(final GwtEvent<?> event) {
     log.log(Level.FINEST, this + " firing " + event);
-    handlers.fireEvent(event);
+    handlers.fireEventFromSource(event, this);
     // after all of our handlers have seen event, delegate it up.
     property.fireEvent(event);
   }
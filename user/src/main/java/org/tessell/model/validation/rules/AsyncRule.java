@@ -0,0 +1,164 @@
+package org.tessell.model.validation.rules;
+
+import static org.tessell.model.properties.NewProperty.booleanProperty;
+
+import java.util.HashMap;
+
+import org.tessell.dispatch.client.util.OutstandingDispatchAsync;
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.Result;
+import org.tessell.gwt.user.client.IsTimer;
+import org.tessell.model.properties.BooleanProperty;
+import org.tessell.model.properties.Property;
+import org.tessell.model.validation.Valid;
+import org.tessell.widgets.Widgets;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * A rule that asks the server whether a value is valid, e.g. whether a username is taken.
+ *
+ * While the value keeps changing, the call is debounced until it has been stable for
+ * {@link #debounce(int)} millis. Results are cached per value, responses for values
+ * the user has since changed are ignored, and, while a call is outstanding, the rule
+ * passes but {@link #pending()} is true, so forms/commands can wait for it.
+ *
+ * @param T
+ *          the value of the property for this rule
+ * @param A
+ *          the action to validate the value with
+ * @param R
+ *          the result of the action
+ */
+public abstract class AsyncRule<T, A extends Action<R>, R extends Result> extends AbstractRule<T, AsyncRule<T, A, R>> {
+
+  private final OutstandingDispatchAsync async;
+  private final BooleanProperty pending = booleanProperty("pending", false);
+  private final HashMap<T, Boolean> results = new HashMap<T, Boolean>();
+  // debounces calls, protected so tests can not auto-run it
+  protected final IsTimer timer = Widgets.newTimer(new Runnable() {
+    public void run() {
+      call();
+    }
+  });
+  private int debounceMillis = 300;
+  // the value we're validating, either waiting for it to be stable or for the server
+  private T requested;
+  // the action we're waiting on, responses to other actions are stale
+  private A inFlight;
+  // whether validate found a result, so we can stop pending once it's been triggered/untriggered
+  private boolean settled;
+
+  public AsyncRule(final Property<T> property, final String message, final OutstandingDispatchAsync async) {
+    super(property, message);
+    this.async = async;
+  }
+
+  /** @return the action to validate {@code value} with */
+  protected abstract A newAction(T value);
+
+  /** @return whether {@code result} means the value was valid */
+  protected abstract boolean isValid(R result);
+
+  /** @return whether we're waiting on the server to validate the current value */
+  public BooleanProperty pending() {
+    return pending;
+  }
+
+  /** Waits for the value to be unchanged for {@code millis} before calling the server, defaults to 300. */
+  public AsyncRule<T, A, R> debounce(final int millis) {
+    debounceMillis = millis;
+    return this;
+  }
+
+  @Override
+  protected Valid isValid() {
+    final T value = property.get();
+    final Boolean cached = value == null ? Boolean.TRUE : results.get(value);
+    if (cached != null) {
+      // we already know, so drop any call we were waiting to make/hear back from
+      timer.cancel();
+      requested = null;
+      inFlight = null;
+      settled = true;
+      return cached ? Valid.YES : Valid.NO;
+    }
+    if (!value.equals(requested)) {
+      // a new value, so (re)start the debounce, and ignore any response for the old value
+      requested = value;
+      inFlight = null;
+      timer.cancel();
+      pending.set(true);
+      timer.schedule(debounceMillis);
+    }
+    // don't show an error until the server says so
+    return Valid.YES;
+  }
+
+  @Override
+  protected void skipped() {
+    // we're not validating the value anymore, so drop any call we were waiting to make/hear back from
+    timer.cancel();
+    requested = null;
+    inFlight = null;
+    settled = false;
+    pending.set(false);
+  }
+
+  @Override
+  public void triggerIfNeeded() {
+    super.triggerIfNeeded();
+    settle();
+  }
+
+  @Override
+  public void untriggerIfNeeded() {
+    super.untriggerIfNeeded();
+    settle();
+  }
+
+  @Override
+  protected AsyncRule<T, A, R> getThis() {
+    return this;
+  }
+
+  private void call() {
+    final T value = requested;
+    final A action = newAction(value);
+    inFlight = action;
+    async.execute(action, new AsyncCallback<R>() {
+      public void onSuccess(final R result) {
+        // even if stale, the user might come back to this value
+        results.put(value, isValid(result));
+        if (action == inFlight) {
+          done();
+        }
+      }
+
+      public void onFailure(final Throwable caught) {
+        if (action == inFlight) {
+          // keep requested, so we don't retry until the value changes
+          inFlight = null;
+          pending.set(false);
+          async.unhandledFailure(caught);
+        }
+      }
+    });
+  }
+
+  private void done() {
+    inFlight = null;
+    requested = null;
+    // validate will now see the cached result, and then settle
+    property.reassess();
+  }
+
+  /** Stops pending only after our error is fired, so anyone waiting on us sees it. */
+  private void settle() {
+    if (settled) {
+      settled = false;
+      pending.set(false);
+    }
+  }
+
+}
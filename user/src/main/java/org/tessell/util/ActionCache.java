@@ -1,14 +1,36 @@
 package org.tessell.util;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.tessell.dispatch.client.SuccessCallback;
+import org.tessell.dispatch.client.events.DispatchResultEvent;
+import org.tessell.dispatch.client.events.DispatchResultHandler;
 import org.tessell.dispatch.client.util.OutstandingDispatchAsync;
 import org.tessell.dispatch.shared.Action;
 import org.tessell.dispatch.shared.Result;
 
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.web.bindery.event.shared.EventBus;
+import com.google.web.bindery.event.shared.HandlerRegistration;
+
 /**
+ * Caches the derived results of actions, so each is only called once until it expires or is invalidated.
+ *
+ * By default, entries never expire and the cache is unbounded. Use {@link #expireAfter(int)}
+ * to give entries a TTL, {@link #maxSize(int)} to evict the least recently used entries,
+ * and {@link #staleWhileRevalidate()} to serve an expired entry immediately while it's
+ * refreshed in the background.
+ *
+ * Entries can be invalidated individually, by the tags from {@link #tagsOf(Action)}, or
+ * whenever another action succeeds, e.g. after a save, with {@link #invalidateAfter}.
+ *
+ * If a call fails, its waiting callbacks are released (failing {@link AsyncCallback}s, or
+ * firing one {@code DispatchUnhandledFailureEvent} for {@link SuccessCallback}s) and the
+ * action will be called again next time.
+ *
  * @param A
  *          the action
  * @param R
@@ -18,69 +40,260 @@ import org.tessell.dispatch.shared.Result;
  */
 public abstract class ActionCache<A extends Action<R>, R extends Result, D> {
 
+  private static final String[] noTags = new String[0];
   private final OutstandingDispatchAsync async;
-  private final HashMap<A, ResultHandler> results = new HashMap<A, ResultHandler>();
+  // in access order, so the eldest is the least recently used
+  private final LinkedHashMap<A, ResultHandler> results = new LinkedHashMap<A, ResultHandler>(16, 0.75f, true);
+  private int ttlMillis;
+  private int maxSize;
+  private boolean staleWhileRevalidate;
+  private int hits;
+  private int staleHits;
+  private int misses;
+  private int evictions;
 
   public ActionCache(final OutstandingDispatchAsync async) {
     this.async = async;
   }
 
+  public abstract D derive(R result);
+
+  /** @return the tags for {@code action}'s entry, for {@link #invalidateTag(String)}, defaults to none */
+  protected String[] tagsOf(final A action) {
+    return noTags;
+  }
+
+  /** @return the current time in millis, for expiring entries */
+  protected double now() {
+    return System.currentTimeMillis();
+  }
+
+  /** Expires entries {@code ttlMillis} after their result arrives, defaults to 0 for never. */
+  public ActionCache<A, R, D> expireAfter(final int ttlMillis) {
+    this.ttlMillis = ttlMillis;
+    return this;
+  }
+
+  /** Evicts the least recently used entries once there are more than {@code maxSize}, defaults to 0 for unbounded. */
+  public ActionCache<A, R, D> maxSize(final int maxSize) {
+    this.maxSize = maxSize;
+    evictIfNeeded();
+    return this;
+  }
+
+  /** Serves expired entries immediately, while refreshing them in the background. */
+  public ActionCache<A, R, D> staleWhileRevalidate() {
+    staleWhileRevalidate = true;
+    return this;
+  }
+
   public void execute(final A action) {
     execute(action, null);
   }
 
-  public abstract D derive(R result);
-
   /** Executes <code>A</code> once, queueing any <code>onSuccess</code> until it arrives. */
   public void execute(final A action, final SuccessCallback<D> onSuccess) {
+    handlerFor(action).execute(onSuccess == null ? null : new Waiter(onSuccess, null));
+  }
+
+  /** Executes <code>A</code> once, queueing {@code callback} until it succeeds or fails. */
+  public void executeWithCallback(final A action, final AsyncCallback<D> callback) {
+    handlerFor(action).execute(new Waiter(null, callback));
+  }
+
+  /** Clears all cached results. */
+  public void reset() {
+    results.clear();
+  }
+
+  /** Clears {@code action}'s cached result, if any. */
+  public void invalidate(final A action) {
+    results.remove(action);
+  }
+
+  /** Clears the cached results of actions tagged with {@code tag}. */
+  public void invalidateTag(final String tag) {
+    for (final Iterator<A> i = results.keySet().iterator(); i.hasNext();) {
+      for (final String other : tagsOf(i.next())) {
+        if (other.equals(tag)) {
+          i.remove();
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Clears cached results whenever an action of {@code actionType} succeeds on {@code eventBus}.
+   *
+   * @param tags
+   *          the tags to invalidate, or all results if none
+   */
+  public HandlerRegistration invalidateAfter(final EventBus eventBus, final Class<?> actionType, final String... tags) {
+    return eventBus.addHandler(DispatchResultEvent.getType(), new DispatchResultHandler() {
+      public void onDispatchResult(final DispatchResultEvent event) {
+        if (event.getAction().getClass() != actionType) {
+          return;
+        }
+        if (tags.length == 0) {
+          reset();
+        } else {
+          for (final String tag : tags) {
+            invalidateTag(tag);
+          }
+        }
+      }
+    });
+  }
+
+  /** @return the number of cached entries, including ones still being called */
+  public int size() {
+    return results.size();
+  }
+
+  /** @return the number of executes served from the cache, or by waiting on an outstanding call */
+  public int getHits() {
+    return hits;
+  }
+
+  /** @return the number of executes served from an expired entry, with {@link #staleWhileRevalidate()} */
+  public int getStaleHits() {
+    return staleHits;
+  }
+
+  /** @return the number of executes that had to call the action */
+  public int getMisses() {
+    return misses;
+  }
+
+  /** @return the number of entries evicted by {@link #maxSize(int)} */
+  public int getEvictions() {
+    return evictions;
+  }
+
+  private ResultHandler handlerFor(final A action) {
     ResultHandler h = results.get(action);
     if (h == null) {
       h = new ResultHandler(action);
       results.put(action, h);
+      evictIfNeeded();
     }
-    h.execute(onSuccess);
+    return h;
   }
 
-  /** Clears all cached results. */
-  public void reset() {
-    results.clear();
+  private void evictIfNeeded() {
+    if (maxSize <= 0) {
+      return;
+    }
+    for (final Iterator<Map.Entry<A, ResultHandler>> i = results.entrySet().iterator(); i.hasNext() && results.size() > maxSize;) {
+      i.next();
+      i.remove();
+      evictions++;
+    }
+  }
+
+  /** Someone waiting on a result, with either a success-only or regular callback. */
+  private class Waiter {
+    private final SuccessCallback<D> onSuccess;
+    private final AsyncCallback<D> callback;
+
+    private Waiter(final SuccessCallback<D> onSuccess, final AsyncCallback<D> callback) {
+      this.onSuccess = onSuccess;
+      this.callback = callback;
+    }
+
+    private void succeed(final D derived) {
+      if (onSuccess != null) {
+        onSuccess.onSuccess(derived);
+      } else {
+        callback.onSuccess(derived);
+      }
+    }
   }
 
   /** For given action, calls and caches its derived result. */
-  private class ResultHandler implements SuccessCallback<R> {
+  private class ResultHandler implements AsyncCallback<R> {
     private final A action;
-    private final ArrayList<SuccessCallback<D>> onSuccess = new ArrayList<SuccessCallback<D>>();
+    private final ArrayList<Waiter> waiters = new ArrayList<Waiter>();
     private D derived;
+    private boolean loaded;
+    private double loadedAt;
     private boolean calling;
 
     private ResultHandler(final A action) {
       this.action = action;
     }
 
-    private void execute(final SuccessCallback<D> onSuccess) {
-      if (derived != null) {
-        if (onSuccess != null) {
-          onSuccess.onSuccess(derived);
+    private void execute(final Waiter waiter) {
+      if (loaded && !isExpired()) {
+        hits++;
+        if (waiter != null) {
+          waiter.succeed(derived);
+        }
+      } else if (loaded && staleWhileRevalidate) {
+        staleHits++;
+        call();
+        if (waiter != null) {
+          waiter.succeed(derived);
         }
       } else if (calling) {
-        if (onSuccess != null) {
-          this.onSuccess.add(onSuccess);
+        hits++;
+        if (waiter != null) {
+          waiters.add(waiter);
         }
       } else {
-        if (onSuccess != null) {
-          this.onSuccess.add(onSuccess);
+        misses++;
+        if (waiter != null) {
+          waiters.add(waiter);
         }
+        call();
+      }
+    }
+
+    private boolean isExpired() {
+      return ttlMillis > 0 && now() - loadedAt >= ttlMillis;
+    }
+
+    private void call() {
+      if (!calling) {
         calling = true;
         async.execute(action, this);
       }
     }
 
     public void onSuccess(final R result) {
+      calling = false;
       derived = derive(result);
-      for (final SuccessCallback<D> s : onSuccess) {
-        s.onSuccess(derived);
+      loaded = true;
+      loadedAt = now();
+      final ArrayList<Waiter> copy = new ArrayList<Waiter>(waiters);
+      waiters.clear();
+      for (final Waiter waiter : copy) {
+        waiter.succeed(derived);
+      }
+    }
+
+    public void onFailure(final Throwable caught) {
+      calling = false;
+      // a failed refresh keeps serving the stale result, otherwise try again next time
+      if (!loaded && results.get(action) == this) {
+        results.remove(action);
+      }
+      final ArrayList<Waiter> copy = new ArrayList<Waiter>(waiters);
+      waiters.clear();
+      // a failed background refresh has no one waiting on it, and callers still get the stale result
+      boolean unhandled = copy.isEmpty() && !loaded;
+      for (final Waiter waiter : copy) {
+        if (waiter.callback != null) {
+          waiter.callback.onFailure(caught);
+        } else {
+          unhandled = true;
+        }
+      }
+      if (unhandled) {
+        async.unhandledFailure(caught);
       }
-      onSuccess.clear();
     }
   }
+
 }
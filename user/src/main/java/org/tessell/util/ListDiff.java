@@ -1,45 +1,231 @@
 package org.tessell.util;
 
+import static org.tessell.util.ObjectUtils.eq;
+
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 
+/**
+ * Diffs two lists, treating them as multisets for adds/removes, but also reporting positions and moves.
+ *
+ * Equal elements are matched up first-to-first, so duplicates are handled correctly, e.g.
+ * going from {@code [a, a, b]} to {@code [a, b]} removes the second {@code a} at index 1.
+ *
+ * Runs in linear time (plus {@code O(k log k)} for the {@code k} elements that changed
+ * relative order), by skipping the common prefix/suffix and hashing the rest.
+ */
 public class ListDiff<T> {
 
+  private static final int[] none = new int[0];
+
   public static <T> ListDiff<T> of(Collection<T> oldValue, Collection<T> newValue) {
-    List<T> added = new ArrayList<T>();
-    List<T> removed = new ArrayList<T>();
-    if (oldValue == null && newValue != null) {
-      added.addAll(newValue);
-    } else if (oldValue != null && newValue == null) {
-      removed.addAll(oldValue);
-    } else if (oldValue != null && newValue != null) {
-      List<T> newCopy = new ArrayList<T>(newValue);
-      for (T t : oldValue) {
-        if (!newCopy.remove(t)) {
-          removed.add(t);
-        }
+    final List<T> oldList = asList(oldValue);
+    final List<T> newList = asList(newValue);
+    final int oldSize = oldList.size();
+    final int newSize = newList.size();
+
+    // most changes are a few elements at one spot, so skip what's the same at the ends
+    final int min = Math.min(oldSize, newSize);
+    int prefix = 0;
+    while (prefix < min && eq(oldList.get(prefix), newList.get(prefix))) {
+      prefix++;
+    }
+    int suffix = 0;
+    while (suffix < min - prefix && eq(oldList.get(oldSize - 1 - suffix), newList.get(newSize - 1 - suffix))) {
+      suffix++;
+    }
+    final int oldEnd = oldSize - suffix;
+    final int newEnd = newSize - suffix;
+    if (prefix == oldEnd && prefix == newEnd) {
+      return new ListDiff<T>(new ArrayList<T>(), none, new ArrayList<T>(), none, new ArrayList<Move<T>>());
+    }
+
+    // index the old middle by value
+    final Map<T, Indexes> unmatched = new HashMap<T, Indexes>();
+    for (int i = prefix; i < oldEnd; i++) {
+      final T t = oldList.get(i);
+      Indexes indexes = unmatched.get(t);
+      if (indexes == null) {
+        indexes = new Indexes();
+        unmatched.put(t, indexes);
       }
-      List<T> oldCopy = new ArrayList<T>(oldValue);
-      for (T t : newValue) {
-        if (!oldCopy.remove(t)) {
-          added.add(t);
-        }
+      indexes.add(i);
+    }
+
+    // match each new element to the first unmatched equal old element
+    final boolean[] oldMatched = new boolean[oldEnd - prefix];
+    final int[] matchedFrom = new int[newEnd - prefix];
+    final int[] matchedTo = new int[newEnd - prefix];
+    int matches = 0;
+    final List<T> added = new ArrayList<T>();
+    final int[] addedIndexes = new int[newEnd - prefix];
+    for (int j = prefix; j < newEnd; j++) {
+      final T t = newList.get(j);
+      final Indexes indexes = unmatched.get(t);
+      if (indexes != null && indexes.hasNext()) {
+        final int i = indexes.next();
+        oldMatched[i - prefix] = true;
+        matchedFrom[matches] = i;
+        matchedTo[matches] = j;
+        matches++;
+      } else {
+        addedIndexes[added.size()] = j;
+        added.add(t);
       }
     }
-    return new ListDiff<T>(added, removed);
+
+    final List<T> removed = new ArrayList<T>();
+    final int[] removedIndexes = new int[oldEnd - prefix];
+    for (int i = prefix; i < oldEnd; i++) {
+      if (!oldMatched[i - prefix]) {
+        removedIndexes[removed.size()] = i;
+        removed.add(oldList.get(i));
+      }
+    }
+
+    // matched elements that kept their relative order stayed put, the others moved
+    final boolean[] stayed = longestIncreasing(matchedFrom, matches);
+    final List<Move<T>> moves = new ArrayList<Move<T>>();
+    for (int k = 0; k < matches; k++) {
+      if (!stayed[k]) {
+        moves.add(new Move<T>(newList.get(matchedTo[k]), matchedFrom[k], matchedTo[k]));
+      }
+    }
+
+    return new ListDiff<T>(
+      added,
+      trim(addedIndexes, added.size()),
+      removed,
+      trim(removedIndexes, removed.size()),
+      moves);
   }
 
+  /** The elements in the new list, but not the old, in their new list order. */
   public final Collection<T> added;
+  /** The index in the new list of each element in {@link #added}. */
+  public final int[] addedIndexes;
+  /** The elements in the old list, but not the new, in their old list order. */
   public final Collection<T> removed;
+  /** The index in the old list of each element in {@link #removed}. */
+  public final int[] removedIndexes;
+  /** The elements in both lists, but whose order relative to the other elements changed. */
+  public final List<Move<T>> moves;
 
-  private ListDiff(Collection<T> added, Collection<T> removed) {
+  private ListDiff(Collection<T> added, int[] addedIndexes, Collection<T> removed, int[] removedIndexes, List<Move<T>> moves) {
     this.added = added;
+    this.addedIndexes = addedIndexes;
     this.removed = removed;
+    this.removedIndexes = removedIndexes;
+    this.moves = moves;
+  }
+
+  /** @return whether the lists had the same elements in the same order */
+  public boolean isEmpty() {
+    return added.isEmpty() && removed.isEmpty() && moves.isEmpty();
   }
 
   @Override
   public String toString() {
     return added + "; " + removed;
   }
+
+  /** An element that is in both lists, but moved from index {@code from} in the old list to {@code to} in the new list. */
+  public static class Move<T> {
+    public final T value;
+    public final int from;
+    public final int to;
+
+    private Move(T value, int from, int to) {
+      this.value = value;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public String toString() {
+      return value + " " + from + "->" + to;
+    }
+  }
+
+  private static <T> List<T> asList(Collection<T> c) {
+    if (c == null) {
+      return Collections.emptyList();
+    } else if (c instanceof List && c instanceof RandomAccess) {
+      return (List<T>) c;
+    } else {
+      return new ArrayList<T>(c);
+    }
+  }
+
+  /** @return which of the first {@code size} {@code values} are in their longest increasing subsequence */
+  private static boolean[] longestIncreasing(final int[] values, final int size) {
+    // tails[l] is the index of the smallest value ending an increasing run of length l + 1
+    final int[] tails = new int[size];
+    final int[] previous = new int[size];
+    int length = 0;
+    for (int k = 0; k < size; k++) {
+      int lo = 0;
+      int hi = length;
+      while (lo < hi) {
+        final int mid = (lo + hi) >>> 1;
+        if (values[tails[mid]] < values[k]) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      previous[k] = lo > 0 ? tails[lo - 1] : -1;
+      tails[lo] = k;
+      if (lo == length) {
+        length++;
+      }
+    }
+    final boolean[] in = new boolean[size];
+    for (int k = length > 0 ? tails[length - 1] : -1; k != -1; k = previous[k]) {
+      in[k] = true;
+    }
+    return in;
+  }
+
+  private static int[] trim(final int[] indexes, final int size) {
+    if (size == 0) {
+      return none;
+    }
+    if (size == indexes.length) {
+      return indexes;
+    }
+    final int[] trimmed = new int[size];
+    System.arraycopy(indexes, 0, trimmed, 0, size);
+    return trimmed;
+  }
+
+  /** The not-yet-matched indexes of an element in the old list, in order. */
+  private static class Indexes {
+    private int[] values = new int[1];
+    private int size;
+    private int next;
+
+    private void add(final int index) {
+      if (size == values.length) {
+        final int[] grown = new int[size * 2];
+        System.arraycopy(values, 0, grown, 0, size);
+        values = grown;
+      }
+      values[size++] = index;
+    }
+
+    private boolean hasNext() {
+      return next < size;
+    }
+
+    private int next() {
+      return values[next++];
+    }
+  }
+
 }
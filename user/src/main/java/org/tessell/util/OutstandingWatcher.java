@@ -2,6 +2,8 @@ package org.tessell.util;
 
 import org.tessell.dispatch.client.events.DispatchActionEvent;
 import org.tessell.dispatch.client.events.DispatchActionHandler;
+import org.tessell.dispatch.client.events.DispatchCancelledEvent;
+import org.tessell.dispatch.client.events.DispatchCancelledHandler;
 import org.tessell.dispatch.client.events.DispatchFailureEvent;
 import org.tessell.dispatch.client.events.DispatchFailureHandler;
 import org.tessell.dispatch.client.events.DispatchResultEvent;
@@ -33,7 +35,8 @@ public class OutstandingWatcher {
     HandlerRegistration a = bus.addHandler(DispatchActionEvent.getType(), new OnAction());
     HandlerRegistration b = bus.addHandler(DispatchResultEvent.getType(), new OnResult());
     HandlerRegistration c = bus.addHandler(DispatchFailureEvent.getType(), new OnFailure());
-    return new HandlerRegistration[] { a, b, c };
+    HandlerRegistration d = bus.addHandler(DispatchCancelledEvent.getType(), new OnCancelled());
+    return new HandlerRegistration[] { a, b, c, d };
   }
 
   private void scheduleUpdate() {
@@ -91,4 +94,12 @@ public class OutstandingWatcher {
     }
   }
 
+  /** Decrement outstanding, as cancelled actions never get a result. */
+  private class OnCancelled implements DispatchCancelledHandler {
+    public void onDispatchCancelled(DispatchCancelledEvent event) {
+      outstanding--;
+      scheduleUpdate();
+    }
+  }
+
 }
@@ -1,5 +1,6 @@
 package org.tessell.widgets;
 
+import org.tessell.bus.EventBusStats;
 import org.tessell.gwt.animation.client.AnimationLogic;
 import org.tessell.gwt.animation.client.IsAnimation;
 import org.tessell.gwt.animation.client.StubAnimation;
@@ -25,6 +26,14 @@ public class StubWidgetsProvider implements WidgetsProvider {
 
   public static void install() {
     Widgets.setProvider(new StubWidgetsProvider());
+    // don't leak stats from a previous test
+    EventBusStats.stop();
+  }
+
+  /** Installs the stubs, and starts recording {@link EventBusStats} for assertions about events fired. */
+  public static EventBusStats installWithStats() {
+    install();
+    return EventBusStats.start();
   }
 
   private final StubWindow window = new StubWindow();
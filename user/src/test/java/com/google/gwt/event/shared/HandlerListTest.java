@@ -0,0 +1,152 @@
+package com.google.gwt.event.shared;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class HandlerListTest {
+
+  private final HandlerList handlers = new HandlerList();
+  private final List<String> fired = new ArrayList<String>();
+
+  @Test
+  public void firesOnlyHandlersOfTheEventsType() {
+    handlers.add(FooEvent.TYPE, new Logger("a"));
+    handlers.add(BarEvent.TYPE, new Logger("b"));
+    handlers.add(FooEvent.TYPE, new Logger("c"));
+    handlers.fireEvent(new FooEvent());
+    assertThat(fired.toString(), is("[a, c]"));
+    assertThat(handlers.getHandlerCount(FooEvent.TYPE), is(2));
+    assertThat(handlers.getHandlerCount(BarEvent.TYPE), is(1));
+    assertThat(handlers.getHandlerCount(), is(3));
+  }
+
+  @Test
+  public void setsTheSource() {
+    final Object[] source = { null };
+    handlers.addHandler(FooEvent.TYPE, new FooHandler() {
+      public void onFoo(FooEvent event) {
+        source[0] = event.getSource();
+      }
+    });
+    handlers.fireEventFromSource(new FooEvent(), "a");
+    assertThat(source[0], is((Object) "a"));
+  }
+
+  @Test
+  public void removesOneRegistrationAtATime() {
+    final Logger a = new Logger("a");
+    final HandlerRegistration r1 = handlers.add(FooEvent.TYPE, a);
+    handlers.add(FooEvent.TYPE, a);
+    r1.removeHandler();
+    r1.removeHandler();
+    handlers.fireEvent(new FooEvent());
+    assertThat(fired.toString(), is("[a]"));
+  }
+
+  @Test
+  public void removesDuringFireTakeEffectImmediately() {
+    final HandlerRegistration[] b = { null };
+    handlers.add(FooEvent.TYPE, new FooHandler() {
+      public void onFoo(FooEvent event) {
+        fired.add("a");
+        b[0].removeHandler();
+      }
+    });
+    b[0] = handlers.add(FooEvent.TYPE, new Logger("b"));
+    handlers.add(FooEvent.TYPE, new Logger("c"));
+    handlers.fireEvent(new FooEvent());
+    assertThat(fired.toString(), is("[a, c]"));
+    assertThat(handlers.getHandlerCount(FooEvent.TYPE), is(2));
+  }
+
+  @Test
+  public void addsDuringFireAreCalledOnTheNextEvent() {
+    handlers.add(FooEvent.TYPE, new FooHandler() {
+      public void onFoo(FooEvent event) {
+        fired.add("a");
+        handlers.add(FooEvent.TYPE, new Logger("b"));
+      }
+    });
+    handlers.fireEvent(new FooEvent());
+    assertThat(fired.toString(), is("[a]"));
+    fired.clear();
+    handlers.fireEvent(new BarEvent());
+    handlers.fireEvent(new FooEvent());
+    assertThat(fired.toString(), is("[a, b]"));
+  }
+
+  @Test
+  public void failuresAreCollected() {
+    handlers.add(FooEvent.TYPE, new FooHandler() {
+      public void onFoo(FooEvent event) {
+        throw new IllegalStateException();
+      }
+    });
+    handlers.add(FooEvent.TYPE, new Logger("b"));
+    try {
+      handlers.fireEvent(new FooEvent());
+      fail();
+    } catch (UmbrellaException ue) {
+      assertThat(ue.getCauses().size(), is(1));
+    }
+    assertThat(fired.toString(), is("[b]"));
+  }
+
+  private class Logger implements FooHandler, BarHandler {
+    private final String name;
+
+    private Logger(String name) {
+      this.name = name;
+    }
+
+    public void onFoo(FooEvent event) {
+      fired.add(name);
+    }
+
+    public void onBar(BarEvent event) {
+    }
+  }
+
+  private interface FooHandler extends EventHandler {
+    void onFoo(FooEvent event);
+  }
+
+  private interface BarHandler extends EventHandler {
+    void onBar(BarEvent event);
+  }
+
+  private static class FooEvent extends GwtEvent<FooHandler> {
+    private static final Type<FooHandler> TYPE = new Type<FooHandler>();
+
+    @Override
+    public Type<FooHandler> getAssociatedType() {
+      return TYPE;
+    }
+
+    @Override
+    protected void dispatch(FooHandler handler) {
+      handler.onFoo(this);
+    }
+  }
+
+  private static class BarEvent extends GwtEvent<BarHandler> {
+    private static final Type<BarHandler> TYPE = new Type<BarHandler>();
+
+    @Override
+    public Type<BarHandler> getAssociatedType() {
+      return TYPE;
+    }
+
+    @Override
+    protected void dispatch(BarHandler handler) {
+      handler.onBar(this);
+    }
+  }
+
+}
@@ -0,0 +1,113 @@
+package com.google.gwt.event.shared;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the cost of {@link SimplerEventBus#fireEventFromSource} against the number of handlers.
+ *
+ * Compares against the previous approach of copying the source and global handlers into a
+ * new list on every fire. Not a unit test, run it by hand with {@code main}.
+ */
+public class SimplerEventBusBenchmark {
+
+  private static final int fires = 2000000;
+  private static final Object source = new Object();
+
+  public static void main(String[] args) {
+    for (final int handlers : new int[] { 0, 1, 4, 16, 64 }) {
+      final SimplerEventBus bus = new SimplerEventBus();
+      final List<CountingHandler> sourceHandlers = new ArrayList<CountingHandler>();
+      final List<CountingHandler> globalHandlers = new ArrayList<CountingHandler>();
+      for (int i = 0; i < handlers; i++) {
+        // half on the source, half global
+        final CountingHandler handler = new CountingHandler();
+        if (i % 2 == 0) {
+          bus.addHandlerToSource(BenchEvent.TYPE, source, handler);
+          sourceHandlers.add(handler);
+        } else {
+          bus.addHandler(BenchEvent.TYPE, handler);
+          globalHandlers.add(handler);
+        }
+      }
+      final BenchEvent event = new BenchEvent();
+      // warm up
+      for (int i = 0; i < fires; i++) {
+        bus.fireEventFromSource(event, source);
+        fireCopying(event, sourceHandlers, globalHandlers);
+      }
+
+      long bytes = allocatedBytes();
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < fires; i++) {
+        bus.fireEventFromSource(event, source);
+      }
+      final long busMillis = System.currentTimeMillis() - start;
+      final long busBytes = allocatedBytes() - bytes;
+
+      bytes = allocatedBytes();
+      start = System.currentTimeMillis();
+      for (int i = 0; i < fires; i++) {
+        fireCopying(event, sourceHandlers, globalHandlers);
+      }
+      final long copyMillis = System.currentTimeMillis() - start;
+      final long copyBytes = allocatedBytes() - bytes;
+
+      System.out.println(handlers + " handlers: "
+        + nanos(busMillis) + "ns/fire, " + (busBytes / fires) + " bytes/fire; copying "
+        + nanos(copyMillis) + "ns/fire, " + (copyBytes / fires) + " bytes/fire");
+    }
+  }
+
+  /** The previous dispatch, which merged the source and global handlers into a new list. */
+  private static void fireCopying(final BenchEvent event, final List<CountingHandler> sourceHandlers, final List<CountingHandler> globalHandlers) {
+    final List<CountingHandler> all = new ArrayList<CountingHandler>();
+    all.addAll(sourceHandlers);
+    all.addAll(globalHandlers);
+    for (int i = 0; i < all.size(); i++) {
+      event.dispatch(all.get(i));
+    }
+  }
+
+  private static long nanos(final long millis) {
+    return millis * 1000000 / fires;
+  }
+
+  /** @return the bytes allocated by this thread so far, if the JVM supports it, otherwise 0 */
+  private static long allocatedBytes() {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+
+  private interface BenchHandler extends EventHandler {
+    void onBench(BenchEvent event);
+  }
+
+  private static class CountingHandler implements BenchHandler {
+    private int count;
+
+    public void onBench(final BenchEvent event) {
+      count++;
+    }
+  }
+
+  private static class BenchEvent extends GwtEvent<BenchHandler> {
+    private static final Type<BenchHandler> TYPE = new Type<BenchHandler>();
+
+    @Override
+    public Type<BenchHandler> getAssociatedType() {
+      return TYPE;
+    }
+
+    @Override
+    protected void dispatch(final BenchHandler handler) {
+      handler.onBench(this);
+    }
+  }
+
+}
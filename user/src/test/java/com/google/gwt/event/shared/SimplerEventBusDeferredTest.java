@@ -0,0 +1,190 @@
+package com.google.gwt.event.shared;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.tessell.model.properties.NewProperty.integerProperty;
+import static org.tessell.model.properties.NewProperty.listProperty;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tessell.model.events.ListChangedEvent;
+import org.tessell.model.events.ListChangedHandler;
+import org.tessell.model.events.PropertyChangedEvent;
+import org.tessell.model.events.PropertyChangedHandler;
+import org.tessell.model.events.PropertyEventCoalescers;
+import org.tessell.model.events.ValueAddedEvent;
+import org.tessell.model.events.ValueAddedHandler;
+import org.tessell.model.events.ValueRemovedEvent;
+import org.tessell.model.properties.IntegerProperty;
+import org.tessell.model.properties.ListProperty;
+import org.tessell.widgets.StubGWTBridge;
+import org.tessell.widgets.StubScheduler;
+
+public class SimplerEventBusDeferredTest {
+
+  private final SimplerEventBus bus = new SimplerEventBus();
+  private final IntegerProperty a = integerProperty("a");
+  private final IntegerProperty b = integerProperty("b");
+  private final ListProperty<String> names = listProperty("names");
+  private final ArrayList<String> fired = new ArrayList<String>();
+
+  @Before
+  public void before() {
+    StubGWTBridge.install();
+    bus.addHandler(PropertyChangedEvent.getType(), new PropertyChangedHandler<Object>() {
+      public void onPropertyChanged(PropertyChangedEvent<Object> event) {
+        fired.add(event.getProperty().getName() + " " + event.getOldValue() + " -> " + event.getNewValue());
+      }
+    });
+    bus.addHandler(ValueAddedEvent.getType(), new ValueAddedHandler<String>() {
+      public void onValueAdded(ValueAddedEvent<String> event) {
+        fired.add("added " + event.getValue());
+      }
+    });
+    bus.addHandler(ListChangedEvent.getType(), new ListChangedHandler<String>() {
+      public void onListChanged(ListChangedEvent<String> event) {
+        fired.add("added " + event.getAdded() + " removed " + event.getRemoved());
+      }
+    });
+  }
+
+  @Test
+  public void firesImmediatelyByDefault() {
+    bus.fireEvent(changed(a, 1, 2));
+    assertThat(fired, is(list("A 1 -> 2")));
+  }
+
+  @Test
+  public void deferredWaitsForTheEndOfTheEventLoop() {
+    bus.setDeferred(true);
+    StubScheduler.get().runWithDeferred(new Runnable() {
+      public void run() {
+        bus.fireEvent(changed(a, 1, 2));
+        bus.fireEventFromSource(changed(b, 1, 2), b);
+        assertThat(fired.size(), is(0));
+      }
+    });
+    assertThat(fired, is(list("A 1 -> 2", "B 1 -> 2")));
+  }
+
+  @Test
+  public void turningDeferredOffFlushes() {
+    bus.setDeferred(true);
+    StubScheduler.get().runWithDeferred(new Runnable() {
+      public void run() {
+        bus.fireEvent(changed(a, 1, 2));
+        bus.setDeferred(false);
+        assertThat(fired, is(list("A 1 -> 2")));
+        bus.fireEvent(changed(a, 2, 3));
+        assertThat(fired, is(list("A 1 -> 2", "A 2 -> 3")));
+      }
+    });
+    assertThat(fired.size(), is(2));
+  }
+
+  @Test
+  public void coalescesLatestChangePerProperty() {
+    bus.setDeferred(true);
+    PropertyEventCoalescers.install(bus);
+    StubScheduler.get().runWithDeferred(new Runnable() {
+      public void run() {
+        bus.fireEventFromSource(changed(a, 1, 2), a);
+        bus.fireEventFromSource(changed(b, 1, 2), b);
+        bus.fireEventFromSource(changed(a, 2, 3), a);
+        bus.fireEventFromSource(changed(a, 3, 4), a);
+      }
+    });
+    assertThat(fired, is(list("A 1 -> 4", "B 1 -> 2")));
+  }
+
+  @Test
+  public void coalescesSourcelessEventsByProperty() {
+    bus.setDeferred(true);
+    PropertyEventCoalescers.install(bus);
+    StubScheduler.get().runWithDeferred(new Runnable() {
+      public void run() {
+        bus.fireEvent(changed(a, 1, 2));
+        bus.fireEvent(changed(b, 1, 2));
+        bus.fireEvent(changed(a, 2, 3));
+      }
+    });
+    assertThat(fired, is(list("A 1 -> 3", "B 1 -> 2")));
+  }
+
+  @Test
+  public void keepsMergingIntoTheFirstQueuedEvent() {
+    bus.setDeferred(true);
+    final EventCoalescer latest = PropertyEventCoalescers.latestChange();
+    // a coalescer that puts every source-less event under the same key
+    bus.addCoalescer(new EventCoalescer() {
+      public GwtEvent<?> coalesce(GwtEvent<?> queued, GwtEvent<?> next) {
+        return latest.coalesce(queued, next);
+      }
+
+      public Object getKey(GwtEvent<?> event) {
+        return null;
+      }
+    }, PropertyChangedEvent.getType());
+    StubScheduler.get().runWithDeferred(new Runnable() {
+      public void run() {
+        bus.fireEvent(changed(a, 1, 2));
+        bus.fireEvent(changed(b, 1, 2));
+        bus.fireEvent(changed(b, 2, 3));
+        bus.fireEvent(changed(a, 2, 3));
+      }
+    });
+    // the b events can't merge into a's, and don't replace it as the event to merge into
+    assertThat(fired, is(list("A 1 -> 3", "B 1 -> 2", "B 2 -> 3")));
+  }
+
+  @Test
+  public void coalescesListChangesIntoOneEvent() {
+    bus.setDeferred(true);
+    PropertyEventCoalescers.install(bus);
+    StubScheduler.get().runWithDeferred(new Runnable() {
+      public void run() {
+        bus.fireEventFromSource(new ValueRemovedEvent<String>(names, "a", 0), names);
+        bus.fireEventFromSource(new ValueRemovedEvent<String>(names, "b", 0), names);
+        bus.fireEventFromSource(new ValueAddedEvent<String>(names, "a", 0), names);
+        bus.fireEventFromSource(new ValueAddedEvent<String>(names, "c", 1), names);
+      }
+    });
+    assertThat(fired, is(list("added [c] removed [b]")));
+  }
+
+  @Test
+  public void loneListChangesAreDeliveredAsIs() {
+    bus.setDeferred(true);
+    PropertyEventCoalescers.install(bus);
+    StubScheduler.get().runWithDeferred(new Runnable() {
+      public void run() {
+        bus.fireEventFromSource(new ValueAddedEvent<String>(names, "a", 0), names);
+      }
+    });
+    assertThat(fired, is(list("added a")));
+  }
+
+  @Test
+  public void eventsFiredWhileFlushingAreDeferredAgain() {
+    bus.setDeferred(true);
+    bus.addHandler(ValueAddedEvent.getType(), new ValueAddedHandler<String>() {
+      public void onValueAdded(ValueAddedEvent<String> event) {
+        bus.fireEvent(changed(a, 1, 2));
+      }
+    });
+    StubScheduler.get().runWithDeferred(new Runnable() {
+      public void run() {
+        bus.fireEvent(new ValueAddedEvent<String>(names, "a", 0));
+      }
+    });
+    assertThat(fired, is(list("added a", "A 1 -> 2")));
+  }
+
+  private static PropertyChangedEvent<Integer> changed(IntegerProperty p, Integer oldValue, Integer newValue) {
+    return new PropertyChangedEvent<Integer>(p, oldValue, newValue);
+  }
+
+}
@@ -238,6 +238,42 @@ public class SimplerEventBusTest extends HandlerTestBase {
     assertNotFired(baker);
   }
 
+  public void testConcurrentRemoveFromSource() {
+    final SimplerEventBus eventBus = new SimplerEventBus();
+
+    final SourcedHandler global = new SourcedHandler("able");
+    final HandlerRegistration globalReg = eventBus.addHandler(MouseDownEvent.getType(), global);
+    MouseDownHandler able = new MouseDownHandler() {
+      public void onMouseDown(MouseDownEvent event) {
+        add(this);
+        globalReg.removeHandler();
+      }
+    };
+    eventBus.addHandlerToSource(MouseDownEvent.getType(), "able", able);
+
+    // source handlers go first, and the global one is removed before it's called
+    fireMouseDown(eventBus, "able");
+    assertFired(able);
+    assertNotFired(global);
+  }
+
+  public void testConcurrentAddFromSource() {
+    final SimplerEventBus eventBus = new SimplerEventBus();
+
+    final SourcedHandler able2 = new SourcedHandler("able");
+    MouseDownHandler able1 = new MouseDownHandler() {
+      public void onMouseDown(MouseDownEvent event) {
+        add(this);
+        eventBus.addHandlerToSource(MouseDownEvent.getType(), "able", able2);
+      }
+    };
+    eventBus.addHandlerToSource(MouseDownEvent.getType(), "able", able1);
+    eventBus.addHandler(MouseDownEvent.getType(), mouse1);
+
+    fireMouseDown(eventBus, "able");
+    assertFired(able1, able2, mouse1);
+  }
+
   public void testNoSource() {
     final SimplerEventBus eventBus = new SimplerEventBus();
 
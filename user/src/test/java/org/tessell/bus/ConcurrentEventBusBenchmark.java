@@ -0,0 +1,96 @@
+package org.tessell.bus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.tessell.bus.ConcurrentEventBusTest.FooEvent;
+import org.tessell.bus.ConcurrentEventBusTest.FooHandler;
+
+import com.google.web.bindery.event.shared.Event;
+import com.google.web.bindery.event.shared.EventBus;
+import com.google.web.bindery.event.shared.SimplerEventBus;
+
+/**
+ * Measures {@link ConcurrentEventBus} fire throughput across threads.
+ *
+ * Compares against a {@link SimplerEventBus} behind a lock, which is the simplest
+ * way to share it across threads. Not a unit test, run it by hand with {@code main}.
+ */
+public class ConcurrentEventBusBenchmark {
+
+  private static final int firesPerThread = 2000000;
+  private static final int handlers = 4;
+
+  public static void main(String[] args) throws Exception {
+    // defaults to the number of cores, but can be passed in to oversubscribe
+    final int cores = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    final List<Integer> threadCounts = new ArrayList<Integer>();
+    for (int threads = 1; threads < cores; threads *= 2) {
+      threadCounts.add(threads);
+    }
+    threadCounts.add(cores);
+    for (final int threads : threadCounts) {
+      final long concurrent = run(new ConcurrentEventBus(), threads);
+      final long locked = run(new LockedEventBus(), threads);
+      System.out.println(threads + " threads: concurrent " + concurrent + " fires/ms, locked " + locked + " fires/ms");
+    }
+  }
+
+  /** @return fires per milli across all {@code threads} */
+  private static long run(final EventBus bus, final int threads) throws Exception {
+    for (int i = 0; i < handlers; i++) {
+      bus.addHandler(FooEvent.TYPE, new FooHandler() {
+        public void onFoo(FooEvent event) {
+        }
+      });
+    }
+    fire(bus, 1); // warm up
+    final long start = System.currentTimeMillis();
+    fire(bus, threads);
+    final long millis = Math.max(1, System.currentTimeMillis() - start);
+    return (long) threads * firesPerThread / millis;
+  }
+
+  private static void fire(final EventBus bus, final int threads) throws Exception {
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread() {
+        public void run() {
+          final FooEvent event = new FooEvent();
+          for (int i = 0; i < firesPerThread; i++) {
+            bus.fireEvent(event);
+          }
+          done.countDown();
+        }
+      }.start();
+    }
+    done.await();
+  }
+
+  /** A {@link SimplerEventBus} with every method synchronized. */
+  private static class LockedEventBus extends EventBus {
+    private final SimplerEventBus bus = new SimplerEventBus();
+
+    @Override
+    public synchronized <H> com.google.web.bindery.event.shared.HandlerRegistration addHandler(Event.Type<H> type, H handler) {
+      return bus.addHandler(type, handler);
+    }
+
+    @Override
+    public synchronized <H> com.google.web.bindery.event.shared.HandlerRegistration addHandlerToSource(Event.Type<H> type, Object source, H handler) {
+      return bus.addHandlerToSource(type, source, handler);
+    }
+
+    @Override
+    public synchronized void fireEvent(Event<?> event) {
+      bus.fireEvent(event);
+    }
+
+    @Override
+    public synchronized void fireEventFromSource(Event<?> event, Object source) {
+      bus.fireEventFromSource(event, source);
+    }
+  }
+
+}
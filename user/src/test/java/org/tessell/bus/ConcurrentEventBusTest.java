@@ -0,0 +1,199 @@
+package org.tessell.bus;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.google.web.bindery.event.shared.Event;
+import com.google.web.bindery.event.shared.HandlerRegistration;
+import com.google.web.bindery.event.shared.UmbrellaException;
+
+public class ConcurrentEventBusTest {
+
+  private final ConcurrentEventBus bus = new ConcurrentEventBus();
+  private final List<String> fired = Collections.synchronizedList(new ArrayList<String>());
+
+  @Test
+  public void firesSourceHandlersThenGlobalHandlers() {
+    bus.addHandler(FooEvent.TYPE, new Named("global"));
+    bus.addHandlerToSource(FooEvent.TYPE, "a", new Named("a"));
+    bus.addHandlerToSource(FooEvent.TYPE, "b", new Named("b"));
+    bus.fireEventFromSource(new FooEvent(), "a");
+    assertThat(fired, is((List<String>) list("a", "global")));
+  }
+
+  @Test
+  public void setsTheSource() {
+    final AtomicReference<Object> source = new AtomicReference<Object>();
+    bus.addHandler(FooEvent.TYPE, new FooHandler() {
+      public void onFoo(FooEvent event) {
+        source.set(event.getSource());
+      }
+    });
+    bus.fireEventFromSource(new FooEvent(), "a");
+    assertThat(source.get(), is((Object) "a"));
+  }
+
+  @Test
+  public void removesTakeEffectWhileFiring() {
+    final Named two = new Named("two");
+    final HandlerRegistration[] twoReg = new HandlerRegistration[1];
+    bus.addHandler(FooEvent.TYPE, new FooHandler() {
+      public void onFoo(FooEvent event) {
+        fired.add("one");
+        twoReg[0].removeHandler();
+      }
+    });
+    twoReg[0] = bus.addHandler(FooEvent.TYPE, two);
+    bus.fireEvent(new FooEvent());
+    assertThat(fired, is((List<String>) list("one")));
+    assertThat(bus.getHandlerCount(FooEvent.TYPE), is(1));
+  }
+
+  @Test
+  public void addsTakeEffectWhileFiring() {
+    bus.addHandler(FooEvent.TYPE, new FooHandler() {
+      public void onFoo(FooEvent event) {
+        fired.add("one");
+        if (fired.size() == 1) {
+          bus.addHandler(FooEvent.TYPE, new Named("two"));
+        }
+      }
+    });
+    bus.fireEvent(new FooEvent());
+    assertThat(fired, is((List<String>) list("one", "two")));
+  }
+
+  @Test
+  public void removingTwiceIsIgnored() {
+    final HandlerRegistration reg = bus.addHandler(FooEvent.TYPE, new Named("a"));
+    bus.addHandler(FooEvent.TYPE, new Named("b"));
+    reg.removeHandler();
+    reg.removeHandler();
+    bus.fireEvent(new FooEvent());
+    assertThat(fired, is((List<String>) list("b")));
+  }
+
+  @Test
+  public void emptySourcesArePruned() {
+    bus.addHandlerToSource(FooEvent.TYPE, "a", new Named("a")).removeHandler();
+    assertThat(bus.getHandlerCount(FooEvent.TYPE), is(0));
+    bus.addHandlerToSource(FooEvent.TYPE, "a", new Named("a"));
+    bus.fireEventFromSource(new FooEvent(), "a");
+    assertThat(fired, is((List<String>) list("a")));
+  }
+
+  @Test
+  public void collectsExceptions() {
+    bus.addHandler(FooEvent.TYPE, new FooHandler() {
+      public void onFoo(FooEvent event) {
+        throw new IllegalStateException("one");
+      }
+    });
+    bus.addHandler(FooEvent.TYPE, new Named("two"));
+    try {
+      bus.fireEvent(new FooEvent());
+      fail();
+    } catch (UmbrellaException ue) {
+      assertThat(ue.getCauses().size(), is(1));
+    }
+    assertThat(fired, is((List<String>) list("two")));
+  }
+
+  @Test
+  public void stressAddsRemovesAndFiresAcrossThreads() throws Exception {
+    final int threads = 8;
+    final int iterations = 5000;
+    final AtomicInteger calls = new AtomicInteger();
+    final AtomicInteger stray = new AtomicInteger();
+    // a handler that is always registered, so each fire should call it exactly once
+    bus.addHandler(FooEvent.TYPE, new FooHandler() {
+      public void onFoo(FooEvent event) {
+        calls.incrementAndGet();
+      }
+    });
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    final List<Thread> workers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      final String source = "source" + t;
+      final Thread worker = new Thread() {
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < iterations; i++) {
+              // churn both the global and per-source registries while others fire
+              final HandlerRegistration global = bus.addHandler(FooEvent.TYPE, new FooHandler() {
+                public void onFoo(FooEvent event) {
+                }
+              });
+              final HandlerRegistration sourced = bus.addHandlerToSource(FooEvent.TYPE, source, new FooHandler() {
+                public void onFoo(FooEvent event) {
+                  if (!source.equals(event.getSource())) {
+                    stray.incrementAndGet();
+                  }
+                }
+              });
+              bus.fireEventFromSource(new FooEvent(), source);
+              sourced.removeHandler();
+              global.removeHandler();
+            }
+          } catch (Throwable e) {
+            errors.add(e);
+          }
+        }
+      };
+      workers.add(worker);
+      worker.start();
+    }
+    start.countDown();
+    for (final Thread worker : workers) {
+      worker.join();
+    }
+    assertThat(errors.size(), is(0));
+    assertThat(stray.get(), is(0));
+    assertThat(calls.get(), is(threads * iterations));
+    assertThat(bus.getHandlerCount(FooEvent.TYPE), is(1));
+  }
+
+  public interface FooHandler {
+    void onFoo(FooEvent event);
+  }
+
+  public static class FooEvent extends Event<FooHandler> {
+    public static final Type<FooHandler> TYPE = new Type<FooHandler>();
+
+    @Override
+    public Type<FooHandler> getAssociatedType() {
+      return TYPE;
+    }
+
+    @Override
+    protected void dispatch(FooHandler handler) {
+      handler.onFoo(this);
+    }
+  }
+
+  private class Named implements FooHandler {
+    private final String name;
+
+    private Named(String name) {
+      this.name = name;
+    }
+
+    public void onFoo(FooEvent event) {
+      fired.add(name);
+    }
+  }
+
+}
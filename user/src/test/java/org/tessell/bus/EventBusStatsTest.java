@@ -0,0 +1,154 @@
+package org.tessell.bus;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.tessell.model.properties.NewProperty.integerProperty;
+import static org.tessell.model.properties.NewProperty.listProperty;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tessell.bus.ConcurrentEventBusTest.FooEvent;
+import org.tessell.bus.ConcurrentEventBusTest.FooHandler;
+import org.tessell.bus.EventBusStats.TypeStats;
+import org.tessell.model.events.PropertyChangedEvent;
+import org.tessell.model.events.PropertyChangedHandler;
+import org.tessell.model.properties.IntegerProperty;
+import org.tessell.model.properties.ListProperty;
+import org.tessell.widgets.StubWidgetsProvider;
+
+import com.google.gwt.event.shared.SimplerEventBus;
+import com.google.gwt.event.shared.UmbrellaException;
+
+public class EventBusStatsTest {
+
+  private EventBusStats stats;
+  private final IntegerProperty a = integerProperty("a", 1);
+  private final ListProperty<String> names = listProperty("names");
+
+  @Before
+  public void before() {
+    stats = StubWidgetsProvider.installWithStats();
+  }
+
+  @After
+  public void after() {
+    EventBusStats.stop();
+  }
+
+  @Test
+  public void countsFiresAndHandlers() {
+    a.addPropertyChangedHandler(new Noop());
+    a.addPropertyChangedHandler(new Noop());
+    a.set(2);
+    a.set(3);
+    final TypeStats changed = stats.snapshot().get("PropertyChangedEvent");
+    assertThat(changed.getFires(), is(2));
+    assertThat(changed.getHandlers(), is(4));
+    assertThat(changed.getMaxHandlers(), is(2));
+    assertThat(changed.getMaxDepth(), is(1));
+  }
+
+  @Test
+  public void canAssertHowManyEventsAChangeFires() {
+    names.add("a");
+    names.add("b");
+    assertThat(stats.getFires("ValueAddedEvent"), is(2));
+    assertThat(stats.getFires("PropertyChangedEvent"), is(2));
+    assertThat(stats.getFires("ValueRemovedEvent"), is(0));
+    assertThat(stats.getTotalFires(), is(4));
+  }
+
+  @Test
+  public void recordsNestedDepth() {
+    final IntegerProperty b = integerProperty("b", 1);
+    a.addPropertyChangedHandler(new PropertyChangedHandler<Integer>() {
+      public void onPropertyChanged(PropertyChangedEvent<Integer> event) {
+        b.set(event.getNewValue());
+      }
+    });
+    a.set(2);
+    assertThat(stats.snapshot().get("PropertyChangedEvent").getMaxDepth(), is(2));
+  }
+
+  @Test
+  public void recordsFailures() {
+    final SimplerEventBus bus = new SimplerEventBus();
+    bus.addHandler(PropertyChangedEvent.getType(), new PropertyChangedHandler<Integer>() {
+      public void onPropertyChanged(PropertyChangedEvent<Integer> event) {
+        if (event.getNewValue() == 3) {
+          throw new IllegalStateException();
+        }
+      }
+    });
+    bus.fireEvent(new PropertyChangedEvent<Integer>(a, 1, 2));
+    try {
+      bus.fireEvent(new PropertyChangedEvent<Integer>(a, 2, 3));
+      fail();
+    } catch (UmbrellaException ue) {
+      // expected
+    }
+    bus.fireEvent(new PropertyChangedEvent<Integer>(a, 3, 4));
+    bus.fireEvent(new PropertyChangedEvent<Integer>(a, 4, 5));
+    final TypeStats changed = stats.snapshot().get("PropertyChangedEvent");
+    assertThat(changed.getFires(), is(4));
+    assertThat(changed.getFailures(), is(1));
+    assertThat(changed.getFailureRate(), is(0.25));
+  }
+
+  @Test
+  public void recordsTheBinderySimplerEventBus() {
+    final org.tessell.bus.SimplerEventBus bus = new org.tessell.bus.SimplerEventBus();
+    bus.addHandler(FooEvent.TYPE, new FooHandler() {
+      public void onFoo(FooEvent event) {
+      }
+    });
+    bus.fireEvent(new FooEvent());
+    bus.fireEventFromSource(new FooEvent(), "a");
+    final TypeStats foo = stats.snapshot().get("ConcurrentEventBusTest$FooEvent");
+    assertThat(foo.getFires(), is(2));
+    assertThat(foo.getHandlers(), is(2));
+  }
+
+  @Test
+  public void recordsHandlerTime() {
+    // a fake clock that ticks a milli per read
+    stats = EventBusStats.start(new EventBusStats() {
+      private double now;
+
+      @Override
+      public double now() {
+        return now++;
+      }
+    });
+    a.addPropertyChangedHandler(new Noop());
+    a.addPropertyChangedHandler(new Noop());
+    a.set(2);
+    final TypeStats changed = stats.snapshot().get("PropertyChangedEvent");
+    assertThat(changed.getHandlerMillis(), is(2.0));
+    assertThat(changed.getMaxHandlerMillis(), is(1.0));
+  }
+
+  @Test
+  public void resetClearsStats() {
+    a.set(2);
+    stats.reset();
+    assertThat(stats.snapshot().get("PropertyChangedEvent"), is(nullValue()));
+  }
+
+  @Test
+  public void installingAgainStopsRecording() {
+    StubWidgetsProvider.install();
+    a.set(2);
+    assertThat(EventBusStats.current(), is(nullValue()));
+    assertThat(stats.getTotalFires(), is(0));
+  }
+
+  private static class Noop implements PropertyChangedHandler<Integer> {
+    public void onPropertyChanged(PropertyChangedEvent<Integer> event) {
+    }
+  }
+
+}
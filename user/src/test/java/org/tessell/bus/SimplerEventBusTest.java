@@ -0,0 +1,72 @@
+package org.tessell.bus;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.tessell.bus.ConcurrentEventBusTest.FooEvent;
+import org.tessell.bus.ConcurrentEventBusTest.FooHandler;
+
+import com.google.web.bindery.event.shared.UmbrellaException;
+
+public class SimplerEventBusTest {
+
+  private final SimplerEventBus bus = new SimplerEventBus();
+  private final List<String> fired = new ArrayList<String>();
+
+  @Test
+  public void firesSourceHandlersThenGlobalHandlers() {
+    bus.addHandler(FooEvent.TYPE, new Named("global"));
+    bus.addHandlerToSource(FooEvent.TYPE, "a", new Named("a"));
+    bus.addHandlerToSource(FooEvent.TYPE, "b", new Named("b"));
+    bus.fireEventFromSource(new FooEvent(), "a");
+    assertThat(fired, is((List<String>) list("a", "global")));
+  }
+
+  @Test
+  public void setsTheSource() {
+    final Object[] source = { null };
+    bus.addHandler(FooEvent.TYPE, new FooHandler() {
+      public void onFoo(FooEvent event) {
+        source[0] = event.getSource();
+      }
+    });
+    bus.fireEventFromSource(new FooEvent(), "a");
+    assertThat(source[0], is((Object) "a"));
+  }
+
+  @Test
+  public void collectsExceptions() {
+    bus.addHandler(FooEvent.TYPE, new FooHandler() {
+      public void onFoo(FooEvent event) {
+        throw new IllegalStateException("one");
+      }
+    });
+    bus.addHandler(FooEvent.TYPE, new Named("two"));
+    try {
+      bus.fireEvent(new FooEvent());
+      fail();
+    } catch (UmbrellaException ue) {
+      assertThat(ue.getCauses().size(), is(1));
+    }
+    assertThat(fired, is((List<String>) list("two")));
+  }
+
+  private class Named implements FooHandler {
+    private final String name;
+
+    private Named(String name) {
+      this.name = name;
+    }
+
+    public void onFoo(FooEvent event) {
+      fired.add(name);
+    }
+  }
+
+}
@@ -0,0 +1,128 @@
+package org.tessell.dispatch.client;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tessell.bus.StubEventBus;
+import org.tessell.dispatch.client.events.DispatchActionEvent;
+import org.tessell.dispatch.client.events.DispatchResultEvent;
+import org.tessell.dispatch.client.util.OutstandingDispatchAsync;
+import org.tessell.dispatch.shared.ActionException;
+import org.tessell.dispatch.shared.BatchAction;
+import org.tessell.dispatch.shared.BatchResult;
+import org.tessell.dispatch.shared.Result;
+import org.tessell.widgets.StubGWTBridge;
+import org.tessell.widgets.StubScheduler;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+public class BatchingDispatchAsyncTest {
+
+  private final StubDispatchAsync real = new StubDispatchAsync();
+  private final Callback a = new Callback();
+  private final Callback b = new Callback();
+  private StubScheduler scheduler;
+  private BatchingDispatchAsync async;
+
+  @Before
+  public void before() {
+    StubGWTBridge.install();
+    scheduler = StubScheduler.get();
+    async = new BatchingDispatchAsync(real);
+  }
+
+  @Test
+  public void batchesActionsInTheSameEventLoop() {
+    scheduler.runWithDeferred(new Runnable() {
+      public void run() {
+        async.execute(new GetTestAction("a"), a);
+        async.execute(new GetTestAction("b"), b);
+        assertThat(real.getCalls().size(), is(0));
+      }
+    });
+    final BatchAction batch = real.getAction(BatchAction.class);
+    assertThat(batch.getActions().size(), is(2));
+    assertThat(batch.getActions().get(0).toString(), is("GetTestAction[a]"));
+  }
+
+  @Test
+  public void sendsALoneActionAsIs() {
+    scheduler.runWithDeferred(new Runnable() {
+      public void run() {
+        async.execute(new GetTestAction("a"), a);
+      }
+    });
+    assertThat(real.getActions(GetTestAction.class).size(), is(1));
+    assertThat(real.getActions(BatchAction.class).size(), is(0));
+  }
+
+  @Test
+  public void passesEachResultOrFailureToItsCallback() {
+    sendTwo();
+    final GetTestResult resultA = new GetTestResult();
+    final ActionException failureB = new ActionException("b failed");
+    real.getCallback(BatchAction.class).onSuccess(new BatchResult(
+      list((Result) resultA, null),
+      list(null, failureB)));
+    assertThat(a.result, is(resultA));
+    assertThat(a.failure, is(nullValue()));
+    assertThat(b.result, is(nullValue()));
+    assertThat(b.failure, is((Throwable) failureB));
+  }
+
+  @Test
+  public void failsEachCallbackIfTheBatchFails() {
+    sendTwo();
+    final RuntimeException failure = new RuntimeException("down");
+    real.getCallback(BatchAction.class).onFailure(failure);
+    assertThat(a.failure, is((Throwable) failure));
+    assertThat(b.failure, is((Throwable) failure));
+  }
+
+  @Test
+  public void firesEventsPerActionWhenWrappedInOutstanding() {
+    final StubEventBus bus = new StubEventBus();
+    final OutstandingDispatchAsync outstanding = new OutstandingDispatchAsync(bus, async);
+    scheduler.runWithDeferred(new Runnable() {
+      public void run() {
+        outstanding.execute(new GetTestAction("a"), a);
+        outstanding.execute(new GetTestAction("b"), b);
+      }
+    });
+    assertThat(bus.getEvents(DispatchActionEvent.class).size(), is(2));
+    assertThat(outstanding.hasOutstanding(GetTestAction.class), is(true));
+
+    real.getCallback(BatchAction.class).onSuccess(new BatchResult(
+      list((Result) new GetTestResult(), new GetTestResult()),
+      list((ActionException) null, null)));
+    assertThat(bus.getEvents(DispatchResultEvent.class).size(), is(2));
+    assertThat(outstanding.hasOutstanding(GetTestAction.class), is(false));
+  }
+
+  private void sendTwo() {
+    scheduler.runWithDeferred(new Runnable() {
+      public void run() {
+        async.execute(new GetTestAction("a"), a);
+        async.execute(new GetTestAction("b"), b);
+      }
+    });
+  }
+
+  private static class Callback implements AsyncCallback<GetTestResult> {
+    private GetTestResult result;
+    private Throwable failure;
+
+    public void onSuccess(GetTestResult result) {
+      this.result = result;
+    }
+
+    public void onFailure(Throwable caught) {
+      failure = caught;
+    }
+  }
+
+}
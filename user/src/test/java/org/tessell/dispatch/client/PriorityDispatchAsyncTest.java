@@ -0,0 +1,220 @@
+package org.tessell.dispatch.client;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.tessell.dispatch.shared.Action;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+public class PriorityDispatchAsyncTest {
+
+  private final StubDispatchAsync real = new StubDispatchAsync();
+  private final PriorityDispatchAsync async = new PriorityDispatchAsync(real, 2);
+
+  @Test
+  public void limitsActionsInFlight() {
+    async.execute(new GetTestAction("a"), new Callback(null));
+    async.execute(new GetTestAction("b"), new Callback(null));
+    async.execute(new GetTestAction("c"), new Callback(null));
+    assertThat(real.getCalls().size(), is(2));
+    assertThat(async.getInFlightCount(), is(2));
+    assertThat(async.getQueuedCount(), is(1));
+
+    real.getCallback(GetTestAction.class, 0).onSuccess(new GetTestResult());
+    assertThat(real.getCalls().size(), is(3));
+    assertThat(async.getInFlightCount(), is(2));
+    assertThat(async.getQueuedCount(), is(0));
+  }
+
+  @Test
+  public void sendsQueuedActionsByPriority() {
+    async.execute(new GetTestAction("a"), new Callback(null));
+    async.execute(new GetTestAction("b"), new Callback(null));
+    async.execute(new GetTestAction("prefetch"), new Callback(DispatchPriority.PREFETCH));
+    async.execute(new GetTestAction("load1"), new Callback(null));
+    async.execute(new GetTestAction("click"), new Callback(DispatchPriority.INTERACTIVE));
+    async.execute(new GetTestAction("load2"), new Callback(DispatchPriority.LOAD));
+    for (int i = 0; i < 4; i++) {
+      real.getCallback(GetTestAction.class, i).onSuccess(new GetTestResult());
+    }
+    assertThat(names(real.getActions()), is(list("a", "b", "click", "load1", "load2", "prefetch")));
+  }
+
+  @Test
+  public void usesThePriorityOfTheActionType() {
+    async.setDefaultPriority(DispatchPriority.PREFETCH);
+    async.setPriority(GetTestAction.class, DispatchPriority.INTERACTIVE);
+    async.execute(new OtherAction("a"), new Callback(null));
+    async.execute(new OtherAction("b"), new Callback(null));
+    async.execute(new OtherAction("c"), new Callback(null));
+    async.execute(new GetTestAction("d"), new Callback(null));
+    real.getCallback(OtherAction.class, 0).onSuccess(new GetTestResult());
+    assertThat(names(real.getActions()), is(list("a", "b", "d")));
+  }
+
+  @Test
+  public void tellsCallbacksWhenQueuedAndSent() {
+    final Callback a = new Callback(null);
+    final Callback c = new Callback(null);
+    async.execute(new GetTestAction("a"), a);
+    async.execute(new GetTestAction("b"), new Callback(null));
+    async.execute(new GetTestAction("c"), c);
+    assertThat(a.queued, is(false));
+    assertThat(c.queued, is(true));
+    assertThat(c.sent, is(false));
+    real.getCallback(GetTestAction.class, 0).onSuccess(new GetTestResult());
+    assertThat(c.sent, is(true));
+  }
+
+  @Test
+  public void dropsCancelledActions() {
+    final Callback c = new Callback(null);
+    async.execute(new GetTestAction("a"), new Callback(null));
+    async.execute(new GetTestAction("b"), new Callback(null));
+    async.execute(new GetTestAction("c"), c);
+    async.execute(new GetTestAction("d"), new Callback(null));
+    c.cancelled = true;
+    assertThat(async.getQueuedCount(), is(1));
+    real.getCallback(GetTestAction.class, 0).onSuccess(new GetTestResult());
+    assertThat(names(real.getActions()), is(list("a", "b", "d")));
+    assertThat(c.sent, is(false));
+  }
+
+  @Test
+  public void removesQueuedActionsWhenTheirRequestIsCancelled() {
+    final Callback c = new Callback(null);
+    async.execute(new GetTestAction("a"), new Callback(null));
+    async.execute(new GetTestAction("b"), new Callback(null));
+    async.execute(new GetTestAction("c"), c);
+    async.execute(new GetTestAction("d"), new Callback(null));
+    // taken out of the queue right away, without waiting for c to be polled
+    c.request.cancel();
+    assertThat(async.getQueuedCount(), is(1));
+    real.getCallback(GetTestAction.class, 0).onSuccess(new GetTestResult());
+    real.getCallback(GetTestAction.class, 1).onSuccess(new GetTestResult());
+    assertThat(names(real.getActions()), is(list("a", "b", "d")));
+    assertThat(async.getInFlightCount(), is(1));
+  }
+
+  @Test
+  public void rejectsLessThanOneInFlight() {
+    try {
+      new PriorityDispatchAsync(real, 0);
+      fail();
+    } catch (final IllegalArgumentException iae) {
+      assertThat(iae.getMessage(), is("maxInFlight must be at least 1: 0"));
+    }
+  }
+
+  @Test
+  public void freesTheSlotOfCancelledRequests() {
+    final Callback a = new Callback(null);
+    async.execute(new GetTestAction("a"), a);
+    async.execute(new GetTestAction("b"), new Callback(null));
+    async.execute(new GetTestAction("c"), new Callback(null));
+    a.request.cancel();
+    assertThat(real.getCallback(GetTestAction.class, 0).cancelled, is(true));
+    assertThat(names(real.getActions()), is(list("a", "b", "c")));
+    assertThat(async.getInFlightCount(), is(2));
+    // cancelling again doesn't free another slot
+    a.request.cancel();
+    assertThat(async.getInFlightCount(), is(2));
+  }
+
+  @Test
+  public void sendsTheNextActionEvenIfACallbackFails() {
+    async.execute(new GetTestAction("a"), new Callback(null) {
+      public void onFailure(final Throwable caught) {
+        throw new IllegalStateException(caught);
+      }
+    });
+    async.execute(new GetTestAction("b"), new Callback(null));
+    async.execute(new GetTestAction("c"), new Callback(null));
+    try {
+      real.getCallback(GetTestAction.class, 0).onFailure(new RuntimeException());
+    } catch (final IllegalStateException ise) {
+      // expected
+    }
+    assertThat(real.getCalls().size(), is(3));
+    assertThat(async.getInFlightCount(), is(2));
+  }
+
+  @Test
+  public void actionsFromCallbacksWaitBehindQueuedActions() {
+    async.execute(new GetTestAction("a"), new Callback(null) {
+      public void onSuccess(final GetTestResult result) {
+        async.execute(new GetTestAction("next"), new Callback(null));
+      }
+    });
+    async.execute(new GetTestAction("b"), new Callback(null));
+    async.execute(new GetTestAction("click"), new Callback(DispatchPriority.INTERACTIVE));
+    real.getCallback(GetTestAction.class, 0).onSuccess(new GetTestResult());
+    assertThat(names(real.getActions()), is(list("a", "b", "click")));
+    assertThat(async.getQueuedCount(), is(1));
+    real.getCallback(GetTestAction.class, 1).onSuccess(new GetTestResult());
+    assertThat(names(real.getActions()), is(list("a", "b", "click", "next")));
+    assertThat(async.getInFlightCount(), is(2));
+  }
+
+  private static ArrayList<String> names(final List<Action<?>> actions) {
+    final ArrayList<String> names = new ArrayList<String>();
+    for (final Action<?> action : actions) {
+      names.add(((GetTestAction) action).getName());
+    }
+    return names;
+  }
+
+  private static class OtherAction extends GetTestAction {
+    private static final long serialVersionUID = 1L;
+
+    private OtherAction(final String name) {
+      super(name);
+    }
+  }
+
+  private static class Callback implements DispatchCallback<GetTestResult> {
+    private final DispatchPriority priority;
+    private boolean cancelled;
+    private boolean queued;
+    private boolean sent;
+    private DispatchRequest request;
+
+    private Callback(final DispatchPriority priority) {
+      this.priority = priority;
+    }
+
+    public void onSuccess(final GetTestResult result) {
+    }
+
+    public void onFailure(final Throwable caught) {
+    }
+
+    public DispatchPriority getPriority() {
+      return priority;
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    public void onQueued() {
+      queued = true;
+    }
+
+    public void onSent() {
+      sent = true;
+    }
+
+    public void onRequest(final DispatchRequest request) {
+      this.request = request;
+    }
+  }
+
+}
@@ -0,0 +1,229 @@
+package org.tessell.dispatch.client;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tessell.bus.StubEventBus;
+import org.tessell.dispatch.client.util.OutstandingDispatchAsync;
+import org.tessell.dispatch.shared.ActionException;
+import org.tessell.dispatch.shared.ActionOverloadedException;
+import org.tessell.dispatch.shared.IdempotencyKeyedAction;
+import org.tessell.dispatch.shared.IdempotentAction;
+import org.tessell.gwt.user.client.IsTimer;
+import org.tessell.gwt.user.client.StubTimer;
+import org.tessell.widgets.StubWidgetsProvider;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.gwt.user.client.rpc.InvocationException;
+
+public class RetryingDispatchAsyncTest {
+
+  private final StubDispatchAsync real = new StubDispatchAsync();
+  private final List<StubTimer> timers = new ArrayList<StubTimer>();
+  private final Callback callback = new Callback();
+  private final RetryingDispatchAsync async = new RetryingDispatchAsync(real) {
+    @Override
+    protected IsTimer newTimer(final Runnable runnable) {
+      final StubTimer timer = new StubTimer(runnable);
+      timer.doNotAutoRun();
+      timers.add(timer);
+      return timer;
+    }
+
+    @Override
+    protected double random() {
+      return 0;
+    }
+  };
+
+  @Before
+  public void before() {
+    StubWidgetsProvider.install();
+  }
+
+  @Test
+  public void retriesIdempotentActionsWithBackoff() {
+    async.execute(new ReadAction("a"), callback);
+    real.getCallback(ReadAction.class, 0).onFailure(new InvocationException("down"));
+    assertThat(callback.failure, is(nullValue()));
+    assertThat(timers.get(0).getDelay(), is(500));
+
+    timers.get(0).run();
+    assertThat(real.getCalls(ReadAction.class).size(), is(2));
+    real.getCallback(ReadAction.class, 1).onFailure(new InvocationException("down"));
+    assertThat(timers.get(1).getDelay(), is(1000));
+
+    timers.get(1).run();
+    real.getCallback(ReadAction.class, 2).onSuccess(new GetTestResult());
+    assertThat(callback.result, is(notNullValue()));
+  }
+
+  @Test
+  public void givesUpAfterMaxAttempts() {
+    async.setRetryPolicy(ReadAction.class, new RetryPolicy().maxAttempts(2));
+    async.execute(new ReadAction("a"), callback);
+    real.getCallback(ReadAction.class, 0).onFailure(new InvocationException("down"));
+    timers.get(0).run();
+    final InvocationException last = new InvocationException("still down");
+    real.getCallback(ReadAction.class, 1).onFailure(last);
+    assertThat(callback.failure, is((Throwable) last));
+    assertThat(timers.size(), is(1));
+  }
+
+  @Test
+  public void doesNotRetryNonIdempotentActions() {
+    async.execute(new GetTestAction("a"), callback);
+    real.getCallback(GetTestAction.class).onFailure(new InvocationException("down"));
+    assertThat(callback.failure, is(notNullValue()));
+    assertThat(timers.size(), is(0));
+  }
+
+  @Test
+  public void doesNotRetryActionExceptions() {
+    async.execute(new ReadAction("a"), callback);
+    real.getCallback(ReadAction.class).onFailure(new ActionException("invalid"));
+    assertThat(callback.failure, is(notNullValue()));
+    assertThat(timers.size(), is(0));
+  }
+
+  @Test
+  public void waitsAsLongAsAnOverloadedServerAsks() {
+    async.execute(new ReadAction("a"), callback);
+    real.getCallback(ReadAction.class).onFailure(new ActionOverloadedException("busy", 3000));
+    assertThat(timers.get(0).getDelay(), is(3000));
+  }
+
+  @Test
+  public void appliesJitter() {
+    final RetryPolicy policy = new RetryPolicy().initialDelay(1000).jitter(0.5);
+    assertThat(policy.getDelayMillis(1, 0, null), is(1000));
+    assertThat(policy.getDelayMillis(1, 1, null), is(500));
+    assertThat(policy.getDelayMillis(10, 0, null), is(10000));
+  }
+
+  @Test
+  public void keepsTheIdempotencyKeyAcrossRetries() {
+    final WriteAction write = new WriteAction();
+    async.execute(write, callback);
+    final String key = write.getIdempotencyKey();
+    assertThat(key, is(notNullValue()));
+    real.getCallback(WriteAction.class, 0).onFailure(new InvocationException("down"));
+    timers.get(0).run();
+    assertThat(real.getAction(WriteAction.class, 1).getIdempotencyKey(), is(key));
+    // a new write gets a new key
+    final WriteAction other = new WriteAction();
+    async.execute(other, callback);
+    assertThat(other.getIdempotencyKey().equals(key), is(false));
+  }
+
+  @Test
+  public void stopsRetryingOnceCancelled() {
+    final OutstandingDispatchAsync outstanding = new OutstandingDispatchAsync(new StubEventBus(), async);
+    final OutstandingDispatchAsync.Scope scope = outstanding.scope(DispatchPriority.INTERACTIVE);
+    scope.execute(new ReadAction("a"), callback);
+    real.getCallback(ReadAction.class, 0).onFailure(new InvocationException("down"));
+    scope.cancel();
+    timers.get(0).run();
+    assertThat(real.getCalls().size(), is(1));
+    assertThat(callback.failure, is(nullValue()));
+  }
+
+  @Test
+  public void onlyPassesAlongTheFirstAttemptsQueuedAndSent() {
+    // send through a one-at-a-time queue, so each attempt waits behind another action
+    final PriorityDispatchAsync queue = new PriorityDispatchAsync(real, 1);
+    final RetryingDispatchAsync retrying = new RetryingDispatchAsync(queue) {
+      @Override
+      protected IsTimer newTimer(final Runnable runnable) {
+        final StubTimer timer = new StubTimer(runnable);
+        timer.doNotAutoRun();
+        timers.add(timer);
+        return timer;
+      }
+    };
+    final CountingCallback counting = new CountingCallback();
+    queue.execute(new GetTestAction("first"), new Callback());
+    retrying.execute(new ReadAction("a"), counting);
+    real.getCallback(GetTestAction.class, 0).onSuccess(new GetTestResult());
+    assertThat(counting.queued, is(1));
+    assertThat(counting.sent, is(1));
+
+    queue.execute(new GetTestAction("second"), new Callback());
+    real.getCallback(ReadAction.class, 0).onFailure(new InvocationException("down"));
+    timers.get(0).run();
+    real.getCallback(GetTestAction.class, 1).onSuccess(new GetTestResult());
+    assertThat(real.getCalls(ReadAction.class).size(), is(2));
+    assertThat(counting.queued, is(1));
+    assertThat(counting.sent, is(1));
+  }
+
+  private static class ReadAction extends GetTestAction implements IdempotentAction {
+    private static final long serialVersionUID = 1L;
+
+    private ReadAction(final String name) {
+      super(name);
+    }
+  }
+
+  static class WriteAction extends GetTestAction implements IdempotencyKeyedAction {
+    private static final long serialVersionUID = 1L;
+    private String key;
+
+    WriteAction() {
+      super("write");
+    }
+
+    public String getIdempotencyKey() {
+      return key;
+    }
+
+    public void setIdempotencyKey(final String key) {
+      this.key = key;
+    }
+  }
+
+  private static class Callback implements AsyncCallback<GetTestResult> {
+    private GetTestResult result;
+    private Throwable failure;
+
+    public void onSuccess(final GetTestResult result) {
+      this.result = result;
+    }
+
+    public void onFailure(final Throwable caught) {
+      failure = caught;
+    }
+  }
+
+  private static class CountingCallback extends Callback implements DispatchCallback<GetTestResult> {
+    private int queued;
+    private int sent;
+
+    public DispatchPriority getPriority() {
+      return null;
+    }
+
+    public boolean isCancelled() {
+      return false;
+    }
+
+    public void onQueued() {
+      queued++;
+    }
+
+    public void onSent() {
+      sent++;
+    }
+
+    public void onRequest(final DispatchRequest request) {
+    }
+  }
+
+}
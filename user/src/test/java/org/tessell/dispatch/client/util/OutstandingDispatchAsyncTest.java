@@ -0,0 +1,237 @@
+package org.tessell.dispatch.client.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.tessell.bus.StubEventBus;
+import org.tessell.dispatch.client.DispatchPriority;
+import org.tessell.dispatch.client.GetTestAction;
+import org.tessell.dispatch.client.GetTestResult;
+import org.tessell.dispatch.client.PriorityDispatchAsync;
+import org.tessell.dispatch.client.StubDispatchAsync;
+import org.tessell.dispatch.client.events.DispatchActionEvent;
+import org.tessell.dispatch.client.events.DispatchCancelledEvent;
+import org.tessell.dispatch.client.events.DispatchFailureEvent;
+import org.tessell.dispatch.client.events.DispatchQueuedEvent;
+import org.tessell.dispatch.client.events.DispatchResultEvent;
+import org.tessell.dispatch.client.events.DispatchSentEvent;
+
+import com.google.gwt.event.shared.UmbrellaException;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+public class OutstandingDispatchAsyncTest {
+
+  private final StubEventBus bus = new StubEventBus();
+  private final StubOutstandingDispatchAsync async = new StubOutstandingDispatchAsync(bus, new StubDispatchAsync());
+  private final Callback a = new Callback();
+  private final Callback b = new Callback();
+  private final Callback c = new Callback();
+  private final StubDispatchAsync real = new StubDispatchAsync();
+
+  @Test
+  public void tracksOutstandingByType() {
+    async.execute(new GetTestAction("a"), a);
+    async.execute(new GetTestAction("b"), b);
+    assertThat(async.hasOutstanding(GetTestAction.class), is(true));
+    assertThat(async.getOutstandingCount(), is(2));
+
+    async.getCallback(GetTestAction.class, 0).onSuccess(new GetTestResult());
+    assertThat(async.hasOutstanding(GetTestAction.class), is(true));
+    assertThat(async.getOutstandingCount(), is(1));
+
+    async.getCallback(GetTestAction.class, 1).onFailure(new RuntimeException());
+    assertThat(async.hasOutstanding(GetTestAction.class), is(false));
+    assertThat(async.getOutstandingCount(), is(0));
+  }
+
+  @Test
+  public void sendsIdenticalActionsByDefault() {
+    async.execute(new GetTestAction("a"), a);
+    async.execute(new GetTestAction("a"), b);
+    assertThat(async.getCalls().size(), is(2));
+  }
+
+  @Test
+  public void coalescesIdenticalActions() {
+    async.setCoalescing(true);
+    async.execute(new GetTestAction("a"), a);
+    async.execute(new GetTestAction("a"), b);
+    assertThat(async.getCalls().size(), is(1));
+    assertThat(async.getOutstanding().size(), is(2));
+    assertThat(async.getOutstandingCount(), is(2));
+    assertThat(bus.getEvents(DispatchActionEvent.class).size(), is(2));
+
+    final GetTestResult result = new GetTestResult();
+    async.getCallback(GetTestAction.class).onSuccess(result);
+    assertThat(a.result, is(result));
+    assertThat(b.result, is(result));
+    assertThat(bus.getEvents(DispatchResultEvent.class).size(), is(2));
+    assertThat(async.hasOutstanding(GetTestAction.class), is(false));
+  }
+
+  @Test
+  public void coalescesFailures() {
+    async.setCoalescing(true);
+    async.execute(new GetTestAction("a"), a);
+    async.execute(new GetTestAction("a"), b);
+    final RuntimeException failure = new RuntimeException("down");
+    async.getCallback(GetTestAction.class).onFailure(failure);
+    assertThat(a.failure, is((Throwable) failure));
+    assertThat(b.failure, is((Throwable) failure));
+    assertThat(bus.getEvents(DispatchFailureEvent.class).size(), is(2));
+  }
+
+  @Test
+  public void doesNotCoalesceDifferentActions() {
+    async.setCoalescing(true);
+    async.execute(new GetTestAction("a"), a);
+    async.execute(new GetTestAction("b"), b);
+    assertThat(async.getCalls().size(), is(2));
+  }
+
+  @Test
+  public void sendsAgainOnceTheCallReturns() {
+    async.setCoalescing(true);
+    async.execute(new GetTestAction("a"), a);
+    async.getCallback(GetTestAction.class).onSuccess(new GetTestResult());
+    async.execute(new GetTestAction("a"), b);
+    assertThat(async.getCalls().size(), is(2));
+    assertThat(b.result, is(nullValue()));
+  }
+
+  @Test
+  public void callsEachCallbackEvenIfOneFails() {
+    async.setCoalescing(true);
+    async.execute(new GetTestAction("a"), new Callback() {
+      public void onSuccess(final GetTestResult result) {
+        throw new IllegalStateException();
+      }
+    });
+    async.execute(new GetTestAction("a"), b);
+    final GetTestResult result = new GetTestResult();
+    try {
+      async.getCallback(GetTestAction.class).onSuccess(result);
+      fail();
+    } catch (final UmbrellaException ue) {
+      assertThat(ue.getCauses().size(), is(1));
+    }
+    assertThat(b.result, is(result));
+    assertThat(async.getOutstandingCount(), is(0));
+  }
+
+  @Test
+  public void firesQueuedAndSentEvents() {
+    final OutstandingDispatchAsync queued = queued();
+    queued.execute(new GetTestAction("a"), a);
+    queued.execute(new GetTestAction("b"), b);
+    assertThat(bus.getEvents(DispatchQueuedEvent.class).size(), is(1));
+    assertThat(queued.getQueuedCount(), is(1));
+    assertThat(queued.getOutstandingCount(), is(2));
+
+    real.getCallback(GetTestAction.class, 0).onSuccess(new GetTestResult());
+    assertThat(bus.getEvents(DispatchSentEvent.class).size(), is(1));
+    assertThat(queued.getQueuedCount(), is(0));
+    assertThat(queued.getOutstandingCount(), is(1));
+  }
+
+  @Test
+  public void scopesSetThePriority() {
+    final OutstandingDispatchAsync queued = queued();
+    queued.execute(new GetTestAction("a"), a);
+    queued.scope(DispatchPriority.PREFETCH).execute(new GetTestAction("prefetch"), b);
+    queued.scope(DispatchPriority.INTERACTIVE).execute(new GetTestAction("click"), b);
+    queued.execute(new GetTestAction("load"), b);
+    real.getCallback(GetTestAction.class, 0).onSuccess(new GetTestResult());
+    assertThat(real.getAction(GetTestAction.class, 1).getName(), is("click"));
+  }
+
+  @Test
+  public void scopesCancelTheirQueuedActions() {
+    final OutstandingDispatchAsync queued = queued();
+    final OutstandingDispatchAsync.Scope scope = queued.scope(DispatchPriority.LOAD);
+    scope.execute(new GetTestAction("a"), a);
+    scope.execute(new GetTestAction("b"), b);
+    scope.removeHandler();
+    assertThat(bus.getEvents(DispatchCancelledEvent.class).size(), is(1));
+    assertThat(queued.getOutstandingCount(), is(1));
+    assertThat(queued.getQueuedCount(), is(0));
+
+    // a was already sent, so still completes
+    real.getCallback(GetTestAction.class, 0).onSuccess(new GetTestResult());
+    assertThat(a.result, is(notNullValue()));
+    assertThat(real.getCalls().size(), is(1));
+    assertThat(b.result, is(nullValue()));
+    assertThat(queued.getOutstandingCount(), is(0));
+  }
+
+  @Test
+  public void coalescedCallsAreSentUnlessEveryCallerCancels() {
+    final OutstandingDispatchAsync queued = queued();
+    queued.setCoalescing(true);
+    final OutstandingDispatchAsync.Scope scope = queued.scope(DispatchPriority.LOAD);
+    queued.execute(new GetTestAction("a"), a);
+    scope.execute(new GetTestAction("b"), b);
+    queued.execute(new GetTestAction("b"), c);
+    assertThat(queued.getQueuedCount(), is(2));
+    scope.cancel();
+    real.getCallback(GetTestAction.class, 0).onSuccess(new GetTestResult());
+    real.getCallback(GetTestAction.class, 1).onSuccess(new GetTestResult());
+    assertThat(b.result, is(nullValue()));
+    assertThat(c.result, is(notNullValue()));
+    assertThat(queued.getOutstandingCount(), is(0));
+  }
+
+  @Test
+  public void scopesCancelSentActions() {
+    final OutstandingDispatchAsync.Scope scope = async.scope(DispatchPriority.INTERACTIVE);
+    scope.execute(new GetTestAction("a"), a);
+    scope.removeHandler();
+    // removing only cancels queued actions
+    assertThat(async.getOutstandingCount(), is(1));
+
+    scope.cancel();
+    assertThat(async.getCallback(GetTestAction.class).cancelled, is(true));
+    assertThat(async.getOutstandingCount(), is(0));
+    assertThat(bus.getEvents(DispatchCancelledEvent.class).size(), is(1));
+    // even if the response still arrives
+    async.getCallback(GetTestAction.class).onSuccessOutOfOrder(new GetTestResult());
+    assertThat(a.result, is(nullValue()));
+    assertThat(bus.getEvents(DispatchResultEvent.class).size(), is(0));
+  }
+
+  @Test
+  public void coalescedRequestsAreOnlyAbortedOnceEveryCallerCancels() {
+    async.setCoalescing(true);
+    final OutstandingDispatchAsync.Scope scope = async.scope(DispatchPriority.INTERACTIVE);
+    scope.execute(new GetTestAction("a"), a);
+    async.execute(new GetTestAction("a"), b);
+    scope.cancel();
+    assertThat(async.getCallback(GetTestAction.class).cancelled, is(false));
+    final GetTestResult result = new GetTestResult();
+    async.getCallback(GetTestAction.class).onSuccess(result);
+    assertThat(a.result, is(nullValue()));
+    assertThat(b.result, is(result));
+  }
+
+  private OutstandingDispatchAsync queued() {
+    return new OutstandingDispatchAsync(bus, new PriorityDispatchAsync(real, 1));
+  }
+
+  private static class Callback implements AsyncCallback<GetTestResult> {
+    private GetTestResult result;
+    private Throwable failure;
+
+    public void onSuccess(final GetTestResult result) {
+      this.result = result;
+    }
+
+    public void onFailure(final Throwable caught) {
+      failure = caught;
+    }
+  }
+
+}
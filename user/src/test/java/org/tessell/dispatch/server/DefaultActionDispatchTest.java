@@ -0,0 +1,221 @@
+package org.tessell.dispatch.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.tessell.dispatch.client.GetTestAction;
+import org.tessell.dispatch.client.GetTestResult;
+import org.tessell.dispatch.server.handlers.ActionHandler;
+import org.tessell.dispatch.server.handlers.CacheableActionHandler;
+import org.tessell.dispatch.server.handlers.CacheableActionHandler.Scope;
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.ActionException;
+import org.tessell.dispatch.shared.BatchAction;
+import org.tessell.dispatch.shared.BatchResult;
+import org.tessell.dispatch.shared.IdempotencyKeyedAction;
+
+public class DefaultActionDispatchTest {
+
+  private final DefaultActionDispatch dispatch = new DefaultActionDispatch();
+  private final ExecutionContext context = new ExecutionContext(null, null);
+
+  @Test
+  public void executesTheHandler() {
+    dispatch.addHandler(new GetTestHandler());
+    assertThat(dispatch.execute(new GetTestAction("a"), context), is(GetTestHandler.result));
+  }
+
+  @Test
+  public void executesEachActionInABatch() {
+    dispatch.addHandler(new GetTestHandler());
+    final BatchResult result = dispatch.execute(batch(new GetTestAction("a"), new GetTestAction("b")), context);
+    assertThat(result.getResults().size(), is(2));
+    assertThat(result.getResults().get(1), is((Object) GetTestHandler.result));
+    assertThat(result.getFailures().get(1), is(nullValue()));
+  }
+
+  @Test
+  public void keepsEachFailureInABatch() {
+    dispatch.addHandler(new GetTestHandler());
+    final BatchResult result = dispatch.execute(batch(
+      new GetTestAction("action"),
+      new GetTestAction("runtime"),
+      new GetTestAction("b")), context);
+    assertThat(result.getFailures().get(0).getMessage(), is("failed"));
+    assertThat(result.getFailures().get(1).getMessage(), is("A server error occured."));
+    assertThat(result.getResults().get(0), is(nullValue()));
+    assertThat(result.getResults().get(2), is((Object) GetTestHandler.result));
+  }
+
+  @Test
+  public void cachesGlobalResults() {
+    final CachedHandler handler = new CachedHandler(Scope.GLOBAL);
+    dispatch.addHandler(handler);
+    final GetTestResult first = dispatch.execute(new GetTestAction("a"), context);
+    assertThat(dispatch.execute(new GetTestAction("a"), context), is(first));
+    assertThat(handler.executions, is(1));
+    dispatch.execute(new GetTestAction("b"), context);
+    assertThat(handler.executions, is(2));
+  }
+
+  @Test
+  public void doesNotCacheSessionResultsWithoutASession() {
+    final CachedHandler handler = new CachedHandler(Scope.SESSION);
+    dispatch.addHandler(handler);
+    dispatch.execute(new GetTestAction("a"), context);
+    dispatch.execute(new GetTestAction("a"), context);
+    assertThat(handler.executions, is(2));
+  }
+
+  @Test
+  public void invalidatesCachedResults() {
+    final CachedHandler handler = new CachedHandler(Scope.GLOBAL);
+    dispatch.addHandler(handler);
+    dispatch.execute(new GetTestAction("a"), context);
+    dispatch.execute(new GetTestAction("b"), context);
+    dispatch.invalidateCached(GetTestAction.class, new GetTestAction("a"));
+    assertThat(dispatch.getResultCache().size(), is(1));
+    dispatch.invalidateCached(GetTestAction.class);
+    assertThat(dispatch.getResultCache().size(), is(0));
+  }
+
+  @Test
+  public void executesKeyedActionsOnce() {
+    final CountingHandler handler = new CountingHandler();
+    dispatch.addHandler(handler);
+    final ExecutionContext s1 = sessionContext("s1");
+    final GetTestResult first = dispatch.execute(new KeyedAction("k1"), s1);
+    // a retry of the same write returns the same result
+    assertThat(dispatch.execute(new KeyedAction("k1"), s1), is(first));
+    assertThat(handler.executions, is(1));
+    dispatch.execute(new KeyedAction("k2"), s1);
+    assertThat(handler.executions, is(2));
+    // without a key, it always executes
+    dispatch.execute(new KeyedAction(null), s1);
+    dispatch.execute(new KeyedAction(null), s1);
+    assertThat(handler.executions, is(4));
+  }
+
+  @Test
+  public void scopesKeyedActionsBySession() {
+    final CountingHandler handler = new CountingHandler();
+    dispatch.addHandler(handler);
+    dispatch.execute(new KeyedAction("k1"), sessionContext("s1"));
+    dispatch.execute(new KeyedAction("k1"), sessionContext("s2"));
+    assertThat(handler.executions, is(2));
+  }
+
+  @Test
+  public void doesNotDedupKeyedActionsWithoutASession() {
+    final CountingHandler handler = new CountingHandler();
+    dispatch.addHandler(handler);
+    dispatch.execute(new KeyedAction("k1"), context);
+    dispatch.execute(new KeyedAction("k1"), context);
+    assertThat(handler.executions, is(2));
+    assertThat(dispatch.idempotentResults.size(), is(0));
+  }
+
+  /** @return a context whose session {@code sessionId} has already been validated */
+  private static ExecutionContext sessionContext(final String sessionId) {
+    final ExecutionContext context = new ExecutionContext(null, null);
+    context.getSessionId(new SessionIdValidator() {
+      public String get(final ExecutionContext context) {
+        return sessionId;
+      }
+    });
+    return context;
+  }
+
+  private static BatchAction batch(final Action<?>... actions) {
+    final List<Action<?>> list = new ArrayList<Action<?>>();
+    for (final Action<?> action : actions) {
+      list.add(action);
+    }
+    return new BatchAction(list);
+  }
+
+  /** Fails for "action" with an {@link ActionException}, and "runtime" with a {@link RuntimeException}. */
+  static class GetTestHandler implements ActionHandler<GetTestAction, GetTestResult> {
+    static final GetTestResult result = new GetTestResult();
+
+    public Class<GetTestAction> getActionType() {
+      return GetTestAction.class;
+    }
+
+    public GetTestResult execute(final GetTestAction action, final ExecutionContext context) {
+      if ("action".equals(action.getName())) {
+        throw new ActionException("failed");
+      } else if ("runtime".equals(action.getName())) {
+        throw new IllegalStateException("failed");
+      }
+      return result;
+    }
+  }
+
+  /** Caches by action, for an hour. */
+  static class CachedHandler implements CacheableActionHandler<GetTestAction, GetTestResult> {
+    private final Scope scope;
+    private int executions;
+
+    CachedHandler(final Scope scope) {
+      this.scope = scope;
+    }
+
+    public Class<GetTestAction> getActionType() {
+      return GetTestAction.class;
+    }
+
+    public GetTestResult execute(final GetTestAction action, final ExecutionContext context) {
+      executions++;
+      return new GetTestResult();
+    }
+
+    public Object getCacheKey(final GetTestAction action) {
+      return action;
+    }
+
+    public long getCacheTtlMillis() {
+      return 60 * 60 * 1000;
+    }
+
+    public Scope getCacheScope() {
+      return scope;
+    }
+  }
+
+  static class KeyedAction implements Action<GetTestResult>, IdempotencyKeyedAction {
+    private static final long serialVersionUID = 1L;
+    private String key;
+
+    KeyedAction(final String key) {
+      this.key = key;
+    }
+
+    public String getIdempotencyKey() {
+      return key;
+    }
+
+    public void setIdempotencyKey(final String key) {
+      this.key = key;
+    }
+  }
+
+  static class CountingHandler implements ActionHandler<KeyedAction, GetTestResult> {
+    private int executions;
+
+    public Class<KeyedAction> getActionType() {
+      return KeyedAction.class;
+    }
+
+    public GetTestResult execute(final KeyedAction action, final ExecutionContext context) {
+      executions++;
+      return new GetTestResult();
+    }
+  }
+
+}
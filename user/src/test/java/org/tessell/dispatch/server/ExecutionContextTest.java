@@ -0,0 +1,96 @@
+package org.tessell.dispatch.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.tessell.dispatch.client.GetTestAction;
+import org.tessell.dispatch.client.GetTestResult;
+import org.tessell.dispatch.server.ExecutionContext.Key;
+import org.tessell.dispatch.server.ExecutionContext.Loader;
+import org.tessell.dispatch.server.handlers.ActionHandler;
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.BatchAction;
+
+public class ExecutionContextTest {
+
+  private static final Key<String> user = new Key<String>("user");
+  private final ExecutionContext context = new ExecutionContext(null, null);
+  private int loads;
+
+  @Test
+  public void memoizesByKey() {
+    assertThat(context.memo(user, loader("bob")), is("bob"));
+    assertThat(context.memo(user, loader("fred")), is("bob"));
+    assertThat(loads, is(1));
+  }
+
+  @Test
+  public void retriesAfterAFailure() {
+    try {
+      context.memo(user, new Loader<String>() {
+        public String load(final ExecutionContext context) {
+          throw new IllegalStateException("failed");
+        }
+      });
+      fail();
+    } catch (final IllegalStateException ise) {
+      assertThat(ise.getMessage(), is("failed"));
+    }
+    assertThat(context.memo(user, loader("bob")), is("bob"));
+  }
+
+  @Test
+  public void validatesTheSessionOnce() {
+    final SessionIdValidator validator = new SessionIdValidator() {
+      public String get(final ExecutionContext context) {
+        loads++;
+        return "session";
+      }
+    };
+    assertThat(context.getValidatedSessionId(), is(nullValue()));
+    assertThat(context.getSessionId(validator), is("session"));
+    assertThat(context.getSessionId(validator), is("session"));
+    assertThat(context.getValidatedSessionId(), is("session"));
+    assertThat(loads, is(1));
+  }
+
+  @Test
+  public void sharesMemosAcrossABatch() {
+    final ParallelActionDispatch dispatch = new ParallelActionDispatch(4, 5000);
+    dispatch.addHandler(new ActionHandler<GetTestAction, GetTestResult>() {
+      public Class<GetTestAction> getActionType() {
+        return GetTestAction.class;
+      }
+
+      public GetTestResult execute(final GetTestAction action, final ExecutionContext context) {
+        context.memo(user, loader("bob"));
+        return new GetTestResult();
+      }
+    });
+    final List<Action<?>> actions = new ArrayList<Action<?>>();
+    for (int i = 0; i < 5; i++) {
+      actions.add(new GetTestAction("a" + i));
+    }
+    dispatch.execute(new BatchAction(actions), context);
+    dispatch.shutdown();
+    assertThat(loads, is(1));
+  }
+
+  private Loader<String> loader(final String value) {
+    return new Loader<String>() {
+      public String load(final ExecutionContext context) {
+        synchronized (ExecutionContextTest.this) {
+          loads++;
+        }
+        return value;
+      }
+    };
+  }
+
+}
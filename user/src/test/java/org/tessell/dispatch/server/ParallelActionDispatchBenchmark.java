@@ -0,0 +1,68 @@
+package org.tessell.dispatch.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tessell.dispatch.client.GetTestResult;
+import org.tessell.dispatch.server.handlers.ActionHandler;
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.BatchAction;
+
+/**
+ * Measures how long batches of handlers with simulated I/O latency take, sequentially vs. in parallel.
+ *
+ * Not a unit test, run it by hand with {@code main}.
+ */
+public class ParallelActionDispatchBenchmark {
+
+  private static final int batches = 20;
+  private static final int batchSize = 10;
+  private static final long latencyMillis = 20;
+
+  public static void main(String[] args) {
+    run("DefaultActionDispatch", new DefaultActionDispatch());
+    for (final int threads : new int[] { 2, 4, 10 }) {
+      final ParallelActionDispatch dispatch = new ParallelActionDispatch(threads, 5000);
+      run("ParallelActionDispatch(" + threads + ")", dispatch);
+      dispatch.shutdown();
+    }
+  }
+
+  private static void run(final String name, final DefaultActionDispatch dispatch) {
+    dispatch.addHandler(new LatencyHandler());
+    final List<Action<?>> actions = new ArrayList<Action<?>>();
+    for (int i = 0; i < batchSize; i++) {
+      actions.add(new LatencyAction());
+    }
+    final BatchAction batch = new BatchAction(actions);
+    final ExecutionContext context = new ExecutionContext(null, null);
+    dispatch.execute(batch, context); // warm up
+    final long start = System.currentTimeMillis();
+    for (int i = 0; i < batches; i++) {
+      dispatch.execute(batch, context);
+    }
+    final long millis = (System.currentTimeMillis() - start) / batches;
+    System.out.println(name + ": " + millis + "ms per batch of " + batchSize + " x " + latencyMillis + "ms actions");
+  }
+
+  static class LatencyAction implements Action<GetTestResult> {
+    private static final long serialVersionUID = 1L;
+  }
+
+  /** Simulates a handler that spends most of its time waiting on the database or a remote service. */
+  static class LatencyHandler implements ActionHandler<LatencyAction, GetTestResult> {
+    public Class<LatencyAction> getActionType() {
+      return LatencyAction.class;
+    }
+
+    public GetTestResult execute(final LatencyAction action, final ExecutionContext context) {
+      try {
+        Thread.sleep(latencyMillis);
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      return new GetTestResult();
+    }
+  }
+
+}
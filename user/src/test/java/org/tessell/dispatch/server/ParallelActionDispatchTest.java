@@ -0,0 +1,193 @@
+package org.tessell.dispatch.server;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.tessell.dispatch.client.GetTestAction;
+import org.tessell.dispatch.client.GetTestResult;
+import org.tessell.dispatch.server.DefaultActionDispatchTest.GetTestHandler;
+import org.tessell.dispatch.server.handlers.ActionHandler;
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.ActionTimeoutException;
+import org.tessell.dispatch.shared.BatchAction;
+import org.tessell.dispatch.shared.BatchResult;
+import org.tessell.dispatch.shared.SequentialAction;
+
+public class ParallelActionDispatchTest {
+
+  private static final GetTestResult slept = new GetTestResult();
+  private final ExecutionContext context = new ExecutionContext(null, null);
+  private final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+  private ParallelActionDispatch dispatch;
+
+  @After
+  public void shutdown() {
+    dispatch.shutdown();
+  }
+
+  @Test
+  public void executesActionsConcurrently() {
+    newDispatch(4, 5000);
+    final long start = System.currentTimeMillis();
+    final BatchResult result = dispatch.execute(batch(sleep("a", 200), sleep("b", 200), sleep("c", 200)), context);
+    assertTrue(System.currentTimeMillis() - start < 550);
+    assertThat(result.getResults().size(), is(3));
+    assertThat(result.getResults().get(2), is((Object) slept));
+    assertThat(maxRunning.get(), is(3));
+  }
+
+  @Test
+  public void limitsConcurrency() {
+    newDispatch(1, 5000);
+    dispatch.execute(batch(sleep("a", 20), sleep("b", 20), sleep("c", 20)), context);
+    assertThat(maxRunning.get(), is(1));
+  }
+
+  @Test
+  public void limitsConcurrencyWithSharedPermits() {
+    final Semaphore permits = new Semaphore(1);
+    dispatch = new ParallelActionDispatch(Executors.newCachedThreadPool(), permits, 5000);
+    dispatch.addHandler(new SleepHandler());
+    dispatch.execute(batch(sleep("a", 20), sleep("b", 20), sleep("c", 20)), context);
+    assertThat(maxRunning.get(), is(1));
+    assertThat(permits.availablePermits(), is(1));
+  }
+
+  @Test
+  public void timeoutsStartOnceTheActionIsRunning() {
+    // each action takes 100ms, so the last one is queued for 200ms, which shouldn't count
+    newDispatch(1, 150);
+    final BatchResult result = dispatch.execute(batch(sleep("a", 100), sleep("b", 100), sleep("c", 100)), context);
+    assertThat(result.getFailures().get(2), is(nullValue()));
+    assertThat(result.getResults().get(2), is((Object) slept));
+  }
+
+  @Test
+  public void keepsEachFailure() {
+    newDispatch(4, 5000);
+    dispatch.addHandler(new GetTestHandler());
+    final BatchResult result = dispatch.execute(batch(
+      new GetTestAction("action"),
+      new GetTestAction("runtime"),
+      new GetTestAction("b")), context);
+    assertThat(result.getFailures().get(0).getMessage(), is("failed"));
+    assertThat(result.getFailures().get(1).getMessage(), is("A server error occured."));
+    assertThat(result.getResults().get(0), is(nullValue()));
+    assertThat(result.getResults().get(2), is((Object) GetTestHandler.result));
+  }
+
+  @Test
+  public void timesOutSlowActions() {
+    newDispatch(4, 100);
+    final BatchResult result = dispatch.execute(batch(sleep("slow", 5000), sleep("fast", 0)), context);
+    assertThat(result.getFailures().get(0), is(instanceOf(ActionTimeoutException.class)));
+    assertThat(result.getResults().get(0), is(nullValue()));
+    assertThat(result.getResults().get(1), is((Object) slept));
+  }
+
+  @Test
+  public void runsSequentialActionsInOrder() {
+    newDispatch(4, 5000);
+    dispatch.execute(batch(sequential("a", 100), sleep("b", 0), sequential("c", 0)), context);
+    assertThat(log.indexOf("a done") < log.indexOf("c start"), is(true));
+  }
+
+  @Test(timeout = 5000)
+  public void runsNestedBatchesInline() {
+    // with one thread, nested actions submitted to the pool would wait on their parent forever
+    dispatch = new ParallelActionDispatch(ParallelActionDispatch.newExecutor(1), 100);
+    dispatch.addHandler(new SleepHandler());
+    final BatchResult result = dispatch.execute(batch(batch(sleep("a", 0), sleep("b", 0)), sleep("c", 0)), context);
+    final BatchResult nested = (BatchResult) result.getResults().get(0);
+    assertThat(nested.getResults().get(1), is((Object) slept));
+    assertThat(result.getResults().get(1), is((Object) slept));
+    assertThat(log.toString(), is("[a start, a done, b start, b done, c start, c done]"));
+  }
+
+  private void newDispatch(final int maxConcurrency, final long timeoutMillis) {
+    dispatch = new ParallelActionDispatch(maxConcurrency, timeoutMillis);
+    dispatch.addHandler(new SleepHandler());
+    dispatch.addHandler(new SequentialHandler());
+  }
+
+  private static SleepAction sleep(final String name, final long millis) {
+    return new SleepAction(name, millis);
+  }
+
+  private static SequentialSleepAction sequential(final String name, final long millis) {
+    return new SequentialSleepAction(name, millis);
+  }
+
+  private static BatchAction batch(final Action<?>... actions) {
+    final List<Action<?>> list = new ArrayList<Action<?>>();
+    for (final Action<?> action : actions) {
+      list.add(action);
+    }
+    return new BatchAction(list);
+  }
+
+  static class SleepAction implements Action<GetTestResult> {
+    private static final long serialVersionUID = 1L;
+    final String name;
+    final long millis;
+
+    SleepAction(final String name, final long millis) {
+      this.name = name;
+      this.millis = millis;
+    }
+  }
+
+  static class SequentialSleepAction extends SleepAction implements SequentialAction {
+    private static final long serialVersionUID = 1L;
+
+    SequentialSleepAction(final String name, final long millis) {
+      super(name, millis);
+    }
+  }
+
+  private class SleepHandler implements ActionHandler<SleepAction, GetTestResult> {
+    public Class<SleepAction> getActionType() {
+      return SleepAction.class;
+    }
+
+    public GetTestResult execute(final SleepAction action, final ExecutionContext context) {
+      log.add(action.name + " start");
+      final int now = running.incrementAndGet();
+      synchronized (maxRunning) {
+        maxRunning.set(Math.max(maxRunning.get(), now));
+      }
+      try {
+        Thread.sleep(action.millis);
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      } finally {
+        running.decrementAndGet();
+      }
+      log.add(action.name + " done");
+      return slept;
+    }
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private class SequentialHandler extends SleepHandler {
+    @Override
+    public Class getActionType() {
+      return SequentialSleepAction.class;
+    }
+  }
+
+}
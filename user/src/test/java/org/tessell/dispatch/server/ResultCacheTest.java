@@ -0,0 +1,141 @@
+package org.tessell.dispatch.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.tessell.dispatch.client.GetTestResult;
+import org.tessell.dispatch.shared.Result;
+
+public class ResultCacheTest {
+
+  private final TestCache cache = new TestCache(2);
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  public void loadsOnce() {
+    final Result first = cache.get("a", 100, loader());
+    assertThat(cache.get("a", 100, loader()), is(first));
+    assertThat(loads.get(), is(1));
+    assertThat(cache.getHits(), is(1));
+    assertThat(cache.getMisses(), is(1));
+  }
+
+  @Test
+  public void expiresAfterTtl() {
+    cache.get("a", 100, loader());
+    cache.time = 99;
+    cache.get("a", 100, loader());
+    assertThat(loads.get(), is(1));
+    cache.time = 100;
+    cache.get("a", 100, loader());
+    assertThat(loads.get(), is(2));
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsed() {
+    cache.get("a", 100, loader());
+    cache.get("b", 100, loader());
+    cache.get("a", 100, loader());
+    cache.get("c", 100, loader());
+    assertThat(cache.size(), is(2));
+    assertThat(cache.getEvictions(), is(1));
+    cache.get("a", 100, loader());
+    assertThat(loads.get(), is(3));
+    cache.get("b", 100, loader());
+    assertThat(loads.get(), is(4));
+  }
+
+  @Test
+  public void doesNotCacheFailures() {
+    try {
+      cache.get("a", 100, new Callable<Result>() {
+        public Result call() {
+          throw new IllegalStateException("failed");
+        }
+      });
+      fail();
+    } catch (final IllegalStateException ise) {
+      assertThat(ise.getMessage(), is("failed"));
+    }
+    assertThat(cache.size(), is(0));
+    cache.get("a", 100, loader());
+    assertThat(loads.get(), is(1));
+  }
+
+  @Test
+  public void invalidatesMatchingKeys() {
+    cache.get("a", 100, loader());
+    cache.get("b", 100, loader());
+    cache.invalidate(new ResultCache.KeyMatcher() {
+      public boolean matches(final Object key) {
+        return key.equals("a");
+      }
+    });
+    assertThat(cache.size(), is(1));
+  }
+
+  @Test
+  public void loadsAColdKeyOnceUnderLoad() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<Result> slow = new Callable<Result>() {
+      public Result call() throws Exception {
+        loads.incrementAndGet();
+        started.countDown();
+        release.await();
+        return new GetTestResult();
+      }
+    };
+    final Result[] results = new Result[8];
+    final Thread[] threads = new Thread[results.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int j = i;
+      threads[i] = new Thread() {
+        public void run() {
+          results[j] = cache.get("a", 1000, slow);
+        }
+      };
+      threads[i].start();
+    }
+    started.await();
+    // give the other threads a chance to pile up on the loading entry
+    Thread.sleep(50);
+    release.countDown();
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(loads.get(), is(1));
+    for (final Result result : results) {
+      assertThat(result, is(results[0]));
+    }
+  }
+
+  private Callable<Result> loader() {
+    return new Callable<Result>() {
+      public Result call() {
+        loads.incrementAndGet();
+        return new GetTestResult();
+      }
+    };
+  }
+
+  private static class TestCache extends ResultCache {
+    private long time;
+
+    private TestCache(final int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected long now() {
+      return time;
+    }
+  }
+
+}
@@ -0,0 +1,126 @@
+package org.tessell.dispatch.server.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tessell.dispatch.client.GetTestAction;
+import org.tessell.dispatch.client.GetTestResult;
+import org.tessell.dispatch.server.DefaultActionDispatch;
+import org.tessell.dispatch.server.ExecutionContext;
+import org.tessell.dispatch.server.handlers.ActionHandler;
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.ActionException;
+import org.tessell.dispatch.shared.BatchAction;
+
+public class ActionMetricsTest {
+
+  private final ActionMetrics metrics = new ActionMetrics();
+  private final DefaultActionDispatch dispatch = new DefaultActionDispatch();
+  private final ExecutionContext context = new ExecutionContext(null, null);
+
+  @Before
+  public void before() {
+    dispatch.setMetrics(metrics);
+    dispatch.addHandler(new ActionHandler<GetTestAction, GetTestResult>() {
+      public Class<GetTestAction> getActionType() {
+        return GetTestAction.class;
+      }
+
+      public GetTestResult execute(final GetTestAction action, final ExecutionContext context) {
+        // we're counted as in-flight while executing
+        assertThat(metrics.getStats(GetTestAction.class).getInFlight(), is(1));
+        if ("fail".equals(action.getName())) {
+          throw new ActionException("failed");
+        }
+        return new GetTestResult();
+      }
+    });
+  }
+
+  @Test
+  public void recordsCountsAndErrors() {
+    dispatch.execute(new GetTestAction("a"), context);
+    try {
+      dispatch.execute(new GetTestAction("fail"), context);
+      fail();
+    } catch (final ActionException ae) {
+      // expected
+    }
+    final ActionStats stats = metrics.getStats(GetTestAction.class);
+    assertThat(stats.getCount(), is(2L));
+    assertThat(stats.getErrors(), is(1L));
+    assertThat(stats.getErrorRate(), is(0.5));
+    assertThat(stats.getInFlight(), is(0));
+  }
+
+  @Test
+  public void recordsEachBatchedAction() {
+    final List<Action<?>> actions = new ArrayList<Action<?>>();
+    actions.add(new GetTestAction("a"));
+    actions.add(new GetTestAction("fail"));
+    dispatch.execute(new BatchAction(actions), context);
+    assertThat(metrics.getStats(GetTestAction.class).getCount(), is(2L));
+    assertThat(metrics.getStats(GetTestAction.class).getErrors(), is(1L));
+    assertThat(metrics.getStats(BatchAction.class).getCount(), is(1L));
+    assertThat(metrics.getTotalCount(), is(3L));
+  }
+
+  @Test
+  public void recordsPayloadSizes() {
+    metrics.recordRequestSize(GetTestAction.class, 100);
+    metrics.recordRequestSize(GetTestAction.class, 200);
+    metrics.recordResponseSize(GetTestAction.class, 1000);
+    assertThat(metrics.getStats(GetTestAction.class).getMeanRequestBytes(), is(150L));
+    assertThat(metrics.getStats(GetTestAction.class).getMeanResponseBytes(), is(1000L));
+  }
+
+  @Test
+  public void reportsAsTextAndJson() {
+    dispatch.execute(new GetTestAction("a"), context);
+    assertThat(metrics.getText().startsWith("org.tessell.dispatch.client.GetTestAction count=1 errors=0 inFlight=0"), is(true));
+    assertThat(metrics.getJson().startsWith("{\"org.tessell.dispatch.client.GetTestAction\":{\"count\":1,\"errors\":0,\"inFlight\":0,"), is(true));
+  }
+
+  @Test
+  public void resets() {
+    dispatch.execute(new GetTestAction("a"), context);
+    metrics.reset();
+    assertThat(metrics.getStats(GetTestAction.class).getCount(), is(0L));
+    assertThat(metrics.getTotalCount(), is(0L));
+    assertThat(metrics.getTotalErrors(), is(0L));
+  }
+
+  @Test
+  public void resetKeepsInFlightCalls() {
+    final long start = metrics.begin(GetTestAction.class);
+    metrics.reset();
+    assertThat(metrics.getInFlight(), is(1));
+    metrics.end(GetTestAction.class, start, false);
+    assertThat(metrics.getInFlight(), is(0));
+    assertThat(metrics.getStats(GetTestAction.class).getCount(), is(1L));
+  }
+
+  @Test
+  public void registersWithJmx() throws Exception {
+    dispatch.execute(new GetTestAction("a"), context);
+    metrics.register("org.tessell.test:type=ActionMetrics");
+    try {
+      final Object count = ManagementFactory.getPlatformMBeanServer().getAttribute(
+        new ObjectName("org.tessell.test:type=ActionMetrics"),
+        "TotalCount");
+      assertThat(count, is((Object) 1L));
+    } finally {
+      metrics.unregister();
+    }
+  }
+
+}
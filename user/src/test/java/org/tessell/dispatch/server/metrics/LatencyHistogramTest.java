@@ -0,0 +1,73 @@
+package org.tessell.dispatch.server.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  private final LatencyHistogram h = new LatencyHistogram();
+
+  @Test
+  public void bucketsSmallValuesExactly() {
+    for (int i = 0; i < 16; i++) {
+      assertThat(LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(i)), is((long) i));
+    }
+  }
+
+  @Test
+  public void bucketsLargeValuesWithin12Percent() {
+    for (long v = 16; v < 1L << 39; v = v * 3 / 2 + 1) {
+      final long upper = LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(v));
+      assertTrue(v + " -> " + upper, upper >= v && upper <= v * 1.125 + 1);
+    }
+  }
+
+  @Test
+  public void calculatesPercentiles() {
+    for (int i = 1; i <= 100; i++) {
+      h.record(i * 1000);
+    }
+    assertThat(h.getCount(), is(100L));
+    assertThat(h.getMaxMicros(), is(100000L));
+    assertThat(h.getMeanMicros(), is(50500.0));
+    assertWithin(h.getPercentileMicros(50), 50000);
+    assertWithin(h.getPercentileMicros(99), 99000);
+    assertThat(h.getPercentileMicros(100), is(100000L));
+  }
+
+  @Test
+  public void isEmptyAfterReset() {
+    h.record(10);
+    h.reset();
+    assertThat(h.getCount(), is(0L));
+    assertThat(h.getPercentileMicros(50), is(0L));
+  }
+
+  @Test
+  public void recordsFromManyThreads() throws Exception {
+    final Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        public void run() {
+          for (int j = 0; j < 10000; j++) {
+            h.record(j);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(h.getCount(), is(40000L));
+    assertThat(h.getMaxMicros(), is(9999L));
+  }
+
+  private static void assertWithin(final long actual, final long expected) {
+    assertTrue(actual + " vs " + expected, actual >= expected && actual <= expected * 1.125);
+  }
+
+}
@@ -0,0 +1,284 @@
+package org.tessell.dispatch.server.servlet;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.tessell.dispatch.client.GetTestAction;
+import org.tessell.dispatch.client.GetTestResult;
+import org.tessell.dispatch.server.ActionDispatch;
+import org.tessell.dispatch.server.ExecutionContext;
+import org.tessell.dispatch.server.SessionIdValidator;
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.ActionException;
+import org.tessell.dispatch.shared.ActionOverloadedException;
+import org.tessell.dispatch.shared.BatchAction;
+import org.tessell.dispatch.shared.Result;
+
+public class AbstractDispatchServiceServletTest {
+
+  private final BlockingDispatch dispatch = new BlockingDispatch();
+  private final List<Thread> threads = new ArrayList<Thread>();
+  private final List<Throwable> failures = new ArrayList<Throwable>();
+  /** The session the current thread has "logged in" as, for {@link TestServlet}'s validator. */
+  private final ThreadLocal<String> currentSession = new ThreadLocal<String>();
+
+  @After
+  public void releaseAll() throws Exception {
+    dispatch.release.countDown();
+    for (final Thread thread : threads) {
+      thread.join(5000);
+    }
+  }
+
+  @Test
+  public void executesWithoutLimits() {
+    final TestServlet servlet = new TestServlet(null);
+    dispatch.release.countDown();
+    assertThat(execute(servlet, "s1", new GetTestAction("a")), is(instanceOf(GetTestResult.class)));
+  }
+
+  @Test
+  public void limitsPerSession() throws Exception {
+    final TestServlet servlet = new TestServlet(new AdmissionControl(10).maxPerSession(2));
+    start(servlet, "s1", 2);
+    dispatch.awaitRunning(2);
+    assertRejected(servlet, "s1", new GetTestAction("a"));
+    // another session is fine
+    start(servlet, "s2", 1);
+    dispatch.awaitRunning(3);
+    assertThat(servlet.admission.getRejected(), is(1L));
+  }
+
+  @Test
+  public void limitsPerActionType() throws Exception {
+    final TestServlet servlet = new TestServlet(new AdmissionControl(10).maxPerActionType(2));
+    start(servlet, "s1", 1);
+    start(servlet, "s2", 1);
+    dispatch.awaitRunning(2);
+    assertRejected(servlet, "s3", new GetTestAction("a"));
+  }
+
+  @Test
+  public void rejectsOnceTheQueueIsFull() throws Exception {
+    final TestServlet servlet = new TestServlet(new AdmissionControl(2).maxQueued(1, 5000));
+    start(servlet, "s1", 2);
+    dispatch.awaitRunning(2);
+    start(servlet, "s2", 1);
+    awaitQueued(servlet.admission, 1);
+    assertRejected(servlet, "s3", new GetTestAction("a"));
+    // once released, the queued one runs too
+    dispatch.release.countDown();
+    dispatch.awaitRunning(3);
+    joinAll();
+    assertThat(failures.size(), is(0));
+    assertThat(servlet.admission.getInFlight(), is(0));
+  }
+
+  @Test
+  public void rejectsAfterWaitingTooLong() throws Exception {
+    final TestServlet servlet = new TestServlet(new AdmissionControl(1).maxQueued(1, 50));
+    start(servlet, "s1", 1);
+    dispatch.awaitRunning(1);
+    assertRejected(servlet, "s2", new GetTestAction("a"));
+  }
+
+  @Test
+  public void releasesPermitsOnFailure() throws Exception {
+    final TestServlet servlet = new TestServlet(new AdmissionControl(1).maxPerSession(1));
+    dispatch.release.countDown();
+    dispatch.fail = true;
+    for (int i = 0; i < 3; i++) {
+      try {
+        execute(servlet, "s1", new GetTestAction("a"));
+      } catch (final ActionException ae) {
+        assertThat(ae.getMessage(), is("failed"));
+      }
+    }
+    assertThat(servlet.admission.getInFlight(), is(0));
+    assertThat(servlet.admission.getRejected(), is(0L));
+  }
+
+  @Test
+  public void staysWithinTheCapUnderLoad() throws Exception {
+    final TestServlet servlet = new TestServlet(new AdmissionControl(4).maxQueued(100, 5000));
+    dispatch.release.countDown();
+    dispatch.sleepMillis = 2;
+    for (int i = 0; i < 8; i++) {
+      start(servlet, "s" + i, 5);
+    }
+    joinAll();
+    assertThat(failures.size(), is(0));
+    assertThat(dispatch.executed.get(), is(40));
+    assertTrue("max was " + dispatch.maxRunning.get(), dispatch.maxRunning.get() <= 4);
+  }
+
+  @Test
+  public void ignoresUnvalidatedSessionIds() throws Exception {
+    final TestServlet servlet = new TestServlet(new AdmissionControl(10).maxPerSession(1));
+    servlet.validator = null;
+    start(servlet, "s1", 1);
+    dispatch.awaitRunning(1);
+    // without a validator or HttpSession, the client's claimed id isn't used as a key
+    start(servlet, "s1", 1);
+    dispatch.awaitRunning(2);
+    assertThat(servlet.admission.getRejected(), is(0L));
+  }
+
+  @Test
+  public void admitsEachOfABatchsActionTypes() throws Exception {
+    final TestServlet servlet = new TestServlet(new AdmissionControl(10).maxPerActionType(2));
+    assertRejected(servlet, "s1", batchOf(3));
+    // a running batch of 2 uses up the type's slots
+    start(servlet, "s1", 1, batchOf(2));
+    dispatch.awaitRunning(1);
+    assertRejected(servlet, "s2", new GetTestAction("a"));
+    dispatch.release.countDown();
+    joinAll();
+    assertThat(servlet.admission.getInFlight(), is(0));
+  }
+
+  private static BatchAction batchOf(final int size) {
+    final List<Action<?>> actions = new ArrayList<Action<?>>();
+    for (int i = 0; i < size; i++) {
+      actions.add(new GetTestAction("a" + i));
+    }
+    return new BatchAction(actions);
+  }
+
+  private Result execute(final TestServlet servlet, final String sessionId, final Action<?> action) {
+    currentSession.set(sessionId);
+    try {
+      return servlet.execute(sessionId, action);
+    } finally {
+      currentSession.remove();
+    }
+  }
+
+  private void assertRejected(final TestServlet servlet, final String sessionId, final Action<?> action) {
+    try {
+      execute(servlet, sessionId, action);
+      throw new AssertionError("Expected rejection");
+    } catch (final ActionOverloadedException aoe) {
+      assertThat(aoe.getRetryAfterMillis(), is(1000));
+    }
+  }
+
+  /** Starts {@code count} threads executing an action for {@code sessionId}. */
+  private void start(final TestServlet servlet, final String sessionId, final int count) {
+    start(servlet, sessionId, count, new GetTestAction("a"));
+  }
+
+  /** Starts {@code count} threads executing {@code action} for {@code sessionId}. */
+  private void start(final TestServlet servlet, final String sessionId, final int count, final Action<?> action) {
+    for (int i = 0; i < count; i++) {
+      final Thread thread = new Thread() {
+        public void run() {
+          try {
+            execute(servlet, sessionId, action);
+          } catch (final Throwable t) {
+            synchronized (failures) {
+              failures.add(t);
+            }
+          }
+        }
+      };
+      threads.add(thread);
+      thread.start();
+    }
+  }
+
+  private void joinAll() throws Exception {
+    for (final Thread thread : threads) {
+      thread.join(5000);
+    }
+  }
+
+  private static void awaitQueued(final AdmissionControl admission, final int queued) throws Exception {
+    for (int i = 0; i < 500 && admission.getQueued() < queued; i++) {
+      Thread.sleep(10);
+    }
+    assertThat(admission.getQueued(), is(queued));
+  }
+
+  private class TestServlet extends AbstractDispatchServiceServlet {
+    private static final long serialVersionUID = 1L;
+    private final AdmissionControl admission;
+    private SessionIdValidator validator = new SessionIdValidator() {
+      public String get(final ExecutionContext context) {
+        return currentSession.get();
+      }
+    };
+
+    private TestServlet(final AdmissionControl admission) {
+      this.admission = admission;
+    }
+
+    @Override
+    protected AdmissionControl getAdmissionControl() {
+      return admission;
+    }
+
+    @Override
+    protected SessionIdValidator getSessionValidator() {
+      return validator;
+    }
+
+    @Override
+    protected ActionDispatch getActionDispatch() {
+      return dispatch;
+    }
+  }
+
+  /** Blocks each execute until {@code release} is counted down. */
+  private static class BlockingDispatch implements ActionDispatch {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger executed = new AtomicInteger();
+    private volatile boolean fail;
+    private volatile long sleepMillis;
+
+    @SuppressWarnings("unchecked")
+    public <A extends Action<R>, R extends Result> R execute(final A action, final ExecutionContext context) {
+      final int now = running.incrementAndGet();
+      synchronized (maxRunning) {
+        maxRunning.set(Math.max(maxRunning.get(), now));
+      }
+      started.incrementAndGet();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+        if (sleepMillis > 0) {
+          Thread.sleep(sleepMillis);
+        }
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      } finally {
+        running.decrementAndGet();
+      }
+      if (fail) {
+        throw new ActionException("failed");
+      }
+      executed.incrementAndGet();
+      return (R) new GetTestResult();
+    }
+
+    private void awaitRunning(final int count) throws Exception {
+      for (int i = 0; i < 500 && started.get() < count; i++) {
+        Thread.sleep(10);
+      }
+      assertThat(started.get(), is(count));
+    }
+  }
+
+}
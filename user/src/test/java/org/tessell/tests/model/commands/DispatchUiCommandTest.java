@@ -11,6 +11,7 @@ import org.tessell.dispatch.client.util.StubOutstandingDispatchAsync;
 import org.tessell.dispatch.shared.Action;
 import org.tessell.dispatch.shared.Result;
 import org.tessell.model.commands.DispatchUiCommand;
+import org.tessell.model.commands.DispatchUiCommand.ExecutionPolicy;
 import org.tessell.tests.model.validation.rules.AbstractRuleTest;
 
 public class DispatchUiCommandTest extends AbstractRuleTest {
@@ -69,6 +70,68 @@ public class DispatchUiCommandTest extends AbstractRuleTest {
     assertThat(command.wasStale, is(false));
   }
 
+  @Test
+  public void latestWinsCancelsTheOutstandingAction() {
+    DummyUiCommand command = new DummyUiCommand(async);
+    command.setExecutionPolicy(ExecutionPolicy.LATEST_WINS);
+    command.execute();
+    command.execute();
+    // the first request was aborted
+    assertThat(async.getCalls().get(0).cancelled, is(true));
+    assertThat(async.getOutstandingCount(), is(1));
+    assertThat(command.active().get(), is(true));
+
+    async.getCalls().get(1).onSuccess(null);
+    assertThat(command.onResultCalls, is(1));
+    assertThat(command.wasStale, is(false));
+    assertThat(command.active().get(), is(false));
+  }
+
+  @Test
+  public void latestWinsIgnoresResultsThatWereNotAborted() {
+    DummyUiCommand command = new DummyUiCommand(async);
+    command.setExecutionPolicy(ExecutionPolicy.LATEST_WINS);
+    command.execute();
+    command.execute();
+    // e.g. the response was already on its way
+    async.getCalls().get(0).onSuccessOutOfOrder(null);
+    assertThat(command.onResultCalls, is(0));
+    assertThat(command.active().get(), is(true));
+  }
+
+  @Test
+  public void dropWhileActiveIgnoresExecutions() {
+    DummyUiCommand command = new DummyUiCommand(async);
+    command.setExecutionPolicy(ExecutionPolicy.DROP_WHILE_ACTIVE);
+    command.execute();
+    command.execute();
+    assertThat(command.createActionCalls, is(1));
+    assertThat(async.getCalls().size(), is(1));
+
+    async.getCalls().get(0).onSuccess(null);
+    assertThat(command.active().get(), is(false));
+    command.execute();
+    assertThat(async.getCalls().size(), is(2));
+  }
+
+  @Test
+  public void queueSendsEachActionAfterThePreviousOne() {
+    DummyUiCommand command = new DummyUiCommand(async);
+    command.setExecutionPolicy(ExecutionPolicy.QUEUE);
+    command.execute();
+    command.execute();
+    assertThat(command.createActionCalls, is(2));
+    assertThat(async.getCalls().size(), is(1));
+
+    async.getCalls().get(0).onFailure(null);
+    assertThat(async.getCalls().size(), is(2));
+    assertThat(command.active().get(), is(true));
+
+    async.getCalls().get(1).onSuccess(null);
+    assertThat(command.onResultCalls, is(1));
+    assertThat(command.active().get(), is(false));
+  }
+
   /** Fails depending on the instance variable {@code fail}. */
   private final class DummyUiCommand extends DispatchUiCommand<Action<Result>, Result> {
     private int createActionCalls = 0;
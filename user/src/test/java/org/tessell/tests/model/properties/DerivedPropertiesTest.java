@@ -4,21 +4,34 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.tessell.model.properties.NewProperty.booleanProperty;
 import static org.tessell.model.properties.NewProperty.integerProperty;
+import static org.tessell.model.properties.NewProperty.listProperty;
 import static org.tessell.model.properties.NewProperty.stringProperty;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.tessell.model.dsl.Binder;
 import org.tessell.model.events.PropertyChangedEvent;
 import org.tessell.model.events.PropertyChangedHandler;
+import org.tessell.model.events.ValueAddedEvent;
+import org.tessell.model.events.ValueAddedHandler;
+import org.tessell.model.properties.BooleanProperty;
 import org.tessell.model.properties.IntegerProperty;
+import org.tessell.model.properties.ListProperty;
+import org.tessell.model.properties.Propagation;
 import org.tessell.model.properties.Property;
 import org.tessell.model.properties.StringProperty;
 import org.tessell.model.validation.rules.Range;
 import org.tessell.model.values.DerivedValue;
+import org.tessell.model.values.SetValue;
 import org.tessell.tests.model.validation.rules.AbstractRuleTest;
 import org.tessell.widgets.StubHasValue;
 
+import com.google.gwt.event.shared.HandlerRegistration;
+
 public class DerivedPropertiesTest extends AbstractRuleTest {
 
   public static class Foo {
@@ -139,6 +152,155 @@ public class DerivedPropertiesTest extends AbstractRuleTest {
     assertThat(count.count, is(2));
   }
 
+  @Test
+  public void implicitDependsAreRemovedWhenNoLongerRead() {
+    final BooleanProperty useA = booleanProperty("useA", true);
+    final IntegerProperty a = integerProperty("a", 1);
+    final IntegerProperty b = integerProperty("b", 2);
+    final IntegerProperty c = integerProperty(new DerivedValue<Integer>("c") {
+      public Integer get() {
+        return useA.get() ? a.get() : b.get();
+      }
+    });
+    final CountChanged<Integer> count = new CountChanged<Integer>();
+    c.addPropertyChangedHandler(count);
+
+    useA.set(false);
+    assertThat(c.get(), is(2));
+    assertThat(count.count, is(1));
+
+    a.touch();
+    Propagation.resetCounts();
+    a.set(10);
+    // only a itself was recomputed
+    assertThat(Propagation.getRecomputeCount(), is(1));
+
+    b.set(3);
+    assertThat(count.count, is(2));
+  }
+
+  @Test
+  public void implicitDependsAreOnlyAddedOnce() {
+    final CountingProperty a = new CountingProperty(1);
+    final IntegerProperty b = integerProperty(new DerivedValue<Integer>("b") {
+      public Integer get() {
+        return a.get() + 1;
+      }
+    });
+    // reads a, then b (which reads a in its own frame), then a again
+    final IntegerProperty c = integerProperty(new DerivedValue<Integer>("c") {
+      public Integer get() {
+        return a.get() + b.get() + a.get();
+      }
+    });
+    assertThat(a.added, is(2));
+
+    a.set(2);
+    a.set(3);
+    assertThat(c.get(), is(10));
+    assertThat(a.added, is(2));
+  }
+
+  @Test
+  public void implicitDependsSurviveAFailedGet() {
+    final IntegerProperty a = integerProperty("a", 1);
+    final IntegerProperty b = integerProperty(new DerivedValue<Integer>("b") {
+      public Integer get() {
+        if (a.get() == 2) {
+          throw new IllegalStateException();
+        }
+        return a.get() + 1;
+      }
+    });
+    try {
+      a.set(2);
+    } catch (IllegalStateException ise) {
+      // expected
+    }
+    a.set(3);
+    assertThat(b.get(), is(4));
+  }
+
+  @Test
+  public void lazyDerivedOnlyComputesWhenRead() {
+    final IntegerProperty a = integerProperty("a", 1);
+    final int[] computed = { 0 };
+    final IntegerProperty b = integerProperty(new DerivedValue<Integer>("b") {
+      public Integer get() {
+        computed[0]++;
+        return a.get() + 1;
+      }
+    }).lazy();
+    computed[0] = 0;
+
+    a.set(2);
+    a.set(3);
+    assertThat(computed[0], is(0));
+    assertThat(b.get(), is(4));
+    assertThat(computed[0], is(1));
+  }
+
+  @Test
+  public void lazyDerivedRecomputesOnceObserved() {
+    final IntegerProperty a = integerProperty("a", 1);
+    final IntegerProperty b = integerProperty(new DerivedValue<Integer>("b") {
+      public Integer get() {
+        return a.get() + 1;
+      }
+    }).lazy();
+    a.set(2);
+
+    final List<String> fired = new ArrayList<String>();
+    final HandlerRegistration r = b.addPropertyChangedHandler(new PropertyChangedHandler<Integer>() {
+      public void onPropertyChanged(PropertyChangedEvent<Integer> event) {
+        fired.add(event.getOldValue() + "->" + event.getNewValue());
+      }
+    });
+    // we caught up without firing 2->3
+    assertThat(fired.size(), is(0));
+    a.set(3);
+    assertThat(fired.toString(), is("[3->4]"));
+
+    // and once unobserved, go back to being lazy
+    r.removeHandler();
+    a.touch();
+    Propagation.resetCounts();
+    a.set(4);
+    assertThat(Propagation.getRecomputeCount(), is(1));
+  }
+
+  @Test
+  public void lazyDerivedIsObservedByAnyHandler() {
+    final IntegerProperty a = integerProperty("a", 1);
+    final ListProperty<Integer> b = listProperty(new DerivedValue<List<Integer>>("b") {
+      public List<Integer> get() {
+        return Collections.singletonList(a.get());
+      }
+    }).lazy();
+    final List<Integer> added = new ArrayList<Integer>();
+    b.addValueAddedHandler(new ValueAddedHandler<Integer>() {
+      public void onValueAdded(ValueAddedEvent<Integer> event) {
+        added.add(event.getValue());
+      }
+    });
+    a.set(2);
+    assertThat(added.toString(), is("[2]"));
+  }
+
+  private static class CountingProperty extends IntegerProperty {
+    private int added;
+
+    private CountingProperty(final Integer value) {
+      super(new SetValue<Integer>("a", value));
+    }
+
+    @Override
+    public <P1 extends Property<?>> P1 addDerived(final P1 other) {
+      added++;
+      return super.addDerived(other);
+    }
+  }
+
   private class CountChanged<P> implements PropertyChangedHandler<P> {
     private int count;
 
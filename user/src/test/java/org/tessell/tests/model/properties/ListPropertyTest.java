@@ -13,6 +13,8 @@ import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.tessell.model.events.ListChangedEvent;
+import org.tessell.model.events.ListChangedHandler;
 import org.tessell.model.events.PropertyChangedEvent;
 import org.tessell.model.events.PropertyChangedHandler;
 import org.tessell.model.events.ValueAddedEvent;
@@ -22,6 +24,7 @@ import org.tessell.model.events.ValueRemovedHandler;
 import org.tessell.model.properties.IntegerProperty;
 import org.tessell.model.properties.ListProperty;
 import org.tessell.model.properties.ListProperty.ElementConverter;
+import org.tessell.model.properties.Properties;
 import org.tessell.model.values.SetValue;
 
 public class ListPropertyTest {
@@ -279,6 +282,212 @@ public class ListPropertyTest {
     assertThat(l.get(), is(nullValue()));
   }
 
+  @Test
+  public void eventsHaveIndexes() {
+    p.add("foo");
+    p.add("bar");
+    assertThat(adds.lastIndex, is(1));
+    p.remove("foo");
+    assertThat(removes.lastIndex, is(0));
+  }
+
+  @Test
+  public void journaledFiresFromTheJournal() {
+    final List<String> log = logChanges(p.journaled());
+    p.add("a");
+    p.addAll(list("b", "c"));
+    p.remove("b");
+    p.clear();
+    assertThat(log.toString(), is("[+a@0, +b@1, +c@2, -b@1, -c@1, -a@0]"));
+    assertThat(changes.count, is(4));
+  }
+
+  @Test
+  public void journaledDoesNotCopyTheList() {
+    p.journaled();
+    final List<List<String>> values = new ArrayList<List<String>>();
+    p.addPropertyChangedHandler(new PropertyChangedHandler<List<String>>() {
+      public void onPropertyChanged(PropertyChangedEvent<List<String>> event) {
+        values.add(event.getOldValue());
+        values.add(event.getNewValue());
+      }
+    });
+    p.add("a");
+    assertThat(values.get(0) == values.get(1), is(true));
+  }
+
+  @Test
+  public void journaledSetIsDiffed() {
+    final List<String> log = logChanges(p.journaled());
+    p.add("a");
+    p.add("b");
+    final ArrayList<String> l = new ArrayList<String>(list("b", "c"));
+    p.set(l);
+    assertThat(log.toString(), is("[+a@0, +b@1, -a@0, +c@1]"));
+    // the new list was copied
+    l.add("d");
+    assertThat(p.get(), contains("b", "c"));
+    assertThat(changes.count, is(3));
+  }
+
+  @Test
+  public void journaledBatchFiresOneChange() {
+    final List<String> log = logChanges(p.journaled());
+    Properties.batch(new Runnable() {
+      public void run() {
+        p.add("a");
+        p.add("b");
+      }
+    });
+    assertThat(log.toString(), is("[+a@0, +b@1]"));
+    assertThat(changes.count, is(1));
+  }
+
+  @Test
+  public void journaledSizeIsUpdated() {
+    final IntegerProperty size = p.journaled().size();
+    p.add("a");
+    p.add("b");
+    assertThat(size.get(), is(2));
+    p.remove("a");
+    assertThat(size.get(), is(1));
+  }
+
+  @Test
+  public void setFiresAddsThenRemoves() {
+    p.set(new ArrayList<String>(list("a", "b", "c")));
+    final List<String> log = logChanges(p);
+    p.set(new ArrayList<String>(list("a", "d", "c", "e")));
+    // adds are at their new index, removes at their old index
+    assertThat(log.toString(), is("[+d@1, +e@3, -b@1]"));
+  }
+
+  @Test
+  public void journaledSetEventsReplayOntoTheOldList() {
+    p.journaled();
+    p.set(new ArrayList<String>(list("a", "b", "c", "d")));
+    final List<String> replayed = new ArrayList<String>(p.get());
+    p.addValueAddedHandler(new ValueAddedHandler<String>() {
+      public void onValueAdded(ValueAddedEvent<String> event) {
+        replayed.add(event.getIndex(), event.getValue());
+      }
+    });
+    p.addValueRemovedHandler(new ValueRemovedHandler<String>() {
+      public void onValueRemoved(ValueRemovedEvent<String> event) {
+        replayed.remove(event.getIndex());
+      }
+    });
+    p.set(new ArrayList<String>(list("a", "e", "c", "f", "g")));
+    assertThat(replayed, is(p.get()));
+  }
+
+  @Test
+  public void twoArgEventsHaveNoIndex() {
+    assertThat(new ValueAddedEvent<String>(p, "a").getIndex(), is(-1));
+    assertThat(new ValueRemovedEvent<String>(p, "a").getIndex(), is(-1));
+  }
+
+  @Test
+  public void coalescedFiresOneEventPerChange() {
+    final CountingListChanges<String> listChanges = new CountingListChanges<String>();
+    p.coalesced().addListChangedHandler(listChanges);
+    p.addAll(list("a", "b", "c"));
+    assertThat(listChanges.count, is(1));
+    assertThat(listChanges.last.getAdded(), contains("a", "b", "c"));
+
+    p.clear();
+    assertThat(listChanges.count, is(2));
+    assertThat(listChanges.last.getRemoved(), contains("c", "b", "a"));
+
+    p.setValue(new ArrayList<String>(list("d", "e")));
+    assertThat(listChanges.count, is(3));
+    assertThat(listChanges.last.getAdded(), contains("d", "e"));
+
+    assertThat(adds.count, is(0));
+    assertThat(removes.count, is(0));
+    assertThat(changes.count, is(3));
+  }
+
+  @Test
+  public void coalescedFiresLoneChangesAsIs() {
+    final CountingListChanges<String> listChanges = new CountingListChanges<String>();
+    p.coalesced().addListChangedHandler(listChanges);
+    p.add("a");
+    p.remove("a");
+    assertThat(adds.count, is(1));
+    assertThat(removes.count, is(1));
+    assertThat(listChanges.count, is(0));
+  }
+
+  @Test
+  public void coalescedCancelsOutAddsAndRemoves() {
+    final CountingListChanges<String> listChanges = new CountingListChanges<String>();
+    p.set(new ArrayList<String>(list("a", "b")));
+    p.coalesced().addListChangedHandler(listChanges);
+    Properties.batch(new Runnable() {
+      public void run() {
+        p.clear();
+        p.addAll(list("a", "c"));
+      }
+    });
+    assertThat(listChanges.count, is(1));
+    assertThat(listChanges.last.getAdded(), contains("c"));
+    assertThat(listChanges.last.getRemoved(), contains("b"));
+  }
+
+  @Test
+  public void coalescedCancelsOutDuplicatesOnce() {
+    final CountingListChanges<String> listChanges = new CountingListChanges<String>();
+    p.set(new ArrayList<String>(list("a", "a", "b")));
+    p.coalesced().addListChangedHandler(listChanges);
+    Properties.batch(new Runnable() {
+      public void run() {
+        p.clear();
+        p.addAll(list("a", "b", "b"));
+      }
+    });
+    assertThat(listChanges.last.getAdded(), contains("b"));
+    assertThat(listChanges.last.getRemoved(), contains("a"));
+  }
+
+  @Test
+  public void coalescedBulkUpdate() {
+    final CountingListChanges<String> listChanges = new CountingListChanges<String>();
+    final List<String> before = new ArrayList<String>();
+    final List<String> after = new ArrayList<String>();
+    for (int i = 0; i < 2000; i++) {
+      before.add("row" + i);
+      after.add("row" + (i + 1000));
+    }
+    p.set(before);
+    p.coalesced().addListChangedHandler(listChanges);
+    Properties.batch(new Runnable() {
+      public void run() {
+        p.clear();
+        p.addAll(after);
+      }
+    });
+    assertThat(listChanges.count, is(1));
+    assertThat(listChanges.last.getAdded().size(), is(1000));
+    assertThat(listChanges.last.getAdded().get(0), is("row2000"));
+    assertThat(listChanges.last.getRemoved().size(), is(1000));
+  }
+
+  private static List<String> logChanges(final ListProperty<String> p) {
+    final List<String> log = new ArrayList<String>();
+    p.addValueAddedHandler(new ValueAddedHandler<String>() {
+      public void onValueAdded(ValueAddedEvent<String> event) {
+        log.add("+" + event.getValue() + "@" + event.getIndex());
+      }
+    });
+    p.addValueRemovedHandler(new ValueRemovedHandler<String>() {
+      public void onValueRemoved(ValueRemovedEvent<String> event) {
+        log.add("-" + event.getValue() + "@" + event.getIndex());
+      }
+    });
+    return log;
+  }
+
   public static class CountingChanges<P> implements PropertyChangedHandler<P> {
     public int count;
 
@@ -288,21 +497,36 @@ public class ListPropertyTest {
     }
   }
 
+  public static class CountingListChanges<P> implements ListChangedHandler<P> {
+    public int count;
+    public ListChangedEvent<P> last;
+
+    @Override
+    public void onListChanged(final ListChangedEvent<P> event) {
+      count++;
+      last = event;
+    }
+  }
+
   public static class CountingAdds<P> implements ValueAddedHandler<P> {
     public int count;
+    public int lastIndex;
 
     @Override
     public void onValueAdded(final ValueAddedEvent<P> event) {
       count++;
+      lastIndex = event.getIndex();
     }
   }
 
   public static class CountingRemoves<P> implements ValueRemovedHandler<P> {
     public int count;
+    public int lastIndex;
 
     @Override
     public void onValueRemoved(final ValueRemovedEvent<P> event) {
       count++;
+      lastIndex = event.getIndex();
     }
   }
 
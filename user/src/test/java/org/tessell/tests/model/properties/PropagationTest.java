@@ -0,0 +1,245 @@
+package org.tessell.tests.model.properties;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.tessell.model.properties.NewProperty.booleanProperty;
+import static org.tessell.model.properties.NewProperty.integerProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tessell.model.events.PropertyChangedEvent;
+import org.tessell.model.events.PropertyChangedHandler;
+import org.tessell.model.properties.BooleanProperty;
+import org.tessell.model.properties.IntegerProperty;
+import org.tessell.model.properties.Properties;
+import org.tessell.model.properties.Propagation;
+import org.tessell.model.properties.Property;
+import org.tessell.model.values.DerivedValue;
+
+import com.google.gwt.event.shared.UmbrellaException;
+
+public class PropagationTest {
+
+  private final IntegerProperty a = integerProperty("a", 1);
+  private final List<String> fired = new ArrayList<String>();
+
+  @Before
+  public void resetCounts() {
+    Propagation.resetCounts();
+  }
+
+  @Test
+  public void leafOnlyRecomputesItself() {
+    a.touch();
+    Propagation.resetCounts();
+    a.set(2);
+    assertThat(Propagation.getPropagationCount(), is(1));
+    assertThat(Propagation.getRecomputeCount(), is(1));
+  }
+
+  @Test
+  public void diamondRecomputesTheSharedDescendantOnce() {
+    final IntegerProperty b = plus(a, "b", 1);
+    final IntegerProperty c = plus(a, "c", 2);
+    final IntegerProperty d = integerProperty(new DerivedValue<Integer>("d") {
+      public Integer get() {
+        return b.get() + c.get();
+      }
+    });
+    listenTo(d);
+    a.touch();
+    Propagation.resetCounts();
+
+    a.set(2);
+    assertThat(Propagation.getPropagationCount(), is(1));
+    // a, b, c, d
+    assertThat(Propagation.getRecomputeCount(), is(4));
+    assertThat(fired.toString(), is("[D 5->7]"));
+  }
+
+  @Test
+  public void fanOutRecomputesEachChildOnce() {
+    for (int i = 0; i < 10; i++) {
+      plus(a, "b" + i, i);
+    }
+    a.touch();
+    Propagation.resetCounts();
+
+    a.set(2);
+    assertThat(Propagation.getPropagationCount(), is(1));
+    assertThat(Propagation.getRecomputeCount(), is(11));
+  }
+
+  @Test
+  public void unchangedPropertiesDoNotRecomputeTheirDownstream() {
+    final BooleanProperty big = booleanProperty(new DerivedValue<Boolean>("big") {
+      public Boolean get() {
+        return a.get() > 5;
+      }
+    });
+    final IntegerProperty c = integerProperty(new DerivedValue<Integer>("c") {
+      public Integer get() {
+        return big.get() ? 1 : 0;
+      }
+    });
+    listenTo(c);
+    a.touch();
+    Propagation.resetCounts();
+
+    a.set(2);
+    // a and big, but not c
+    assertThat(Propagation.getRecomputeCount(), is(2));
+    assertThat(fired.size(), is(0));
+  }
+
+  @Test
+  public void downstreamChangesFireBeforeUpstreamChanges() {
+    final IntegerProperty b = plus(a, "b", 1);
+    final IntegerProperty c = plus(b, "c", 1);
+    listenTo(a);
+    listenTo(b);
+    listenTo(c);
+
+    a.set(2);
+    assertThat(fired.toString(), is("[C 3->4, B 2->3, A 1->2]"));
+  }
+
+  @Test
+  public void handlersSeeTheWholeGraphUpdated() {
+    final IntegerProperty b = plus(a, "b", 1);
+    final IntegerProperty c = plus(a, "c", 2);
+    b.addPropertyChangedHandler(new PropertyChangedHandler<Integer>() {
+      public void onPropertyChanged(PropertyChangedEvent<Integer> event) {
+        // c is a sibling of b, but has already been recomputed
+        fired.add("b saw c " + c.get());
+      }
+    });
+
+    a.set(2);
+    assertThat(fired.toString(), is("[b saw c 4]"));
+  }
+
+  @Test
+  public void batchRecomputesSharedDownstreamOnce() {
+    final IntegerProperty b = integerProperty("b", 1);
+    final IntegerProperty sum = integerProperty(new DerivedValue<Integer>("sum") {
+      public Integer get() {
+        return a.get() + b.get();
+      }
+    });
+    listenTo(sum);
+    a.touch();
+    b.touch();
+    Propagation.resetCounts();
+
+    Properties.batch(new Runnable() {
+      public void run() {
+        a.set(2);
+        b.set(2);
+      }
+    });
+    assertThat(Propagation.getPropagationCount(), is(1));
+    // a, b, sum
+    assertThat(Propagation.getRecomputeCount(), is(3));
+    assertThat(fired.toString(), is("[Sum 2->4]"));
+  }
+
+  @Test
+  public void failedRecomputesDoNotStopTheirSiblings() {
+    final IntegerProperty b = plus(a, "b", 1);
+    final IntegerProperty c = integerProperty(new DerivedValue<Integer>("c") {
+      public Integer get() {
+        if (a.get() == 2) {
+          throw new IllegalStateException("c failed");
+        }
+        return a.get() + 2;
+      }
+    });
+    final IntegerProperty d = plus(a, "d", 3);
+    listenTo(a);
+    listenTo(b);
+    listenTo(c);
+    listenTo(d);
+    a.touch();
+
+    try {
+      a.set(2);
+      fail();
+    } catch (final UmbrellaException ue) {
+      assertThat(ue.getCauses().size(), is(1));
+      assertThat(ue.getCause().getMessage(), is("c failed"));
+    }
+    assertThat(fired.toString(), is("[B 2->3, D 4->5, A 1->2]"));
+  }
+
+  @Test
+  public void failedHandlersDoNotStopTheOtherChanges() {
+    final IntegerProperty b = plus(a, "b", 1);
+    final IntegerProperty c = plus(a, "c", 2);
+    final IntegerProperty d = plus(a, "d", 3);
+    listenTo(a);
+    listenTo(b);
+    c.addPropertyChangedHandler(new PropertyChangedHandler<Integer>() {
+      public void onPropertyChanged(PropertyChangedEvent<Integer> event) {
+        throw new IllegalStateException("handler failed");
+      }
+    });
+    listenTo(d);
+    a.touch();
+
+    try {
+      a.set(2);
+      fail();
+    } catch (final UmbrellaException ue) {
+      assertThat(ue.getCause().getMessage(), is("handler failed"));
+    }
+    assertThat(fired.toString(), is("[B 2->3, D 4->5, A 1->2]"));
+  }
+
+  @Test
+  public void batchesRethrowEachPropagationsFailures() {
+    final IntegerProperty b = plus(a, "b", 1);
+    b.addPropertyChangedHandler(new PropertyChangedHandler<Integer>() {
+      public void onPropertyChanged(PropertyChangedEvent<Integer> event) {
+        throw new IllegalStateException("handler failed");
+      }
+    });
+    listenTo(a);
+    a.touch();
+
+    try {
+      Properties.batch(new Runnable() {
+        public void run() {
+          a.set(2);
+        }
+      });
+      fail();
+    } catch (final UmbrellaException ue) {
+      assertThat(ue.getCauses().size(), is(1));
+      assertThat(ue.getCause().getMessage(), is("handler failed"));
+    }
+    assertThat(fired.toString(), is("[A 1->2]"));
+    assertThat(Properties.isBatching(), is(false));
+  }
+
+  private static IntegerProperty plus(final Property<Integer> upstream, final String name, final int amount) {
+    return integerProperty(new DerivedValue<Integer>(name) {
+      public Integer get() {
+        return upstream.get() + amount;
+      }
+    });
+  }
+
+  private void listenTo(final Property<Integer> p) {
+    p.addPropertyChangedHandler(new PropertyChangedHandler<Integer>() {
+      public void onPropertyChanged(PropertyChangedEvent<Integer> event) {
+        fired.add(p.getName() + " " + event.getOldValue() + "->" + event.getNewValue());
+      }
+    });
+  }
+
+}
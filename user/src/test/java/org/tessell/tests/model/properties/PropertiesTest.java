@@ -0,0 +1,223 @@
+package org.tessell.tests.model.properties;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.tessell.model.properties.NewProperty.integerProperty;
+import static org.tessell.model.properties.NewProperty.listProperty;
+import static org.tessell.model.properties.NewProperty.stringProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.tessell.model.AbstractModel;
+import org.tessell.model.Models;
+import org.tessell.model.events.PropertyChangedEvent;
+import org.tessell.model.events.PropertyChangedHandler;
+import org.tessell.model.events.ValueAddedEvent;
+import org.tessell.model.events.ValueAddedHandler;
+import org.tessell.model.events.ValueRemovedEvent;
+import org.tessell.model.events.ValueRemovedHandler;
+import org.tessell.model.properties.IntegerProperty;
+import org.tessell.model.properties.ListProperty;
+import org.tessell.model.properties.Properties;
+import org.tessell.model.properties.PropertyGroup;
+import org.tessell.model.properties.StringProperty;
+import org.tessell.model.validation.Valid;
+import org.tessell.model.values.DerivedValue;
+
+public class PropertiesTest {
+
+  @Test
+  public void batchFiresOneChangeWithTheOriginalOldValue() {
+    final IntegerProperty a = integerProperty("a", 1);
+    final CountChanged<Integer> changes = new CountChanged<Integer>();
+    a.addPropertyChangedHandler(changes);
+    Properties.batch(new Runnable() {
+      public void run() {
+        a.set(2);
+        a.set(3);
+        a.set(4);
+        assertThat(changes.count, is(0));
+      }
+    });
+    assertThat(changes.count, is(1));
+    assertThat(changes.lastOld, is(1));
+    assertThat(changes.lastNew, is(4));
+  }
+
+  @Test
+  public void batchDoesNotFireIfValueEndsUpTheSame() {
+    final IntegerProperty a = integerProperty("a", 1);
+    final CountChanged<Integer> changes = new CountChanged<Integer>();
+    a.addPropertyChangedHandler(changes);
+    Properties.batch(new Runnable() {
+      public void run() {
+        a.set(2);
+        a.set(1);
+      }
+    });
+    assertThat(changes.count, is(0));
+  }
+
+  @Test
+  public void derivedFiresOnceForMultipleUpstreamChanges() {
+    final IntegerProperty a = integerProperty("a", 1);
+    final IntegerProperty b = integerProperty("b", 1);
+    final IntegerProperty sum = integerProperty(new DerivedValue<Integer>("sum") {
+      public Integer get() {
+        return a.get() + b.get();
+      }
+    });
+    final CountChanged<Integer> changes = new CountChanged<Integer>();
+    sum.addPropertyChangedHandler(changes);
+    Properties.batch(new Runnable() {
+      public void run() {
+        a.set(2);
+        b.set(2);
+      }
+    });
+    assertThat(changes.count, is(1));
+    assertThat(changes.lastOld, is(2));
+    assertThat(changes.lastNew, is(4));
+  }
+
+  @Test
+  public void nestedBatchesOnlyCommitOnTheOutermost() {
+    final IntegerProperty a = integerProperty("a", 1);
+    final CountChanged<Integer> changes = new CountChanged<Integer>();
+    a.addPropertyChangedHandler(changes);
+    Properties.begin();
+    Properties.batch(new Runnable() {
+      public void run() {
+        a.set(2);
+      }
+    });
+    assertThat(Properties.isBatching(), is(true));
+    assertThat(changes.count, is(0));
+    Properties.commit();
+    assertThat(Properties.isBatching(), is(false));
+    assertThat(changes.count, is(1));
+  }
+
+  @Test
+  public void batchValidatesOnCommit() {
+    final StringProperty name = stringProperty("name").max(3);
+    Properties.batch(new Runnable() {
+      public void run() {
+        name.set("1234");
+      }
+    });
+    assertThat(name.wasValid(), is(Valid.NO));
+  }
+
+  @Test
+  public void batchCommitsEvenIfTheRunnableFails() {
+    final IntegerProperty a = integerProperty("a", 1);
+    final CountChanged<Integer> changes = new CountChanged<Integer>();
+    a.addPropertyChangedHandler(changes);
+    try {
+      Properties.batch(new Runnable() {
+        public void run() {
+          a.set(2);
+          throw new IllegalStateException();
+        }
+      });
+    } catch (IllegalStateException ise) {
+      // expected
+    }
+    assertThat(Properties.isBatching(), is(false));
+    assertThat(changes.count, is(1));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void commitWithoutBeginFails() {
+    Properties.commit();
+  }
+
+  @Test
+  public void clearAndAddAllOnlyFiresTheDifferences() {
+    final ListProperty<String> l = listProperty("l", new ArrayList<String>(list("a", "b")));
+    final List<String> added = new ArrayList<String>();
+    final List<String> removed = new ArrayList<String>();
+    final CountChanged<List<String>> changes = new CountChanged<List<String>>();
+    l.addValueAddedHandler(new ValueAddedHandler<String>() {
+      public void onValueAdded(ValueAddedEvent<String> event) {
+        added.add(event.getValue());
+      }
+    });
+    l.addValueRemovedHandler(new ValueRemovedHandler<String>() {
+      public void onValueRemoved(ValueRemovedEvent<String> event) {
+        removed.add(event.getValue());
+      }
+    });
+    l.addPropertyChangedHandler(changes);
+    Properties.batch(new Runnable() {
+      public void run() {
+        l.clear();
+        l.addAll(list("b", "c"));
+      }
+    });
+    assertThat(added.toString(), is("[c]"));
+    assertThat(removed.toString(), is("[a]"));
+    assertThat(changes.count, is(1));
+  }
+
+  @Test
+  public void restoreFiresOnceForTheGroup() {
+    final PropertyGroup all = new PropertyGroup("all", "all invalid");
+    final StringProperty a = stringProperty("a").max(3).in(all);
+    final StringProperty b = stringProperty("b").max(3).in(all);
+    all.capture();
+    a.set("1234");
+    b.set("1234");
+    assertThat(all.wasValid(), is(Valid.NO));
+
+    final CountChanged<Boolean> changes = new CountChanged<Boolean>();
+    all.addPropertyChangedHandler(changes);
+    all.restore();
+    assertThat(all.wasValid(), is(Valid.YES));
+    assertThat(changes.count, is(1));
+  }
+
+  @Test
+  public void mergeIsBatched() {
+    final NameModel m = new NameModel();
+    final CountChanged<String> changes = new CountChanged<String>();
+    m.name.addPropertyChangedHandler(changes);
+    Models.merge(m, "bob");
+    assertThat(changes.count, is(1));
+    assertThat(changes.lastOld, is((String) null));
+    assertThat(changes.lastNew, is("bob2"));
+  }
+
+  private static class NameModel extends AbstractModel<String> {
+    private final StringProperty name = stringProperty("name").in(all);
+
+    @Override
+    public void merge(String dto) {
+      name.set(dto);
+      name.set(dto + "2");
+    }
+
+    @Override
+    public String getDto() {
+      return name.get();
+    }
+  }
+
+  private static class CountChanged<P> implements PropertyChangedHandler<P> {
+    private int count;
+    private P lastOld;
+    private P lastNew;
+
+    @Override
+    public void onPropertyChanged(final PropertyChangedEvent<P> event) {
+      count++;
+      lastOld = event.getOldValue();
+      lastNew = event.getNewValue();
+    }
+  }
+
+}
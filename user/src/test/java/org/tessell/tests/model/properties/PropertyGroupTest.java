@@ -1,10 +1,20 @@
 package org.tessell.tests.model.properties;
 
+import static joist.util.Copy.list;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
+import static org.tessell.model.properties.NewProperty.listProperty;
 import static org.tessell.model.properties.NewProperty.stringProperty;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
+import org.tessell.model.events.PropertyChangedEvent;
+import org.tessell.model.events.PropertyChangedHandler;
+import org.tessell.model.properties.ListProperty;
+import org.tessell.model.properties.Properties;
 import org.tessell.model.properties.PropertyGroup;
 import org.tessell.model.properties.StringProperty;
 import org.tessell.model.validation.Valid;
@@ -90,4 +100,224 @@ public class PropertyGroupTest extends AbstractRuleTest {
     assertThat(all.wasValid(), is(Valid.YES));
   }
 
+  @Test
+  public void onlyReassessesWhenValidityFlips() {
+    final int[] reassessed = { 0 };
+    PropertyGroup all = new PropertyGroup("all", "some message") {
+      @Override
+      public void reassess() {
+        reassessed[0]++;
+        super.reassess();
+      }
+    };
+    List<StringProperty> ps = new ArrayList<StringProperty>();
+    for (int i = 0; i < 100; i++) {
+      ps.add(stringProperty("p" + i).in(all).max(5));
+    }
+    reassessed[0] = 0;
+
+    for (StringProperty p : ps) {
+      p.set("123456");
+    }
+    assertThat(all.wasValid(), is(Valid.NO));
+    assertThat(reassessed[0], is(1));
+
+    for (StringProperty p : ps) {
+      p.set("1234");
+    }
+    assertThat(all.wasValid(), is(Valid.YES));
+    assertThat(reassessed[0], is(2));
+  }
+
+  @Test
+  public void updatesWhenRecomputedAsADerivedProperty() {
+    final int[] recomputed = { 0 };
+    final StringProperty source = stringProperty("source");
+    PropertyGroup all = new PropertyGroup("all", "some message") {
+      @Override
+      protected void beforeRecompute() {
+        recomputed[0]++;
+        super.beforeRecompute();
+      }
+    };
+    all.depends(source);
+    source.touch();
+    StringProperty p1 = stringProperty("p1").in(all).max(5);
+    p1.set("123456");
+    assertThat(all.get(), is(false));
+
+    recomputed[0] = 0;
+    source.set("a");
+    assertThat(recomputed[0], is(1));
+    assertThat(all.get(), is(false));
+
+    p1.set("1234");
+    assertThat(all.get(), is(true));
+    source.set("b");
+    assertThat(all.get(), is(true));
+  }
+
+  @Test
+  public void addingTwiceIsIgnored() {
+    PropertyGroup all = new PropertyGroup("all", "some message");
+    StringProperty p1 = stringProperty("p1").in(all).max(5);
+    all.add(p1);
+    assertThat(all.getProperties().size(), is(1));
+
+    p1.set("123456");
+    p1.set("1234");
+    assertThat(all.wasValid(), is(Valid.YES));
+  }
+
+  @Test
+  public void removingAPropertyRemovesAllOfItsErrors() {
+    PropertyGroup all = new PropertyGroup("all", "some message");
+    StringProperty p1 = stringProperty("p1").in(all).max(5);
+    StringProperty p2 = stringProperty("p2").in(all).req();
+    p1.set("123456");
+    p2.touch();
+    assertThat(all.wasValid(), is(Valid.NO));
+
+    all.remove(p1);
+    assertThat(all.wasValid(), is(Valid.NO));
+    all.remove(p2);
+    assertThat(all.wasValid(), is(Valid.YES));
+  }
+
+  @Test
+  public void restoreRevertsChangesSinceTheLastCapture() {
+    PropertyGroup all = new PropertyGroup("all", "some message");
+    StringProperty p1 = stringProperty("p1", "a").in(all);
+    StringProperty p2 = stringProperty("p2", "b").in(all);
+    all.capture();
+    p1.set("a2");
+    p2.set("b2");
+    all.restore();
+    assertThat(p1.get(), is("a"));
+    assertThat(p2.get(), is("b"));
+  }
+
+  @Test
+  public void undoAndRedoSteps() {
+    PropertyGroup all = new PropertyGroup("all", "some message");
+    StringProperty p1 = stringProperty("p1", "a").in(all);
+    StringProperty p2 = stringProperty("p2", "b").in(all);
+    all.capture();
+    p1.set("a2");
+    all.capture();
+    p2.set("b2");
+    p1.set("a3");
+    all.capture();
+    assertThat(all.canUndo(), is(true));
+    assertThat(all.canRedo(), is(false));
+
+    assertThat(all.undo(), is(true));
+    assertThat(p1.get(), is("a2"));
+    assertThat(p2.get(), is("b"));
+    assertThat(all.undo(), is(true));
+    assertThat(p1.get(), is("a"));
+    assertThat(all.undo(), is(false));
+
+    assertThat(all.redo(), is(true));
+    assertThat(p1.get(), is("a2"));
+    assertThat(all.redo(), is(true));
+    assertThat(p1.get(), is("a3"));
+    assertThat(p2.get(), is("b2"));
+    assertThat(all.redo(), is(false));
+  }
+
+  @Test
+  public void undoIncludesUncapturedChanges() {
+    PropertyGroup all = new PropertyGroup("all", "some message");
+    StringProperty p1 = stringProperty("p1", "a").in(all);
+    all.capture();
+    p1.set("a2");
+    all.undo();
+    assertThat(p1.get(), is("a"));
+    all.redo();
+    assertThat(p1.get(), is("a2"));
+  }
+
+  @Test
+  public void changesAfterUndoClearRedo() {
+    PropertyGroup all = new PropertyGroup("all", "some message");
+    StringProperty p1 = stringProperty("p1", "a").in(all);
+    all.capture();
+    p1.set("a2");
+    all.undo();
+    p1.set("a3");
+    assertThat(all.canRedo(), is(false));
+    assertThat(all.redo(), is(false));
+    assertThat(p1.get(), is("a3"));
+  }
+
+  @Test
+  public void undoWithinABatchKeepsRedo() {
+    final PropertyGroup all = new PropertyGroup("all", "some message");
+    StringProperty p1 = stringProperty("p1", "a").in(all);
+    all.capture();
+    p1.set("a2");
+    all.capture();
+    Properties.batch(new Runnable() {
+      public void run() {
+        all.undo();
+      }
+    });
+    assertThat(p1.get(), is("a"));
+    assertThat(all.canRedo(), is(true));
+    assertThat(all.redo(), is(true));
+    assertThat(p1.get(), is("a2"));
+  }
+
+  @Test
+  public void historyDepthBoundsUndo() {
+    PropertyGroup all = new PropertyGroup("all", "some message").historyDepth(2);
+    StringProperty p1 = stringProperty("p1", "0").in(all);
+    all.capture();
+    for (int i = 1; i <= 5; i++) {
+      p1.set("" + i);
+      all.capture();
+    }
+    all.undo();
+    all.undo();
+    assertThat(all.undo(), is(false));
+    assertThat(p1.get(), is("3"));
+  }
+
+  @Test
+  public void undoRevertsAJournaledList() {
+    PropertyGroup all = new PropertyGroup("all", "some message");
+    ListProperty<String> p1 = listProperty("p1", new ArrayList<String>(list("a", "b"))).journaled().in(all);
+    all.capture();
+    p1.add("c");
+    p1.remove("a");
+    all.capture();
+    assertThat(all.undo(), is(true));
+    assertThat(p1.get(), contains("a", "b"));
+    assertThat(all.redo(), is(true));
+    assertThat(p1.get(), contains("b", "c"));
+  }
+
+  @Test
+  public void undoIsOneBatchedUpdate() {
+    PropertyGroup all = new PropertyGroup("all", "some message");
+    StringProperty p1 = stringProperty("p1", "a").in(all).max(2);
+    StringProperty p2 = stringProperty("p2", "b").in(all).max(2);
+    all.capture();
+    p1.set("123");
+    p2.set("123");
+    all.capture();
+    assertThat(all.wasValid(), is(Valid.NO));
+
+    final int[] changes = { 0 };
+    all.addPropertyChangedHandler(new PropertyChangedHandler<Boolean>() {
+      public void onPropertyChanged(PropertyChangedEvent<Boolean> event) {
+        changes[0]++;
+      }
+    });
+    all.undo();
+    assertThat(all.wasValid(), is(Valid.YES));
+    assertThat(changes[0], is(1));
+  }
+
 }
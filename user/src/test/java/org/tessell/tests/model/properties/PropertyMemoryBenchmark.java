@@ -0,0 +1,72 @@
+package org.tessell.tests.model.properties;
+
+import static org.tessell.model.properties.NewProperty.stringProperty;
+
+import org.tessell.model.properties.StringProperty;
+import org.tessell.model.validation.events.RuleTriggeredEvent;
+import org.tessell.model.validation.events.RuleTriggeredHandler;
+import org.tessell.model.validation.events.RuleUntriggeredEvent;
+import org.tessell.model.validation.events.RuleUntriggeredHandler;
+
+import com.google.gwt.event.shared.HandlerList;
+import com.google.gwt.event.shared.SimplerEventBus;
+
+/**
+ * Measures the heap used per property, and per handler store, with 20k live instances.
+ *
+ * Not a unit test, run it by hand with {@code main}.
+ */
+public class PropertyMemoryBenchmark {
+
+  private static final int count = 20000;
+
+  public static void main(String[] args) {
+    // each property used to have a SimplerEventBus with a rule handler on two types
+    final Object[] buses = new Object[count];
+    long before = usedMemory();
+    for (int i = 0; i < count; i++) {
+      final SimplerEventBus bus = new SimplerEventBus();
+      final RuleHandler handler = new RuleHandler();
+      bus.addHandlerToSource(RuleTriggeredEvent.getType(), bus, handler);
+      bus.addHandlerToSource(RuleUntriggeredEvent.getType(), bus, handler);
+      buses[i] = bus;
+    }
+    System.out.println("SimplerEventBus + rule handler: " + (usedMemory() - before) / count + " bytes");
+
+    // now they have a HandlerList, and no handlers until someone listens
+    final Object[] lists = new Object[count];
+    before = usedMemory();
+    for (int i = 0; i < count; i++) {
+      lists[i] = new HandlerList();
+    }
+    System.out.println("HandlerList: " + (usedMemory() - before) / count + " bytes");
+
+    final Object[] properties = new Object[count];
+    before = usedMemory();
+    for (int i = 0; i < count; i++) {
+      final StringProperty p = stringProperty("p" + i);
+      properties[i] = p;
+    }
+    System.out.println("StringProperty: " + (usedMemory() - before) / count + " bytes");
+
+    // keep everything reachable until we're done measuring
+    System.out.println(buses.length + lists.length + properties.length);
+  }
+
+  private static long usedMemory() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static class RuleHandler implements RuleTriggeredHandler, RuleUntriggeredHandler {
+    public void onTrigger(RuleTriggeredEvent event) {
+    }
+
+    public void onUntrigger(RuleUntriggeredEvent event) {
+    }
+  }
+
+}
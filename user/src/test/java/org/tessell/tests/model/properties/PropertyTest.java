@@ -15,6 +15,19 @@ import org.tessell.tests.model.validation.rules.AbstractRuleTest;
 
 public class PropertyTest extends AbstractRuleTest {
 
+  @Test
+  public void changesAreFromTheProperty() {
+    final IntegerProperty a = integerProperty("a", 1);
+    final Object[] source = { null };
+    a.addPropertyChangedHandler(new PropertyChangedHandler<Integer>() {
+      public void onPropertyChanged(PropertyChangedEvent<Integer> event) {
+        source[0] = event.getSource();
+      }
+    });
+    a.set(2);
+    assertThat(source[0], is((Object) a));
+  }
+
   @Test
   public void twoWayDerived() {
     final IntegerProperty a = integerProperty("a", 1);
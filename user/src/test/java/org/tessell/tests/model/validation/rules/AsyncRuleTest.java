@@ -0,0 +1,246 @@
+package org.tessell.tests.model.validation.rules;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.tessell.model.properties.NewProperty.booleanProperty;
+import static org.tessell.model.properties.NewProperty.stringProperty;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tessell.dispatch.client.util.StubOutstandingDispatchAsync;
+import org.tessell.dispatch.shared.Action;
+import org.tessell.dispatch.shared.Result;
+import org.tessell.gwt.user.client.StubTimer;
+import org.tessell.model.commands.UiCommand;
+import org.tessell.model.properties.BooleanProperty;
+import org.tessell.model.properties.PropertyGroup;
+import org.tessell.model.properties.StringProperty;
+import org.tessell.model.validation.Valid;
+import org.tessell.model.validation.rules.AsyncRule;
+import org.tessell.widgets.StubWidgetsProvider;
+
+public class AsyncRuleTest extends AbstractRuleTest {
+
+  private final StubOutstandingDispatchAsync async = new StubOutstandingDispatchAsync();
+  private StringProperty name;
+  private NameTaken rule;
+
+  @Before
+  public void before() {
+    StubWidgetsProvider.install();
+    name = stringProperty("name");
+    rule = new NameTaken(name);
+    listenTo(name);
+  }
+
+  @Test
+  public void waitsForTheValueToBeStable() {
+    rule.timer().doNotAutoRun();
+    name.set("a");
+    name.set("ab");
+    name.set("abc");
+    assertThat(async.getCalls().size(), is(0));
+    assertThat(name.pending().get(), is(true));
+    assertThat(name.wasValid(), is(Valid.YES));
+
+    rule.timer().run();
+    assertThat(async.getCalls().size(), is(1));
+    assertThat(((CheckName) async.getActions().get(0)).name, is("abc"));
+  }
+
+  @Test
+  public void triggersOnceTheServerResponds() {
+    name.set("bob");
+    assertThat(name.pending().get(), is(true));
+    assertNoMessages();
+
+    respond(0, true);
+    assertThat(name.pending().get(), is(false));
+    assertThat(name.wasValid(), is(Valid.NO));
+    assertMessages("name is taken");
+
+    name.set("fred");
+    respond(1, false);
+    assertThat(name.wasValid(), is(Valid.YES));
+    assertNoMessages();
+  }
+
+  @Test
+  public void cachesResultsPerValue() {
+    name.set("bob");
+    respond(0, true);
+    name.set("fred");
+    respond(1, false);
+
+    name.set("bob");
+    assertThat(async.getCalls().size(), is(2));
+    assertThat(name.pending().get(), is(false));
+    assertMessages("name is taken");
+  }
+
+  @Test
+  public void ignoresStaleResponses() {
+    name.set("bob");
+    name.set("fred");
+    assertThat(async.getCalls().size(), is(2));
+
+    // bob comes back after the user moved on to fred
+    respond(0, true);
+    assertThat(name.pending().get(), is(true));
+    assertNoMessages();
+
+    respond(1, false);
+    assertThat(name.pending().get(), is(false));
+    assertNoMessages();
+
+    // but bob's result was still cached
+    name.set("bob");
+    assertThat(async.getCalls().size(), is(2));
+    assertMessages("name is taken");
+  }
+
+  @Test
+  public void failuresClearPendingWithoutRetrying() {
+    name.set("bob");
+    async.getCalls().get(0).onFailure(new RuntimeException("failed"));
+    assertThat(name.pending().get(), is(false));
+    assertThat(name.wasValid(), is(Valid.YES));
+    name.reassess();
+    assertThat(async.getCalls().size(), is(1));
+  }
+
+  @Test
+  public void groupsArePendingWhileTheirPropertiesAre() {
+    final PropertyGroup all = new PropertyGroup("all", "all");
+    all.add(name);
+    assertThat(all.pending().get(), is(false));
+
+    name.set("bob");
+    assertThat(all.pending().get(), is(true));
+
+    respond(0, true);
+    assertThat(all.pending().get(), is(false));
+    assertThat(all.wasValid(), is(Valid.NO));
+  }
+
+  @Test
+  public void commandsWaitForPendingRules() {
+    final PropertyGroup all = new PropertyGroup("all", "all");
+    all.add(name);
+    final CountingCommand command = new CountingCommand();
+    command.addOnlyIf(all);
+
+    name.set("fred");
+    command.execute();
+    assertThat(command.isWaiting(), is(true));
+    assertThat(command.executed, is(0));
+
+    respond(0, false);
+    assertThat(command.isWaiting(), is(false));
+    assertThat(command.executed, is(1));
+  }
+
+  @Test
+  public void commandsDoNotExecuteIfThePendingRuleFails() {
+    final PropertyGroup all = new PropertyGroup("all", "all");
+    all.add(name);
+    final CountingCommand command = new CountingCommand();
+    command.addOnlyIf(all);
+
+    name.set("bob");
+    command.execute();
+    command.execute();
+    respond(0, true);
+    assertThat(command.isWaiting(), is(false));
+    assertThat(command.executed, is(0));
+  }
+
+  @Test
+  public void skippingViaOnlyIfStopsPending() {
+    final BooleanProperty enabled = booleanProperty("enabled", true);
+    rule.onlyIf(enabled);
+    final PropertyGroup all = new PropertyGroup("all", "all");
+    all.add(name);
+    final CountingCommand command = new CountingCommand();
+    command.addOnlyIf(all);
+
+    rule.timer().doNotAutoRun();
+    name.set("bob");
+    command.execute();
+    assertThat(command.isWaiting(), is(true));
+
+    enabled.set(false);
+    name.reassess();
+    assertThat(name.pending().get(), is(false));
+    assertThat(command.isWaiting(), is(false));
+    assertThat(command.executed, is(1));
+    assertThat(async.getCalls().size(), is(0));
+  }
+
+  @Test
+  public void skippingViaOnlyIfIgnoresTheInFlightResponse() {
+    final BooleanProperty enabled = booleanProperty("enabled", true);
+    rule.onlyIf(enabled);
+    name.set("bob");
+    assertThat(async.getCalls().size(), is(1));
+
+    enabled.set(false);
+    name.reassess();
+    assertThat(name.pending().get(), is(false));
+
+    respond(0, true);
+    assertThat(name.pending().get(), is(false));
+    assertThat(name.wasValid(), is(Valid.YES));
+    assertNoMessages();
+  }
+
+  private void respond(final int index, final boolean taken) {
+    async.getCalls(CheckName.class).get(index).onSuccess(new CheckNameResult(taken));
+  }
+
+  private final class NameTaken extends AsyncRule<String, CheckName, CheckNameResult> {
+    private NameTaken(final StringProperty property) {
+      super(property, "name is taken", async);
+    }
+
+    private StubTimer timer() {
+      return (StubTimer) timer;
+    }
+
+    @Override
+    protected CheckName newAction(final String value) {
+      return new CheckName(value);
+    }
+
+    @Override
+    protected boolean isValid(final CheckNameResult result) {
+      return !result.taken;
+    }
+  }
+
+  private static final class CountingCommand extends UiCommand {
+    private int executed;
+
+    @Override
+    protected void doExecute() {
+      executed++;
+    }
+  }
+
+  private static class CheckName implements Action<CheckNameResult> {
+    private final String name;
+
+    private CheckName(final String name) {
+      this.name = name;
+    }
+  }
+
+  private static class CheckNameResult implements Result {
+    private final boolean taken;
+
+    private CheckNameResult(final boolean taken) {
+      this.taken = taken;
+    }
+  }
+
+}
@@ -1,9 +1,16 @@
 package org.tessell.tests.model.validation.rules;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.tessell.model.properties.NewProperty.stringProperty;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 import org.tessell.model.properties.StringProperty;
+import org.tessell.model.validation.events.RuleTriggeredEvent;
+import org.tessell.model.validation.events.RuleTriggeredHandler;
 import org.tessell.model.validation.rules.Required;
 
 public class ListenToRulesDirectlyTest extends AbstractRuleTest {
@@ -27,4 +34,22 @@ public class ListenToRulesDirectlyTest extends AbstractRuleTest {
     assertMessages();
   }
 
+  @Test
+  public void eventsAreFromTheRuleThenTheProperty() {
+    final Required r = new Required(f.name, "name required");
+    final List<Object> sources = new ArrayList<Object>();
+    final RuleTriggeredHandler handler = new RuleTriggeredHandler() {
+      public void onTrigger(final RuleTriggeredEvent event) {
+        sources.add(event.getSource());
+      }
+    };
+    r.addRuleTriggeredHandler(handler);
+    f.name.addRuleTriggeredHandler(handler);
+
+    f.name.set(null);
+    assertThat(sources.size(), is(2));
+    assertThat(sources.get(0), is((Object) r));
+    assertThat(sources.get(1), is((Object) f.name));
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,223 @@
+package org.tessell.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+import org.tessell.bus.StubEventBus;
+import org.tessell.dispatch.client.GetTestAction;
+import org.tessell.dispatch.client.GetTestResult;
+import org.tessell.dispatch.client.StubDispatchAsync;
+import org.tessell.dispatch.client.SuccessCallback;
+import org.tessell.dispatch.client.events.DispatchUnhandledFailureEvent;
+import org.tessell.dispatch.client.util.StubOutstandingDispatchAsync;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+public class ActionCacheTest {
+
+  private final StubEventBus bus = new StubEventBus();
+  private final StubOutstandingDispatchAsync async = new StubOutstandingDispatchAsync(bus, new StubDispatchAsync());
+  private final TestCache cache = new TestCache();
+  private final Derived a = new Derived();
+  private final Derived b = new Derived();
+
+  @Test
+  public void callsOnceAndQueuesCallbacks() {
+    cache.execute(new GetTestAction("a"), a);
+    cache.execute(new GetTestAction("a"), b);
+    assertThat(async.getCalls().size(), is(1));
+    respond(0);
+    assertThat(a.value, is("derived"));
+    assertThat(b.value, is("derived"));
+    assertThat(cache.getMisses(), is(1));
+    assertThat(cache.getHits(), is(1));
+  }
+
+  @Test
+  public void servesCachedResults() {
+    cache.execute(new GetTestAction("a"));
+    respond(0);
+    cache.execute(new GetTestAction("a"), a);
+    assertThat(a.value, is("derived"));
+    assertThat(async.getCalls().size(), is(1));
+  }
+
+  @Test
+  public void expiresAfterTtl() {
+    cache.expireAfter(100);
+    cache.execute(new GetTestAction("a"));
+    respond(0);
+    cache.time = 99;
+    cache.execute(new GetTestAction("a"), a);
+    assertThat(async.getCalls().size(), is(1));
+    cache.time = 100;
+    cache.execute(new GetTestAction("a"), b);
+    assertThat(async.getCalls().size(), is(2));
+    assertThat(b.value, is(nullValue()));
+  }
+
+  @Test
+  public void servesStaleWhileRevalidating() {
+    cache.expireAfter(100).staleWhileRevalidate();
+    cache.execute(new GetTestAction("a"));
+    respond(0);
+    cache.time = 100;
+    cache.execute(new GetTestAction("a"), a);
+    assertThat(a.value, is("derived"));
+    assertThat(async.getCalls().size(), is(2));
+    assertThat(cache.getStaleHits(), is(1));
+    // only one refresh at a time
+    cache.execute(new GetTestAction("a"), b);
+    assertThat(async.getCalls().size(), is(2));
+    // and the refresh resets the ttl
+    respond(1);
+    cache.time = 150;
+    cache.execute(new GetTestAction("a"));
+    assertThat(async.getCalls().size(), is(2));
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsed() {
+    cache.maxSize(2);
+    cache.execute(new GetTestAction("a"));
+    cache.execute(new GetTestAction("b"));
+    respond(0);
+    respond(1);
+    // a is now more recently used than b
+    cache.execute(new GetTestAction("a"));
+    cache.execute(new GetTestAction("c"));
+    assertThat(cache.size(), is(2));
+    assertThat(cache.getEvictions(), is(1));
+    cache.execute(new GetTestAction("a"));
+    assertThat(async.getCalls().size(), is(3));
+    cache.execute(new GetTestAction("b"));
+    assertThat(async.getCalls().size(), is(4));
+  }
+
+  @Test
+  public void invalidatesByTag() {
+    cache.execute(new GetTestAction("a"));
+    cache.execute(new GetTestAction("b"));
+    respond(0);
+    respond(1);
+    cache.invalidateTag("tag-a");
+    assertThat(cache.size(), is(1));
+    cache.execute(new GetTestAction("a"));
+    assertThat(async.getCalls().size(), is(3));
+  }
+
+  @Test
+  public void invalidatesAfterAnotherActionSucceeds() {
+    cache.invalidateAfter(bus, SaveAction.class, "tag-a");
+    cache.execute(new GetTestAction("a"));
+    cache.execute(new GetTestAction("b"));
+    respond(0);
+    respond(1);
+    async.execute(new SaveAction("save"), new SuccessCallback<GetTestResult>() {
+      public void onSuccess(final GetTestResult result) {
+      }
+    });
+    assertThat(cache.size(), is(2));
+    async.getCallback(SaveAction.class).onSuccess(new GetTestResult());
+    assertThat(cache.size(), is(1));
+  }
+
+  @Test
+  public void resultsThatArriveAfterInvalidationAreNotCached() {
+    cache.execute(new GetTestAction("a"), a);
+    cache.invalidate(new GetTestAction("a"));
+    respond(0);
+    assertThat(a.value, is("derived"));
+    cache.execute(new GetTestAction("a"));
+    assertThat(async.getCalls().size(), is(2));
+  }
+
+  @Test
+  public void failedRefreshesKeepServingStaleQuietly() {
+    cache.expireAfter(100).staleWhileRevalidate();
+    cache.execute(new GetTestAction("a"));
+    respond(0);
+    cache.time = 100;
+    cache.execute(new GetTestAction("a"), a);
+    async.getCallback(GetTestAction.class, 1).onFailure(new RuntimeException("down"));
+    assertThat(bus.getEvents(DispatchUnhandledFailureEvent.class).size(), is(0));
+    cache.execute(new GetTestAction("a"), b);
+    assertThat(b.value, is("derived"));
+    assertThat(async.getCalls().size(), is(3));
+  }
+
+  @Test
+  public void failuresReleaseWaitersAndCallAgain() {
+    final Failable failable = new Failable();
+    cache.execute(new GetTestAction("a"), a);
+    cache.executeWithCallback(new GetTestAction("a"), failable);
+    final RuntimeException failure = new RuntimeException("down");
+    async.getCallback(GetTestAction.class, 0).onFailure(failure);
+    assertThat(failable.failure, is((Throwable) failure));
+    assertThat(bus.getEvents(DispatchUnhandledFailureEvent.class).size(), is(1));
+    assertThat(cache.size(), is(0));
+
+    cache.execute(new GetTestAction("a"), a);
+    assertThat(async.getCalls().size(), is(2));
+    respond(1);
+    assertThat(a.value, is("derived"));
+  }
+
+  private void respond(final int index) {
+    async.getCallback(GetTestAction.class, index).onSuccess(new GetTestResult());
+  }
+
+  private class TestCache extends ActionCache<GetTestAction, GetTestResult, String> {
+    private double time;
+
+    private TestCache() {
+      super(async);
+    }
+
+    @Override
+    public String derive(final GetTestResult result) {
+      return "derived";
+    }
+
+    @Override
+    protected String[] tagsOf(final GetTestAction action) {
+      return new String[] { "tag-" + action.getName() };
+    }
+
+    @Override
+    protected double now() {
+      return time;
+    }
+  }
+
+  /** Another action, so that it's of a different type. */
+  private static class SaveAction extends GetTestAction {
+    private static final long serialVersionUID = 1L;
+
+    private SaveAction(final String name) {
+      super(name);
+    }
+  }
+
+  private static class Derived implements SuccessCallback<String> {
+    private String value;
+
+    public void onSuccess(final String value) {
+      this.value = value;
+    }
+  }
+
+  private static class Failable implements AsyncCallback<String> {
+    private Throwable failure;
+
+    public void onSuccess(final String value) {
+    }
+
+    public void onFailure(final Throwable caught) {
+      failure = caught;
+    }
+  }
+
+}
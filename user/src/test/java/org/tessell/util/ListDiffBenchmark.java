@@ -0,0 +1,82 @@
+package org.tessell.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares {@link ListDiff} against the previous {@code remove(Object)}-based diff on 10k element lists.
+ *
+ * Not a unit test, run it by hand with {@code main}.
+ */
+public class ListDiffBenchmark {
+
+  private static final int size = 10000;
+  private static final int iterations = 20;
+
+  public static void main(String[] args) {
+    final Random random = new Random(1);
+    final List<Integer> original = new ArrayList<Integer>();
+    for (int i = 0; i < size; i++) {
+      original.add(random.nextInt(size / 2)); // include duplicates
+    }
+
+    final List<Integer> appended = new ArrayList<Integer>(original);
+    appended.add(-1);
+
+    final List<Integer> shuffled = new ArrayList<Integer>(original);
+    for (int i = 0; i < size / 10; i++) {
+      shuffled.set(random.nextInt(size), -i);
+      shuffled.add(shuffled.remove(random.nextInt(size)));
+    }
+
+    final List<Integer> disjoint = new ArrayList<Integer>();
+    for (int i = 0; i < size; i++) {
+      disjoint.add(size + i);
+    }
+
+    run("append one", original, appended);
+    run("10% changed/moved", original, shuffled);
+    run("all replaced", original, disjoint);
+  }
+
+  private static void run(String name, List<Integer> a, List<Integer> b) {
+    // warm up
+    for (int i = 0; i < 3; i++) {
+      ListDiff.of(a, b);
+      naive(a, b);
+    }
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < iterations; i++) {
+      ListDiff.of(a, b);
+    }
+    final long diffMillis = System.currentTimeMillis() - start;
+    start = System.currentTimeMillis();
+    for (int i = 0; i < iterations; i++) {
+      naive(a, b);
+    }
+    final long naiveMillis = System.currentTimeMillis() - start;
+    System.out.println(name + ": ListDiff " + (diffMillis / (double) iterations) + "ms, naive " + (naiveMillis / (double) iterations) + "ms");
+  }
+
+  /** The previous implementation, O(n * m). */
+  private static <T> int naive(Collection<T> oldValue, Collection<T> newValue) {
+    List<T> added = new ArrayList<T>();
+    List<T> removed = new ArrayList<T>();
+    List<T> newCopy = new ArrayList<T>(newValue);
+    for (T t : oldValue) {
+      if (!newCopy.remove(t)) {
+        removed.add(t);
+      }
+    }
+    List<T> oldCopy = new ArrayList<T>(oldValue);
+    for (T t : newValue) {
+      if (!oldCopy.remove(t)) {
+        added.add(t);
+      }
+    }
+    return added.size() + removed.size();
+  }
+
+}
@@ -4,6 +4,10 @@ import static joist.util.Copy.list;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
 public class ListDiffTest {
@@ -43,4 +47,61 @@ public class ListDiffTest {
     assertThat(d.added.size(), is(0));
   }
 
+  @Test
+  public void reportsIndexes() {
+    ListDiff<String> d = ListDiff.of(list("a", "b", "c", "d"), list("a", "x", "c", "d", "y"));
+    assertThat(d.added.toString(), is("[x, y]"));
+    assertThat(Arrays.toString(d.addedIndexes), is("[1, 4]"));
+    assertThat(d.removed.toString(), is("[b]"));
+    assertThat(Arrays.toString(d.removedIndexes), is("[1]"));
+    assertThat(d.moves.size(), is(0));
+  }
+
+  @Test
+  public void removesTheLaterDuplicate() {
+    ListDiff<String> d = ListDiff.of(list("a", "b", "a", "b"), list("a", "b", "b"));
+    assertThat(d.removed.toString(), is("[a]"));
+    assertThat(Arrays.toString(d.removedIndexes), is("[2]"));
+    assertThat(d.added.size(), is(0));
+  }
+
+  @Test
+  public void findsMoves() {
+    ListDiff<String> d = ListDiff.of(list("a", "b", "c", "d"), list("b", "c", "d", "a"));
+    assertThat(d.added.size(), is(0));
+    assertThat(d.removed.size(), is(0));
+    assertThat(d.moves.toString(), is("[a 0->3]"));
+  }
+
+  @Test
+  public void sameListIsEmpty() {
+    ListDiff<String> d = ListDiff.of(list("a", "b", "a"), list("a", "b", "a"));
+    assertThat(d.isEmpty(), is(true));
+  }
+
+  @Test
+  public void handlesNullElements() {
+    ListDiff<String> d = ListDiff.of(list("a", null, "b"), list(null, "b", null));
+    assertThat(d.added.toString(), is("[null]"));
+    assertThat(Arrays.toString(d.addedIndexes), is("[2]"));
+    assertThat(d.removed.toString(), is("[a]"));
+    assertThat(Arrays.toString(d.removedIndexes), is("[0]"));
+  }
+
+  @Test
+  public void largeListsWithOneChange() {
+    List<Integer> a = new ArrayList<Integer>();
+    for (int i = 0; i < 10000; i++) {
+      a.add(i);
+    }
+    List<Integer> b = new ArrayList<Integer>(a);
+    b.remove(5000);
+    b.add(0, -1);
+    ListDiff<Integer> d = ListDiff.of(a, b);
+    assertThat(d.added.toString(), is("[-1]"));
+    assertThat(d.removed.toString(), is("[5000]"));
+    assertThat(Arrays.toString(d.removedIndexes), is("[5000]"));
+    assertThat(d.moves.size(), is(0));
+  }
+
 }